@@ -0,0 +1,167 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 John Salomon - John´s Project
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.johnsproject.jgameengine.benchmark;
+
+import com.johnsproject.jgameengine.math.ColorMath;
+import com.johnsproject.jgameengine.math.FixedPointMath;
+import com.johnsproject.jgameengine.math.VectorMath;
+import com.johnsproject.jgameengine.model.Camera;
+import com.johnsproject.jgameengine.model.Face;
+import com.johnsproject.jgameengine.model.Light;
+import com.johnsproject.jgameengine.model.LightType;
+import com.johnsproject.jgameengine.model.Material;
+import com.johnsproject.jgameengine.model.Mesh;
+import com.johnsproject.jgameengine.model.Model;
+import com.johnsproject.jgameengine.model.Scene;
+import com.johnsproject.jgameengine.model.Transform;
+import com.johnsproject.jgameengine.model.Vertex;
+import com.johnsproject.jgameengine.shader.FlatSpecularShader;
+import com.johnsproject.jgameengine.shader.GouraudSpecularShader;
+import com.johnsproject.jgameengine.shader.PhongSpecularShader;
+import com.johnsproject.jgameengine.shader.Shader;
+import com.johnsproject.jgameengine.shader.SpecularProperties;
+
+/**
+ * Generates the scenes used by the benchmarks, so they don't depend on scene files.
+ */
+public final class BenchmarkScenes {
+
+	private BenchmarkScenes() { }
+	
+	/**
+	 * Creates a scene with a camera, a directional light, a point light and a grid of 
+	 * spheres in front of the camera. The spheres use the flat, gouraud and phong shaders.
+	 * 
+	 * @param columns spheres in each row of the grid.
+	 * @param rows rows of the grid.
+	 * @param rings rings of each sphere.
+	 * @param segments segments of each sphere.
+	 * @return the generated scene.
+	 */
+	public static Scene createScene(int columns, int rows, int rings, int segments) {
+		final Scene scene = new Scene();
+		final Camera camera = new Camera("Camera", new Transform());
+		camera.getTransform().setLocation(0, 0, FixedPointMath.toFixedPoint(Math.max(columns, rows) * 2 + 4));
+		scene.addCamera(camera);
+		final Light directionalLight = new Light("DirectionalLight", new Transform());
+		directionalLight.getTransform().setLocation(0, FixedPointMath.toFixedPoint(20), 0);
+		directionalLight.setColor(ColorMath.WHITE);
+		scene.addLight(directionalLight);
+		final Light pointLight = new Light("PointLight", new Transform());
+		pointLight.getTransform().setLocation(FixedPointMath.toFixedPoint(2), FixedPointMath.toFixedPoint(2), FixedPointMath.toFixedPoint(4));
+		pointLight.setType(LightType.POINT);
+		pointLight.setColor(ColorMath.toColor(255, 255, 200, 150));
+		scene.addLight(pointLight);
+		int index = 0;
+		for (int y = 0; y < rows; y++) {
+			for (int x = 0; x < columns; x++) {
+				final Shader shader;
+				if(index % 3 == 0) {
+					shader = new FlatSpecularShader();
+				} else if(index % 3 == 1) {
+					shader = new GouraudSpecularShader();
+				} else {
+					shader = new PhongSpecularShader();
+				}
+				((SpecularProperties) shader.getProperties()).setDiffuseColor(ColorMath.toColor(255, 200, 100 + ((index * 10) % 150), 100));
+				final Material material = new Material(0, "Material", shader);
+				final Transform transform = new Transform();
+				final int locationX = FixedPointMath.toFixedPoint((x * 4) - ((columns - 1) * 2));
+				final int locationY = FixedPointMath.toFixedPoint((y * 4) - ((rows - 1) * 2));
+				transform.setLocation(locationX, locationY, 0);
+				scene.addModel(new Model("Sphere" + index, transform, createSphere(material, rings, segments, 2)));
+				index++;
+			}
+		}
+		return scene;
+	}
+	
+	public static Mesh createSphere(Material material, int rings, int segments, double radius) {
+		final Vertex[] vertices = new Vertex[(rings + 1) * (segments + 1)];
+		for (int r = 0; r <= rings; r++) {
+			final double theta = (Math.PI * r) / rings;
+			for (int s = 0; s <= segments; s++) {
+				final double phi = (2 * Math.PI * s) / segments;
+				final double x = Math.sin(theta) * Math.cos(phi);
+				final double y = Math.cos(theta);
+				final double z = Math.sin(theta) * Math.sin(phi);
+				final int[] location = VectorMath.toVector(x * radius, y * radius, z * radius);
+				final int[] normal = VectorMath.toVector(x, y, z);
+				final int index = s + (r * (segments + 1));
+				vertices[index] = new Vertex(index, location, normal, material);
+			}
+		}
+		final Face[] faces = new Face[rings * segments * 2];
+		int index = 0;
+		for (int r = 0; r < rings; r++) {
+			for (int s = 0; s < segments; s++) {
+				final Vertex vertex0 = vertices[s + (r * (segments + 1))];
+				final Vertex vertex1 = vertices[s + 1 + (r * (segments + 1))];
+				final Vertex vertex2 = vertices[s + ((r + 1) * (segments + 1))];
+				final Vertex vertex3 = vertices[s + 1 + ((r + 1) * (segments + 1))];
+				faces[index] = new Face(index, getFaceNormal(vertex0, vertex1, vertex2), vertex0, vertex1, vertex2, material);
+				index++;
+				faces[index] = new Face(index, getFaceNormal(vertex1, vertex3, vertex2), vertex1, vertex3, vertex2, material);
+				index++;
+			}
+		}
+		return new Mesh(vertices, faces, new Material[] {material});
+	}
+
+	/**
+	 * Creates a square in the xy plane that faces the positive z axis. The uvs 
+	 * map the whole texture to the square once.
+	 * 
+	 * @param material material of the square.
+	 * @param size length of each side.
+	 * @return the generated square.
+	 */
+	public static Mesh createQuad(Material material, double size) {
+		final double half = size / 2;
+		final int[] normal = VectorMath.toVector(0, 0, 1.0);
+		final Vertex[] vertices = new Vertex[] {
+				new Vertex(0, VectorMath.toVector(-half, -half, 0), normal, material),
+				new Vertex(1, VectorMath.toVector(half, -half, 0), normal, material),
+				new Vertex(2, VectorMath.toVector(half, half, 0), normal, material),
+				new Vertex(3, VectorMath.toVector(-half, half, 0), normal, material)
+		};
+		final int[] uv0 = VectorMath.toVector(0, 1.0);
+		final int[] uv1 = VectorMath.toVector(1.0, 1.0);
+		final int[] uv2 = VectorMath.toVector(1.0, 0);
+		final int[] uv3 = VectorMath.toVector(0, 0);
+		final Face[] faces = new Face[] {
+				new Face(0, normal, vertices[0], vertices[1], vertices[2], material, uv0, uv1, uv2),
+				new Face(1, normal, vertices[0], vertices[2], vertices[3], material, uv0, uv2, uv3)
+		};
+		return new Mesh(vertices, faces, new Material[] {material});
+	}
+
+	private static int[] getFaceNormal(Vertex vertex0, Vertex vertex1, Vertex vertex2) {
+		final int[] normal = VectorMath.copy(VectorMath.emptyVector(), vertex0.getNormal());
+		VectorMath.add(normal, vertex1.getNormal());
+		VectorMath.add(normal, vertex2.getNormal());
+		VectorMath.normalize(normal);
+		return normal;
+	}
+}
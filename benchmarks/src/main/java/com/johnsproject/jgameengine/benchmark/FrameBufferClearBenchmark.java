@@ -0,0 +1,90 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 John Salomon - John´s Project
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.johnsproject.jgameengine.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.johnsproject.jgameengine.model.FrameBuffer;
+
+/**
+ * Clears a full hd frame buffer, either by filling the color, depth and stencil buffers 
+ * like every frame did before, or by clearing the blocks of a centered rectangle that 
+ * covers the given percentage of the frame buffer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameBufferClearBenchmark {
+
+	@Param({"10", "50", "100"})
+	private int coverage;
+	
+	private FrameBuffer frameBuffer;
+	private int left;
+	private int right;
+	private int top;
+	private int bottom;
+	
+	@Setup
+	public void setup() {
+		frameBuffer = new FrameBuffer(1920, 1080);
+		final double scale = Math.sqrt(coverage / 100.0);
+		final int width = (int) (frameBuffer.getWidth() * scale);
+		final int height = (int) (frameBuffer.getHeight() * scale);
+		left = (frameBuffer.getWidth() - width) / 2;
+		right = left + width - 1;
+		top = (frameBuffer.getHeight() - height) / 2;
+		bottom = top + height - 1;
+	}
+
+	@Benchmark
+	public FrameBuffer fill() {
+		frameBuffer.getColorBuffer().fill(0);
+		frameBuffer.getDepthBuffer().fill(Integer.MAX_VALUE);
+		frameBuffer.getStencilBuffer().fill(0);
+		return frameBuffer;
+	}
+	
+	@Benchmark
+	public FrameBuffer clear() {
+		frameBuffer.markDirty(left, right, top, bottom);
+		frameBuffer.clear();
+		return frameBuffer;
+	}
+}
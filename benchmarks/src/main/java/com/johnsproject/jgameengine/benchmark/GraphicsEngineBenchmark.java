@@ -0,0 +1,131 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 John Salomon - John´s Project
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.johnsproject.jgameengine.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.johnsproject.jgameengine.GraphicsEngine;
+import com.johnsproject.jgameengine.event.EngineEvent;
+import com.johnsproject.jgameengine.math.ColorMath;
+import com.johnsproject.jgameengine.math.FixedPointMath;
+import com.johnsproject.jgameengine.model.FrameBuffer;
+import com.johnsproject.jgameengine.model.Light;
+import com.johnsproject.jgameengine.model.LightType;
+import com.johnsproject.jgameengine.model.Scene;
+import com.johnsproject.jgameengine.model.Transform;
+import com.johnsproject.jgameengine.shader.DeferredShaderBuffer;
+import com.johnsproject.jgameengine.shader.ForwardShaderBuffer;
+
+/**
+ * Renders a generated scene with {@link GraphicsEngine#update} without a window.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphicsEngineBenchmark {
+
+	@Param({"1", "4"})
+	private int threadCount;
+	
+	@Param({"true", "false"})
+	private boolean shadows;
+	
+	@Param({"false", "true"})
+	private boolean deferred;
+	
+	@Param({"false", "true"})
+	private boolean staticModels;
+	
+	/**
+	 * Splits the directional shadow map into three 256x256 cascades, 
+	 * together they take less of the shadow atlas than the default 512x512 shadow map.
+	 */
+	@Param({"false", "true"})
+	private boolean cascades;
+	
+	/**
+	 * Adds shadow casting spot lights above the spheres, their shadow maps share the shadow atlas.
+	 */
+	@Param({"0", "8"})
+	private int spotLights;
+	
+	private GraphicsEngine graphicsEngine;
+	private EngineEvent event;
+	
+	@Setup
+	public void setup() {
+		final Scene scene = BenchmarkScenes.createScene(5, 3, 24, 32);
+		for (int i = 0; i < spotLights; i++) {
+			final Light spotLight = new Light("SpotLight" + i, new Transform());
+			spotLight.getTransform().setLocation(FixedPointMath.toFixedPoint((i * 3) - 12), FixedPointMath.toFixedPoint(8), FixedPointMath.toFixedPoint(4));
+			spotLight.setType(LightType.SPOT);
+			spotLight.setColor(ColorMath.toColor(255, 200, 200, 255));
+			spotLight.setRange(FixedPointMath.toFixedPoint(16));
+			scene.addLight(spotLight);
+		}
+		for (int i = 0; i < scene.getModels().size(); i++) {
+			scene.getModels().get(i).setStatic(staticModels);
+		}
+		graphicsEngine = new GraphicsEngine(new FrameBuffer(640, 480));
+		graphicsEngine.setThreadCount(threadCount);
+		if(deferred) {
+			graphicsEngine.setShaderDataBuffer(new DeferredShaderBuffer());
+		}
+		if(cascades) {
+			final int[] splits = new int[] {FixedPointMath.toFixedPoint(8), FixedPointMath.toFixedPoint(20), FixedPointMath.toFixedPoint(50)};
+			((ForwardShaderBuffer) graphicsEngine.getShaderDataBuffer()).setDirectionalShadowCascades(splits, new int[] {256, 256, 256});
+		}
+		if(!shadows) {
+			graphicsEngine.getPreprocessingShaders().clear();
+		}
+		event = new EngineEvent(scene, 0, 0, 0);
+	}
+	
+	@TearDown
+	public void tearDown() {
+		graphicsEngine.setThreadCount(1);
+	}
+
+	@Benchmark
+	public FrameBuffer update() {
+		graphicsEngine.update(event);
+		return graphicsEngine.getFrameBuffer();
+	}
+}
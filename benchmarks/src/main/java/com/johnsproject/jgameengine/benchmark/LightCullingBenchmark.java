@@ -0,0 +1,100 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 John Salomon - John´s Project
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.johnsproject.jgameengine.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.johnsproject.jgameengine.GraphicsEngine;
+import com.johnsproject.jgameengine.event.EngineEvent;
+import com.johnsproject.jgameengine.math.ColorMath;
+import com.johnsproject.jgameengine.math.FixedPointMath;
+import com.johnsproject.jgameengine.model.FrameBuffer;
+import com.johnsproject.jgameengine.model.Light;
+import com.johnsproject.jgameengine.model.LightType;
+import com.johnsproject.jgameengine.model.Scene;
+import com.johnsproject.jgameengine.model.Transform;
+
+/**
+ * Renders the benchmark scene lit by many small point lights. With ranged lights the 
+ * shaders only iterate the lights of each screen tile, without a range every light 
+ * is shaded for every fragment.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LightCullingBenchmark {
+
+	@Param({"8", "64", "256"})
+	private int lightCount;
+	
+	@Param({"true", "false"})
+	private boolean ranged;
+	
+	private GraphicsEngine graphicsEngine;
+	private EngineEvent event;
+	
+	@Setup
+	public void setup() {
+		final Scene scene = BenchmarkScenes.createScene(5, 3, 24, 32);
+		final Random random = new Random(1);
+		for (int i = 0; i < lightCount; i++) {
+			final Light light = new Light("Light" + i, new Transform());
+			final int x = FixedPointMath.toFixedPoint((random.nextDouble() * 20) - 10);
+			final int y = FixedPointMath.toFixedPoint((random.nextDouble() * 12) - 6);
+			light.getTransform().setLocation(x, y, FixedPointMath.toFixedPoint(3));
+			light.setType(LightType.POINT);
+			light.setColor(ColorMath.toColor(255, random.nextInt(256), random.nextInt(256), random.nextInt(256)));
+			light.setStrength(FixedPointMath.toFixedPoint(0.25));
+			if(ranged) {
+				light.setRange(FixedPointMath.toFixedPoint(3));
+			}
+			scene.addLight(light);
+		}
+		graphicsEngine = new GraphicsEngine(new FrameBuffer(640, 480));
+		graphicsEngine.getPreprocessingShaders().clear();
+		event = new EngineEvent(scene, 0, 0, 0);
+	}
+
+	@Benchmark
+	public FrameBuffer update() {
+		graphicsEngine.update(event);
+		return graphicsEngine.getFrameBuffer();
+	}
+}
@@ -0,0 +1,117 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 John Salomon - John´s Project
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.johnsproject.jgameengine.benchmark;
+
+import static com.johnsproject.jgameengine.math.FixedPointMath.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.johnsproject.jgameengine.math.FixedPointMath;
+import com.johnsproject.jgameengine.math.MatrixMath;
+import com.johnsproject.jgameengine.math.TransformationMath;
+import com.johnsproject.jgameengine.math.VectorMath;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MathBenchmark {
+
+	private long number;
+	private int angle;
+	private int exponent;
+	private int divisor;
+	private int[] vector;
+	private int[] result;
+	private int[][] matrix1;
+	private int[][] matrix2;
+	private int[][] resultMatrix;
+	
+	@Setup
+	public void setup() {
+		number = FixedPointMath.toFixedPoint(12345.678);
+		angle = FixedPointMath.toFixedPoint(123);
+		exponent = FixedPointMath.toFixedPoint(5);
+		divisor = FixedPointMath.toFixedPoint(3.25);
+		vector = VectorMath.toVector(1.5, -2.25, 3.75);
+		result = VectorMath.emptyVector();
+		matrix1 = MatrixMath.indentityMatrix();
+		matrix2 = MatrixMath.indentityMatrix();
+		resultMatrix = MatrixMath.indentityMatrix();
+		final int[][] matrixCache1 = MatrixMath.indentityMatrix();
+		final int[][] matrixCache2 = MatrixMath.indentityMatrix();
+		TransformationMath.rotateX(matrix1, FixedPointMath.toFixedPoint(30), matrixCache1, matrixCache2);
+		TransformationMath.translate(matrix1, FP_ONE, 2 * FP_ONE, 3 * FP_ONE, matrixCache1, matrixCache2);
+		TransformationMath.rotateY(matrix2, FixedPointMath.toFixedPoint(45), matrixCache1, matrixCache2);
+		TransformationMath.scale(matrix2, 2 * FP_ONE, 2 * FP_ONE, 2 * FP_ONE, matrixCache1, matrixCache2);
+	}
+
+	@Benchmark
+	public int sqrt() {
+		return FixedPointMath.sqrt(number);
+	}
+
+	@Benchmark
+	public int sin() {
+		return FixedPointMath.sin(angle);
+	}
+
+	@Benchmark
+	public int pow() {
+		return FixedPointMath.pow(divisor, exponent);
+	}
+
+	@Benchmark
+	public int divide() {
+		return FixedPointMath.divide(number, divisor);
+	}
+
+	@Benchmark
+	public int[] vectorMatrixMultiply() {
+		return VectorMath.multiply(VectorMath.copy(result, vector), matrix1);
+	}
+
+	@Benchmark
+	public int[] normalize() {
+		return VectorMath.normalize(VectorMath.copy(result, vector));
+	}
+
+	@Benchmark
+	public int[][] matrixMultiply() {
+		return MatrixMath.multiply(matrix1, matrix2, resultMatrix);
+	}
+}
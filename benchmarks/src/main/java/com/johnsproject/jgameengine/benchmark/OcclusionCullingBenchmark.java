@@ -0,0 +1,105 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 John Salomon - John´s Project
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.johnsproject.jgameengine.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.johnsproject.jgameengine.GraphicsEngine;
+import com.johnsproject.jgameengine.event.EngineEvent;
+import com.johnsproject.jgameengine.math.FixedPointMath;
+import com.johnsproject.jgameengine.model.FrameBuffer;
+import com.johnsproject.jgameengine.model.Material;
+import com.johnsproject.jgameengine.model.Model;
+import com.johnsproject.jgameengine.model.Scene;
+import com.johnsproject.jgameengine.model.Transform;
+import com.johnsproject.jgameengine.shader.GouraudSpecularShader;
+import com.johnsproject.jgameengine.shader.PhongSpecularShader;
+
+/**
+ * Renders a wall of overlapping spheres in front of layers of phong shaded spheres, 
+ * with and without the occlusion culling of the camera.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OcclusionCullingBenchmark {
+
+	@Param({"false", "true"})
+	private boolean occlusionCulling;
+	
+	private GraphicsEngine graphicsEngine;
+	private EngineEvent event;
+	
+	@Setup
+	public void setup() {
+		final Scene scene = BenchmarkScenes.createScene(0, 0, 0, 0);
+		scene.getMainCamera().getTransform().setLocation(0, 0, FixedPointMath.toFixedPoint(16));
+		for (int y = -1; y <= 1; y++) {
+			for (int x = -2; x <= 2; x++) {
+				final Material material = new Material(0, "Material", new GouraudSpecularShader());
+				final Transform transform = new Transform();
+				transform.setLocation(FixedPointMath.toFixedPoint(x * 4), FixedPointMath.toFixedPoint(y * 4), FixedPointMath.toFixedPoint(4));
+				scene.addModel(new Model("Wall" + x + "" + y, transform, BenchmarkScenes.createSphere(material, 12, 16, 3)));
+			}
+		}
+		for (int layer = 1; layer <= 3; layer++) {
+			for (int y = -1; y <= 1; y++) {
+				for (int x = -2; x <= 2; x++) {
+					final Material material = new Material(0, "Material", new PhongSpecularShader());
+					final Transform transform = new Transform();
+					final int locationX = FixedPointMath.toFixedPoint((x * 3) + layer);
+					final int locationY = FixedPointMath.toFixedPoint((y * 3) + layer);
+					transform.setLocation(locationX, locationY, FixedPointMath.toFixedPoint(layer * -3));
+					final String name = "Layer" + layer + "Sphere" + x + "" + y;
+					scene.addModel(new Model(name, transform, BenchmarkScenes.createSphere(material, 24, 32, 1)));
+				}
+			}
+		}
+		scene.getMainCamera().setOcclusionCulling(occlusionCulling);
+		graphicsEngine = new GraphicsEngine(new FrameBuffer(640, 480));
+		graphicsEngine.getPreprocessingShaders().clear();
+		event = new EngineEvent(scene, 0, 0, 0);
+	}
+
+	@Benchmark
+	public FrameBuffer update() {
+		graphicsEngine.update(event);
+		return graphicsEngine.getFrameBuffer();
+	}
+}
@@ -0,0 +1,225 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 John Salomon - John´s Project
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.johnsproject.jgameengine.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.johnsproject.jgameengine.GraphicsEngine;
+import com.johnsproject.jgameengine.event.EngineEvent;
+import com.johnsproject.jgameengine.math.FixedPointMath;
+import com.johnsproject.jgameengine.model.FrameBuffer;
+import com.johnsproject.jgameengine.model.Mesh;
+import com.johnsproject.jgameengine.model.Scene;
+import com.johnsproject.jgameengine.model.Texture;
+import com.johnsproject.jgameengine.rasterizer.AffineFlatRasterizer;
+import com.johnsproject.jgameengine.rasterizer.AffineGouraudRasterizer;
+import com.johnsproject.jgameengine.rasterizer.AffinePhongRasterizer;
+import com.johnsproject.jgameengine.rasterizer.FlatRasterizer;
+import com.johnsproject.jgameengine.rasterizer.GouraudRasterizer;
+import com.johnsproject.jgameengine.rasterizer.PerspectiveFlatRasterizer;
+import com.johnsproject.jgameengine.rasterizer.PerspectiveGouraudRasterizer;
+import com.johnsproject.jgameengine.rasterizer.PerspectivePhongRasterizer;
+import com.johnsproject.jgameengine.rasterizer.PhongRasterizer;
+import com.johnsproject.jgameengine.shader.FragmentBuffer;
+import com.johnsproject.jgameengine.shader.GeometryBuffer;
+import com.johnsproject.jgameengine.shader.Shader;
+import com.johnsproject.jgameengine.shader.ShaderBuffer;
+import com.johnsproject.jgameengine.shader.ShaderProperties;
+import com.johnsproject.jgameengine.shader.SpanShader;
+import com.johnsproject.jgameengine.shader.VertexBuffer;
+
+/**
+ * Draws the triangles of a generated scene with each rasterizer. The triangles are 
+ * transformed to screen space once by a {@link GraphicsEngine}, the benchmark then only 
+ * measures the rasterizer and a fragment shader that does a depth test.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RasterizerBenchmark {
+
+	@Param({"Flat", "FlatSpan", "Gouraud", "Phong", "AffineFlat", "AffineGouraud", "AffinePhong", "PerspectiveFlat", "PerspectiveGouraud", "PerspectivePhong"})
+	private String rasterizer;
+	
+	// rings of the spheres, the spheres with less rings have bigger triangles
+	@Param({"24", "6"})
+	private int rings;
+	
+	private DepthShader shader;
+	private GeometryBuffer[] triangles;
+	
+	@Setup
+	public void setup() {
+		final Scene scene = BenchmarkScenes.createScene(5, 3, rings, (rings * 4) / 3);
+		final GraphicsEngine graphicsEngine = new GraphicsEngine(new FrameBuffer(640, 480));
+		graphicsEngine.getPreprocessingShaders().clear();
+		graphicsEngine.update(new EngineEvent(scene, 0, 0, 0));
+		final List<GeometryBuffer> geometryBuffers = new ArrayList<GeometryBuffer>();
+		for (int m = 0; m < scene.getModels().size(); m++) {
+			final Mesh mesh = scene.getModels().get(m).getMesh();
+			for (int f = 0; f < mesh.getFaces().length; f++) {
+				geometryBuffers.add(mesh.getFace(f).getBuffer());
+			}
+		}
+		triangles = geometryBuffers.toArray(new GeometryBuffer[geometryBuffers.size()]);
+		final Texture depthBuffer = scene.getCameras().get(0).getRenderTarget().getDepthBuffer();
+		if(rasterizer.equals("FlatSpan")) {
+			shader = new DepthSpanShader(rasterizer, graphicsEngine.getShaderDataBuffer(), depthBuffer);
+		} else {
+			shader = new DepthShader(rasterizer, graphicsEngine.getShaderDataBuffer(), depthBuffer);
+		}
+	}
+
+	@Benchmark
+	public Texture draw() {
+		shader.getDepthBuffer().fill(Integer.MAX_VALUE);
+		for (int i = 0; i < triangles.length; i++) {
+			shader.geometry(triangles[i]);
+		}
+		return shader.getDepthBuffer();
+	}
+	
+	private static class DepthShader implements Shader {
+		
+		private final FlatRasterizer rasterizer;
+		private final Texture depthBuffer;
+		private final Texture texture;
+		private ShaderBuffer shaderBuffer;
+		
+		public DepthShader(String rasterizer, ShaderBuffer shaderBuffer, Texture depthBuffer) {
+			this.shaderBuffer = shaderBuffer;
+			this.depthBuffer = depthBuffer;
+			this.texture = new Texture(64, 64);
+			if(rasterizer.equals("Flat") || rasterizer.equals("FlatSpan")) {
+				this.rasterizer = new FlatRasterizer(this);
+			} else if(rasterizer.equals("Gouraud")) {
+				this.rasterizer = new GouraudRasterizer(this);
+			} else if(rasterizer.equals("Phong")) {
+				this.rasterizer = new PhongRasterizer(this);
+			} else if(rasterizer.equals("AffineFlat")) {
+				this.rasterizer = new AffineFlatRasterizer(this);
+			} else if(rasterizer.equals("AffineGouraud")) {
+				this.rasterizer = new AffineGouraudRasterizer(this);
+			} else if(rasterizer.equals("AffinePhong")) {
+				this.rasterizer = new AffinePhongRasterizer(this);
+			} else if(rasterizer.equals("PerspectiveFlat")) {
+				this.rasterizer = new PerspectiveFlatRasterizer(this);
+			} else if(rasterizer.equals("PerspectiveGouraud")) {
+				this.rasterizer = new PerspectiveGouraudRasterizer(this);
+			} else {
+				this.rasterizer = new PerspectivePhongRasterizer(this);
+			}
+		}
+
+		public void vertex(VertexBuffer vertexBuffer) { }
+
+		public void geometry(GeometryBuffer geometryBuffer) {
+			if(rasterizer instanceof PerspectiveFlatRasterizer) {
+				((PerspectiveFlatRasterizer) rasterizer).perspectiveDraw(geometryBuffer, texture);
+			} else if(rasterizer instanceof PerspectiveGouraudRasterizer) {
+				((PerspectiveGouraudRasterizer) rasterizer).perspectiveDraw(geometryBuffer, texture);
+			} else if(rasterizer instanceof PerspectivePhongRasterizer) {
+				((PerspectivePhongRasterizer) rasterizer).perspectiveDraw(geometryBuffer, texture);
+			} else if(rasterizer instanceof AffineFlatRasterizer) {
+				((AffineFlatRasterizer) rasterizer).affineDraw(geometryBuffer, texture);
+			} else if(rasterizer instanceof AffineGouraudRasterizer) {
+				((AffineGouraudRasterizer) rasterizer).affineDraw(geometryBuffer, texture);
+			} else if(rasterizer instanceof AffinePhongRasterizer) {
+				((AffinePhongRasterizer) rasterizer).affineDraw(geometryBuffer, texture);
+			} else {
+				rasterizer.draw(geometryBuffer);
+			}
+		}
+
+		public void fragment(FragmentBuffer fragmentBuffer) {
+			final int x = fragmentBuffer.getLocation()[0];
+			final int y = fragmentBuffer.getLocation()[1];
+			final int z = fragmentBuffer.getLocation()[2];
+			if(depthBuffer.getPixelUnchecked(x, y) > z) {
+				depthBuffer.setPixelUnchecked(x, y, z);
+			}
+		}
+		
+		public Texture getDepthBuffer() {
+			return depthBuffer;
+		}
+
+		public ShaderBuffer getShaderBuffer() {
+			return shaderBuffer;
+		}
+
+		public void setShaderBuffer(ShaderBuffer shaderBuffer) {
+			this.shaderBuffer = shaderBuffer;
+		}
+
+		public void setProperties(ShaderProperties shaderProperties) { }
+
+		public ShaderProperties getProperties() {
+			return null;
+		}
+
+		public FlatRasterizer getRasterizer() {
+			return rasterizer;
+		}
+
+		public Shader copy() {
+			return this;
+		}
+	}
+	
+	private static class DepthSpanShader extends DepthShader implements SpanShader {
+		
+		public DepthSpanShader(String rasterizer, ShaderBuffer shaderBuffer, Texture depthBuffer) {
+			super(rasterizer, shaderBuffer, depthBuffer);
+		}
+
+		public void fragmentSpan(int y, int x1, int x2, int z, int dz) {
+			final Texture depthBuffer = getDepthBuffer();
+			final int[] pixels = depthBuffer.getPixels();
+			for (int index = x1 + (y * depthBuffer.getStride()); x1 <= x2; x1++, index++, z += dz) {
+				final int depth = z >> FixedPointMath.FP_BIT;
+				if(pixels[index] > depth) {
+					pixels[index] = depth;
+				}
+			}
+		}
+	}
+}
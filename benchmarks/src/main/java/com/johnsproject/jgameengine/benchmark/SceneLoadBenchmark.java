@@ -0,0 +1,226 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 John Salomon - John´s Project
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.johnsproject.jgameengine.benchmark;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.johnsproject.jgameengine.io.BinarySceneExporter;
+import com.johnsproject.jgameengine.io.BinarySceneImporter;
+import com.johnsproject.jgameengine.io.SOMImporter;
+import com.johnsproject.jgameengine.io.SceneImporter;
+import com.johnsproject.jgameengine.math.ColorMath;
+import com.johnsproject.jgameengine.math.FixedPointMath;
+import com.johnsproject.jgameengine.math.VectorMath;
+import com.johnsproject.jgameengine.model.Material;
+import com.johnsproject.jgameengine.model.Mesh;
+import com.johnsproject.jgameengine.model.Model;
+import com.johnsproject.jgameengine.model.Scene;
+import com.johnsproject.jgameengine.shader.GouraudSpecularShader;
+import com.johnsproject.jgameengine.shader.SpecularProperties;
+
+/**
+ * Loads a generated sphere from .scene, .som and binary scene files. Run it with 
+ * -prof gc to compare the memory allocated by each importer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class SceneLoadBenchmark {
+
+	@Param({"64", "256"})
+	private int rings;
+	
+	private File sceneFile;
+	private File somFile;
+	private File binaryFile;
+	
+	@Setup
+	public void setup() throws IOException {
+		final GouraudSpecularShader shader = new GouraudSpecularShader();
+		((SpecularProperties) shader.getProperties()).setDiffuseColor(ColorMath.WHITE);
+		final Material material = new Material(0, "Material", shader);
+		final Mesh mesh = BenchmarkScenes.createSphere(material, rings, rings, 2);
+		sceneFile = File.createTempFile("benchmark", ".scene");
+		somFile = File.createTempFile("benchmark", ".som");
+		binaryFile = File.createTempFile("benchmark", ".bin");
+		writeFile(sceneFile, toScene(mesh));
+		writeFile(somFile, toSOM(mesh));
+		BinarySceneExporter.convertScene(sceneFile.getPath(), binaryFile.getPath());
+	}
+	
+	@TearDown
+	public void tearDown() {
+		sceneFile.delete();
+		somFile.delete();
+		binaryFile.delete();
+	}
+
+	@Benchmark
+	public Scene sceneImporter() throws IOException {
+		return SceneImporter.load(sceneFile.getPath());
+	}
+	
+	@Benchmark
+	public Model somImporter() throws IOException {
+		return SOMImporter.load(somFile.getPath());
+	}
+	
+	@Benchmark
+	public Scene binarySceneImporter() throws IOException {
+		return BinarySceneImporter.load(binaryFile.getPath());
+	}
+	
+	private static void writeFile(File file, String content) throws IOException {
+		final FileWriter writer = new FileWriter(file);
+		try {
+			writer.write(content);
+		} finally {
+			writer.close();
+		}
+	}
+	
+	private static String toScene(Mesh mesh) {
+		final int[] locations = mesh.getLocations();
+		final int[] normals = mesh.getNormals();
+		final int[] faceVertices = mesh.getFaceVertices();
+		final int[] faceNormals = mesh.getFaceNormals();
+		final int[] faceUVs = mesh.getFaceUVs();
+		final StringBuilder builder = new StringBuilder();
+		builder.append("model<\n");
+		builder.append("name<Sphere>name\n");
+		builder.append("transform<0.000,0.000,0.000,0.000,0.000,0.000,1.000,1.000,1.000>transform\n");
+		builder.append("vertex");
+		for (int i = 0; i < mesh.getVertices().length; i++) {
+			builder.append('<');
+			appendVector(builder, locations, i * VectorMath.VECTOR_SIZE, 3).append(',');
+			appendVector(builder, normals, i * VectorMath.VECTOR_SIZE, 3).append(",0>");
+		}
+		builder.append("vertex\n");
+		builder.append("face");
+		for (int i = 0; i < mesh.getFaces().length; i++) {
+			builder.append('<');
+			builder.append(faceVertices[i * 3]).append(',');
+			builder.append(faceVertices[i * 3 + 1]).append(',');
+			builder.append(faceVertices[i * 3 + 2]).append(',');
+			appendVector(builder, faceNormals, i * VectorMath.VECTOR_SIZE, 3);
+			for (int j = 0; j < 3; j++) {
+				builder.append(',');
+				appendVector(builder, faceUVs, (i * 3 + j) * VectorMath.VECTOR_SIZE, 2);
+			}
+			builder.append(",0>");
+		}
+		builder.append("face\n");
+		builder.append("material<Material,1.000,1.000,1.000,1.000,1.000,0.500,10.000>material\n");
+		builder.append("vertexGroup<0,1,0,1.000>vertexGroup\n");
+		builder.append("animation<Idle,1,1,0.000,0.000,0.000,0.000,0.000,0.000,1.000,1.000,1.000>animation\n");
+		builder.append(">model\n");
+		builder.append("camera<\n");
+		builder.append("name<Camera>name\n");
+		builder.append("type<PERSP>type\n");
+		builder.append("transform<0.000,-10.000,0.000,90.000,0.000,0.000,1.000,1.000,1.000>transform\n");
+		builder.append(">camera\n");
+		return builder.toString();
+	}
+	
+	private static String toSOM(Mesh mesh) {
+		final int vertexCount = mesh.getVertices().length;
+		final int faceCount = mesh.getFaces().length;
+		final int[] faceVertices = mesh.getFaceVertices();
+		final StringBuilder builder = new StringBuilder();
+		builder.append("vCount<").append(vertexCount).append(">vCount\n");
+		appendColumn(builder, "vPosition", mesh.getLocations(), 3);
+		appendColumn(builder, "vNormal", mesh.getNormals(), 3);
+		appendZeros(builder, "vMaterial", vertexCount);
+		builder.append("fCount<").append(faceCount).append(">fCount\n");
+		for (int j = 0; j < 3; j++) {
+			builder.append("fVertex").append(j + 1).append('<');
+			for (int i = 0; i < faceCount; i++) {
+				builder.append((i == 0) ? "" : ",").append(faceVertices[i * 3 + j]);
+			}
+			builder.append(">fVertex").append(j + 1).append('\n');
+		}
+		appendZeros(builder, "fMaterial", faceCount);
+		appendColumn(builder, "fNormal", mesh.getFaceNormals(), 3);
+		final int[] uvs = new int[faceCount * VectorMath.VECTOR_SIZE];
+		for (int j = 0; j < 3; j++) {
+			for (int i = 0; i < faceCount; i++) {
+				System.arraycopy(mesh.getFaceUVs(), (i * 3 + j) * VectorMath.VECTOR_SIZE, uvs, i * VectorMath.VECTOR_SIZE, VectorMath.VECTOR_SIZE);
+			}
+			appendColumn(builder, "fUV" + (j + 1), uvs, 2);
+		}
+		builder.append("mCount<1>mCount\n");
+		builder.append("mDiffuseColor<1.000,1.000,1.000,1.000>mDiffuseColor\n");
+		builder.append("mDiffuseIntensity<1.000>mDiffuseIntensity\n");
+		builder.append("mSpecularIntensity<0.500>mSpecularIntensity\n");
+		return builder.toString();
+	}
+	
+	private static void appendColumn(StringBuilder builder, String tag, int[] vectors, int size) {
+		builder.append(tag).append('<');
+		for (int i = 0; i < vectors.length; i += VectorMath.VECTOR_SIZE) {
+			if (i > 0) {
+				builder.append(',');
+			}
+			appendVector(builder, vectors, i, size);
+		}
+		builder.append('>').append(tag).append('\n');
+	}
+	
+	private static void appendZeros(StringBuilder builder, String tag, int count) {
+		builder.append(tag).append('<');
+		for (int i = 0; i < count; i++) {
+			builder.append((i == 0) ? "0" : ",0");
+		}
+		builder.append('>').append(tag).append('\n');
+	}
+	
+	private static StringBuilder appendVector(StringBuilder builder, int[] vectors, int offset, int size) {
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				builder.append(',');
+			}
+			builder.append((float) FixedPointMath.toDouble(vectors[offset + i]));
+		}
+		return builder;
+	}
+}
@@ -0,0 +1,121 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 John Salomon - John´s Project
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.johnsproject.jgameengine.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.johnsproject.jgameengine.GraphicsEngine;
+import com.johnsproject.jgameengine.event.EngineEvent;
+import com.johnsproject.jgameengine.math.ColorMath;
+import com.johnsproject.jgameengine.math.FixedPointMath;
+import com.johnsproject.jgameengine.math.VectorMath;
+import com.johnsproject.jgameengine.model.Camera;
+import com.johnsproject.jgameengine.model.FrameBuffer;
+import com.johnsproject.jgameengine.model.Light;
+import com.johnsproject.jgameengine.model.Material;
+import com.johnsproject.jgameengine.model.Model;
+import com.johnsproject.jgameengine.model.Scene;
+import com.johnsproject.jgameengine.model.Texture;
+import com.johnsproject.jgameengine.model.TextureLayout;
+import com.johnsproject.jgameengine.model.Transform;
+import com.johnsproject.jgameengine.shader.PhongSpecularShader;
+import com.johnsproject.jgameengine.shader.SpecularProperties;
+
+/**
+ * Renders rotated squares with a large texture at increasing distances from the camera, 
+ * so most of them are minified.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextureBenchmark {
+
+	@Param({"false", "true"})
+	private boolean mipmaps;
+	
+	@Param({"LINEAR", "TILED"})
+	private TextureLayout layout;
+	
+	private GraphicsEngine graphicsEngine;
+	private EngineEvent event;
+	
+	@Setup
+	public void setup() {
+		final Texture texture = new Texture(1024, 1024);
+		final Random random = new Random(0);
+		for (int i = 0; i < texture.getPixels().length; i++) {
+			texture.getPixels()[i] = ColorMath.toColor(255, random.nextInt(256), random.nextInt(256), random.nextInt(256));
+		}
+		if(mipmaps) {
+			texture.buildMipmaps();
+		}
+		texture.setLayout(layout);
+		final Scene scene = new Scene();
+		final Camera camera = new Camera("Camera", new Transform());
+		camera.getTransform().setLocation(0, 0, FixedPointMath.toFixedPoint(4));
+		scene.addCamera(camera);
+		final Light light = new Light("DirectionalLight", new Transform());
+		light.setColor(ColorMath.WHITE);
+		light.setDirection(VectorMath.toVector(0, 0, -1.0));
+		scene.addLight(light);
+		for (int i = 0; i < 16; i++) {
+			final PhongSpecularShader shader = new PhongSpecularShader();
+			((SpecularProperties) shader.getProperties()).setTexture(texture);
+			final Material material = new Material(0, "Material", shader);
+			final Transform transform = new Transform();
+			// the squares get smaller on the screen with the distance
+			final double depth = 6 + (i * 2);
+			final double x = ((i % 4) - 1.5) * 0.2 * depth;
+			final double y = ((i / 4) - 1.5) * 0.15 * depth;
+			transform.setLocation(FixedPointMath.toFixedPoint(x), FixedPointMath.toFixedPoint(y), FixedPointMath.toFixedPoint(4 - depth));
+			transform.setRotation(FixedPointMath.toFixedPoint(30 - (i * 4)), FixedPointMath.toFixedPoint((i * 7) - 50), FixedPointMath.toFixedPoint(i * 25));
+			scene.addModel(new Model("Square" + i, transform, BenchmarkScenes.createQuad(material, 1.5)));
+		}
+		graphicsEngine = new GraphicsEngine(new FrameBuffer(640, 480));
+		graphicsEngine.getPreprocessingShaders().clear();
+		event = new EngineEvent(scene, 0, 0, 0);
+	}
+
+	@Benchmark
+	public FrameBuffer update() {
+		graphicsEngine.update(event);
+		return graphicsEngine.getFrameBuffer();
+	}
+}
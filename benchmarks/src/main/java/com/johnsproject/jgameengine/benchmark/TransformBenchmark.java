@@ -0,0 +1,124 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 John Salomon - John´s Project
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.johnsproject.jgameengine.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.johnsproject.jgameengine.math.FixedPointMath;
+import com.johnsproject.jgameengine.math.MatrixMath;
+import com.johnsproject.jgameengine.math.TransformationMath;
+import com.johnsproject.jgameengine.model.Transform;
+
+/**
+ * Moves a transform the way the engines do every frame. The eager benchmarks rebuild all four 
+ * matrices after every change, like the transform did before they were recalculated lazily.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransformBenchmark {
+
+	private Transform transform;
+	private int step;
+	private int angle;
+	private int[][] matrixCache1;
+	private int[][] matrixCache2;
+	private int[][] exitMatrix;
+	private int[][] exitNormalMatrix;
+	private int[][] enterMatrix;
+	private int[][] enterNormalMatrix;
+	
+	@Setup
+	public void setup() {
+		transform = new Transform();
+		transform.setScale(FixedPointMath.toFixedPoint(1.5), FixedPointMath.toFixedPoint(1.5), FixedPointMath.toFixedPoint(1.5));
+		step = FixedPointMath.toFixedPoint(0.01);
+		angle = FixedPointMath.toFixedPoint(0.5);
+		matrixCache1 = MatrixMath.indentityMatrix();
+		matrixCache2 = MatrixMath.indentityMatrix();
+		exitMatrix = MatrixMath.indentityMatrix();
+		exitNormalMatrix = MatrixMath.indentityMatrix();
+		enterMatrix = MatrixMath.indentityMatrix();
+		enterNormalMatrix = MatrixMath.indentityMatrix();
+	}
+
+	/**
+	 * A physics tick moves and rotates the transform, then the model is transformed to world space.
+	 */
+	@Benchmark
+	public int physicsTick() {
+		transform.translate(step, 0, step);
+		transform.rotate(0, angle, 0);
+		return transform.getSpaceExitMatrix()[0][0] + transform.getSpaceExitNormalMatrix()[0][0];
+	}
+
+	/**
+	 * A camera update moves and rotates the camera, then the view matrix is read.
+	 */
+	@Benchmark
+	public int cameraUpdate() {
+		transform.translate(step, 0, step);
+		transform.rotate(0, angle, 0);
+		return transform.getSpaceEnterMatrix()[0][0];
+	}
+
+	@Benchmark
+	public int eagerPhysicsTick() {
+		transform.translate(step, 0, step);
+		rebuildMatrices();
+		transform.rotate(0, angle, 0);
+		rebuildMatrices();
+		return exitMatrix[0][0] + exitNormalMatrix[0][0];
+	}
+
+	@Benchmark
+	public int eagerCameraUpdate() {
+		transform.translate(step, 0, step);
+		rebuildMatrices();
+		transform.rotate(0, angle, 0);
+		rebuildMatrices();
+		return enterMatrix[0][0];
+	}
+	
+	private void rebuildMatrices() {
+		TransformationMath.spaceExitMatrix(exitMatrix, transform, matrixCache1, matrixCache2);
+		TransformationMath.spaceExitNormalMatrix(exitNormalMatrix, transform, matrixCache1, matrixCache2);
+		TransformationMath.spaceEnterMatrix(enterMatrix, transform, matrixCache1, matrixCache2);
+		TransformationMath.spaceEnterNormalMatrix(enterNormalMatrix, transform, matrixCache1, matrixCache2);
+	}
+}
@@ -40,6 +40,8 @@ public final class Engine {
 	}
 
 	private final List<EngineListener> engineListeners;
+	// held by the engine loop while it updates a frame and by step, so they never update at the same time
+	private final Object updateLock;
 	private Scene scene;
 	private Thread engineThread;
 	private int maxUpdateSkip;
@@ -53,11 +55,14 @@ public final class Engine {
 		this.maxUpdateSkip = 5;
 		this.limitUpdateRate = false;
 		this.engineListeners = new ArrayList<EngineListener>();
-		startEngineLoop();
+		this.updateLock = new Object();
 	}
 
 	public void start() {
 		running = true;
+		if(engineThread == null) {
+			startEngineLoop();
+		}
 	}
 	
 	public void stop() {
@@ -84,26 +89,31 @@ public final class Engine {
 							e.printStackTrace();
 						}
 					}
-					if(currentTime == 0) {
-						currentTime = getTime();
-					}
-					elapsedTime = getTime() - previousTime;
-					previousTime = getTime();
-					updateTime = 1000 / getUpdateRate();
-					final int listernerCount = engineListeners.size();
-					EngineEvent event = new EngineEvent(scene, (int) elapsedTime, 0, 0);
-					loops = 0;
-					while (currentTime - getTime() < 0 && loops < getMaxUpdateSkip()) {
+					synchronized (updateLock) {
+						// the engine may have been stopped and stepped while the loop waited for the lock
+						if(!running)
+							continue;
+						if(currentTime == 0) {
+							currentTime = getTime();
+						}
+						elapsedTime = getTime() - previousTime;
+						previousTime = getTime();
+						updateTime = 1000 / getUpdateRate();
+						final int listernerCount = engineListeners.size();
+						EngineEvent event = new EngineEvent(scene, (int) elapsedTime, 0, 0);
+						loops = 0;
+						while (currentTime - getTime() < 0 && loops < getMaxUpdateSkip()) {
+							for (int i = 0; i < listernerCount; i++) {
+								engineListeners.get(i).fixedUpdate(event);
+							}
+							currentTime += updateTime;
+							loops++;
+						}
+						deltaTime = loops << FixedPointMath.FP_BIT;
+						event = new EngineEvent(scene, (int) elapsedTime, 0, deltaTime);
 						for (int i = 0; i < listernerCount; i++) {
-							engineListeners.get(i).fixedUpdate(event);
+							engineListeners.get(i).update(event);
 						}
-						currentTime += updateTime;
-						loops++;
-					}
-					deltaTime = loops << FixedPointMath.FP_BIT;
-					event = new EngineEvent(scene, (int) elapsedTime, 0, deltaTime);
-					for (int i = 0; i < listernerCount; i++) {
-						engineListeners.get(i).update(event);
 					}
 					if(limitUpdateRate()) {
 						sleepTime = updateTime - elapsedTime;
@@ -125,6 +135,40 @@ public final class Engine {
 	private long getTime() {
 		return System.currentTimeMillis();
 	}
+	
+	/**
+	 * Updates the engine the given number of frames on the calling thread, without the engine loop. 
+	 * Each frame calls {@link EngineListener#fixedUpdate} once and then {@link EngineListener#update}, 
+	 * the time passed to the listeners is always one fixed update, so the result doesn't depend 
+	 * on the system clock. This can be used to render without a window, for example to save 
+	 * the frames with a {@link FrameCapture}.
+	 * 
+	 * @param frames number of frames to update.
+	 * @return the time each frame took in nanoseconds.
+	 * @throws IllegalStateException if the engine loop is running.
+	 */
+	public long[] step(int frames) {
+		// the lock waits for the frame the engine loop may still be updating after stop
+		synchronized (updateLock) {
+			if(running)
+				throw new IllegalStateException("The engine can't be stepped while it's running");
+			final long[] frameTimes = new long[frames];
+			final int updateTime = 1000 / getUpdateRate();
+			final EngineEvent fixedUpdateEvent = new EngineEvent(scene, updateTime, 0, 0);
+			final EngineEvent updateEvent = new EngineEvent(scene, updateTime, 0, FixedPointMath.FP_ONE);
+			for (int f = 0; f < frames; f++) {
+				final long startTime = System.nanoTime();
+				for (int i = 0; i < engineListeners.size(); i++) {
+					engineListeners.get(i).fixedUpdate(fixedUpdateEvent);
+				}
+				for (int i = 0; i < engineListeners.size(); i++) {
+					engineListeners.get(i).update(updateEvent);
+				}
+				frameTimes[f] = System.nanoTime() - startTime;
+			}
+			return frameTimes;
+		}
+	}
 
 	public void addEngineListener(EngineListener listener) {
 		listener.start(new EngineEvent(scene, 0, 0, 0));
@@ -29,6 +29,7 @@ import java.util.List;
 
 import com.johnsproject.jgameengine.event.EngineEvent;
 import com.johnsproject.jgameengine.event.EngineListener;
+import com.johnsproject.jgameengine.math.FixedPointMath;
 import com.johnsproject.jgameengine.model.Model;
 
 public class EngineStatistics implements EngineListener {
@@ -36,7 +37,7 @@ public class EngineStatistics implements EngineListener {
 	private static final int STATISTICS_X = 10;
 	private static final int STATISTICS_Y = 30;
 	private static final int STATISTICS_WIDTH = 180;
-	private static final int STATISTICS_HEIGHT = 130;
+	private static final int STATISTICS_HEIGHT = 190;
 	private static final Color STATISTICS_BACKROUND = Color.WHITE;
 	
 	private GraphicsEngine graphicsEngine;
@@ -87,6 +88,14 @@ public class EngineStatistics implements EngineListener {
 		int frameBufferHeight = 0;
 		int verticesCount = 0;
 		int trianglesCount = 0;
+		int culledModelCount = 0;
+		int shadowCulledModelCount = 0;
+		int occludedModelCount = 0;
+		int occludedFaceCount = 0;
+		int fragmentCount = 0;
+		int shadedFragmentCount = 0;
+		int shadowAtlasOccupancy = 0;
+		int shadowMapCount = 0;
 		long elapsedTime = e.getElapsedUpdateTime();
 		if (graphicsEngine == null) {
 			List<EngineListener> engineListeners = Engine.getInstance().getEngineListeners(); 
@@ -99,6 +108,14 @@ public class EngineStatistics implements EngineListener {
 		} else {
 			frameBufferWidth = graphicsEngine.getFrameBuffer().getWidth();
 			frameBufferHeight = graphicsEngine.getFrameBuffer().getHeight();
+			culledModelCount = graphicsEngine.getCulledModelCount();
+			shadowCulledModelCount = graphicsEngine.getShadowCulledModelCount();
+			occludedModelCount = graphicsEngine.getOccludedModelCount();
+			occludedFaceCount = graphicsEngine.getOccludedFaceCount();
+			fragmentCount = graphicsEngine.getFragmentCount();
+			shadedFragmentCount = graphicsEngine.getShadedFragmentCount();
+			shadowAtlasOccupancy = (graphicsEngine.getShadowAtlasOccupancy() * 100) >> FixedPointMath.FP_BIT;
+			shadowMapCount = graphicsEngine.getShadowMapCount();
 		}
 		for (int i = 0; i < e.getScene().getModels().size(); i++) {
 			Model model = e.getScene().getModels().get(i);
@@ -126,6 +143,11 @@ public class EngineStatistics implements EngineListener {
 		output += "Framebuffer\t" + frameBufferWidth + "x" + frameBufferHeight + "\n";
 		output += "Vertices\t\t" + verticesCount + "\n";
 		output += "Triangles\t" + trianglesCount + "\n";
+		output += "Culled models\t" + culledModelCount + "\n";
+		output += "Shadow culled\t" + shadowCulledModelCount + "\n";
+		output += "Shadow atlas\t" + shadowAtlasOccupancy + " % / " + shadowMapCount + " maps\n";
+		output += "Occluded\t" + occludedModelCount + " / " + occludedFaceCount + "\n";
+		output += "Fragments\t" + shadedFragmentCount + " / " + fragmentCount + "\n";
 		return output;
 	}
 }
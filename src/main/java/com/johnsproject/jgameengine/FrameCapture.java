@@ -0,0 +1,116 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 John Salomon - John´s Project
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.johnsproject.jgameengine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.johnsproject.jgameengine.event.EngineEvent;
+import com.johnsproject.jgameengine.event.EngineListener;
+import com.johnsproject.jgameengine.io.FileIO;
+import com.johnsproject.jgameengine.model.FrameBuffer;
+
+/**
+ * The FrameCapture saves the color buffer of a {@link FrameBuffer} after 
+ * each frame has been rendered, either in memory or as image files. 
+ * Together with {@link Engine#step} it can be used to render without a window.
+ */
+public class FrameCapture implements EngineListener {
+
+	private final FrameBuffer frameBuffer;
+	private final String pathFormat;
+	private final List<int[]> frames;
+	private int frameCount;
+	
+	/**
+	 * Creates a FrameCapture that keeps a copy of the pixels of each frame in memory.
+	 * 
+	 * @param frameBuffer frame buffer to capture.
+	 */
+	public FrameCapture(FrameBuffer frameBuffer) {
+		this(frameBuffer, null);
+	}
+	
+	/**
+	 * Creates a FrameCapture that writes each frame to an image file. The path of the file is 
+	 * created with {@link String#format} using the frame index, for example "frames/frame%04d.png".
+	 * 
+	 * @param frameBuffer frame buffer to capture.
+	 * @param pathFormat format of the image paths.
+	 */
+	public FrameCapture(FrameBuffer frameBuffer, String pathFormat) {
+		this.frameBuffer = frameBuffer;
+		this.pathFormat = pathFormat;
+		this.frames = new ArrayList<int[]>();
+		this.frameCount = 0;
+	}
+	
+	public void start(EngineEvent e) {
+		
+	}
+
+	public void fixedUpdate(EngineEvent e) {
+		
+	}
+
+	public void update(EngineEvent e) {
+		if(pathFormat == null) {
+			frames.add(frameBuffer.getColorBuffer().getPixels().clone());
+		} else {
+			try {
+				FileIO.writeImage(String.format(pathFormat, frameCount), frameBuffer.getColorBuffer());
+			} catch (IOException exception) {
+				exception.printStackTrace();
+			}
+		}
+		frameCount++;
+	}
+
+	public int getLayer() {
+		return GRAPHICS_ENGINE_LAYER + 1;
+	}
+	
+	/**
+	 * Returns the pixels of the frames captured in memory.
+	 * 
+	 * @return the captured frames.
+	 */
+	public List<int[]> getFrames() {
+		return frames;
+	}
+	
+	public int[] getFrame(int index) {
+		return frames.get(index);
+	}
+	
+	public int getFrameCount() {
+		return frameCount;
+	}
+	
+	public void clear() {
+		frames.clear();
+		frameCount = 0;
+	}
+}
@@ -24,37 +24,79 @@
 package com.johnsproject.jgameengine;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import com.johnsproject.jgameengine.event.EngineEvent;
 import com.johnsproject.jgameengine.event.EngineListener;
+import com.johnsproject.jgameengine.math.TransformationMath;
 import com.johnsproject.jgameengine.math.VectorMath;
+import com.johnsproject.jgameengine.rasterizer.FlatRasterizer;
 import com.johnsproject.jgameengine.model.AnimationFrame;
 import com.johnsproject.jgameengine.model.Armature;
 import com.johnsproject.jgameengine.model.Camera;
+import com.johnsproject.jgameengine.model.DepthPyramid;
 import com.johnsproject.jgameengine.model.Face;
 import com.johnsproject.jgameengine.model.FrameBuffer;
 import com.johnsproject.jgameengine.model.Mesh;
 import com.johnsproject.jgameengine.model.Model;
 import com.johnsproject.jgameengine.model.Scene;
+import com.johnsproject.jgameengine.model.SceneObject;
 import com.johnsproject.jgameengine.model.Transform;
 import com.johnsproject.jgameengine.model.Vertex;
 import com.johnsproject.jgameengine.model.VertexGroup;
+import com.johnsproject.jgameengine.shader.DeferredShaderBuffer;
 import com.johnsproject.jgameengine.shader.ForwardShaderBuffer;
 import com.johnsproject.jgameengine.shader.GeometryBuffer;
 import com.johnsproject.jgameengine.shader.Shader;
 import com.johnsproject.jgameengine.shader.ShaderBuffer;
 import com.johnsproject.jgameengine.shader.ShadowMappingShader;
+import com.johnsproject.jgameengine.shader.TiledShader;
 import com.johnsproject.jgameengine.shader.VertexBuffer;
 
 public class GraphicsEngine implements EngineListener {
 	
+	public static final int DEFAULT_TILE_SIZE = 64;
+	public static final int OCCLUSION_BATCH_SIZE = 32;
+	
 	private final List<Shader> preShaders;
+	private final List<List<Face>> tiles;
+	private final List<Mesh> meshes;
+	private final Map<Model, WorldState> worldStates;
+	private final List<VertexWorker> vertexWorkers;
+	private final List<GeometryWorker> geometryWorkers;
+	private final List<TileWorker> tileWorkers;
+	private ExecutorService executor;
+	private int threadCount;
+	private int tileSize;
+	private int tileColumns;
+	private int tileRows;
 	private ShaderBuffer shaderBuffer;
 	private FrameBuffer frameBuffer;
 	private final int[]	locationVector;
 	private final int[]	normalVector;
 	private final int[] multiplyVector;
+	private final int[] cullVector;
+	private final int[] boundsMin;
+	private final int[] boundsMax;
+	private int transformedModelCount;
+	private int culledModelCount;
+	private int shadowCulledModelCount;
+	private int occludedModelCount;
+	private int occludedFaceCount;
+	private final int[] occlusionRect;
+	private final int[] faceBounds;
+	private final List<Model> staticModels;
+	private final List<SceneObject> visibleObjects;
+	private final List<Future<Object>> futures;
 	
 	public GraphicsEngine(FrameBuffer frameBuffer) {
 		this.shaderBuffer = new ForwardShaderBuffer();
@@ -63,6 +105,22 @@ public class GraphicsEngine implements EngineListener {
 		this.locationVector = VectorMath.emptyVector();
 		this.normalVector = VectorMath.emptyVector();
 		this.multiplyVector = VectorMath.emptyVector();
+		this.cullVector = VectorMath.emptyVector();
+		this.boundsMin = VectorMath.emptyVector();
+		this.boundsMax = VectorMath.emptyVector();
+		this.occlusionRect = new int[4];
+		this.faceBounds = new int[4];
+		this.staticModels = new ArrayList<Model>();
+		this.visibleObjects = new ArrayList<SceneObject>();
+		this.futures = new ArrayList<Future<Object>>();
+		this.tiles = new ArrayList<List<Face>>();
+		this.meshes = new ArrayList<Mesh>();
+		this.worldStates = new WeakHashMap<Model, WorldState>();
+		this.vertexWorkers = new ArrayList<VertexWorker>();
+		this.geometryWorkers = new ArrayList<GeometryWorker>();
+		this.tileWorkers = new ArrayList<TileWorker>();
+		this.threadCount = 1;
+		this.tileSize = DEFAULT_TILE_SIZE;
 		addPreprocessingShader(new ShadowMappingShader());
 	}
 
@@ -81,12 +139,28 @@ public class GraphicsEngine implements EngineListener {
 		}		
 	}
 	
+	/**
+	 * Draws the scene of the event. If the thread is interrupted while it waits for the 
+	 * worker threads, the rest of the frame is skipped and the interrupt flag stays set.
+	 */
 	public void update(EngineEvent e) {
-		Scene scene = e.getScene();
-		frameBuffer.getColorBuffer().fill(0);
-		frameBuffer.getDepthBuffer().fill(Integer.MAX_VALUE);
-		frameBuffer.getStencilBuffer().fill(0);
+		try {
+			drawFrame(e.getScene());
+		} catch (FrameAbortedException exception) {
+			return;
+		}
+	}
+	
+	private void drawFrame(Scene scene) {
+		frameBuffer.clear();
 		transformToWorld(scene);
+		culledModelCount = 0;
+		shadowCulledModelCount = 0;
+		occludedModelCount = 0;
+		occludedFaceCount = 0;
+		if(shaderBuffer instanceof ForwardShaderBuffer) {
+			((ForwardShaderBuffer) shaderBuffer).resetFragmentCounts();
+		}
 		for (int c = 0; c < scene.getCameras().size(); c++) {
 			Camera camera = scene.getCameras().get(c);
 			if(!camera.isActive())
@@ -95,35 +169,255 @@ public class GraphicsEngine implements EngineListener {
 				camera.setRenderTarget(frameBuffer);
 			}
 			shaderBuffer.setup(camera, scene.getLights());
+			cullModels(scene, camera);
 			callShaders(scene, preShaders);
-			for (int m = 0; m < scene.getModels().size(); m++) {
-				Model model = scene.getModels().get(m);
-				if(!model.isActive())
-					continue;
-				final Mesh mesh = model.getMesh();
-				for (int v = 0; v < mesh.getVertices().length; v++) {
-					final Vertex vertex = mesh.getVertex(v);
-					final Shader shader = vertex.getMaterial().getShader();
-					shader.setShaderBuffer(shaderBuffer);
-					shader.vertex(vertex.getBuffer());
+			final boolean depthPrepass = camera.hasDepthPrepass() && (shaderBuffer instanceof ForwardShaderBuffer);
+			render(scene, camera, depthPrepass);
+			if(shaderBuffer instanceof ForwardShaderBuffer) {
+				final DepthPyramid depthPyramid = ((ForwardShaderBuffer) shaderBuffer).getDepthPyramid();
+				if(depthPyramid != null) {
+					occludedFaceCount += depthPyramid.getOccludedFaceCount();
 				}
-				for (int f = 0; f < mesh.getFaces().length; f++) {
-					final Face face = mesh.getFace(f);
-					final Shader shader = face.getMaterial().getShader();
-					shader.setShaderBuffer(shaderBuffer);
-					shader.geometry(face.getBuffer());
+			}
+			if(shaderBuffer instanceof DeferredShaderBuffer) {
+				((DeferredShaderBuffer) shaderBuffer).shade();
+			}
+		}
+	}
+	
+	/**
+	 * Tests the bounding spheres of the models against the frustum of the camera, 
+	 * the vertices of the culled models aren't transformed for this camera. The models 
+	 * that aren't animated are found through the octree of the scene, it uses the same bounds. 
+	 * Animated models are tested one by one with the bounds of their animated vertices.
+	 */
+	private void cullModels(Scene scene, Camera camera) {
+		for (int m = 0; m < scene.getModels().size(); m++) {
+			Model model = scene.getModels().get(m);
+			model.setCulled(model.getArmature() == null);
+		}
+		visibleObjects.clear();
+		scene.getOctree().queryFrustum(camera, visibleObjects);
+		for (int i = 0; i < visibleObjects.size(); i++) {
+			final SceneObject sceneObject = visibleObjects.get(i);
+			if(sceneObject instanceof Model) {
+				((Model) sceneObject).setCulled(false);
+			}
+		}
+		final int[][] viewMatrix = camera.getTransform().getSpaceEnterMatrix();
+		for (int m = 0; m < scene.getModels().size(); m++) {
+			Model model = scene.getModels().get(m);
+			if(!model.isActive())
+				continue;
+			if(model.getArmature() != null) {
+				final WorldState worldState = worldStates.get(model);
+				VectorMath.copy(cullVector, worldState.boundsCenter);
+				VectorMath.multiply(cullVector, viewMatrix);
+				model.setCulled(TransformationMath.isOutsideFrustum(cullVector, worldState.boundsRadius,
+						camera.getRenderTargetPortedFrustum(), camera.getFocalLength(), camera.getType()));
+			}
+			if(model.isCulled()) {
+				culledModelCount++;
+			}
+		}
+	}
+	
+	private void render(Scene scene, Camera camera, boolean depthPrepass) {
+		DepthPyramid depthPyramid = null;
+		if(shaderBuffer instanceof ForwardShaderBuffer) {
+			depthPyramid = ((ForwardShaderBuffer) shaderBuffer).getDepthPyramid();
+		}
+		if(threadCount > 1) {
+			setupTiles(camera.getRenderTarget());
+		}
+		if(depthPrepass) {
+			((ForwardShaderBuffer) shaderBuffer).setDepthPrepass(true);
+		}
+		drawModels(scene, camera, depthPyramid, true);
+		if(depthPrepass) {
+			((ForwardShaderBuffer) shaderBuffer).setDepthPrepass(false);
+			drawModels(scene, camera, depthPyramid, false);
+		}
+	}
+	
+	/**
+	 * Draws the visible models in batches. With occlusion culling the depth pyramid is updated 
+	 * before each batch and the models of the batch that are behind it are skipped, so the pyramid 
+	 * is rebuilt once per {@link #OCCLUSION_BATCH_SIZE} models instead of once per model. 
+	 * The batches are the same in the single threaded and the tiled path, so both skip the same models.
+	 */
+	private void drawModels(Scene scene, Camera camera, DepthPyramid depthPyramid, boolean vertexStage) {
+		final int batchSize = depthPyramid == null ? Integer.MAX_VALUE : OCCLUSION_BATCH_SIZE;
+		int m = 0;
+		while(m < scene.getModels().size()) {
+			if(depthPyramid != null) {
+				depthPyramid.update();
+			}
+			meshes.clear();
+			for (int batchModels = 0; (m < scene.getModels().size()) && (batchModels < batchSize); m++) {
+				final Model model = scene.getModels().get(m);
+				if(!model.isActive() || model.isCulled())
+					continue;
+				batchModels++;
+				if((depthPyramid != null) && isOccluded(model, camera, depthPyramid))
+					continue;
+				meshes.add(model.getMesh());
+			}
+			if(threadCount > 1) {
+				drawTiles(vertexStage);
+				continue;
+			}
+			for (int i = 0; i < meshes.size(); i++) {
+				final Mesh mesh = meshes.get(i);
+				if(vertexStage) {
+					for (int v = 0; v < mesh.getVertices().length; v++) {
+						final Vertex vertex = mesh.getVertex(v);
+						final Shader shader = vertex.getMaterial().getShader();
+						shader.setShaderBuffer(shaderBuffer);
+						shader.vertex(vertex.getBuffer());
+					}
 				}
+				drawFaces(mesh);
+			}
+		}
+	}
+	
+	/**
+	 * Tests the bounding sphere of the model against the depth pyramid, a model that is 
+	 * completely behind the drawn geometry is marked as culled so the following passes skip it too.
+	 */
+	private boolean isOccluded(Model model, Camera camera, DepthPyramid depthPyramid) {
+		final WorldState worldState = worldStates.get(model);
+		VectorMath.copy(cullVector, worldState.boundsCenter);
+		VectorMath.multiply(cullVector, camera.getTransform().getSpaceEnterMatrix());
+		if(!TransformationMath.screenportSphere(cullVector, worldState.boundsRadius,
+				camera.getRenderTargetPortedFrustum(), camera.getFocalLength(), camera.getType(), occlusionRect))
+			return false;
+		// the depth of the nearest point of the sphere
+		cullVector[VectorMath.VECTOR_X] = 0;
+		cullVector[VectorMath.VECTOR_Y] = 0;
+		cullVector[VectorMath.VECTOR_Z] += worldState.boundsRadius;
+		VectorMath.multiply(cullVector, camera.getProjectionMatrix());
+		final int depth = cullVector[VectorMath.VECTOR_Z] - FlatRasterizer.OCCLUSION_DEPTH_MARGIN;
+		if(depth <= 1)
+			return false;
+		if(depthPyramid.isOccluded(occlusionRect[0], occlusionRect[1], occlusionRect[2], occlusionRect[3], depth)) {
+			model.setCulled(true);
+			occludedModelCount++;
+			return true;
+		}
+		return false;
+	}
+	
+	private void drawFaces(Mesh mesh) {
+		for (int f = 0; f < mesh.getFaces().length; f++) {
+			final Face face = mesh.getFace(f);
+			final Shader shader = face.getMaterial().getShader();
+			shader.setShaderBuffer(shaderBuffer);
+			shader.geometry(face.getBuffer());
+		}
+	}
+	
+	private void setupTiles(FrameBuffer renderTarget) {
+		tileColumns = (renderTarget.getWidth() + tileSize - 1) / tileSize;
+		tileRows = (renderTarget.getHeight() + tileSize - 1) / tileSize;
+		while(tiles.size() < tileColumns * tileRows) {
+			tiles.add(new ArrayList<Face>());
+		}
+	}
+	
+	/**
+	 * Rasterizes the meshes of a batch in parallel tiles of the render target. 
+	 * The vertex stage runs first, also split between the threads, then each face is added to the tiles its 
+	 * screen bounds touch. Each tile is drawn by one worker that restricts its 
+	 * rasterizers to the tile, so no two threads write the same pixel and the faces 
+	 * of a tile are drawn in the same order as in the single threaded path. 
+	 * The per face work of {@link TiledShader TiledShaders} is done before, so it isn't repeated for each tile.
+	 */
+	private void drawTiles(boolean vertexStage) {
+		final int tileCount = tileColumns * tileRows;
+		for (int i = 0; i < tileCount; i++) {
+			tiles.get(i).clear();
+		}
+		if(vertexStage) {
+			invokeAll(vertexWorkers);
+		}
+		invokeAll(geometryWorkers);
+		for (int m = 0; m < meshes.size(); m++) {
+			final Mesh mesh = meshes.get(m);
+			for (int f = 0; f < mesh.getFaces().length; f++) {
+				addToTiles(mesh.getFace(f));
+			}
+		}
+		invokeAll(tileWorkers);
+	}
+	
+	private void addToTiles(Face face) {
+		final GeometryBuffer geometryBuffer = face.getBuffer();
+		FlatRasterizer.getTriangleBounds(geometryBuffer.getVertexBuffer(0).getLocation(), geometryBuffer.getVertexBuffer(1).getLocation(),
+				geometryBuffer.getVertexBuffer(2).getLocation(), faceBounds);
+		final int left = getTile(faceBounds[Camera.FRUSTUM_LEFT], tileColumns);
+		final int right = getTile(faceBounds[Camera.FRUSTUM_RIGHT], tileColumns);
+		final int top = getTile(faceBounds[Camera.FRUSTUM_TOP], tileRows);
+		final int bottom = getTile(faceBounds[Camera.FRUSTUM_BOTTOM], tileRows);
+		for (int y = top; y <= bottom; y++) {
+			for (int x = left; x <= right; x++) {
+				tiles.get(x + (y * tileColumns)).add(face);
 			}
 		}
 	}
 	
+	private int getTile(int pixel, int tileCount) {
+		// pixels outside of the render target belong to the border tiles, that's where they are clamped to
+		if(pixel < 0)
+			return 0;
+		return Math.min(pixel / tileSize, tileCount - 1);
+	}
+	
+	private void invokeAll(List<? extends Callable<Object>> tasks) {
+		futures.clear();
+		for (int i = 0; i < tasks.size(); i++) {
+			futures.add(executor.submit(tasks.get(i)));
+		}
+		boolean interrupted = false;
+		for (int i = 0; i < futures.size(); i++) {
+			try {
+				futures.get(i).get();
+			} catch (InterruptedException e) {
+				// the tasks draw into the render targets, so the frame is only aborted after they finished
+				interrupted = true;
+				i--;
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+		if(interrupted) {
+			Thread.currentThread().interrupt();
+			throw new FrameAbortedException();
+		}
+	}
+	
 	private void callShaders(Scene scene, List<Shader> shaders) {
 		for (int s = 0; s < shaders.size(); s++) {
 			final Shader shader = shaders.get(s);
+			ShadowMappingShader shadowShader = null;
+			if(shader instanceof ShadowMappingShader) {
+				shadowShader = (ShadowMappingShader) shader;
+				shadowShader.setShaderBuffer(shaderBuffer);
+			}
 			for (int i = 0; i < scene.getModels().size(); i++) {
 				Model model = scene.getModels().get(i);
 				if(!model.isActive())
 					continue;
+				if(shadowShader != null) {
+					final WorldState worldState = worldStates.get(model);
+					if(shadowShader.cull(worldState.boundsCenter, worldState.boundsRadius)) {
+						shadowCulledModelCount++;
+						continue;
+					}
+					shadowShader.addMesh(model.getMesh(), model.isStatic());
+					continue;
+				}
 				final Mesh mesh = model.getMesh();
 				for (int v = 0; v < mesh.getVertices().length; v++) {
 					final Vertex vertex = mesh.getVertex(v);
@@ -136,14 +430,46 @@ public class GraphicsEngine implements EngineListener {
 					shader.geometry(face.getBuffer());
 				}
 			}
+			if(shadowShader != null) {
+				// the shadow maps are independent, so each one is drawn by its own task
+				if(threadCount > 1) {
+					invokeAll(shadowShader.getShadowTasks());
+				} else {
+					shadowShader.drawShadowMaps();
+				}
+			}
 		}
 	}
 	
 	private void transformToWorld(Scene scene) {
+		transformedModelCount = 0;
+		int staticModelCount = 0;
+		boolean staticModelsChanged = false;
 		for (int i = 0; i < scene.getModels().size(); i++) {
 			Model model = scene.getModels().get(i);
 			if(!model.isActive())
 				continue;
+			WorldState worldState = worldStates.get(model);
+			if(worldState == null) {
+				worldState = new WorldState();
+				worldStates.put(model, worldState);
+			}
+			final boolean changed = worldState.hasChanged(model);
+			if(model.isStatic()) {
+				// the cached shadows are valid as long as the same static models stay in place
+				if(staticModelCount == staticModels.size()) {
+					staticModels.add(model);
+					staticModelsChanged = true;
+				} else if(staticModels.get(staticModelCount) != model) {
+					staticModels.set(staticModelCount, model);
+					staticModelsChanged = true;
+				}
+				staticModelCount++;
+				staticModelsChanged |= changed;
+			}
+			if(!changed)
+				continue;
+			transformedModelCount++;
 			final Mesh mesh = model.getMesh();
 			final Armature armature = model.getArmature();
 			AnimationFrame animationFrame = null;
@@ -151,31 +477,68 @@ public class GraphicsEngine implements EngineListener {
 				animationFrame = armature.getCurrentAnimationFrame();
 			}
 			final Transform transform = model.getTransform();
+			final int[] locations = mesh.getLocations();
+			final int[] normals = mesh.getNormals();
+			for (int a = 0; a < 3; a++) {
+				boundsMin[a] = Integer.MAX_VALUE;
+				boundsMax[a] = Integer.MIN_VALUE;
+			}
 			for (int v = 0; v < mesh.getVertices().length; v++) {
 				final Vertex vertex = mesh.getVertex(v);
 				final VertexBuffer vertexBuffer = vertex.getBuffer();
 				final int[] worldLocation = vertexBuffer.getWorldLocation();
 				final int[] worldNormal = vertexBuffer.getWorldNormal();
-				VectorMath.copy(worldLocation, vertex.getLocation());
-				VectorMath.copy(worldNormal, vertex.getNormal());
+				final int offset = v * VectorMath.VECTOR_SIZE;
+				System.arraycopy(locations, offset, worldLocation, 0, VectorMath.VECTOR_SIZE);
+				System.arraycopy(normals, offset, worldNormal, 0, VectorMath.VECTOR_SIZE);
 				animateVertex(armature, animationFrame, vertex, worldLocation, worldNormal);
 				VectorMath.multiply(worldLocation, transform.getSpaceExitMatrix());
 				VectorMath.multiply(worldNormal, transform.getSpaceExitNormalMatrix());
+				VectorMath.normalize(worldNormal);
+				if(animationFrame != null) {
+					for (int a = 0; a < 3; a++) {
+						boundsMin[a] = Math.min(boundsMin[a], worldLocation[a]);
+						boundsMax[a] = Math.max(boundsMax[a], worldLocation[a]);
+					}
+				}
 			}
+			updateBounds(worldState, mesh, transform, animationFrame);
+			final int[] faceVertices = mesh.getFaceVertices();
+			final int[] faceNormals = mesh.getFaceNormals();
+			final int[] faceUVs = mesh.getFaceUVs();
 			for (int f = 0; f < mesh.getFaces().length; f++) {
-				final Face face = mesh.getFace(f);
-				final GeometryBuffer geometryBuffer = face.getBuffer();
-				int[] worldNormal = geometryBuffer.getWorldNormal();
-				VectorMath.copy(worldNormal, face.getNormal());
+				final GeometryBuffer geometryBuffer = mesh.getFace(f).getBuffer();
+				final int[] worldNormal = geometryBuffer.getWorldNormal();
+				System.arraycopy(faceNormals, f * VectorMath.VECTOR_SIZE, worldNormal, 0, VectorMath.VECTOR_SIZE);
 				VectorMath.multiply(worldNormal, transform.getSpaceExitNormalMatrix());
-				VectorMath.copy(geometryBuffer.getUV(0), face.getUV(0));
-				VectorMath.copy(geometryBuffer.getUV(1), face.getUV(1));
-				VectorMath.copy(geometryBuffer.getUV(2), face.getUV(2));
-				geometryBuffer.getVertexBuffers()[0] = face.getVertex(0).getBuffer();
-				geometryBuffer.getVertexBuffers()[1] = face.getVertex(1).getBuffer();
-				geometryBuffer.getVertexBuffers()[2] = face.getVertex(2).getBuffer();
+				VectorMath.normalize(worldNormal);
+				for (int j = 0; j < 3; j++) {
+					final int vertexIndex = (f * 3) + j;
+					System.arraycopy(faceUVs, vertexIndex * VectorMath.VECTOR_SIZE, geometryBuffer.getUV(j), 0, VectorMath.VECTOR_SIZE);
+					geometryBuffer.getVertexBuffers()[j] = mesh.getVertex(faceVertices[vertexIndex]).getBuffer();
+				}
 			}
 		}
+		while(staticModels.size() > staticModelCount) {
+			staticModels.remove(staticModels.size() - 1);
+			staticModelsChanged = true;
+		}
+		if(staticModelsChanged && (shaderBuffer instanceof ForwardShaderBuffer)) {
+			((ForwardShaderBuffer) shaderBuffer).invalidateShadowCaches();
+		}
+	}
+	
+	/**
+	 * Calculates the world space bounding sphere of the model. The sphere of the mesh is 
+	 * transformed if the model isn't animated, else the sphere is fitted around the animated vertices.
+	 */
+	private void updateBounds(WorldState worldState, Mesh mesh, Transform transform, AnimationFrame animationFrame) {
+		if((animationFrame != null) && (mesh.getVertices().length > 0)) {
+			worldState.boundsRadius = TransformationMath.boundingSphere(boundsMin, boundsMax, worldState.boundsCenter);
+		} else {
+			VectorMath.copy(worldState.boundsCenter, mesh.getBoundsCenter());
+			worldState.boundsRadius = TransformationMath.spaceExitSphere(worldState.boundsCenter, mesh.getBoundsRadius(), transform);
+		}
 	}
 	
 	private void animateVertex(Armature armature, AnimationFrame animationFrame, Vertex vertex, int[] location, int[] normal) {
@@ -205,6 +568,102 @@ public class GraphicsEngine implements EngineListener {
 	public int getLayer() {
 		return GRAPHICS_ENGINE_LAYER;
 	}
+	
+	/**
+	 * Returns how many models were transformed to world space in the last update. 
+	 * The world space data of the models that didn't change is reused.
+	 * 
+	 * @return the transformed model count.
+	 */
+	public int getTransformedModelCount() {
+		return transformedModelCount;
+	}
+	
+	/**
+	 * Returns how many models were outside of the camera frustums in the last update, 
+	 * summed over the active cameras.
+	 * 
+	 * @return the culled model count.
+	 */
+	public int getCulledModelCount() {
+		return culledModelCount;
+	}
+	
+	/**
+	 * Returns how many models were outside of the frustums of all shadow casting lights 
+	 * in the last update, summed over the active cameras.
+	 * 
+	 * @return the model count the shadow maps skipped.
+	 */
+	public int getShadowCulledModelCount() {
+		return shadowCulledModelCount;
+	}
+
+	/**
+	 * Returns how many models were completely behind the drawn geometry of cameras with 
+	 * occlusion culling in the last update.
+	 * 
+	 * @return the occluded model count.
+	 */
+	public int getOccludedModelCount() {
+		return occludedModelCount;
+	}
+	
+	/**
+	 * Returns how many faces the rasterizers rejected because they were completely behind 
+	 * the drawn geometry of cameras with occlusion culling in the last update.
+	 * 
+	 * @return the occluded face count.
+	 */
+	public int getOccludedFaceCount() {
+		return occludedFaceCount;
+	}
+
+	/**
+	 * Returns how many fragments the shaders processed in the last update, the fragments 
+	 * of the depth pre-pass aren't counted. Returns 0 if the shader buffer isn't a {@link ForwardShaderBuffer}.
+	 * 
+	 * @return the fragment count.
+	 */
+	public int getFragmentCount() {
+		if(shaderBuffer instanceof ForwardShaderBuffer)
+			return ((ForwardShaderBuffer) shaderBuffer).getFragmentCount();
+		return 0;
+	}
+	
+	/**
+	 * Returns how many fragments passed the depth test and were shaded in the last update. 
+	 * With a depth pre-pass this is at most the number of drawn pixels.
+	 * 
+	 * @return the shaded fragment count.
+	 */
+	public int getShadedFragmentCount() {
+		if(shaderBuffer instanceof ForwardShaderBuffer)
+			return ((ForwardShaderBuffer) shaderBuffer).getShadedFragmentCount();
+		return 0;
+	}
+
+	/**
+	 * Returns the fixed point fraction of the shadow atlas taken by the shadow maps of the last update.
+	 * 
+	 * @return the occupancy of the shadow atlas.
+	 */
+	public int getShadowAtlasOccupancy() {
+		if(shaderBuffer instanceof ForwardShaderBuffer)
+			return ((ForwardShaderBuffer) shaderBuffer).getShadowAtlas().getOccupancy();
+		return 0;
+	}
+	
+	/**
+	 * Returns how many shadow maps were taken from the shadow atlas in the last update.
+	 * 
+	 * @return the shadow map count.
+	 */
+	public int getShadowMapCount() {
+		if(shaderBuffer instanceof ForwardShaderBuffer)
+			return ((ForwardShaderBuffer) shaderBuffer).getShadowMapCount();
+		return 0;
+	}
 
 	public ShaderBuffer getShaderDataBuffer() {
 		return shaderBuffer;
@@ -233,4 +692,199 @@ public class GraphicsEngine implements EngineListener {
 	public void addPreprocessingShader(Shader shader) {
 		preShaders.add(shader);
 	}
+	
+	public int getThreadCount() {
+		return threadCount;
+	}
+	
+	/**
+	 * Sets how many threads are used to render the models. If threadCount is 
+	 * bigger than 1 the vertices of each model are split between the threads and the 
+	 * render target is split into tiles that are rasterized in parallel, 
+	 * the result is the same as when rendering with a single thread.
+	 * 
+	 * @param threadCount
+	 */
+	public void setThreadCount(int threadCount) {
+		if(executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+		this.threadCount = threadCount;
+		vertexWorkers.clear();
+		geometryWorkers.clear();
+		tileWorkers.clear();
+		if(threadCount > 1) {
+			executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+				private int threadIndex = 0;
+				
+				public Thread newThread(Runnable runnable) {
+					final Thread thread = new Thread(runnable);
+					thread.setName("JGameEngine Graphics " + threadIndex++);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			for (int i = 0; i < threadCount; i++) {
+				final Map<Shader, Shader> shaders = new IdentityHashMap<Shader, Shader>();
+				vertexWorkers.add(new VertexWorker(i, shaders));
+				geometryWorkers.add(new GeometryWorker(i, shaders));
+				tileWorkers.add(new TileWorker(i, shaders));
+			}
+		}
+	}
+	
+	public int getTileSize() {
+		return tileSize;
+	}
+	
+	public void setTileSize(int tileSize) {
+		this.tileSize = tileSize;
+	}
+	
+	private static class WorldState {
+		
+		private int transformVersion;
+		private int armatureVersion;
+		private final int[] boundsCenter;
+		private int boundsRadius;
+		
+		public WorldState() {
+			this.transformVersion = Integer.MIN_VALUE;
+			this.armatureVersion = Integer.MIN_VALUE;
+			this.boundsCenter = VectorMath.emptyVector();
+		}
+		
+		/**
+		 * Returns true if the transform or the armature of the model changed since the last time 
+		 * it was transformed to world space. The world space data of static models is only 
+		 * calculated once and then reused, that's why shaders must not modify it.
+		 */
+		public boolean hasChanged(Model model) {
+			final int transformVersion = model.getTransform().getVersion();
+			final int armatureVersion = model.getArmature() == null ? 0 : model.getArmature().getVersion();
+			if((this.transformVersion == transformVersion) && (this.armatureVersion == armatureVersion))
+				return false;
+			this.transformVersion = transformVersion;
+			this.armatureVersion = armatureVersion;
+			return true;
+		}
+	}
+	
+	private static class FrameAbortedException extends RuntimeException {
+		
+		private static final long serialVersionUID = 1L;
+	}
+	
+	private abstract class Worker implements Callable<Object> {
+		
+		protected final int workerIndex;
+		// each worker renders with its own copies of the shaders
+		private final Map<Shader, Shader> shaders;
+		
+		public Worker(int workerIndex, Map<Shader, Shader> shaders) {
+			this.workerIndex = workerIndex;
+			this.shaders = shaders;
+		}
+		
+		protected void flushFragmentCounts() {
+			for (Shader shader : shaders.values()) {
+				if(shader instanceof TiledShader) {
+					((TiledShader) shader).flushFragmentCounts();
+				}
+			}
+		}
+		
+		protected Shader getShader(Shader shader) {
+			Shader copy = shaders.get(shader);
+			if(copy == null) {
+				copy = shader.copy();
+				shaders.put(shader, copy);
+			}
+			copy.setProperties(shader.getProperties());
+			copy.setShaderBuffer(shaderBuffer);
+			return copy;
+		}
+	}
+	
+	private class VertexWorker extends Worker {
+		
+		public VertexWorker(int workerIndex, Map<Shader, Shader> shaders) {
+			super(workerIndex, shaders);
+		}
+		
+		public Object call() {
+			for (int m = 0; m < meshes.size(); m++) {
+				final Mesh mesh = meshes.get(m);
+				final int vertexCount = mesh.getVertices().length;
+				final int start = (int) (((long) vertexCount * workerIndex) / threadCount);
+				final int end = (int) (((long) vertexCount * (workerIndex + 1)) / threadCount);
+				for (int v = start; v < end; v++) {
+					final Vertex vertex = mesh.getVertex(v);
+					getShader(vertex.getMaterial().getShader()).vertex(vertex.getBuffer());
+				}
+			}
+			return null;
+		}
+	}
+	
+	private class GeometryWorker extends Worker {
+		
+		public GeometryWorker(int workerIndex, Map<Shader, Shader> shaders) {
+			super(workerIndex, shaders);
+		}
+		
+		public Object call() {
+			for (int m = 0; m < meshes.size(); m++) {
+				final Mesh mesh = meshes.get(m);
+				final int faceCount = mesh.getFaces().length;
+				final int start = (int) (((long) faceCount * workerIndex) / threadCount);
+				final int end = (int) (((long) faceCount * (workerIndex + 1)) / threadCount);
+				for (int f = start; f < end; f++) {
+					final Face face = mesh.getFace(f);
+					final Shader shader = getShader(face.getMaterial().getShader());
+					if(shader instanceof TiledShader) {
+						((TiledShader) shader).setupGeometry(face.getBuffer());
+					}
+				}
+			}
+			return null;
+		}
+	}
+	
+	private class TileWorker extends Worker {
+		
+		public TileWorker(int workerIndex, Map<Shader, Shader> shaders) {
+			super(workerIndex, shaders);
+		}
+		
+		public Object call() {
+			final int tileCount = tileColumns * tileRows;
+			for (int t = workerIndex; t < tileCount; t += threadCount) {
+				final List<Face> faces = tiles.get(t);
+				final int column = t % tileColumns;
+				final int row = t / tileColumns;
+				// the border tiles extend to infinity, so they draw the pixels that are clamped to the border
+				final int left = column == 0 ? Integer.MIN_VALUE : column * tileSize;
+				final int right = column == tileColumns - 1 ? Integer.MAX_VALUE : ((column + 1) * tileSize) - 1;
+				final int top = row == 0 ? Integer.MIN_VALUE : row * tileSize;
+				final int bottom = row == tileRows - 1 ? Integer.MAX_VALUE : ((row + 1) * tileSize) - 1;
+				for (int f = 0; f < faces.size(); f++) {
+					final Face face = faces.get(f);
+					final Shader shader = getShader(face.getMaterial().getShader());
+					final FlatRasterizer rasterizer = shader.getRasterizer();
+					if(rasterizer != null) {
+						rasterizer.setRenderRegion(left, right, top, bottom);
+					}
+					if(shader instanceof TiledShader) {
+						((TiledShader) shader).drawGeometry(face.getBuffer());
+					} else {
+						shader.geometry(face.getBuffer());
+					}
+				}
+			}
+			flushFragmentCounts();
+			return null;
+		}
+	}
 }
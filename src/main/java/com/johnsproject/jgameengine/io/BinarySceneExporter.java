@@ -0,0 +1,288 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 John Salomon - John´s Project
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.johnsproject.jgameengine.io;
+
+import static com.johnsproject.jgameengine.io.BinarySceneImporter.*;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.johnsproject.jgameengine.math.MatrixMath;
+import com.johnsproject.jgameengine.model.Animation;
+import com.johnsproject.jgameengine.model.AnimationFrame;
+import com.johnsproject.jgameengine.model.Armature;
+import com.johnsproject.jgameengine.model.Camera;
+import com.johnsproject.jgameengine.model.Face;
+import com.johnsproject.jgameengine.model.Light;
+import com.johnsproject.jgameengine.model.Material;
+import com.johnsproject.jgameengine.model.Mesh;
+import com.johnsproject.jgameengine.model.Model;
+import com.johnsproject.jgameengine.model.Scene;
+import com.johnsproject.jgameengine.model.Texture;
+import com.johnsproject.jgameengine.model.Transform;
+import com.johnsproject.jgameengine.model.Vertex;
+import com.johnsproject.jgameengine.model.VertexGroup;
+import com.johnsproject.jgameengine.shader.FlatSpecularShader;
+import com.johnsproject.jgameengine.shader.GouraudSpecularShader;
+import com.johnsproject.jgameengine.shader.PhongSpecularShader;
+import com.johnsproject.jgameengine.shader.Shader;
+import com.johnsproject.jgameengine.shader.SpecularProperties;
+
+/**
+ * The BinarySceneExporter class writes scenes to the binary scene format read by 
+ * {@link BinarySceneImporter}, and converts .scene and .som files to it.
+ * 
+ * @author John Ferraz Salomon
+ *
+ */
+public final class BinarySceneExporter {
+
+	private BinarySceneExporter() { }
+	
+	/**
+	 * Loads the .scene file at the given path with the {@link SceneImporter} 
+	 * and writes it to the binary scene file at the given path.
+	 * 
+	 * @param scenePath .scene file path.
+	 * @param binaryPath binary scene file path.
+	 * @throws IOException
+	 */
+	public static void convertScene(String scenePath, String binaryPath) throws IOException {
+		write(binaryPath, SceneImporter.load(scenePath));
+	}
+	
+	/**
+	 * Loads the .som file at the given path with the {@link SOMImporter} and writes 
+	 * it to the binary scene file at the given path, as a scene containing only the model.
+	 * 
+	 * @param somPath .som file path.
+	 * @param binaryPath binary scene file path.
+	 * @throws IOException
+	 */
+	public static void convertSOM(String somPath, String binaryPath) throws IOException {
+		final Scene scene = new Scene();
+		scene.addModel(SOMImporter.load(somPath));
+		write(binaryPath, scene);
+	}
+	
+	/**
+	 * Writes the models, cameras and lights of the given {@link Scene} to the 
+	 * binary scene file at the given path. The materials have to use one of the specular shaders, 
+	 * their textures are written with the pixels and the wrap mode, but without mipmaps and layout.
+	 * 
+	 * @param path binary scene file path.
+	 * @param scene scene to write.
+	 * @throws IOException if the file can't be written or a material uses another shader.
+	 */
+	public static void write(String path, Scene scene) throws IOException {
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(scene.getModels().size());
+			for (int i = 0; i < scene.getModels().size(); i++) {
+				writeModel(out, scene.getModels().get(i));
+			}
+			out.writeInt(scene.getCameras().size());
+			for (int i = 0; i < scene.getCameras().size(); i++) {
+				writeCamera(out, scene.getCameras().get(i));
+			}
+			out.writeInt(scene.getLights().size());
+			for (int i = 0; i < scene.getLights().size(); i++) {
+				writeLight(out, scene.getLights().get(i));
+			}
+		} finally {
+			if (out != null) {
+				out.close();
+			}
+		}
+	}
+	
+	private static void writeModel(DataOutputStream out, Model model) throws IOException {
+		final Mesh mesh = model.getMesh();
+		final Material[] materials = mesh.getMaterials();
+		writeString(out, model.getName());
+		writeTransform(out, model.getTransform());
+		out.writeInt(model.isStatic() ? 1 : 0);
+		out.writeInt(materials.length);
+		for (int i = 0; i < materials.length; i++) {
+			writeMaterial(out, materials[i]);
+		}
+		final Vertex[] vertices = mesh.getVertices();
+		out.writeInt(vertices.length);
+		writeInts(out, mesh.getLocations());
+		writeInts(out, mesh.getNormals());
+		for (int i = 0; i < vertices.length; i++) {
+			out.writeInt(getMaterialIndex(materials, vertices[i].getMaterial()));
+		}
+		final Face[] faces = mesh.getFaces();
+		out.writeInt(faces.length);
+		writeInts(out, mesh.getFaceVertices());
+		writeInts(out, mesh.getFaceNormals());
+		writeInts(out, mesh.getFaceUVs());
+		for (int i = 0; i < faces.length; i++) {
+			out.writeInt(getMaterialIndex(materials, faces[i].getMaterial()));
+		}
+		final Armature armature = model.getArmature();
+		if (armature == null) {
+			out.writeInt(0);
+		} else {
+			out.writeInt(1);
+			writeArmature(out, armature, vertices);
+		}
+	}
+	
+	private static void writeMaterial(DataOutputStream out, Material material) throws IOException {
+		final Shader shader = material.getShader();
+		writeString(out, material.getName());
+		if (shader instanceof FlatSpecularShader) {
+			out.writeInt(SHADER_FLAT);
+		} else if (shader instanceof PhongSpecularShader) {
+			out.writeInt(SHADER_PHONG);
+		} else if (shader instanceof GouraudSpecularShader) {
+			out.writeInt(SHADER_GOURAUD);
+		} else {
+			throw new IOException("The shader " + shader.getClass().getName() + " of the material " 
+					+ material.getName() + " can't be written to a binary scene");
+		}
+		SpecularProperties properties = new SpecularProperties();
+		if (shader.getProperties() instanceof SpecularProperties) {
+			properties = (SpecularProperties) shader.getProperties();
+		}
+		out.writeInt(properties.getDiffuseColor());
+		out.writeInt(properties.getDiffuseIntensity());
+		out.writeInt(properties.getSpecularIntensity());
+		out.writeInt(properties.getShininess());
+		final Texture texture = properties.getTexture();
+		if (texture == null) {
+			out.writeInt(0);
+		} else {
+			out.writeInt(1);
+			out.writeInt(texture.getWidth());
+			out.writeInt(texture.getHeight());
+			out.writeInt(texture.getWrap().ordinal());
+			for (int y = 0; y < texture.getHeight(); y++) {
+				for (int x = 0; x < texture.getWidth(); x++) {
+					out.writeInt(texture.getPixel(x, y));
+				}
+			}
+		}
+	}
+	
+	private static void writeArmature(DataOutputStream out, Armature armature, Vertex[] meshVertices) throws IOException {
+		// the vertex groups are read back as positions in the vertex array of the mesh
+		final Map<Vertex, Integer> vertexIndices = new IdentityHashMap<Vertex, Integer>();
+		for (int i = 0; i < meshVertices.length; i++) {
+			vertexIndices.put(meshVertices[i], i);
+		}
+		final VertexGroup[] vertexGroups = armature.getVertexGroups();
+		out.writeInt(vertexGroups.length);
+		for (int i = 0; i < vertexGroups.length; i++) {
+			final VertexGroup vertexGroup = vertexGroups[i];
+			final Vertex[] vertices = vertexGroup.getVertices();
+			out.writeInt(vertexGroup.getBoneIndex());
+			out.writeInt(vertices.length);
+			for (int j = 0; j < vertices.length; j++) {
+				final Integer index = vertexIndices.get(vertices[j]);
+				if (index == null) {
+					throw new IOException("A vertex group references a vertex that isn't part of the mesh");
+				}
+				out.writeInt(index);
+			}
+			writeInts(out, vertexGroup.getWeights());
+		}
+		final Animation[] animations = armature.getAnimations();
+		out.writeInt(animations.length);
+		for (int i = 0; i < animations.length; i++) {
+			final AnimationFrame[] frames = animations[i].getFrames();
+			writeString(out, animations[i].getName());
+			out.writeInt(frames.length);
+			out.writeInt((frames.length == 0) ? 0 : frames[0].getBoneMatrices().length);
+			for (int f = 0; f < frames.length; f++) {
+				final int[][][] boneMatrices = frames[f].getBoneMatrices();
+				for (int b = 0; b < boneMatrices.length; b++) {
+					for (int j = 0; j < MatrixMath.MATRIX_SIZE; j++) {
+						writeInts(out, boneMatrices[b][j]);
+					}
+				}
+			}
+		}
+	}
+	
+	private static void writeCamera(DataOutputStream out, Camera camera) throws IOException {
+		writeString(out, camera.getName());
+		writeTransform(out, camera.getTransform());
+		out.writeInt(camera.getType().ordinal());
+		out.writeInt(camera.getFocalLength());
+	}
+	
+	private static void writeLight(DataOutputStream out, Light light) throws IOException {
+		writeString(out, light.getName());
+		writeTransform(out, light.getTransform());
+		out.writeInt(light.getType().ordinal());
+		out.writeInt(light.getStrength());
+		out.writeInt(light.getColor());
+		out.writeInt(light.getShadowColor());
+		out.writeInt(light.getSpotSize());
+		out.writeInt(light.getSpotSoftness());
+		out.writeInt(light.getRange());
+		out.writeInt(light.getShadowSize());
+		writeInts(out, light.getDirection());
+	}
+	
+	private static void writeTransform(DataOutputStream out, Transform transform) throws IOException {
+		writeInts(out, transform.getLocation());
+		writeInts(out, transform.getRotation());
+		writeInts(out, transform.getScale());
+	}
+	
+	private static void writeString(DataOutputStream out, String string) throws IOException {
+		out.writeInt(string.length());
+		out.writeChars(string);
+		// keeps the following ints aligned to 4 bytes
+		if ((string.length() & 1) == 1) {
+			out.writeChar(0);
+		}
+	}
+	
+	private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+		for (int i = 0; i < values.length; i++) {
+			out.writeInt(values[i]);
+		}
+	}
+	
+	private static int getMaterialIndex(Material[] materials, Material material) {
+		for (int i = 0; i < materials.length; i++) {
+			if (materials[i] == material) {
+				return i;
+			}
+		}
+		return 0;
+	}
+}
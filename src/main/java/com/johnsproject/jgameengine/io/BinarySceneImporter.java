@@ -0,0 +1,271 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 John Salomon - John´s Project
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.johnsproject.jgameengine.io;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.johnsproject.jgameengine.math.MatrixMath;
+import com.johnsproject.jgameengine.math.VectorMath;
+import com.johnsproject.jgameengine.model.Animation;
+import com.johnsproject.jgameengine.model.AnimationFrame;
+import com.johnsproject.jgameengine.model.Armature;
+import com.johnsproject.jgameengine.model.Camera;
+import com.johnsproject.jgameengine.model.CameraType;
+import com.johnsproject.jgameengine.model.Light;
+import com.johnsproject.jgameengine.model.LightType;
+import com.johnsproject.jgameengine.model.Material;
+import com.johnsproject.jgameengine.model.Mesh;
+import com.johnsproject.jgameengine.model.Model;
+import com.johnsproject.jgameengine.model.Scene;
+import com.johnsproject.jgameengine.model.Texture;
+import com.johnsproject.jgameengine.model.TextureWrap;
+import com.johnsproject.jgameengine.model.Transform;
+import com.johnsproject.jgameengine.model.Vertex;
+import com.johnsproject.jgameengine.model.VertexGroup;
+import com.johnsproject.jgameengine.shader.FlatSpecularShader;
+import com.johnsproject.jgameengine.shader.GouraudSpecularShader;
+import com.johnsproject.jgameengine.shader.PhongSpecularShader;
+import com.johnsproject.jgameengine.shader.Shader;
+import com.johnsproject.jgameengine.shader.SpecularProperties;
+
+/**
+ * The BinarySceneImporter class imports binary scene files written by {@link BinarySceneExporter}. 
+ * The file only contains big endian ints, the fixed point values are stored as they are used 
+ * by the engine, so they are copied straight from the memory mapped file into the mesh arrays.
+ * 
+ * @author John Ferraz Salomon
+ *
+ */
+public final class BinarySceneImporter {
+	
+	static final int MAGIC = 0x4A475343;
+	static final int VERSION = 3;
+	
+	static final int SHADER_FLAT = 0;
+	static final int SHADER_GOURAUD = 1;
+	static final int SHADER_PHONG = 2;
+	
+	private BinarySceneImporter() { }
+	
+	/**
+	 * Maps the binary scene file at the given path into memory and returns a {@link Scene} 
+	 * containing the data of the file.
+	 * 
+	 * @param path binary scene file path.
+	 * @return
+	 * @throws IOException
+	 */
+	public static Scene load(String path) throws IOException {
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(path, "r");
+			final FileChannel channel = file.getChannel();
+			final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return load(buffer);
+		} finally {
+			if (file != null) {
+				file.close();
+			}
+		}
+	}
+	
+	/**
+	 * Loads the binary scene from the given {@link ByteBuffer}, starting at its position, 
+	 * and returns a {@link Scene} containing the data of the buffer.
+	 * 
+	 * @param buffer buffer containing the binary scene.
+	 * @return
+	 * @throws IOException
+	 */
+	public static Scene load(ByteBuffer buffer) throws IOException {
+		final IntBuffer data = buffer.asIntBuffer();
+		try {
+			if (data.get() != MAGIC) {
+				throw new IOException("The data is not a binary scene");
+			}
+			final int version = data.get();
+			if (version != VERSION) {
+				throw new IOException("Unsupported binary scene version " + version);
+			}
+			final Scene scene = new Scene();
+			final int modelCount = data.get();
+			for (int i = 0; i < modelCount; i++) {
+				scene.addModel(readModel(data));
+			}
+			final int cameraCount = data.get();
+			for (int i = 0; i < cameraCount; i++) {
+				scene.addCamera(readCamera(data));
+			}
+			final int lightCount = data.get();
+			for (int i = 0; i < lightCount; i++) {
+				scene.addLight(readLight(data));
+			}
+			return scene;
+		} catch (BufferUnderflowException e) {
+			throw new IOException("The binary scene is truncated");
+		}
+	}
+	
+	private static Model readModel(IntBuffer data) throws IOException {
+		final String name = readString(data);
+		final Transform transform = readTransform(data);
+		final boolean staticModel = data.get() != 0;
+		final Material[] materials = new Material[data.get()];
+		for (int i = 0; i < materials.length; i++) {
+			materials[i] = readMaterial(data, i);
+		}
+		final int vertexCount = data.get();
+		final int[] locations = readInts(data, vertexCount * VectorMath.VECTOR_SIZE);
+		final int[] normals = readInts(data, vertexCount * VectorMath.VECTOR_SIZE);
+		final int[] vertexMaterials = readInts(data, vertexCount);
+		final int faceCount = data.get();
+		final int[] faceVertices = readInts(data, faceCount * 3);
+		final int[] faceNormals = readInts(data, faceCount * VectorMath.VECTOR_SIZE);
+		final int[] faceUVs = readInts(data, faceCount * 3 * VectorMath.VECTOR_SIZE);
+		final int[] faceMaterials = readInts(data, faceCount);
+		final Mesh mesh = new Mesh(locations, normals, vertexMaterials, faceVertices, faceNormals, faceUVs, faceMaterials, materials);
+		final Model model;
+		if (data.get() == 0) {
+			model = new Model(name, transform, mesh);
+		} else {
+			model = new Model(name, transform, mesh, readArmature(data, mesh.getVertices()));
+		}
+		model.setStatic(staticModel);
+		return model;
+	}
+	
+	private static Material readMaterial(IntBuffer data, int index) throws IOException {
+		final String name = readString(data);
+		final int shaderType = data.get();
+		final Shader shader;
+		if (shaderType == SHADER_FLAT) {
+			shader = new FlatSpecularShader();
+		} else if (shaderType == SHADER_PHONG) {
+			shader = new PhongSpecularShader();
+		} else if (shaderType == SHADER_GOURAUD) {
+			shader = new GouraudSpecularShader();
+		} else {
+			throw new IOException("Unknown shader type " + shaderType + " of the material " + name);
+		}
+		final SpecularProperties properties = (SpecularProperties) shader.getProperties();
+		properties.setDiffuseColor(data.get());
+		properties.setDiffuseIntensity(data.get());
+		properties.setSpecularIntensity(data.get());
+		properties.setShininess(data.get());
+		if (data.get() != 0) {
+			final int width = data.get();
+			final int height = data.get();
+			final TextureWrap wrap = TextureWrap.values()[data.get()];
+			final Texture texture = new Texture(width, height, readInts(data, width * height));
+			texture.setWrap(wrap);
+			properties.setTexture(texture);
+		}
+		return new Material(index, name, shader);
+	}
+	
+	private static Armature readArmature(IntBuffer data, Vertex[] meshVertices) {
+		final VertexGroup[] vertexGroups = new VertexGroup[data.get()];
+		for (int i = 0; i < vertexGroups.length; i++) {
+			final int boneIndex = data.get();
+			final Vertex[] vertices = new Vertex[data.get()];
+			for (int j = 0; j < vertices.length; j++) {
+				vertices[j] = meshVertices[data.get()];
+			}
+			final int[] weights = readInts(data, vertices.length);
+			vertexGroups[i] = new VertexGroup(boneIndex, vertices, weights);
+		}
+		final Animation[] animations = new Animation[data.get()];
+		for (int i = 0; i < animations.length; i++) {
+			final String name = readString(data);
+			final AnimationFrame[] frames = new AnimationFrame[data.get()];
+			final int boneCount = data.get();
+			for (int f = 0; f < frames.length; f++) {
+				final int[][][] boneMatrices = new int[boneCount][MatrixMath.MATRIX_SIZE][MatrixMath.MATRIX_SIZE];
+				for (int b = 0; b < boneCount; b++) {
+					for (int j = 0; j < MatrixMath.MATRIX_SIZE; j++) {
+						data.get(boneMatrices[b][j]);
+					}
+				}
+				frames[f] = new AnimationFrame(boneMatrices);
+			}
+			animations[i] = new Animation(name, frames);
+		}
+		return new Armature(vertexGroups, animations);
+	}
+	
+	private static Camera readCamera(IntBuffer data) {
+		final String name = readString(data);
+		final Camera camera = new Camera(name, readTransform(data));
+		camera.setType(CameraType.values()[data.get()]);
+		camera.setFocalLength(data.get());
+		return camera;
+	}
+	
+	private static Light readLight(IntBuffer data) {
+		final String name = readString(data);
+		final Light light = new Light(name, readTransform(data));
+		light.setType(LightType.values()[data.get()]);
+		light.setStrength(data.get());
+		light.setColor(data.get());
+		light.setShadowColor(data.get());
+		light.setSpotSize(data.get());
+		light.setSpotSoftness(data.get());
+		light.setRange(data.get());
+		light.setShadowSize(data.get());
+		light.setDirection(readInts(data, VectorMath.VECTOR_SIZE));
+		return light;
+	}
+	
+	private static Transform readTransform(IntBuffer data) {
+		final int[] location = readInts(data, VectorMath.VECTOR_SIZE);
+		final int[] rotation = readInts(data, VectorMath.VECTOR_SIZE);
+		final int[] scale = readInts(data, VectorMath.VECTOR_SIZE);
+		return new Transform(location, rotation, scale);
+	}
+	
+	private static String readString(IntBuffer data) {
+		final char[] chars = new char[data.get()];
+		// two chars are stored in each int
+		for (int i = 0; i < chars.length; i += 2) {
+			final int value = data.get();
+			chars[i] = (char) (value >>> 16);
+			if (i + 1 < chars.length) {
+				chars[i + 1] = (char) value;
+			}
+		}
+		return new String(chars);
+	}
+	
+	private static int[] readInts(IntBuffer data, int count) {
+		final int[] values = new int[count];
+		data.get(values);
+		return values;
+	}
+}
@@ -26,6 +26,7 @@ package com.johnsproject.jgameengine.io;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -38,6 +39,7 @@ import java.io.ObjectOutputStream;
 import javax.imageio.ImageIO;
 
 import com.johnsproject.jgameengine.math.ColorMath;
+import com.johnsproject.jgameengine.model.Texture;
 
 /**
  * The FileIO class contains methods for writing/reading files from the file system.
@@ -132,6 +134,37 @@ public final class FileIO {
 		return stringBuilder.toString();
 	}
 
+	/**
+	 * Writes the image to the file at the given path. The format is 
+	 * taken from the file extension, for example png or bmp.
+	 * 
+	 * @param path image path.
+	 * @param image image to write.
+	 * @throws IOException
+	 */
+	public static void writeImage(String path, BufferedImage image) throws IOException {
+		final String format = path.substring(path.lastIndexOf('.') + 1);
+		if(!ImageIO.write(image, format, new File(path))) {
+			throw new IOException("No image writer found for format " + format);
+		}
+	}
+	
+	/**
+	 * Writes the pixels of the texture to the file at the given path, without the alpha channel. 
+	 * The format is taken from the file extension, for example png or bmp.
+	 * 
+	 * @param path image path.
+	 * @param texture texture to write, for example the color buffer of a FrameBuffer.
+	 * @throws IOException
+	 */
+	public static void writeImage(String path, Texture texture) throws IOException {
+		final int width = texture.getWidth();
+		final int height = texture.getHeight();
+		final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		image.setRGB(0, 0, width, height, texture.getPixels(), 0, width);
+		writeImage(path, image);
+	}
+
 	/**
 	 * Loads the image at the given path and returns it as a {@link BufferedImage}.
 	 * 
@@ -157,6 +190,34 @@ public final class FileIO {
 		return image;
 	}
 	
+	/**
+	 * Loads the image at the given path and returns it as a {@link Texture} with 
+	 * its mipmaps already built.
+	 * 
+	 * @param path image path.
+	 * @return loaded image as a {@link Texture}.
+	 * @throws IOException
+	 */
+	public static Texture loadTexture(String path) throws IOException {
+		final Texture texture = new Texture(loadImage(path));
+		texture.buildMipmaps();
+		return texture;
+	}
+	
+	/**
+	 * Loads an image from the given {@link InputStream} and returns it as a {@link Texture} with 
+	 * its mipmaps already built.
+	 * 
+	 * @param stream {@link InputStream} to read from.
+	 * @return loaded image as a {@link Texture}.
+	 * @throws IOException
+	 */
+	public static Texture loadTexture(InputStream stream) throws IOException {
+		final Texture texture = new Texture(loadImage(stream));
+		texture.buildMipmaps();
+		return texture;
+	}
+	
 	/**
 	 * Loads an image from the given {@link InputStream} and returns it as a {@link BufferedImage}.
 	 * 
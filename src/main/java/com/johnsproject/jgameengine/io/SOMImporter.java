@@ -25,18 +25,20 @@ package com.johnsproject.jgameengine.io;
 
 import static com.johnsproject.jgameengine.math.VectorMath.*;
 
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 
 import com.johnsproject.jgameengine.math.ColorMath;
 import com.johnsproject.jgameengine.math.FixedPointMath;
 import com.johnsproject.jgameengine.math.VectorMath;
-import com.johnsproject.jgameengine.model.Face;
 import com.johnsproject.jgameengine.model.Material;
 import com.johnsproject.jgameengine.model.Mesh;
 import com.johnsproject.jgameengine.model.Model;
 import com.johnsproject.jgameengine.model.Transform;
-import com.johnsproject.jgameengine.model.Vertex;
 import com.johnsproject.jgameengine.shader.GouraudSpecularShader;
 import com.johnsproject.jgameengine.shader.SpecularProperties;
 
@@ -60,8 +62,7 @@ public final class SOMImporter {
 	 * @throws IOException
 	 */
 	public static Model load(String path) throws IOException {
-		String content = FileIO.readFile(path);
-		return loadFromRaw(content);
+		return load(new FileInputStream(path));
 	}
 
 	/**
@@ -73,8 +74,7 @@ public final class SOMImporter {
 	 * @throws IOException
 	 */
 	public static Model load(InputStream stream) throws IOException {
-		String content = FileIO.readStream(stream);
-		return loadFromRaw(content);
+		return load(new InputStreamReader(stream));
 	}
 
 	/**
@@ -86,105 +86,177 @@ public final class SOMImporter {
 	 * @throws IOException
 	 */
 	public static Model loadFromRaw(String data) throws IOException {
-		String rawData = data.replace(" ", "").replace("\n", "");
-		Material[] materials = parseMaterials(rawData);
-		Vertex[] vertices = parseVertices(rawData, materials);
-		Face[] faces = parseFaces(rawData, vertices, materials);
+		return load(new StringReader(data));
+	}
+	
+	/**
+	 * Loads the .som file content from the given {@link Reader} and returns a {@link Model} 
+	 * containing the data of the file. The content is parsed while it is read, so only 
+	 * the loaded model is kept in memory.
+	 * 
+	 * @param reader
+	 * @return
+	 * @throws IOException
+	 */
+	public static Model load(Reader reader) throws IOException {
+		final SceneTokenizer tokenizer = new SceneTokenizer(reader);
+		final MeshData mesh = new MeshData();
+		try {
+			for (String tag = tokenizer.nextTag(); tag != null; tag = tokenizer.nextTag()) {
+				if (!parseTag(tokenizer, tag, mesh)) {
+					tokenizer.skipTag(tag);
+					continue;
+				}
+				tokenizer.endTag(tag);
+			}
+			tokenizer.expectEnd();
+		} finally {
+			tokenizer.close();
+		}
+		Material[] materials = createMaterials(mesh);
 		int[] location = VectorMath.emptyVector();
 		int[] rotation = VectorMath.emptyVector();
 		int one = FixedPointMath.FP_ONE;
 		int[] scale = VectorMath.toVector(one, one, one);
 		Transform transform = new Transform(location, rotation, scale);
-		Mesh mesh = new Mesh(vertices, faces, materials);
-		Model result = new Model("Model", transform, mesh);
-		System.gc();
-		return result;
+		Mesh result = new Mesh(mesh.locations, mesh.normals, mesh.vertexMaterials, mesh.faceVertices, 
+				mesh.faceNormals, mesh.faceUVs, mesh.faceMaterials, materials);
+		return new Model("Model", transform, result);
+	}
+	
+	private static boolean parseTag(SceneTokenizer tokenizer, String tag, MeshData mesh) throws IOException {
+		if (tag.equals("vCount")) {
+			mesh.setVertexCount(tokenizer.nextInt());
+		} else if (tag.equals("vPosition")) {
+			checkCount(mesh.locations, "vCount", tag);
+			for (int i = 0; i < mesh.locations.length; i += VECTOR_SIZE) {
+				mesh.locations[i + VECTOR_X] = -tokenizer.nextFixedPoint();
+				mesh.locations[i + VECTOR_Y] = -tokenizer.nextFixedPoint();
+				mesh.locations[i + VECTOR_Z] = -tokenizer.nextFixedPoint();
+			}
+		} else if (tag.equals("vNormal")) {
+			checkCount(mesh.normals, "vCount", tag);
+			parseVectors(tokenizer, mesh.normals, 0, VECTOR_SIZE, 3);
+		} else if (tag.equals("vMaterial")) {
+			checkCount(mesh.vertexMaterials, "vCount", tag);
+			parseInts(tokenizer, mesh.vertexMaterials, 0, 1);
+		} else if (tag.equals("fCount")) {
+			mesh.setFaceCount(tokenizer.nextInt());
+		} else if (tag.equals("fVertex1") || tag.equals("fVertex2") || tag.equals("fVertex3")) {
+			checkCount(mesh.faceVertices, "fCount", tag);
+			parseInts(tokenizer, mesh.faceVertices, tag.charAt(7) - '1', 3);
+		} else if (tag.equals("fMaterial")) {
+			checkCount(mesh.faceMaterials, "fCount", tag);
+			parseInts(tokenizer, mesh.faceMaterials, 0, 1);
+		} else if (tag.equals("fNormal")) {
+			checkCount(mesh.faceNormals, "fCount", tag);
+			parseVectors(tokenizer, mesh.faceNormals, 0, VECTOR_SIZE, 3);
+		} else if (tag.equals("fUV1") || tag.equals("fUV2") || tag.equals("fUV3")) {
+			checkCount(mesh.faceUVs, "fCount", tag);
+			final int vertex = tag.charAt(3) - '1';
+			parseVectors(tokenizer, mesh.faceUVs, vertex * VECTOR_SIZE, 3 * VECTOR_SIZE, 2);
+		} else if (tag.equals("mCount")) {
+			mesh.setMaterialCount(tokenizer.nextInt());
+		} else if (tag.equals("mDiffuseColor")) {
+			checkCount(mesh.materialColors, "mCount", tag);
+			for (int i = 0; i < mesh.materialColors.length; i++) {
+				// * 256 to get int rgb values
+				int r = FixedPointMath.toFixedPoint(tokenizer.nextFloat() * 256);
+				int g = FixedPointMath.toFixedPoint(tokenizer.nextFloat() * 256);
+				int b = FixedPointMath.toFixedPoint(tokenizer.nextFloat() * 256);
+				int a = FixedPointMath.toFixedPoint(tokenizer.nextFloat() * 256);
+				mesh.materialColors[i] = ColorMath.toColor(a, r, g, b);
+			}
+		} else if (tag.equals("mDiffuseIntensity")) {
+			checkCount(mesh.materialDiffuseIntensities, "mCount", tag);
+			parseVectors(tokenizer, mesh.materialDiffuseIntensities, 0, 1, 1);
+		} else if (tag.equals("mSpecularIntensity")) {
+			checkCount(mesh.materialSpecularIntensities, "mCount", tag);
+			parseVectors(tokenizer, mesh.materialSpecularIntensities, 0, 1, 1);
+		} else {
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Reads size fixed point values into each stride of the given array, starting at offset.
+	 */
+	private static void parseVectors(SceneTokenizer tokenizer, int[] values, int offset, int stride, int size) throws IOException {
+		for (int i = offset; i < values.length; i += stride) {
+			for (int j = 0; j < size; j++) {
+				values[i + j] = tokenizer.nextFixedPoint();
+			}
+		}
 	}
 	
-	private static Vertex[] parseVertices(String rawData, Material[] materials) throws IOException {
-		String vCountData = rawData.split("vCount<")[1].split(">vCount", 2)[0];
-		Vertex[] vertices = new Vertex[getint(vCountData)];
-		String[] vLocationData = rawData.split("vPosition<")[1].split(">vPosition", 2)[0].split(",");
-		String[] vNormalData = rawData.split("vNormal<")[1].split(">vNormal", 2)[0].split(",");
-		String[] vMaterialData = rawData.split("vMaterial<")[1].split(">vMaterial", 2)[0].split(",");
-		for (int i = 0; i < vertices.length * 3; i += 3) {
-			int[] location = VectorMath.emptyVector();
-			location[VECTOR_X] = -FixedPointMath.toFixedPoint(getFloat(vLocationData[i + VECTOR_X]));
-			location[VECTOR_Y] = -FixedPointMath.toFixedPoint(getFloat(vLocationData[i + VECTOR_Y]));
-			location[VECTOR_Z] = -FixedPointMath.toFixedPoint(getFloat(vLocationData[i + VECTOR_Z]));
-			int[] normal = VectorMath.emptyVector();
-			normal[VECTOR_X] = FixedPointMath.toFixedPoint(getFloat(vNormalData[i + VECTOR_X]));
-			normal[VECTOR_Y] = FixedPointMath.toFixedPoint(getFloat(vNormalData[i + VECTOR_Y]));
-			normal[VECTOR_Z] = FixedPointMath.toFixedPoint(getFloat(vNormalData[i + VECTOR_Z]));
-			int material = getint(vMaterialData[i / 3]);
-			vertices[i / 3] = new Vertex(i / 3, location, normal, materials[material]);
+	private static void parseInts(SceneTokenizer tokenizer, int[] values, int offset, int stride) throws IOException {
+		for (int i = offset; i < values.length; i += stride) {
+			values[i] = tokenizer.nextInt();
 		}
-		return vertices;
 	}
 	
-	private static Face[] parseFaces(String rawData, Vertex[] vertices, Material[] materials) throws IOException {
-		String fCountData = rawData.split("fCount<")[1].split(">fCount", 2)[0];
-		Face[] faces = new Face[getint(fCountData)];
-		String[] fVertex1Data = rawData.split("fVertex1<")[1].split(">fVertex1", 2)[0].split(",");
-		String[] fVertex2Data = rawData.split("fVertex2<")[1].split(">fVertex2", 2)[0].split(",");
-		String[] fVertex3Data = rawData.split("fVertex3<")[1].split(">fVertex3", 2)[0].split(",");
-		String[] fMaterialData = rawData.split("fMaterial<")[1].split(">fMaterial", 2)[0].split(",");
-		String[] fNormalData = rawData.split("fNormal<")[1].split(">fNormal", 2)[0].split(",");
-		String[] fUV1Data = rawData.split("fUV1<")[1].split(">fUV1", 2)[0].split(",");
-		String[] fUV2Data = rawData.split("fUV2<")[1].split(">fUV2", 2)[0].split(",");
-		String[] fUV3Data = rawData.split("fUV3<")[1].split(">fUV3", 2)[0].split(",");
-		for (int i = 0; i < faces.length * 6; i += 6) {
-			int vertex1 = getint(fVertex1Data[i / 6]);
-			int vertex2 = getint(fVertex2Data[i / 6]);
-			int vertex3 = getint(fVertex3Data[i / 6]);
-			int material = getint(fMaterialData[i / 6]);
-			int[] normal = VectorMath.emptyVector();
-			normal[VECTOR_X] = FixedPointMath.toFixedPoint(getFloat(fNormalData[(i / 2) + VECTOR_X]));
-			normal[VECTOR_Y] = FixedPointMath.toFixedPoint(getFloat(fNormalData[(i / 2) + VECTOR_Y]));
-			normal[VECTOR_Z] = FixedPointMath.toFixedPoint(getFloat(fNormalData[(i / 2) + VECTOR_Z]));
-			int[] uv1 = VectorMath.emptyVector();
-			uv1[VECTOR_X] = FixedPointMath.toFixedPoint(getFloat(fUV1Data[(i / 3) + VECTOR_X]));
-			uv1[VECTOR_Y] = FixedPointMath.toFixedPoint(getFloat(fUV1Data[(i / 3) + VECTOR_Y]));
-			int[] uv2 = VectorMath.emptyVector();
-			uv2[VECTOR_X] = FixedPointMath.toFixedPoint(getFloat(fUV2Data[(i / 3) + VECTOR_X]));
-			uv2[VECTOR_Y] = FixedPointMath.toFixedPoint(getFloat(fUV2Data[(i / 3) + VECTOR_Y]));
-			int[] uv3 = VectorMath.emptyVector();
-			uv3[VECTOR_X] = FixedPointMath.toFixedPoint(getFloat(fUV3Data[(i / 3) + VECTOR_X]));
-			uv3[VECTOR_Y] = FixedPointMath.toFixedPoint(getFloat(fUV3Data[(i / 3) + VECTOR_Y]));
-			faces[i / 6] = new Face(i / 6, normal, vertices[vertex1], vertices[vertex2], vertices[vertex3], materials[material], uv1, uv2, uv3);
+	private static void checkCount(int[] values, String countTag, String tag) throws IOException {
+		if (values == null) {
+			throw new IOException(countTag + " needs to be defined before " + tag);
 		}
-		return faces;
 	}
 	
-	private static Material[] parseMaterials(String rawData){
-		String mCountData = rawData.split("mCount<")[1].split(">mCount", 2)[0];
-		Material[] materials = new Material[getint(mCountData)];
-		String[] mDiffuseColorData = rawData.split("mDiffuseColor<")[1].split(">mDiffuseColor", 2)[0].split(",");
-		String[] mDiffuseIntensityData = rawData.split("mDiffuseIntensity<")[1].split(">mDiffuseIntensity", 2)[0].split(",");
-		String[] mSpecularIntensityData = rawData.split("mSpecularIntensity<")[1].split(">mSpecularIntensity", 2)[0].split(",");
-		for (int i = 0; i < materials.length * 4; i+=4) {
-			// * 256 to get int rgb values
-			int r = FixedPointMath.toFixedPoint(getFloat(mDiffuseColorData[i]) * 256);
-			int	g = FixedPointMath.toFixedPoint(getFloat(mDiffuseColorData[i+1]) * 256);
-			int	b = FixedPointMath.toFixedPoint(getFloat(mDiffuseColorData[i+2]) * 256);
-			int	a = FixedPointMath.toFixedPoint(getFloat(mDiffuseColorData[i+3]) * 256);
-			int diffuseIntensity = FixedPointMath.toFixedPoint(getFloat(mDiffuseIntensityData[i / 4]));
-			int specularIntensity = FixedPointMath.toFixedPoint(getFloat(mSpecularIntensityData[i / 4]));
+	private static Material[] createMaterials(MeshData mesh) throws IOException {
+		checkCount(mesh.materialColors, "mCount", "the end of the file");
+		Material[] materials = new Material[mesh.materialColors.length];
+		for (int i = 0; i < materials.length; i++) {
 			GouraudSpecularShader shader = new GouraudSpecularShader();
 			SpecularProperties properties = (SpecularProperties) shader.getProperties();
-			properties.setDiffuseColor(ColorMath.toColor(a, r, g, b));
-			properties.setDiffuseIntensity(diffuseIntensity);
-			properties.setSpecularIntensity(specularIntensity);
-			materials[i/4] = new Material(i/4, "", shader);
+			properties.setDiffuseColor(mesh.materialColors[i]);
+			properties.setDiffuseIntensity(mesh.materialDiffuseIntensities[i]);
+			properties.setSpecularIntensity(mesh.materialSpecularIntensities[i]);
+			materials[i] = new Material(i, "", shader);
 		}
 		return materials;
 	}
 	
-	private static int getint(String string) {
-		return Integer.parseInt(string);
-	}
-	
-	private static float getFloat(String string) {
-		return Float.parseFloat(string);
+	/**
+	 * Packed mesh data, allocated when the vCount, fCount and mCount tags are read.
+	 */
+	private static final class MeshData {
+		
+		private int[] locations;
+		private int[] normals;
+		private int[] vertexMaterials;
+		private int[] faceVertices;
+		private int[] faceNormals;
+		private int[] faceUVs;
+		private int[] faceMaterials;
+		private int[] materialColors;
+		private int[] materialDiffuseIntensities;
+		private int[] materialSpecularIntensities;
+		
+		void setVertexCount(int count) {
+			locations = createVectors(count);
+			normals = createVectors(count);
+			vertexMaterials = new int[count];
+		}
+		
+		void setFaceCount(int count) {
+			faceVertices = new int[count * 3];
+			faceNormals = createVectors(count);
+			faceUVs = createVectors(count * 3);
+			faceMaterials = new int[count];
+		}
+		
+		void setMaterialCount(int count) {
+			materialColors = new int[count];
+			materialDiffuseIntensities = new int[count];
+			materialSpecularIntensities = new int[count];
+		}
+		
+		private static int[] createVectors(int count) {
+			final int[] vectors = new int[count * VECTOR_SIZE];
+			for (int i = 0; i < vectors.length; i += VECTOR_SIZE) {
+				vectors[i + VECTOR_W] = FixedPointMath.FP_ONE;
+			}
+			return vectors;
+		}
 	}
 }
@@ -25,8 +25,13 @@ package com.johnsproject.jgameengine.io;
 
 import static com.johnsproject.jgameengine.math.VectorMath.*;
 
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
 
 import com.johnsproject.jgameengine.math.ColorMath;
 import com.johnsproject.jgameengine.math.FixedPointMath;
@@ -38,7 +43,6 @@ import com.johnsproject.jgameengine.model.AnimationFrame;
 import com.johnsproject.jgameengine.model.Armature;
 import com.johnsproject.jgameengine.model.Camera;
 import com.johnsproject.jgameengine.model.CameraType;
-import com.johnsproject.jgameengine.model.Face;
 import com.johnsproject.jgameengine.model.Light;
 import com.johnsproject.jgameengine.model.LightType;
 import com.johnsproject.jgameengine.model.Material;
@@ -71,8 +75,7 @@ public final class SceneImporter {
 	 * @throws IOException
 	 */
 	public static Scene load(String path) throws IOException {
-		String content = FileIO.readFile(path);
-		return loadFromRaw(content);
+		return load(new FileInputStream(path));
 	}
 
 	/**
@@ -84,8 +87,7 @@ public final class SceneImporter {
 	 * @throws IOException
 	 */
 	public static Scene load(InputStream stream) throws IOException {
-		String content = FileIO.readStream(stream);
-		return loadFromRaw(content);
+		return load(new InputStreamReader(stream));
 	}
 
 	/**
@@ -97,254 +99,390 @@ public final class SceneImporter {
 	 * @throws IOException
 	 */
 	public static Scene loadFromRaw(String data) throws IOException {
-		String sceneData = data.replace(" ", "").replace("\n", "");
+		return load(new StringReader(data));
+	}
+	
+	/**
+	 * Loads the .scene file content from the given {@link Reader} and returns a {@link Scene} 
+	 * containing the data of the file. The content is parsed while it is read, so only 
+	 * the loaded scene is kept in memory.
+	 * 
+	 * @param reader
+	 * @return
+	 * @throws IOException
+	 */
+	public static Scene load(Reader reader) throws IOException {
+		final SceneTokenizer tokenizer = new SceneTokenizer(reader);
+		final ArrayList<Model> models = new ArrayList<Model>();
+		final ArrayList<Camera> cameras = new ArrayList<Camera>();
+		final ArrayList<Light> lights = new ArrayList<Light>();
+		try {
+			for (String tag = tokenizer.nextTag(); tag != null; tag = tokenizer.nextTag()) {
+				if (tag.equals("model")) {
+					models.add(parseModel(tokenizer));
+				} else if (tag.equals("camera")) {
+					cameras.add(parseCamera(tokenizer));
+				} else if (tag.equals("light")) {
+					lights.add(parseLight(tokenizer));
+				} else {
+					tokenizer.skipTag(tag);
+				}
+			}
+			tokenizer.expectEnd();
+		} finally {
+			tokenizer.close();
+		}
 		Scene scene = new Scene();
-		Model[] models = parseModels(sceneData);
-		Camera[] cameras = parseCameras(sceneData);
-		Light[] lights = parseLights(sceneData);
-		for (int i = 0; i < models.length; i++) {
-			scene.addModel(models[i]);
+		for (int i = 0; i < models.size(); i++) {
+			scene.addModel(models.get(i));
 		}
-		for (int i = 0; i < cameras.length; i++) {
-			scene.addCamera(cameras[i]);
+		for (int i = 0; i < cameras.size(); i++) {
+			scene.addCamera(cameras.get(i));
 		}
-		for (int i = 0; i < lights.length; i++) {
-			scene.addLight(lights[i]);
+		for (int i = 0; i < lights.size(); i++) {
+			scene.addLight(lights.get(i));
 		}
-		System.gc();
 		return scene;
 	}
 
-	private static Model[] parseModels(String sceneData) {
-		String[] modelsData = sceneData.split("model<");
-		Model[] models = new Model[modelsData.length - 1];
-		for (int i = 0; i < modelsData.length - 1; i++) {
-			String modelData = modelsData[i + 1].split(">model")[0];
-			String name = modelData.split("name<")[1].split(">name")[0];
-			Transform transform = parseTransform(modelData.split("transform<")[1].split(">transform")[0].split(","));
-			Material[] materials = parseMaterials(modelData.split("material<")[1].split(">material")[0].split("><"));
-			Vertex[] vertices = parseVertices(modelData.split("vertex<")[1].split(">vertex")[0].split("><"), materials);
-			Face[] faces = parseFaces(modelData.split("face<")[1].split(">face")[0].split("><"), vertices, materials);
-			VertexGroup[] vertexGroups = parseVertexGroups(modelData.split("vertexGroup<")[1].split(">vertexGroup")[0].split("><"), vertices);
-			Animation[] animations = parseAnimations(modelData.split("animation<")[1].split(">animation")[0].split("><"));
-			Mesh mesh = new Mesh(vertices, faces, materials);
-			Armature armature = new Armature(vertexGroups, animations);
-			models[i] = new Model(name, transform, mesh, armature);
+	private static Model parseModel(SceneTokenizer tokenizer) throws IOException {
+		String name = "";
+		Transform transform = new Transform();
+		Material[] materials = new Material[0];
+		final IntList locations = new IntList();
+		final IntList normals = new IntList();
+		final IntList vertexMaterials = new IntList();
+		final IntList faceVertices = new IntList();
+		final IntList faceNormals = new IntList();
+		final IntList faceUVs = new IntList();
+		final IntList faceMaterials = new IntList();
+		final IntList vertexGroups = new IntList();
+		final ArrayList<Animation> animations = new ArrayList<Animation>();
+		while (!tokenizer.isEnd("model")) {
+			final String tag = tokenizer.nextTag();
+			if (tag == null) {
+				continue;
+			}
+			if (tag.equals("name")) {
+				name = tokenizer.nextName();
+				tokenizer.endTag(tag);
+			} else if (tag.equals("transform")) {
+				transform = parseTransform(tokenizer);
+				tokenizer.endTag(tag);
+			} else if (tag.equals("material")) {
+				materials = parseMaterials(tokenizer);
+				tokenizer.expectIdentifier(tag);
+			} else if (tag.equals("vertex")) {
+				parseVertices(tokenizer, locations, normals, vertexMaterials);
+				tokenizer.expectIdentifier(tag);
+			} else if (tag.equals("face")) {
+				parseFaces(tokenizer, faceVertices, faceNormals, faceUVs, faceMaterials);
+				tokenizer.expectIdentifier(tag);
+			} else if (tag.equals("vertexGroup")) {
+				parseVertexGroups(tokenizer, vertexGroups);
+				tokenizer.expectIdentifier(tag);
+			} else if (tag.equals("animation")) {
+				parseAnimations(tokenizer, animations);
+				tokenizer.expectIdentifier(tag);
+			} else {
+				tokenizer.skipTag(tag);
+			}
 		}
-		return models;
+		final Mesh mesh = new Mesh(locations.toArray(), normals.toArray(), vertexMaterials.toArray(),
+				faceVertices.toArray(), faceNormals.toArray(), faceUVs.toArray(), faceMaterials.toArray(), materials);
+		final Armature armature = new Armature(createVertexGroups(vertexGroups, mesh.getVertices()),
+				animations.toArray(new Animation[animations.size()]));
+		return new Model(name, transform, mesh, armature);
 	}
 
-	private static Camera[] parseCameras(String sceneData) {
-		String[] camerasData = sceneData.split("camera<");
-		Camera[] cameras = new Camera[camerasData.length - 1];
-		for (int i = 0; i < camerasData.length - 1; i++) {
-			String cameraData = camerasData[i + 1].split(">camera")[0];
-			String name = cameraData.split("name<")[1].split(">name")[0];
-			String typeData = cameraData.split("type<")[1].split(">type")[0];
-			Transform transform = parseTransform(cameraData.split("transform<")[1].split(">transform")[0].split(","));
-			int x = transform.getRotation()[VECTOR_X];
-			int y = transform.getRotation()[VECTOR_Y];
-			int z = transform.getRotation()[VECTOR_Z];
-			transform.setRotation(-(90 << FixedPointMath.FP_BIT) - x, y, z);
-			Camera camera = new Camera(name, transform);
-			if (typeData.equals("ORTHO"))
-				camera.setType(CameraType.ORTHOGRAPHIC);
-			if (typeData.equals("PERSP"))
-				camera.setType(CameraType.PERSPECTIVE);
-			cameras[i] = camera;
+	private static Camera parseCamera(SceneTokenizer tokenizer) throws IOException {
+		String name = "";
+		String typeData = "";
+		Transform transform = new Transform();
+		while (!tokenizer.isEnd("camera")) {
+			final String tag = tokenizer.nextTag();
+			if (tag == null) {
+				continue;
+			}
+			if (tag.equals("name")) {
+				name = tokenizer.nextName();
+				tokenizer.endTag(tag);
+			} else if (tag.equals("type")) {
+				typeData = tokenizer.nextName();
+				tokenizer.endTag(tag);
+			} else if (tag.equals("transform")) {
+				transform = parseTransform(tokenizer);
+				tokenizer.endTag(tag);
+			} else {
+				tokenizer.skipTag(tag);
+			}
 		}
-		return cameras;
+		int x = transform.getRotation()[VECTOR_X];
+		int y = transform.getRotation()[VECTOR_Y];
+		int z = transform.getRotation()[VECTOR_Z];
+		transform.setRotation(-(90 << FixedPointMath.FP_BIT) - x, y, z);
+		Camera camera = new Camera(name, transform);
+		if (typeData.equals("ORTHO"))
+			camera.setType(CameraType.ORTHOGRAPHIC);
+		if (typeData.equals("PERSP"))
+			camera.setType(CameraType.PERSPECTIVE);
+		return camera;
 	}
 
-	private static Light[] parseLights(String sceneData) {
-		String[] lightsData = sceneData.split("light<");
-		Light[] lights = new Light[lightsData.length - 1];
-		for (int i = 0; i < lightsData.length - 1; i++) {
-			String lightData = lightsData[i + 1].split(">light")[0];
-			String name = lightData.split("name<")[1].split(">name")[0];
-			String typeData = lightData.split("type<")[1].split(">type")[0];
-			String strengthData = lightData.split("strength<")[1].split(">strength")[0];
-			String spotData = lightData.split("spot<")[1].split(">spot")[0];
-			String blendData = lightData.split("blend<")[1].split(">blend")[0];
-			String[] colorData = lightData.split("color<")[1].split(">color")[0].split(",");
-			String[] shadowColorData = lightData.split("shadowColor<")[1].split(">shadowColor")[0].split(",");
-			Transform transform = parseTransform(lightData.split("transform<")[1].split(">transform")[0].split(","));
-			int[] direction = VectorMath.VECTOR_DOWN.clone();
-			TransformationMath.rotateX(direction, transform.getRotation()[VECTOR_X]);
-			TransformationMath.rotateY(direction, transform.getRotation()[VECTOR_Y]);
-			TransformationMath.rotateZ(direction, transform.getRotation()[VECTOR_Z]);
-			direction[VECTOR_X] = -direction[VECTOR_X];
-			direction[VECTOR_Z] = -direction[VECTOR_Z];
-			int x = transform.getRotation()[VECTOR_X];
-			int y = transform.getRotation()[VECTOR_Y];
-			int z = transform.getRotation()[VECTOR_Z];
-			transform.setRotation(-(90 << FixedPointMath.FP_BIT) - x, y, z);
-			Light light = new Light(name, transform);
-			if (typeData.equals("SUN")) {
-				light.setType(LightType.DIRECTIONAL);
-			}
-			if (typeData.equals("POINT")) {
-				light.setType(LightType.POINT);
+	private static Light parseLight(SceneTokenizer tokenizer) throws IOException {
+		String name = "";
+		String typeData = "";
+		int strength = 0;
+		int spotSize = 0;
+		int spotSoftness = 0;
+		int color = ColorMath.BLACK;
+		int shadowColor = ColorMath.BLACK;
+		Transform transform = new Transform();
+		while (!tokenizer.isEnd("light")) {
+			final String tag = tokenizer.nextTag();
+			if (tag == null) {
+				continue;
 			}
-			if (typeData.equals("SPOT")) {
-				light.setType(LightType.SPOT);
+			if (tag.equals("name")) {
+				name = tokenizer.nextName();
+			} else if (tag.equals("type")) {
+				typeData = tokenizer.nextName();
+			} else if (tag.equals("strength")) {
+				strength = tokenizer.nextFixedPoint();
+			} else if (tag.equals("spot")) {
+				spotSize = tokenizer.nextFixedPoint();
+			} else if (tag.equals("blend")) {
+				spotSoftness = tokenizer.nextFixedPoint();
+			} else if (tag.equals("color")) {
+				color = parseColor(tokenizer);
+			} else if (tag.equals("shadowColor")) {
+				shadowColor = parseColor(tokenizer);
+			} else if (tag.equals("transform")) {
+				transform = parseTransform(tokenizer);
+			} else {
+				tokenizer.skipTag(tag);
+				continue;
 			}
-			light.setStrength(FixedPointMath.toFixedPoint(Float.parseFloat(strengthData)));
-			int red = (int)(Float.parseFloat(colorData[0]) * 256);
-			int green = (int)(Float.parseFloat(colorData[1]) * 256);
-			int blue = (int)(Float.parseFloat(colorData[2]) * 256);
-			light.setColor(ColorMath.toColor(red, green, blue));
-			red = (int)(Float.parseFloat(shadowColorData[0]) * 256);
-			green = (int)(Float.parseFloat(shadowColorData[1]) * 256);
-			blue = (int)(Float.parseFloat(shadowColorData[2]) * 256);
-			light.setShadowColor(ColorMath.toColor(red, green, blue));
-			light.setSpotSize(FixedPointMath.toFixedPoint(Float.parseFloat(spotData)));
-			light.setSpotSoftness(FixedPointMath.toFixedPoint(Float.parseFloat(blendData)));
-			light.setDirection(direction);
-			lights[i] = light;
+			tokenizer.endTag(tag);
+		}
+		int[] direction = VectorMath.VECTOR_DOWN.clone();
+		TransformationMath.rotateX(direction, transform.getRotation()[VECTOR_X]);
+		TransformationMath.rotateY(direction, transform.getRotation()[VECTOR_Y]);
+		TransformationMath.rotateZ(direction, transform.getRotation()[VECTOR_Z]);
+		direction[VECTOR_X] = -direction[VECTOR_X];
+		direction[VECTOR_Z] = -direction[VECTOR_Z];
+		int x = transform.getRotation()[VECTOR_X];
+		int y = transform.getRotation()[VECTOR_Y];
+		int z = transform.getRotation()[VECTOR_Z];
+		transform.setRotation(-(90 << FixedPointMath.FP_BIT) - x, y, z);
+		Light light = new Light(name, transform);
+		if (typeData.equals("SUN")) {
+			light.setType(LightType.DIRECTIONAL);
+		}
+		if (typeData.equals("POINT")) {
+			light.setType(LightType.POINT);
+		}
+		if (typeData.equals("SPOT")) {
+			light.setType(LightType.SPOT);
 		}
-		return lights;
+		light.setStrength(strength);
+		light.setColor(color);
+		light.setShadowColor(shadowColor);
+		light.setSpotSize(spotSize);
+		light.setSpotSoftness(spotSoftness);
+		light.setDirection(direction);
+		return light;
+	}
+	
+	private static int parseColor(SceneTokenizer tokenizer) throws IOException {
+		int red = (int)(tokenizer.nextFloat() * 256);
+		int green = (int)(tokenizer.nextFloat() * 256);
+		int blue = (int)(tokenizer.nextFloat() * 256);
+		return ColorMath.toColor(red, green, blue);
 	}
 
-	private static Transform parseTransform(String[] transformData) {
-		int x = FixedPointMath.toFixedPoint(Float.parseFloat(transformData[VECTOR_X]));
-		int y = FixedPointMath.toFixedPoint(Float.parseFloat(transformData[VECTOR_Z]));
-		int z = FixedPointMath.toFixedPoint(Float.parseFloat(transformData[VECTOR_Y]));
-		int[] location = VectorMath.toVector(x, y, -z);
-		x = FixedPointMath.toFixedPoint(Float.parseFloat(transformData[3 + VECTOR_X]));
-		y = FixedPointMath.toFixedPoint(Float.parseFloat(transformData[3 + VECTOR_Z]));
-		z = FixedPointMath.toFixedPoint(Float.parseFloat(transformData[3 + VECTOR_Y]));
-		int[] rotation = VectorMath.toVector(-x, y, -z);
-		x = FixedPointMath.toFixedPoint(Float.parseFloat(transformData[6 + VECTOR_X]));
-		y = FixedPointMath.toFixedPoint(Float.parseFloat(transformData[6 + VECTOR_Z]));
-		z = FixedPointMath.toFixedPoint(Float.parseFloat(transformData[6 + VECTOR_Y]));
-		int[] scale = VectorMath.toVector(x, y, z);
+	private static Transform parseTransform(SceneTokenizer tokenizer) throws IOException {
+		int[] location = parseVector(tokenizer, VectorMath.emptyVector());
+		int[] rotation = VectorMath.emptyVector();
+		rotation[VECTOR_X] = -tokenizer.nextFixedPoint();
+		rotation[VECTOR_Z] = -tokenizer.nextFixedPoint();
+		rotation[VECTOR_Y] = tokenizer.nextFixedPoint();
+		int[] scale = VectorMath.emptyVector();
+		scale[VECTOR_X] = tokenizer.nextFixedPoint();
+		scale[VECTOR_Z] = tokenizer.nextFixedPoint();
+		scale[VECTOR_Y] = tokenizer.nextFixedPoint();
 		return new Transform(location, rotation, scale);
 	}
+	
+	/**
+	 * Reads a blender location or normal into the given vector, swapping the y and z axes.
+	 */
+	private static int[] parseVector(SceneTokenizer tokenizer, int[] vector) throws IOException {
+		vector[VECTOR_X] = tokenizer.nextFixedPoint();
+		vector[VECTOR_Z] = -tokenizer.nextFixedPoint();
+		vector[VECTOR_Y] = tokenizer.nextFixedPoint();
+		return vector;
+	}
 
-	private static Vertex[] parseVertices(String[] verticesData, Material[] materials) {
-		Vertex[] vertices = new Vertex[verticesData.length];
-		for (int i = 0; i < vertices.length; i++) {
-			String[] vertexData = verticesData[i].split(",");
-			int x = FixedPointMath.toFixedPoint(Float.parseFloat(vertexData[VECTOR_X]));
-			int y = FixedPointMath.toFixedPoint(Float.parseFloat(vertexData[VECTOR_Z]));
-			int z = FixedPointMath.toFixedPoint(Float.parseFloat(vertexData[VECTOR_Y]));
-			int[] location = VectorMath.toVector(x, y, -z);
-			x = FixedPointMath.toFixedPoint(Float.parseFloat(vertexData[3 + VECTOR_X]));
-			y = FixedPointMath.toFixedPoint(Float.parseFloat(vertexData[3 + VECTOR_Z]));
-			z = FixedPointMath.toFixedPoint(Float.parseFloat(vertexData[3 + VECTOR_Y]));
-			int[] normal = VectorMath.toVector(x, y, -z);
-			int material = Integer.parseInt(vertexData[6]);
-			vertices[i] = new Vertex(i, location, normal, materials[material]);
-		}
-		return vertices;
+	private static void parseVertices(SceneTokenizer tokenizer, IntList locations, IntList normals, IntList materials) throws IOException {
+		final int[] vector = VectorMath.emptyVector();
+		do {
+			locations.add(parseVector(tokenizer, vector));
+			normals.add(parseVector(tokenizer, vector));
+			materials.add(tokenizer.nextInt());
+			tokenizer.expect('>');
+		} while (tokenizer.skip('<'));
 	}
 
-	private static Face[] parseFaces(String[] facesData, Vertex[] vertices, Material[] materials) {
-		Face[] faces = new Face[facesData.length];
-		for (int i = 0; i < faces.length; i++) {
-			String[] faceData = facesData[i].split(",");
-			int vertex1 = Integer.parseInt(faceData[0]);
-			int vertex2 = Integer.parseInt(faceData[1]);
-			int vertex3 = Integer.parseInt(faceData[2]);
-			int x = FixedPointMath.toFixedPoint(Float.parseFloat(faceData[3 + VECTOR_X]));
-			int y = FixedPointMath.toFixedPoint(Float.parseFloat(faceData[3 + VECTOR_Z]));
-			int z = FixedPointMath.toFixedPoint(Float.parseFloat(faceData[3 + VECTOR_Y]));
-			int[] normal = VectorMath.toVector(x, y, -z);
-			x = FixedPointMath.toFixedPoint(Float.parseFloat(faceData[6 + VECTOR_X]));
-			y = FixedPointMath.toFixedPoint(Float.parseFloat(faceData[6 + VECTOR_Y]));
-			int[] uv1 = VectorMath.toVector(x, FixedPointMath.FP_ONE - y);
-			x = FixedPointMath.toFixedPoint(Float.parseFloat(faceData[8 + VECTOR_X]));
-			y = FixedPointMath.toFixedPoint(Float.parseFloat(faceData[8 + VECTOR_Y]));
-			int[] uv2 = VectorMath.toVector(x, FixedPointMath.FP_ONE - y);
-			x = FixedPointMath.toFixedPoint(Float.parseFloat(faceData[10 + VECTOR_X]));
-			y = FixedPointMath.toFixedPoint(Float.parseFloat(faceData[10 + VECTOR_Y]));
-			int[] uv3 = VectorMath.toVector(x, FixedPointMath.FP_ONE - y);
-			int material = Integer.parseInt(faceData[12]);
-			faces[i] = new Face(i, normal, vertices[vertex1], vertices[vertex2], vertices[vertex3], materials[material], uv1, uv2, uv3);
-		}
-		return faces;
+	private static void parseFaces(SceneTokenizer tokenizer, IntList vertices, IntList normals, IntList uvs, IntList materials) throws IOException {
+		final int[] vector = VectorMath.emptyVector();
+		do {
+			vertices.add(tokenizer.nextInt());
+			vertices.add(tokenizer.nextInt());
+			vertices.add(tokenizer.nextInt());
+			normals.add(parseVector(tokenizer, vector));
+			for (int i = 0; i < 3; i++) {
+				vector[VECTOR_X] = tokenizer.nextFixedPoint();
+				vector[VECTOR_Y] = FixedPointMath.FP_ONE - tokenizer.nextFixedPoint();
+				vector[VECTOR_Z] = 0;
+				uvs.add(vector);
+			}
+			materials.add(tokenizer.nextInt());
+			tokenizer.expect('>');
+		} while (tokenizer.skip('<'));
 	}
 
-	private static Material[] parseMaterials(String[] materialsData) {
-		Material[] materials = new Material[materialsData.length];
-		for (int i = 0; i < materials.length; i++) {
-			String[] materialData = materialsData[i].split(",");
-			String name = materialData[0];
-			int red = (int)(Float.parseFloat(materialData[1]) * 256);
-			int green = (int)(Float.parseFloat(materialData[2]) * 256);
-			int blue = (int)(Float.parseFloat(materialData[3]) * 256);
-			int alpha = (int)(Float.parseFloat(materialData[4]) * 256);
-			int diffuse = FixedPointMath.toFixedPoint(Float.parseFloat(materialData[5]));
-			int specular = FixedPointMath.toFixedPoint(Float.parseFloat(materialData[6]));
-			int shininess = FixedPointMath.toFixedPoint(Float.parseFloat(materialData[7]) / 10);
+	private static Material[] parseMaterials(SceneTokenizer tokenizer) throws IOException {
+		final ArrayList<Material> materials = new ArrayList<Material>();
+		do {
+			String name = tokenizer.nextName();
+			int red = (int)(tokenizer.nextFloat() * 256);
+			int green = (int)(tokenizer.nextFloat() * 256);
+			int blue = (int)(tokenizer.nextFloat() * 256);
+			int alpha = (int)(tokenizer.nextFloat() * 256);
+			int diffuse = tokenizer.nextFixedPoint();
+			int specular = tokenizer.nextFixedPoint();
+			int shininess = FixedPointMath.toFixedPoint(tokenizer.nextFloat() / 10);
 			GouraudSpecularShader shader = new GouraudSpecularShader();
 			SpecularProperties properties = (SpecularProperties) shader.getProperties();
 			properties.setDiffuseColor(ColorMath.toColor(alpha, red, green, blue));
 			properties.setDiffuseIntensity(diffuse);
 			properties.setSpecularIntensity(specular);
 			properties.setShininess(shininess);
-			materials[i] = new Material(i, name, shader);
-		}
-		return materials;
+			materials.add(new Material(materials.size(), name, shader));
+			tokenizer.expect('>');
+		} while (tokenizer.skip('<'));
+		return materials.toArray(new Material[materials.size()]);
+	}
+	
+	/**
+	 * Reads the vertex groups into the given list as bone index, vertex count, 
+	 * vertex indices and weights, because the vertices are created after the whole model is read.
+	 */
+	private static void parseVertexGroups(SceneTokenizer tokenizer, IntList vertexGroups) throws IOException {
+		do {
+			vertexGroups.add(tokenizer.nextInt());
+			int vertexCount = tokenizer.nextInt();
+			vertexGroups.add(vertexCount);
+			for (int j = 0; j < vertexCount; j++) {
+				vertexGroups.add(tokenizer.nextInt());
+			}
+			for (int j = 0; j < vertexCount; j++) {
+				vertexGroups.add(tokenizer.nextFixedPoint());
+			}
+			tokenizer.expect('>');
+		} while (tokenizer.skip('<'));
 	}
 	
-	private static VertexGroup[] parseVertexGroups(String[] vertexGroupsData, Vertex[] meshVertices) {
-		VertexGroup[] vertexGroups = new VertexGroup[vertexGroupsData.length];
-		for (int i = 0; i < vertexGroups.length; i++) {
-			String[] vertexGroupData = vertexGroupsData[i].split(",");
-			int boneIndex = Integer.parseInt(vertexGroupData[0]);
-			int vertexCount = Integer.parseInt(vertexGroupData[1]);
+	private static VertexGroup[] createVertexGroups(IntList vertexGroupsData, Vertex[] meshVertices) {
+		final ArrayList<VertexGroup> vertexGroups = new ArrayList<VertexGroup>();
+		final int[] data = vertexGroupsData.values;
+		for (int i = 0; i < vertexGroupsData.size; ) {
+			int boneIndex = data[i++];
+			int vertexCount = data[i++];
 			Vertex[] vertices = new Vertex[vertexCount];
 			for (int j = 0; j < vertexCount; j++) {
-				vertices[j] = meshVertices[Integer.parseInt(vertexGroupData[j + 2])];
+				vertices[j] = meshVertices[data[i++]];
 			}
 			int[] weights = new int[vertexCount];
 			for (int j = 0; j < vertexCount; j++) {
-				weights[j] = FixedPointMath.toFixedPoint(Float.parseFloat(vertexGroupData[j + vertexCount + 2]));
+				weights[j] = data[i++];
 			}
-			vertexGroups[i] = new VertexGroup(boneIndex, vertices, weights);
+			vertexGroups.add(new VertexGroup(boneIndex, vertices, weights));
 		}
-		return vertexGroups;
+		return vertexGroups.toArray(new VertexGroup[vertexGroups.size()]);
 	}
 	
-	private static Animation[] parseAnimations(String[] animationsData) {
-		Animation[] animations = new Animation[animationsData.length];
+	private static void parseAnimations(SceneTokenizer tokenizer, ArrayList<Animation> animations) throws IOException {
 		int[][] matrixCache1 = MatrixMath.indentityMatrix();
 		int[][] matrixCache2 = MatrixMath.indentityMatrix();
-		for (int i = 0; i < animations.length; i++) {
-			String[] animationData = animationsData[i].split(",");
-			String name = animationData[0];
-			int bonesCount = Integer.parseInt(animationData[1]);
-			int framesCount = Integer.parseInt(animationData[2]);
+		int[] location = VectorMath.emptyVector();
+		int[] rotation = VectorMath.emptyVector();
+		int[] scale = VectorMath.emptyVector();
+		do {
+			String name = tokenizer.nextName();
+			int bonesCount = tokenizer.nextInt();
+			int framesCount = tokenizer.nextInt();
 			AnimationFrame[] frames = new AnimationFrame[framesCount];
-			for (int f = 3, fi = 0; f < animationData.length; f += bonesCount * 9, fi++) {
-				int[][][] boneRotationMatrices = new int[bonesCount][MatrixMath.MATRIX_SIZE][MatrixMath.MATRIX_SIZE];
-				for (int b = f, bi = 0; b < f + bonesCount * 9; b += 9, bi++) {
-					int x = FixedPointMath.toFixedPoint(Float.parseFloat(animationData[b + VECTOR_X]));
-					int y = FixedPointMath.toFixedPoint(Float.parseFloat(animationData[b + VECTOR_Y]));
-					int z = FixedPointMath.toFixedPoint(Float.parseFloat(animationData[b + VECTOR_Z]));
-					int[] location = VectorMath.toVector(-x, y, z);
-					x = FixedPointMath.toFixedPoint(Float.parseFloat(animationData[b + 3 + VECTOR_X]));
-					y = FixedPointMath.toFixedPoint(Float.parseFloat(animationData[b + 3 + VECTOR_Y]));
-					z = FixedPointMath.toFixedPoint(Float.parseFloat(animationData[b + 3 + VECTOR_Z]));
-					int[] rotation = VectorMath.toVector(x, y, z);
-					x = FixedPointMath.toFixedPoint(Float.parseFloat(animationData[b + 6 + VECTOR_X]));
-					y = FixedPointMath.toFixedPoint(Float.parseFloat(animationData[b + 6 + VECTOR_Y]));
-					z = FixedPointMath.toFixedPoint(Float.parseFloat(animationData[b + 6 + VECTOR_Z]));
-					int[] scale = VectorMath.toVector(x, y, z);
+			for (int f = 0; f < framesCount; f++) {
+				int[][][] boneRotationMatrices = new int[bonesCount][][];
+				for (int b = 0; b < bonesCount; b++) {
+					location[VECTOR_X] = -tokenizer.nextFixedPoint();
+					location[VECTOR_Y] = tokenizer.nextFixedPoint();
+					location[VECTOR_Z] = tokenizer.nextFixedPoint();
+					rotation[VECTOR_X] = tokenizer.nextFixedPoint();
+					rotation[VECTOR_Y] = tokenizer.nextFixedPoint();
+					rotation[VECTOR_Z] = tokenizer.nextFixedPoint();
+					scale[VECTOR_X] = tokenizer.nextFixedPoint();
+					scale[VECTOR_Y] = tokenizer.nextFixedPoint();
+					scale[VECTOR_Z] = tokenizer.nextFixedPoint();
 					int[][] boneRotationMatrix = MatrixMath.indentityMatrix();
 					TransformationMath.scale(boneRotationMatrix, scale, matrixCache1, matrixCache2);
 					TransformationMath.rotateX(boneRotationMatrix, rotation[VECTOR_X], matrixCache1, matrixCache2);
 					TransformationMath.rotateY(boneRotationMatrix, rotation[VECTOR_Y], matrixCache1, matrixCache2);
 					TransformationMath.rotateZ(boneRotationMatrix, rotation[VECTOR_Z], matrixCache1, matrixCache2);
 					TransformationMath.translate(boneRotationMatrix, location, matrixCache1, matrixCache2);
-					boneRotationMatrices[bi] = boneRotationMatrix;
+					boneRotationMatrices[b] = boneRotationMatrix;
 				}
-				frames[fi] = new AnimationFrame(boneRotationMatrices);
+				frames[f] = new AnimationFrame(boneRotationMatrices);
 			}
-			animations[i] = new Animation(name, frames);
+			animations.add(new Animation(name, frames));
+			tokenizer.expect('>');
+		} while (tokenizer.skip('<'));
+	}
+	
+	/**
+	 * Growable int array, used for the packed mesh data because the .scene 
+	 * file doesn't contain the vertex and face counts.
+	 */
+	private static final class IntList {
+		
+		private int[] values = new int[64];
+		private int size = 0;
+		
+		void add(int value) {
+			if (size == values.length) {
+				grow();
+			}
+			values[size++] = value;
+		}
+		
+		void add(int[] vector) {
+			for (int i = 0; i < vector.length; i++) {
+				add(vector[i]);
+			}
+		}
+		
+		int[] toArray() {
+			final int[] result = new int[size];
+			System.arraycopy(values, 0, result, 0, size);
+			return result;
+		}
+		
+		private void grow() {
+			final int[] result = new int[values.length * 2];
+			System.arraycopy(values, 0, result, 0, size);
+			values = result;
 		}
-		return animations;
 	}
 }
@@ -0,0 +1,358 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 John Salomon - John´s Project
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.johnsproject.jgameengine.io;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import com.johnsproject.jgameengine.math.FixedPointMath;
+
+/**
+ * The SceneTokenizer class reads the tag based text formats of the .scene and .som files 
+ * in a single pass. Values are parsed straight from the characters of the stream, 
+ * so the file content is never held in memory as a whole.
+ * 
+ * @author John Ferraz Salomon
+ */
+final class SceneTokenizer {
+
+	private static final int BUFFER_SIZE = 8192;
+	// more digits don't fit into a long and don't change the float value
+	private static final long MAX_MANTISSA = 100000000000000000L;
+	private static final double[] POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+	
+	private final Reader reader;
+	private final char[] buffer;
+	private final StringBuilder stringBuilder;
+	private int position;
+	private int length;
+	// lines and characters of the buffers read before the current one, only used in error messages
+	private int line;
+	private long offset;
+	private long lineStart;
+	
+	SceneTokenizer(Reader reader) {
+		this.reader = reader;
+		this.buffer = new char[BUFFER_SIZE];
+		this.stringBuilder = new StringBuilder();
+		this.position = 0;
+		this.length = 0;
+	}
+	
+	/**
+	 * Returns the next character without consuming it, or -1 at the end of the stream.
+	 */
+	private int peekChar() throws IOException {
+		if (position == length) {
+			for (int i = 0; i < length; i++) {
+				if (buffer[i] == '\n') {
+					line++;
+					lineStart = offset + i + 1;
+				}
+			}
+			offset += length;
+			length = reader.read(buffer, 0, buffer.length);
+			position = 0;
+			if (length <= 0) {
+				length = 0;
+				return -1;
+			}
+		}
+		return buffer[position];
+	}
+	
+	/**
+	 * Skips whitespace and returns the next character without consuming it, 
+	 * or -1 at the end of the stream.
+	 */
+	int peek() throws IOException {
+		int character = peekChar();
+		while ((character >= 0) && Character.isWhitespace(character)) {
+			position++;
+			character = peekChar();
+		}
+		return character;
+	}
+	
+	/**
+	 * Consumes the next character if it is the given one.
+	 */
+	boolean skip(char character) throws IOException {
+		if (peek() == character) {
+			position++;
+			return true;
+		}
+		return false;
+	}
+	
+	void expect(char character) throws IOException {
+		if (!skip(character)) {
+			throw new IOException("Expected '" + character + "' but found " + describe(peek()));
+		}
+	}
+	
+	/**
+	 * Throws an exception if anything but whitespace is left in the stream, 
+	 * used after the last tag was read.
+	 */
+	void expectEnd() throws IOException {
+		final int character = peek();
+		if (character < 0) {
+			return;
+		}
+		final String location = getLocation();
+		String found = describe(character);
+		if (character == '>') {
+			position++;
+			peek();
+			stringBuilder.setLength(0);
+			for (int c = peekChar(); isIdentifier(c); c = peekChar()) {
+				stringBuilder.append((char) c);
+				position++;
+			}
+			found = "'>" + stringBuilder + "', the closing of a tag that isn't open,";
+		}
+		throw new IOException("Expected end of file but found " + found + " at " + location);
+	}
+	
+	/**
+	 * Returns the line and column of the next character.
+	 */
+	String getLocation() {
+		int currentLine = line;
+		long currentLineStart = lineStart;
+		for (int i = 0; i < position; i++) {
+			if (buffer[i] == '\n') {
+				currentLine++;
+				currentLineStart = offset + i + 1;
+			}
+		}
+		return "line " + (currentLine + 1) + ", column " + (offset + position - currentLineStart + 1);
+	}
+	
+	/**
+	 * Skips any text until the next tag is opened and returns the name of the tag. 
+	 * Returns null without consuming anything if a tag is closed or the stream ends first.
+	 */
+	String nextTag() throws IOException {
+		stringBuilder.setLength(0);
+		boolean separated = false;
+		for (int character = peekChar(); character >= 0; character = peekChar()) {
+			if (character == '<') {
+				position++;
+				return stringBuilder.toString();
+			}
+			if (character == '>') {
+				return null;
+			}
+			position++;
+			if (Character.isWhitespace(character)) {
+				separated = true;
+			} else if (isIdentifier(character)) {
+				if (separated) {
+					stringBuilder.setLength(0);
+					separated = false;
+				}
+				stringBuilder.append((char) character);
+			} else {
+				stringBuilder.setLength(0);
+				separated = false;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Consumes the closing of the given tag if it comes next.
+	 */
+	boolean isEnd(String tag) throws IOException {
+		final int character = peek();
+		if (character < 0) {
+			throw new IOException("Unexpected end of file, expected '>" + tag + "'");
+		}
+		if (character != '>') {
+			return false;
+		}
+		position++;
+		expectIdentifier(tag);
+		return true;
+	}
+	
+	void endTag(String tag) throws IOException {
+		expect('>');
+		expectIdentifier(tag);
+	}
+	
+	void expectIdentifier(String identifier) throws IOException {
+		peek();
+		stringBuilder.setLength(0);
+		for (int character = peekChar(); isIdentifier(character); character = peekChar()) {
+			stringBuilder.append((char) character);
+			position++;
+		}
+		if (!identifier.contentEquals(stringBuilder)) {
+			throw new IOException("Expected '" + identifier + "' but found '" + stringBuilder + "'");
+		}
+	}
+	
+	/**
+	 * Skips the content of the given tag, including the closing of the tag.
+	 */
+	void skipTag(String tag) throws IOException {
+		for (int character = peekChar(); character >= 0; character = peekChar()) {
+			position++;
+			if (character == '>') {
+				peek();
+				stringBuilder.setLength(0);
+				for (character = peekChar(); isIdentifier(character); character = peekChar()) {
+					stringBuilder.append((char) character);
+					position++;
+				}
+				if (tag.contentEquals(stringBuilder)) {
+					return;
+				}
+			}
+		}
+		throw new IOException("Unexpected end of file, expected '>" + tag + "'");
+	}
+	
+	/**
+	 * Reads a name value until the next ',', '<' or '>'. Whitespace is not part of names.
+	 */
+	String nextName() throws IOException {
+		stringBuilder.setLength(0);
+		for (int character = peekChar(); character >= 0; character = peekChar()) {
+			if ((character == ',') || (character == '<') || (character == '>')) {
+				break;
+			}
+			if (!Character.isWhitespace(character)) {
+				stringBuilder.append((char) character);
+			}
+			position++;
+		}
+		skip(',');
+		return stringBuilder.toString();
+	}
+	
+	int nextInt() throws IOException {
+		final boolean negative = nextSign();
+		long value = 0;
+		boolean digits = false;
+		for (int character = peekChar(); (character >= '0') && (character <= '9'); character = peekChar()) {
+			value = (value * 10) + (character - '0');
+			if (value > ((long) Integer.MAX_VALUE + 1)) {
+				throw new IOException("Integer value out of range");
+			}
+			digits = true;
+			position++;
+		}
+		if (!digits) {
+			throw new IOException("Expected an integer but found " + describe(peekChar()));
+		}
+		skip(',');
+		return (int) (negative ? -value : value);
+	}
+	
+	float nextFloat() throws IOException {
+		final boolean negative = nextSign();
+		long mantissa = 0;
+		int exponent = 0;
+		boolean digits = false;
+		boolean fraction = false;
+		int character = peekChar();
+		for (; character >= 0; character = peekChar()) {
+			if ((character >= '0') && (character <= '9')) {
+				if (mantissa < MAX_MANTISSA) {
+					mantissa = (mantissa * 10) + (character - '0');
+					if (fraction) {
+						exponent--;
+					}
+				} else if (!fraction) {
+					exponent++;
+				}
+				digits = true;
+			} else if ((character == '.') && !fraction) {
+				fraction = true;
+			} else {
+				break;
+			}
+			position++;
+		}
+		if (!digits) {
+			throw new IOException("Expected a number but found " + describe(character));
+		}
+		if ((character == 'e') || (character == 'E')) {
+			position++;
+			exponent += nextInt();
+		} else {
+			skip(',');
+		}
+		double value = mantissa;
+		if (exponent < 0) {
+			value /= powerOfTen(-exponent);
+		} else if (exponent > 0) {
+			value *= powerOfTen(exponent);
+		}
+		// the importers used Float.parseFloat, rounding to float keeps the loaded values the same
+		return (float) (negative ? -value : value);
+	}
+	
+	int nextFixedPoint() throws IOException {
+		return FixedPointMath.toFixedPoint(nextFloat());
+	}
+	
+	void close() throws IOException {
+		reader.close();
+	}
+	
+	private boolean nextSign() throws IOException {
+		final int character = peek();
+		if ((character == '-') || (character == '+')) {
+			position++;
+			return character == '-';
+		}
+		return false;
+	}
+	
+	private static double powerOfTen(int exponent) {
+		if (exponent < POWERS_OF_TEN.length) {
+			return POWERS_OF_TEN[exponent];
+		}
+		return Math.pow(10, exponent);
+	}
+	
+	private static boolean isIdentifier(int character) {
+		return (character >= 0) && (Character.isLetterOrDigit(character) || (character == '_'));
+	}
+	
+	private static String describe(int character) {
+		if (character < 0) {
+			return "end of file";
+		}
+		return "'" + (char) character + "'";
+	}
+}
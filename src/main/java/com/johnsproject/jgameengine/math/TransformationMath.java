@@ -28,6 +28,7 @@ import static com.johnsproject.jgameengine.math.MatrixMath.*;
 import static com.johnsproject.jgameengine.math.VectorMath.*;
 import static com.johnsproject.jgameengine.model.Camera.*;
 
+import com.johnsproject.jgameengine.model.CameraType;
 import com.johnsproject.jgameengine.model.Transform;
 
 public final class TransformationMath {
@@ -69,16 +70,12 @@ public final class TransformationMath {
 		int scaleX = FixedPointMath.divide(FP_ONE, scale[VECTOR_X] == 0 ? 1 : scale[VECTOR_X]);
 		int scaleY = FixedPointMath.divide(FP_ONE, scale[VECTOR_Y] == 0 ? 1 : scale[VECTOR_Y]);
 		int scaleZ = FixedPointMath.divide(FP_ONE, scale[VECTOR_Z] == 0 ? 1 : scale[VECTOR_Z]);
-		VectorMath.invert(location);
-		VectorMath.invert(rotation);
 		MatrixMath.copy(matrix, MatrixMath.MATRIX_IDENTITY);
-		translate(matrix, location, matrixCache1, matrixCache2);
-		rotateZ(matrix, rotation[VECTOR_Z], matrixCache1, matrixCache2);
-		rotateY(matrix, rotation[VECTOR_Y], matrixCache1, matrixCache2);
-		rotateX(matrix, rotation[VECTOR_X], matrixCache1, matrixCache2);
+		translate(matrix, -location[VECTOR_X], -location[VECTOR_Y], -location[VECTOR_Z], matrixCache1, matrixCache2);
+		rotateZ(matrix, -rotation[VECTOR_Z], matrixCache1, matrixCache2);
+		rotateY(matrix, -rotation[VECTOR_Y], matrixCache1, matrixCache2);
+		rotateX(matrix, -rotation[VECTOR_X], matrixCache1, matrixCache2);
 		scale(matrix, scaleX, scaleY, scaleZ, matrixCache1, matrixCache2);
-		VectorMath.invert(location);
-		VectorMath.invert(rotation);
 		return matrix;
 	}
 	
@@ -88,13 +85,11 @@ public final class TransformationMath {
 		int scaleX = FixedPointMath.divide(FP_ONE, scale[VECTOR_X] == 0 ? 1 : scale[VECTOR_X]);
 		int scaleY = FixedPointMath.divide(FP_ONE, scale[VECTOR_Y] == 0 ? 1 : scale[VECTOR_Y]);
 		int scaleZ = FixedPointMath.divide(FP_ONE, scale[VECTOR_Z] == 0 ? 1 : scale[VECTOR_Z]);
-		VectorMath.invert(rotation);
 		MatrixMath.copy(matrix, MatrixMath.MATRIX_IDENTITY);
-		rotateZ(matrix, rotation[VECTOR_Z], matrixCache1, matrixCache2);
-		rotateY(matrix, rotation[VECTOR_Y], matrixCache1, matrixCache2);
-		rotateX(matrix, rotation[VECTOR_X], matrixCache1, matrixCache2);
+		rotateZ(matrix, -rotation[VECTOR_Z], matrixCache1, matrixCache2);
+		rotateY(matrix, -rotation[VECTOR_Y], matrixCache1, matrixCache2);
+		rotateX(matrix, -rotation[VECTOR_X], matrixCache1, matrixCache2);
 		scale(matrix, scaleX, scaleY, scaleZ, matrixCache1, matrixCache2);
-		VectorMath.invert(rotation);
 		if ((scale[VECTOR_X] != scale[VECTOR_Y]) || (scale[VECTOR_Y] != scale[VECTOR_Z])) {
 			MatrixMath.inverse(matrix, matrixCache2);
 			MatrixMath.transpose(matrixCache2, matrix);
@@ -158,7 +153,167 @@ public final class TransformationMath {
 		cameraFrustum[FRUSTUM_FAR] = cameraFrustum[FRUSTUM_FAR];
 		return cameraFrustum;
 	}
-	
+
+	/**
+	 * Returns true if the sphere is completely outside of the frustum of a camera.
+	 * The test is conservative, if this method returns true the rasterizer would
+	 * cull every triangle inside of the sphere.
+	 *
+	 * @param center center of the sphere in camera space.
+	 * @param radius radius of the sphere.
+	 * @param cameraFrustum camera frustum ported to the render target.
+	 * @param focalLength focal length the projection matrix was created with.
+	 * @param type type of the projection.
+	 * @return true if no part of the sphere is inside of the frustum.
+	 */
+	public static boolean isOutsideFrustum(int[] center, int radius, int[] cameraFrustum, int focalLength, CameraType type) {
+		final long distance = -(long) center[VECTOR_Z];
+		if((distance + radius < cameraFrustum[FRUSTUM_NEAR]) || (distance - radius > cameraFrustum[FRUSTUM_FAR]))
+			return true;
+		return isOutsideViewport(center, radius, cameraFrustum, focalLength, type);
+	}
+
+	/**
+	 * Returns true if the sphere is completely outside of the sides of the frustum of a camera,
+	 * the near and far planes are ignored.
+	 *
+	 * @see #isOutsideFrustum(int[], int, int[], int, CameraType)
+	 */
+	public static boolean isOutsideViewport(int[] center, int radius, int[] cameraFrustum, int focalLength, CameraType type) {
+		final int left = cameraFrustum[FRUSTUM_LEFT];
+		final int right = cameraFrustum[FRUSTUM_RIGHT];
+		final int top = cameraFrustum[FRUSTUM_TOP];
+		final int bottom = cameraFrustum[FRUSTUM_BOTTOM];
+		final int scaleFactor = FixedPointMath.multiply(focalLength, bottom - top + 1);
+		if(scaleFactor <= 0)
+			return false;
+		// one extra pixel for the rounding of the projection
+		final int halfWidth = ((right - left + 1) >> 1) + 1;
+		final int halfHeight = ((bottom - top + 1) >> 1) + 1;
+		final long x = Math.abs((long) center[VECTOR_X]);
+		final long y = Math.abs((long) center[VECTOR_Y]);
+		if(type == CameraType.ORTHOGRAPHIC) {
+			// the orthographic matrix sets w to 16
+			final int width = FixedPointMath.divide(halfWidth << 4, scaleFactor);
+			final int height = FixedPointMath.divide(halfHeight << 4, scaleFactor);
+			return (x - width > radius) || (y - height > radius);
+		}
+		final long distance = -(long) center[VECTOR_Z];
+		// a point is inside if abs(x) <= slopeX * distance
+		final int slopeX = FixedPointMath.divide(halfWidth, scaleFactor);
+		final int slopeY = FixedPointMath.divide(halfHeight, scaleFactor);
+		// the distance to a side plane is scaled by sqrt(1 + slope^2), 1 + slope is bigger and needs no sqrt
+		final long radiusX = radius + (long) FixedPointMath.multiply(radius, slopeX);
+		final long radiusY = radius + (long) FixedPointMath.multiply(radius, slopeY);
+		// screenportVector truncates 1 / w, that moves far points to the center by up to distance / FP_ONE^2,
+		// so the sides are moved out by twice that
+		final long squaredDistance = (distance * distance) >> FP_BIT;
+		final long errorX = (slopeX * squaredDistance) >> ((FP_BIT << 1) - 1);
+		final long errorY = (slopeY * squaredDistance) >> ((FP_BIT << 1) - 1);
+		return (x - FixedPointMath.multiply(distance, slopeX) - errorX > radiusX)
+				|| (y - FixedPointMath.multiply(distance, slopeY) - errorY > radiusY);
+	}
+
+	/**
+	 * Calculates the screen rectangle that contains the projection of the sphere,
+	 * the rectangle is clamped to the frustum. The result is stored as
+	 * {left, right, top, bottom} in pixels.
+	 *
+	 * @param center center of the sphere in camera space.
+	 * @param radius radius of the sphere.
+	 * @param cameraFrustum camera frustum ported to the render target.
+	 * @param focalLength focal length the projection matrix was created with.
+	 * @param type type of the projection.
+	 * @param result array of at least 4 elements.
+	 * @return false if the sphere reaches behind the camera and has no bounded projection.
+	 */
+	public static boolean screenportSphere(int[] center, int radius, int[] cameraFrustum, int focalLength, CameraType type, int[] result) {
+		final int left = cameraFrustum[FRUSTUM_LEFT];
+		final int right = cameraFrustum[FRUSTUM_RIGHT];
+		final int top = cameraFrustum[FRUSTUM_TOP];
+		final int bottom = cameraFrustum[FRUSTUM_BOTTOM];
+		final int halfX = left + ((right - left) >> 1);
+		final int halfY = top + ((bottom - top) >> 1);
+		final long scaleFactor = FixedPointMath.multiply(focalLength, bottom - top + 1);
+		final long minX = (long) center[VECTOR_X] - radius;
+		final long maxX = (long) center[VECTOR_X] + radius;
+		final long minY = (long) center[VECTOR_Y] - radius;
+		final long maxY = (long) center[VECTOR_Y] + radius;
+		long screenLeft, screenRight, screenTop, screenBottom;
+		if(type == CameraType.ORTHOGRAPHIC) {
+			// the orthographic matrix flips x and y and sets w to 16
+			screenLeft = halfX - ((scaleFactor * maxX) >> (FP_BIT + 4)) - 2;
+			screenRight = halfX - ((scaleFactor * minX) >> (FP_BIT + 4)) + 2;
+			screenTop = halfY - ((scaleFactor * maxY) >> (FP_BIT + 4)) - 2;
+			screenBottom = halfY - ((scaleFactor * minY) >> (FP_BIT + 4)) + 2;
+		} else {
+			final long minDistance = -(long) center[VECTOR_Z] - radius;
+			final long maxDistance = -(long) center[VECTOR_Z] + radius;
+			if(minDistance <= 0)
+				return false;
+			// the biggest and smallest x / distance of the points in the sphere
+			final long minRatioX = (minX << FP_BIT) / (minX < 0 ? minDistance : maxDistance);
+			final long maxRatioX = (maxX << FP_BIT) / (maxX < 0 ? maxDistance : minDistance);
+			final long minRatioY = (minY << FP_BIT) / (minY < 0 ? minDistance : maxDistance);
+			final long maxRatioY = (maxY << FP_BIT) / (maxY < 0 ? maxDistance : minDistance);
+			screenLeft = halfX + ((scaleFactor * minRatioX) >> FP_BIT);
+			screenRight = halfX + ((scaleFactor * maxRatioX) >> FP_BIT);
+			screenTop = halfY - ((scaleFactor * maxRatioY) >> FP_BIT);
+			screenBottom = halfY - ((scaleFactor * minRatioY) >> FP_BIT);
+			// screenportVector truncates 1 / w, so far points are moved to the center by up to distance / FP_ONE^2
+			final long maxOffset = Math.max(Math.max(Math.abs(screenLeft - halfX), Math.abs(screenRight - halfX)),
+					Math.max(Math.abs(screenTop - halfY), Math.abs(screenBottom - halfY)));
+			final long error = ((maxOffset * maxDistance) >> ((FP_BIT << 1) - 1)) + 2;
+			screenLeft -= error;
+			screenRight += error;
+			screenTop -= error;
+			screenBottom += error;
+		}
+		result[0] = (int) Math.max(left, Math.min(right, screenLeft));
+		result[1] = (int) Math.max(left, Math.min(right, screenRight));
+		result[2] = (int) Math.max(top, Math.min(bottom, screenTop));
+		result[3] = (int) Math.max(top, Math.min(bottom, screenBottom));
+		return true;
+	}
+
+	/**
+	 * Transforms the center of the sphere with the space exit matrix of the transform 
+	 * and returns the radius scaled by the biggest scale of the transform.
+	 * 
+	 * @param center center of the sphere in the space of the transform, it's replaced by the world space center.
+	 * @param radius radius of the sphere.
+	 * @param transform transform of the sphere.
+	 * @return radius of the sphere in world space.
+	 */
+	public static int spaceExitSphere(int[] center, int radius, Transform transform) {
+		VectorMath.multiply(center, transform.getSpaceExitMatrix());
+		final int[] scale = transform.getScale();
+		int maxScale = Math.max(Math.abs(scale[VECTOR_X]), Math.abs(scale[VECTOR_Y]));
+		maxScale = Math.max(maxScale, Math.abs(scale[VECTOR_Z]));
+		return FixedPointMath.multiply(radius, maxScale) + 1;
+	}
+
+	/**
+	 * Sets center to the center of the axis aligned box from min to max and
+	 * returns the radius of a sphere that contains the box.
+	 *
+	 * @param min minimum corner of the box.
+	 * @param max maximum corner of the box.
+	 * @param center vector where the center of the sphere is stored.
+	 * @return radius of the sphere.
+	 */
+	public static int boundingSphere(int[] min, int[] max, int[] center) {
+		long squaredRadius = 0;
+		for (int i = 0; i < 3; i++) {
+			final long halfSize = ((long) max[i] - min[i] + 1) >> 1;
+			center[i] = (int) (((long) min[i] + max[i]) >> 1);
+			squaredRadius += halfSize * halfSize;
+		}
+		center[VECTOR_W] = FP_ONE;
+		// sqrt rounds down, the radius is increased by its precision so the sphere never gets too small
+		return FixedPointMath.sqrt(squaredRadius >> FP_BIT) + (FP_ONE >> 7) + 1;
+	}
+
 	public static int[] translate(int[] vector, int[] direction) {
 		return translate(vector, direction[VECTOR_X], direction[VECTOR_Y], direction[VECTOR_Z]);
 	}
@@ -31,6 +31,7 @@ public class Armature {
 	private int currentFrame;
 	private int animationSpeed;
 	private boolean loopAnimation;
+	private int version;
 	
 	public Armature(VertexGroup[] vertexGroups, Animation[] animations) {
 		this.vertexGroups = vertexGroups;
@@ -65,7 +66,10 @@ public class Armature {
 	
 	public void playAnimation(int index, boolean loop) {
 		loopAnimation = loop;
-		currentAnimation = animations[index];
+		if(currentAnimation != animations[index]) {
+			currentAnimation = animations[index];
+			version++;
+		}
 	}
 
 	public Animation getCurrentAnimation() {
@@ -85,14 +89,21 @@ public class Armature {
 	}
 
 	public void nextFrame() {
+		if(currentAnimation == null)
+			return;
+		final int lastFrame = currentFrame;
 		currentFrame += animationSpeed;
 		if(!isPlaying()) {
 			if(loopAnimation) {
 				currentFrame = 0;
 			} else {
 				stopPlaying();
+				return;
 			}
 		}
+		if(lastFrame != currentFrame) {
+			version++;
+		}
 	}
 	
 	public boolean isPlaying() {
@@ -104,8 +115,11 @@ public class Armature {
 	}
 	
 	public void stopPlaying() {
+		if((currentAnimation == null) && (currentFrame == 0))
+			return;
 		currentFrame = 0;
 		currentAnimation = null;
+		version++;
 	}
 
 	public int getAnimationSpeed() {
@@ -115,4 +129,14 @@ public class Armature {
 	public void setAnimationSpeed(int animationSpeed) {
 		this.animationSpeed = animationSpeed;
 	}
+	
+	/**
+	 * Returns a number that changes every time the current animation frame of this armature changes. 
+	 * It can be used to find out if the pose of the armature changed since it was last used.
+	 * 
+	 * @return the version of this armature.
+	 */
+	public int getVersion() {
+		return version;
+	}
 }
@@ -0,0 +1,113 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 John Salomon - John´s Project
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.johnsproject.jgameengine.model;
+
+/**
+ * Splits a buffer into square blocks of 2^shift pixels, used by the classes that store 
+ * something per block of a buffer instead of per pixel. Pixels outside of the buffer 
+ * belong to the blocks at its border.
+ */
+class BlockGrid {
+
+	private final int width;
+	private final int height;
+	private final int shift;
+	private final int columns;
+	private final int rows;
+	
+	public BlockGrid(int width, int height, int shift) {
+		this.width = width;
+		this.height = height;
+		this.shift = shift;
+		this.columns = ((width - 1) >> shift) + 1;
+		this.rows = ((height - 1) >> shift) + 1;
+	}
+	
+	public int getShift() {
+		return shift;
+	}
+	
+	public int getColumns() {
+		return columns;
+	}
+	
+	public int getRows() {
+		return rows;
+	}
+	
+	public int getBlockCount() {
+		return columns * rows;
+	}
+	
+	public int getColumn(int x) {
+		x = x >= 0 ? x : 0;
+		x = x < width ? x : width - 1;
+		return x >> shift;
+	}
+	
+	public int getRow(int y) {
+		y = y >= 0 ? y : 0;
+		y = y < height ? y : height - 1;
+		return y >> shift;
+	}
+	
+	public int getBlock(int x, int y) {
+		return getColumn(x) + (getRow(y) * columns);
+	}
+	
+	/**
+	 * Returns true if the rectangle covers at least one pixel of the buffer.
+	 * 
+	 * @param left first column of the rectangle.
+	 * @param right last column of the rectangle.
+	 * @param top first row of the rectangle.
+	 * @param bottom last row of the rectangle.
+	 */
+	public boolean intersects(int left, int right, int top, int bottom) {
+		return (left <= right) && (top <= bottom) && (right >= 0) && (left < width) && (bottom >= 0) && (top < height);
+	}
+	
+	/**
+	 * Sets the flags of the blocks that intersect the given rectangle to true.
+	 * 
+	 * @param blocks flag of each block, row by row.
+	 * @param left first column of the rectangle.
+	 * @param right last column of the rectangle.
+	 * @param top first row of the rectangle.
+	 * @param bottom last row of the rectangle.
+	 */
+	public void mark(boolean[] blocks, int left, int right, int top, int bottom) {
+		if(!intersects(left, right, top, bottom))
+			return;
+		final int blockLeft = getColumn(left);
+		final int blockRight = getColumn(right);
+		final int blockBottom = getRow(bottom);
+		for (int row = getRow(top); row <= blockBottom; row++) {
+			final int index = row * columns;
+			for (int column = blockLeft; column <= blockRight; column++) {
+				blocks[index + column] = true;
+			}
+		}
+	}
+}
@@ -47,6 +47,8 @@ public class Camera extends SceneObject {
 	private int focalLength;
 	private CameraType type;
 	private FrameBuffer renderTarget;
+	private boolean depthPrepass;
+	private boolean occlusionCulling;
 
 	public Camera(String name, Transform transform) {
 		super(name, transform);
@@ -56,6 +58,8 @@ public class Camera extends SceneObject {
 		this.focalLength = FP_ONE;
 		this.projectionMatrix = MatrixMath.indentityMatrix();
 		this.renderTarget = null;
+		this.depthPrepass = false;
+		this.occlusionCulling = false;
 		this.portedFrustum = new int[FRUSTUM_SIZE];
 		this.frustum = new int[FRUSTUM_SIZE];
 		this.frustum[FRUSTUM_LEFT] = 0;
@@ -145,4 +149,35 @@ public class Camera extends SceneObject {
 	public int[][] getProjectionMatrix() {
 		return projectionMatrix;
 	}
+	
+	public boolean hasDepthPrepass() {
+		return depthPrepass;
+	}
+
+	/**
+	 * Sets if the models are drawn twice when rendering with this camera. The first pass only 
+	 * writes the depth, the second pass then only shades the fragments that have the same depth 
+	 * as the depth buffer, so each pixel is shaded at most once.
+	 * 
+	 * @param depthPrepass
+	 */
+	public void setDepthPrepass(boolean depthPrepass) {
+		this.depthPrepass = depthPrepass;
+	}
+	
+	public boolean hasOcclusionCulling() {
+		return occlusionCulling;
+	}
+
+	/**
+	 * Sets if models and faces that are completely behind the already drawn 
+	 * geometry are skipped when rendering with this camera. The test uses the 
+	 * {@link DepthPyramid} of the render target, so it works best if the models 
+	 * are drawn from front to back or if a depth pre-pass is used.
+	 * 
+	 * @param occlusionCulling
+	 */
+	public void setOcclusionCulling(boolean occlusionCulling) {
+		this.occlusionCulling = occlusionCulling;
+	}
 }
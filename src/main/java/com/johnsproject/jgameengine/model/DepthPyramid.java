@@ -0,0 +1,219 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 John Salomon - John´s Project
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.johnsproject.jgameengine.model;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stores the smallest and biggest depth of each 8x8 and 64x64 block of a depth buffer, 
+ * so rasterizers can reject whole triangles that are behind the depth buffer.
+ * The depth buffer is only read in {@link #update()}, blocks whose pixels were written 
+ * since then have to be marked with {@link #markDirty(int, int)}. Until the next update 
+ * the stored depths of these blocks are too big, so the occlusion test stays conservative.
+ */
+public class DepthPyramid {
+	
+	public static final byte BLOCK_SHIFT = 3;
+	public static final byte LARGE_BLOCK_SHIFT = 6;
+	private static final byte LARGE_BLOCK_BLOCKS_SHIFT = LARGE_BLOCK_SHIFT - BLOCK_SHIFT;
+	
+	private final Texture depthBuffer;
+	private final BlockGrid grid;
+	private final int columns;
+	private final int rows;
+	private final int largeColumns;
+	private final int largeRows;
+	private final int[] minDepths;
+	private final int[] maxDepths;
+	private final int[] largeMinDepths;
+	private final int[] largeMaxDepths;
+	private final boolean[] dirtyBlocks;
+	private final boolean[] dirtyLargeBlocks;
+	private final AtomicInteger occludedFaceCount;
+	
+	public DepthPyramid(Texture depthBuffer) {
+		this.depthBuffer = depthBuffer;
+		this.grid = new BlockGrid(depthBuffer.getWidth(), depthBuffer.getHeight(), BLOCK_SHIFT);
+		this.columns = grid.getColumns();
+		this.rows = grid.getRows();
+		this.largeColumns = ((depthBuffer.getWidth() - 1) >> LARGE_BLOCK_SHIFT) + 1;
+		this.largeRows = ((depthBuffer.getHeight() - 1) >> LARGE_BLOCK_SHIFT) + 1;
+		this.minDepths = new int[columns * rows];
+		this.maxDepths = new int[columns * rows];
+		this.largeMinDepths = new int[largeColumns * largeRows];
+		this.largeMaxDepths = new int[largeColumns * largeRows];
+		this.dirtyBlocks = new boolean[columns * rows];
+		this.dirtyLargeBlocks = new boolean[largeColumns * largeRows];
+		this.occludedFaceCount = new AtomicInteger();
+		invalidate();
+	}
+	
+	/**
+	 * Marks every block as dirty and resets the occluded face count, 
+	 * used when the whole depth buffer was changed, for example by clearing it.
+	 */
+	public void invalidate() {
+		for (int i = 0; i < dirtyBlocks.length; i++) {
+			dirtyBlocks[i] = true;
+			maxDepths[i] = Integer.MAX_VALUE;
+		}
+		for (int i = 0; i < dirtyLargeBlocks.length; i++) {
+			dirtyLargeBlocks[i] = true;
+			largeMaxDepths[i] = Integer.MAX_VALUE;
+		}
+		occludedFaceCount.set(0);
+	}
+	
+	/**
+	 * Marks the block that contains the given pixel as dirty. 
+	 * Pixels outside of the depth buffer are clamped to its border like in {@link Texture#setPixel}.
+	 */
+	public void markDirty(int x, int y) {
+		dirtyBlocks[grid.getBlock(x, y)] = true;
+	}
+	
+	/**
+	 * Recalculates the depths of the dirty blocks from the depth buffer.
+	 */
+	public void update() {
+		final int[] depths = depthBuffer.getPixels();
+		final int width = depthBuffer.getWidth();
+		final int stride = depthBuffer.getStride();
+		final int height = depthBuffer.getHeight();
+		for (int row = 0; row < rows; row++) {
+			for (int column = 0; column < columns; column++) {
+				final int block = column + (row * columns);
+				if(!dirtyBlocks[block])
+					continue;
+				dirtyBlocks[block] = false;
+				final int left = column << BLOCK_SHIFT;
+				final int right = Math.min(left + (1 << BLOCK_SHIFT), width);
+				final int top = row << BLOCK_SHIFT;
+				final int bottom = Math.min(top + (1 << BLOCK_SHIFT), height);
+				int min = Integer.MAX_VALUE;
+				int max = Integer.MIN_VALUE;
+				for (int y = top; y < bottom; y++) {
+					for (int x = left; x < right; x++) {
+						final int depth = depths[x + (y * stride)];
+						min = Math.min(min, depth);
+						max = Math.max(max, depth);
+					}
+				}
+				minDepths[block] = min;
+				maxDepths[block] = max;
+				dirtyLargeBlocks[(column >> LARGE_BLOCK_BLOCKS_SHIFT) + ((row >> LARGE_BLOCK_BLOCKS_SHIFT) * largeColumns)] = true;
+			}
+		}
+		for (int largeRow = 0; largeRow < largeRows; largeRow++) {
+			for (int largeColumn = 0; largeColumn < largeColumns; largeColumn++) {
+				final int largeBlock = largeColumn + (largeRow * largeColumns);
+				if(!dirtyLargeBlocks[largeBlock])
+					continue;
+				dirtyLargeBlocks[largeBlock] = false;
+				final int left = largeColumn << LARGE_BLOCK_BLOCKS_SHIFT;
+				final int right = Math.min(left + (1 << LARGE_BLOCK_BLOCKS_SHIFT), columns);
+				final int top = largeRow << LARGE_BLOCK_BLOCKS_SHIFT;
+				final int bottom = Math.min(top + (1 << LARGE_BLOCK_BLOCKS_SHIFT), rows);
+				int min = Integer.MAX_VALUE;
+				int max = Integer.MIN_VALUE;
+				for (int row = top; row < bottom; row++) {
+					for (int column = left; column < right; column++) {
+						final int block = column + (row * columns);
+						min = Math.min(min, minDepths[block]);
+						max = Math.max(max, maxDepths[block]);
+					}
+				}
+				largeMinDepths[largeBlock] = min;
+				largeMaxDepths[largeBlock] = max;
+			}
+		}
+	}
+	
+	/**
+	 * Returns true if every pixel of the rectangle is nearer than the given depth. 
+	 * The rectangle is clamped to the depth buffer.
+	 * 
+	 * @param left first column of the rectangle.
+	 * @param right last column of the rectangle.
+	 * @param top first row of the rectangle.
+	 * @param bottom last row of the rectangle.
+	 * @param depth smallest depth of the tested geometry.
+	 */
+	public boolean isOccluded(int left, int right, int top, int bottom, int depth) {
+		if(!grid.intersects(left, right, top, bottom))
+			return false;
+		final int blockLeft = grid.getColumn(left);
+		final int blockRight = grid.getColumn(right);
+		final int blockTop = grid.getRow(top);
+		final int blockBottom = grid.getRow(bottom);
+		for (int largeRow = blockTop >> LARGE_BLOCK_BLOCKS_SHIFT; largeRow <= blockBottom >> LARGE_BLOCK_BLOCKS_SHIFT; largeRow++) {
+			for (int largeColumn = blockLeft >> LARGE_BLOCK_BLOCKS_SHIFT; largeColumn <= blockRight >> LARGE_BLOCK_BLOCKS_SHIFT; largeColumn++) {
+				if(largeMaxDepths[largeColumn + (largeRow * largeColumns)] < depth)
+					continue;
+				final int rowStart = Math.max(blockTop, largeRow << LARGE_BLOCK_BLOCKS_SHIFT);
+				final int rowEnd = Math.min(blockBottom, ((largeRow + 1) << LARGE_BLOCK_BLOCKS_SHIFT) - 1);
+				final int columnStart = Math.max(blockLeft, largeColumn << LARGE_BLOCK_BLOCKS_SHIFT);
+				final int columnEnd = Math.min(blockRight, ((largeColumn + 1) << LARGE_BLOCK_BLOCKS_SHIFT) - 1);
+				for (int row = rowStart; row <= rowEnd; row++) {
+					for (int column = columnStart; column <= columnEnd; column++) {
+						if(maxDepths[column + (row * columns)] >= depth)
+							return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+	
+	public void addOccludedFace() {
+		occludedFaceCount.incrementAndGet();
+	}
+	
+	/**
+	 * Returns how many faces were rejected since the last {@link #invalidate()}.
+	 */
+	public int getOccludedFaceCount() {
+		return occludedFaceCount.get();
+	}
+	
+	public int getMinDepth(int x, int y) {
+		return minDepths[(x >> BLOCK_SHIFT) + ((y >> BLOCK_SHIFT) * columns)];
+	}
+	
+	public int getMaxDepth(int x, int y) {
+		return maxDepths[(x >> BLOCK_SHIFT) + ((y >> BLOCK_SHIFT) * columns)];
+	}
+	
+	public int getLargeMinDepth(int x, int y) {
+		return largeMinDepths[(x >> LARGE_BLOCK_SHIFT) + ((y >> LARGE_BLOCK_SHIFT) * largeColumns)];
+	}
+	
+	public int getLargeMaxDepth(int x, int y) {
+		return largeMaxDepths[(x >> LARGE_BLOCK_SHIFT) + ((y >> LARGE_BLOCK_SHIFT) * largeColumns)];
+	}
+	
+	public Texture getDepthBuffer() {
+		return depthBuffer;
+	}
+}
@@ -29,40 +29,42 @@ import com.johnsproject.jgameengine.shader.GeometryBuffer;
 public class Face {
 		
 	private final int index;
-	private final Vertex[] vertices;
-	private final int[] normal;
-	private final int[][] uvs;
 	private final Material material;
 	private GeometryBuffer buffer;
+	// only used until the face is packed into a mesh
+	private Vertex[] vertices;
+	private int[] normal;
+	private int[][] uvs;
+	private Mesh mesh;
+	private int meshIndex;
 
 	public Face(int index, int[] normal, Vertex vertex1, Vertex vertex2, Vertex vertex3, Material material, int[] uv1, int[] uv2, int[] uv3) {
 		this.index = index;
-		this.vertices = new Vertex[3];
-		this.vertices[0] = vertex1;
-		this.vertices[1] = vertex2;
-		this.vertices[2] = vertex3;
+		this.vertices = new Vertex[] {vertex1, vertex2, vertex3};
 		this.normal = normal;
-		this.uvs = new int[3][4];
-		this.uvs[0] = uv1;
-		this.uvs[1] = uv2;
-		this.uvs[2] = uv3;
+		this.uvs = new int[][] {uv1, uv2, uv3};
 		this.material = material;
 		this.buffer = new GeometryBuffer();
 	}
 	
 	public Face(int index, int[] normal, Vertex vertex1, Vertex vertex2, Vertex vertex3, Material material) {
+		this(index, normal, vertex1, vertex2, vertex3, material, null, null, null);
+	}
+	
+	Face(int index, Material material, Mesh mesh) {
 		this.index = index;
-		this.vertices = new Vertex[3];
-		this.vertices[0] = vertex1;
-		this.vertices[1] = vertex2;
-		this.vertices[2] = vertex3;
-		this.normal = normal;
-		this.uvs = new int[3][4];
-		this.uvs[0] = VectorMath.emptyVector();
-		this.uvs[1] = VectorMath.emptyVector();
-		this.uvs[2] = VectorMath.emptyVector();
 		this.material = material;
 		this.buffer = new GeometryBuffer();
+		this.mesh = mesh;
+		this.meshIndex = index;
+	}
+	
+	void pack(Mesh mesh, int meshIndex) {
+		this.mesh = mesh;
+		this.meshIndex = meshIndex;
+		this.vertices = null;
+		this.normal = null;
+		this.uvs = null;
 	}
 
 	public int getIndex() {
@@ -70,23 +72,50 @@ public class Face {
 	}
 
 	public Vertex getVertex(int index) {
-		return vertices[index];
+		if(mesh == null)
+			return vertices[index];
+		return mesh.getVertex(mesh.getFaceVertices()[(meshIndex * 3) + index]);
 	}
 	
 	public Vertex[] getVertices() {
-		return vertices;
+		if(mesh == null)
+			return vertices;
+		return new Vertex[] {getVertex(0), getVertex(1), getVertex(2)};
 	}
 
+	/**
+	 * Returns the normal of this face. After the face has been added to a {@link Mesh} 
+	 * the normal is stored in {@link Mesh#getFaceNormals()} and this method returns a copy of it.
+	 * <p>
+	 * Breaking change: earlier versions returned the array held by the face, so writes to it 
+	 * changed the mesh. Writes to the returned copy are lost, write to {@link Mesh#getFaceNormals()} instead.
+	 * 
+	 * @return the normal of this face.
+	 */
 	public int[] getNormal() {
-		return normal;
+		if(mesh == null)
+			return normal;
+		return mesh.getFaceNormal(meshIndex, VectorMath.emptyVector());
 	}
 	
+	/**
+	 * Returns the uv of the given vertex of this face. After the face has been added to a {@link Mesh} 
+	 * the uvs are stored in {@link Mesh#getFaceUVs()} and this method returns a copy of it.
+	 * <p>
+	 * Breaking change: earlier versions returned the array held by the face, so writes to it 
+	 * changed the mesh. Writes to the returned copy are lost, write to {@link Mesh#getFaceUVs()} instead.
+	 * 
+	 * @param index of the vertex.
+	 * @return the uv of the vertex.
+	 */
 	public int[] getUV(int index) {
-		return uvs[index];
+		if(mesh == null)
+			return (uvs[index] == null) ? VectorMath.emptyVector() : uvs[index];
+		return mesh.getFaceUV(meshIndex, index, VectorMath.emptyVector());
 	}
 
 	public int[][] getUVs() {
-		return uvs;
+		return new int[][] {getUV(0), getUV(1), getUV(2)};
 	}
 
 	public Material getMaterial() {
@@ -25,16 +25,26 @@ package com.johnsproject.jgameengine.model;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
+import java.util.Arrays;
 
 import com.johnsproject.jgameengine.math.ColorMath;
 
 public class FrameBuffer {
 
+	public static final byte DIRTY_BLOCK_SHIFT = 5;
+	
 	private final int[] size;
 	private final BufferedImage image;
 	private final Texture colorBuffer;
 	private final Texture depthBuffer;
 	private final Texture stencilBuffer;
+	private final DepthPyramid depthPyramid;
+	private Texture albedoBuffer;
+	private Texture materialBuffer;
+	private Texture[] worldLocationBuffers;
+	private Texture[] worldNormalBuffers;
+	private final BlockGrid dirtyGrid;
+	private final boolean[] dirtyBlocks;
 
 	public FrameBuffer(BufferedImage image) {
 		this.size = new int[] {image.getWidth(), image.getHeight(), 0, 0};
@@ -44,6 +54,10 @@ public class FrameBuffer {
 		this.colorBuffer = new Texture(size[0], size[1], pixelBuffer);
 		this.depthBuffer = new Texture(size[0], size[1]);
 		this.stencilBuffer = new Texture(size[0], size[1]);
+		this.depthPyramid = new DepthPyramid(depthBuffer);
+		this.dirtyGrid = new BlockGrid(size[0], size[1], DIRTY_BLOCK_SHIFT);
+		this.dirtyBlocks = new boolean[dirtyGrid.getBlockCount()];
+		markDirty();
 	}
 	
 	public FrameBuffer(int width, int height) {
@@ -54,6 +68,10 @@ public class FrameBuffer {
 		this.colorBuffer = new Texture(width, height, pixelBuffer);
 		this.depthBuffer = new Texture(width, height);
 		this.stencilBuffer = new Texture(width, height);
+		this.depthPyramid = new DepthPyramid(depthBuffer);
+		this.dirtyGrid = new BlockGrid(width, height, DIRTY_BLOCK_SHIFT);
+		this.dirtyBlocks = new boolean[dirtyGrid.getBlockCount()];
+		markDirty();
 	}
 
 	public BufferedImage getImage() {
@@ -71,6 +89,133 @@ public class FrameBuffer {
 	public Texture getStencilBuffer() {
 		return stencilBuffer;
 	}
+	
+	public DepthPyramid getDepthPyramid() {
+		return depthPyramid;
+	}
+	
+	/**
+	 * Marks the 32x32 blocks that intersect the given rectangle as drawn, so the next {@link #clear()} resets them. 
+	 * The rectangle is clamped to this frame buffer. The rasterizers mark the triangles they draw, 
+	 * other code that writes into the color or depth buffer has to mark the written pixels too.
+	 * 
+	 * @param left first column of the rectangle.
+	 * @param right last column of the rectangle.
+	 * @param top first row of the rectangle.
+	 * @param bottom last row of the rectangle.
+	 */
+	public void markDirty(int left, int right, int top, int bottom) {
+		dirtyGrid.mark(dirtyBlocks, left, right, top, bottom);
+	}
+	
+	/**
+	 * Marks every pixel as drawn, so the next {@link #clear()} resets the whole frame buffer.
+	 */
+	public void markDirty() {
+		Arrays.fill(dirtyBlocks, true);
+	}
+	
+	/**
+	 * Sets the color buffer to 0 and the depth buffer to {@link Integer#MAX_VALUE} in the blocks 
+	 * marked as drawn since the last clear. The other pixels still have these values, so this 
+	 * is the same as filling both buffers, but a frame that only covers a part of the screen is 
+	 * cleared faster. The stencil buffer isn't cleared, it's cleared by the depth pre-pass that uses it.
+	 */
+	public void clear() {
+		final int dirtyColumns = dirtyGrid.getColumns();
+		final int dirtyRows = dirtyGrid.getRows();
+		for (int row = 0; row < dirtyRows; row++) {
+			final int index = row * dirtyColumns;
+			final int top = row << DIRTY_BLOCK_SHIFT;
+			final int bottom = Math.min(top + (1 << DIRTY_BLOCK_SHIFT), size[1]) - 1;
+			int column = 0;
+			while(column < dirtyColumns) {
+				if(!dirtyBlocks[index + column]) {
+					column++;
+					continue;
+				}
+				// neighbouring dirty blocks are filled together, so each row is filled with a single call
+				final int first = column;
+				while((column < dirtyColumns) && dirtyBlocks[index + column]) {
+					dirtyBlocks[index + column] = false;
+					column++;
+				}
+				final int left = first << DIRTY_BLOCK_SHIFT;
+				final int right = Math.min(column << DIRTY_BLOCK_SHIFT, size[0]) - 1;
+				colorBuffer.fill(0, left, right, top, bottom);
+				depthBuffer.fill(Integer.MAX_VALUE, left, right, top, bottom);
+			}
+		}
+	}
+	
+	/**
+	 * Returns how many pixels the next {@link #clear()} resets.
+	 */
+	public int getDirtyArea() {
+		final int dirtyColumns = dirtyGrid.getColumns();
+		final int dirtyRows = dirtyGrid.getRows();
+		int area = 0;
+		for (int row = 0; row < dirtyRows; row++) {
+			final int height = Math.min((row + 1) << DIRTY_BLOCK_SHIFT, size[1]) - (row << DIRTY_BLOCK_SHIFT);
+			for (int column = 0; column < dirtyColumns; column++) {
+				if(dirtyBlocks[column + (row * dirtyColumns)]) {
+					final int width = Math.min((column + 1) << DIRTY_BLOCK_SHIFT, size[0]) - (column << DIRTY_BLOCK_SHIFT);
+					area += width * height;
+				}
+			}
+		}
+		return area;
+	}
+
+	/**
+	 * Creates the planes of the geometry buffer used by deferred shading, if they don't exist yet. 
+	 * They store for each pixel the albedo, the deferred material, the world location and 
+	 * the world normal. The depth is stored in the depth buffer.
+	 */
+	public void createDeferredBuffers() {
+		if(albedoBuffer != null)
+			return;
+		final int width = size[0];
+		final int height = size[1];
+		albedoBuffer = new Texture(width, height);
+		materialBuffer = new Texture(width, height);
+		worldLocationBuffers = new Texture[3];
+		worldNormalBuffers = new Texture[3];
+		for (int i = 0; i < 3; i++) {
+			worldLocationBuffers[i] = new Texture(width, height);
+			worldNormalBuffers[i] = new Texture(width, height);
+		}
+	}
+	
+	public boolean hasDeferredBuffers() {
+		return albedoBuffer != null;
+	}
+	
+	public Texture getAlbedoBuffer() {
+		return albedoBuffer;
+	}
+	
+	/**
+	 * Returns the plane that stores which deferred material each pixel uses. 
+	 * 0 means that the pixel was already shaded when it was drawn.
+	 */
+	public Texture getMaterialBuffer() {
+		return materialBuffer;
+	}
+	
+	/**
+	 * Returns the x, y and z planes of the world locations.
+	 */
+	public Texture[] getWorldLocationBuffers() {
+		return worldLocationBuffers;
+	}
+	
+	/**
+	 * Returns the x, y and z planes of the world normals.
+	 */
+	public Texture[] getWorldNormalBuffers() {
+		return worldNormalBuffers;
+	}
 
 	public int getWidth() {
 		return size[0];
@@ -32,6 +32,7 @@ public class Light extends SceneObject {
 	public static final String MAIN_DIRECTIONAL_LIGHT_TAG = "MainDirectionalLight";
 	public static final String MAIN_SPOT_LIGHT_TAG = "MainSpotLight";
 	public static final String MAIN_POINT_LIGHT_TAG = "MainPointLight";
+	public static final int INFINITE_RANGE = Integer.MAX_VALUE;
 	
 	private LightType type;
 	private int strength;
@@ -40,6 +41,8 @@ public class Light extends SceneObject {
 	private int[] direction;
 	private int spotSize;
 	private int spotSoftness;
+	private int range;
+	private int shadowSize;
 	
 	public Light(String name, Transform transform) {
 		super(name, transform);
@@ -50,6 +53,8 @@ public class Light extends SceneObject {
 		this.direction = VectorMath.VECTOR_DOWN;
 		this.spotSize = 60 * FixedPointMath.FP_ONE;
 		this.spotSoftness = 800;
+		this.range = INFINITE_RANGE;
+		this.shadowSize = 0;
 	}
 
 	public LightType getType() {
@@ -107,4 +112,56 @@ public class Light extends SceneObject {
 	public void setSpotSoftness(int spotSoftness) {
 		this.spotSoftness = spotSoftness;
 	}
+
+	public int getRange() {
+		return range;
+	}
+
+	/**
+	 * Sets the distance at which point and spot lights stop lighting surfaces. 
+	 * Lights with a finite range are only shaded for the screen tiles their range touches, 
+	 * so scenes with many small lights should set it. The default is {@link #INFINITE_RANGE}.
+	 * 
+	 * @param range fixed point distance.
+	 */
+	public void setRange(int range) {
+		this.range = range;
+	}
+
+	public int getShadowSize() {
+		return shadowSize;
+	}
+
+	/**
+	 * Sets the width and height of the shadow map of this light, each face of the shadow cube of a 
+	 * point light has this size. The shadow map is taken from the shadow atlas and can get smaller 
+	 * if the light covers a small part of the screen or the atlas is full. The default is 0, 
+	 * which uses 512 for directional lights and 256 for spot and point lights.
+	 * 
+	 * @param shadowSize a power of two, or 0.
+	 */
+	public void setShadowSize(int shadowSize) {
+		this.shadowSize = shadowSize;
+	}
+	
+	/**
+	 * Returns true if the location is inside of the range of this light. 
+	 * Directional lights light every location.
+	 * 
+	 * @param location world space location.
+	 * @return true if this light can light the location.
+	 */
+	public boolean isInRange(int[] location) {
+		if((range == INFINITE_RANGE) || (type == LightType.DIRECTIONAL))
+			return true;
+		final int[] lightLocation = transform.getLocation();
+		final long x = (long) location[VectorMath.VECTOR_X] - lightLocation[VectorMath.VECTOR_X];
+		final long y = (long) location[VectorMath.VECTOR_Y] - lightLocation[VectorMath.VECTOR_Y];
+		final long z = (long) location[VectorMath.VECTOR_Z] - lightLocation[VectorMath.VECTOR_Z];
+		if((Math.abs(x) > range) || (Math.abs(y) > range) || (Math.abs(z) > range))
+			return false;
+		// halved so the sum of the squares fits into a long
+		final long halfRange = (range >> 1) + 1;
+		return ((x >> 1) * (x >> 1)) + ((y >> 1) * (y >> 1)) + ((z >> 1) * (z >> 1)) <= halfRange * halfRange;
+	}
 }
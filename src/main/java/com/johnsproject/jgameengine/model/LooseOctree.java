@@ -0,0 +1,384 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 John Salomon - John´s Project
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.johnsproject.jgameengine.model;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.johnsproject.jgameengine.math.FixedPointMath;
+import com.johnsproject.jgameengine.math.TransformationMath;
+import com.johnsproject.jgameengine.math.VectorMath;
+
+/**
+ * A loose octree of the objects of a {@link Scene}. Each object is stored in the deepest 
+ * node whose cell contains the center of the object and whose size is at least the radius 
+ * of the object, the bounds of a node are twice the size of its cell so the objects never 
+ * stick out of them. Objects outside of the root cell are kept in the root node.
+ * <br>
+ * The index follows the transforms of the objects, it listens to them and every query 
+ * first moves the objects whose transform changed since the last query.
+ */
+public class LooseOctree {
+	
+	public static final int DEFAULT_HALF_SIZE = FixedPointMath.toFixedPoint(1024);
+	public static final int DEFAULT_MAX_DEPTH = 8;
+	
+	// sqrt(3), the ratio between the bounding sphere radius of a cube and half its size
+	private static final int SQRT_3 = FixedPointMath.toFixedPoint(1.7320508f);
+	
+	private final Node root;
+	private final int maxDepth;
+	private final Map<SceneObject, Entry> entries;
+	private final List<Entry> movedEntries;
+	private final int[] vectorCache;
+	
+	public LooseOctree() {
+		this(DEFAULT_HALF_SIZE, DEFAULT_MAX_DEPTH);
+	}
+	
+	/**
+	 * Creates an octree whose root cell is centered at the origin.
+	 * 
+	 * @param halfSize half of the size of the root cell.
+	 * @param maxDepth how many times the root cell can be split.
+	 */
+	public LooseOctree(int halfSize, int maxDepth) {
+		this.root = new Node(null, 0, 0, 0, halfSize);
+		this.maxDepth = maxDepth;
+		this.entries = new IdentityHashMap<SceneObject, Entry>();
+		this.movedEntries = new ArrayList<Entry>();
+		this.vectorCache = VectorMath.emptyVector();
+	}
+	
+	public void insert(SceneObject sceneObject) {
+		if(entries.containsKey(sceneObject))
+			return;
+		final Entry entry = new Entry(sceneObject);
+		entries.put(sceneObject, entry);
+		calculateBounds(entry);
+		findNode(entry).add(entry);
+		sceneObject.getTransform().addTransformListener(entry);
+	}
+	
+	public void remove(SceneObject sceneObject) {
+		final Entry entry = entries.remove(sceneObject);
+		if(entry != null) {
+			sceneObject.getTransform().removeTransformListener(entry);
+			entry.node.remove(entry);
+		}
+	}
+	
+	public boolean contains(SceneObject sceneObject) {
+		return entries.containsKey(sceneObject);
+	}
+	
+	public int size() {
+		return entries.size();
+	}
+	
+	/**
+	 * Moves the objects whose transform changed to the nodes that fit their new bounds. 
+	 * This is called by the queries, so it's only needed to do the work at a specific time. 
+	 * Only the moved objects are visited, not all objects of the octree.
+	 */
+	public void update() {
+		for (int i = 0; i < movedEntries.size(); i++) {
+			final Entry entry = movedEntries.get(i);
+			entry.moved = false;
+			// removed objects can still be in the list
+			if(entry.node == null)
+				continue;
+			calculateBounds(entry);
+			final Node node = findNode(entry);
+			if(node != entry.node) {
+				entry.node.remove(entry);
+				node.add(entry);
+			}
+		}
+		movedEntries.clear();
+	}
+	
+	/**
+	 * Adds the objects whose bounding sphere intersects the given sphere to the result list.
+	 * 
+	 * @param center center of the sphere.
+	 * @param radius radius of the sphere.
+	 * @param result list the objects are added to.
+	 * @return the result list.
+	 */
+	public List<SceneObject> querySphere(int[] center, int radius, List<SceneObject> result) {
+		update();
+		querySphere(root, center, radius, result);
+		return result;
+	}
+	
+	private void querySphere(Node node, int[] center, int radius, List<SceneObject> result) {
+		if((node != root) && !intersects(node.x, node.y, node.z, node.getRadius(), center, radius))
+			return;
+		for (int i = 0; i < node.entries.size(); i++) {
+			final Entry entry = node.entries.get(i);
+			if(intersects(entry.center[0], entry.center[1], entry.center[2], entry.radius, center, radius)) {
+				result.add(entry.sceneObject);
+			}
+		}
+		if(node.children != null) {
+			for (int i = 0; i < node.children.length; i++) {
+				final Node child = node.children[i];
+				if((child != null) && (child.count > 0)) {
+					querySphere(child, center, radius, result);
+				}
+			}
+		}
+	}
+	
+	private boolean intersects(int x, int y, int z, int radius, int[] center, int sphereRadius) {
+		final long distanceX = ((long) center[VectorMath.VECTOR_X] - x) >> 1;
+		final long distanceY = ((long) center[VectorMath.VECTOR_Y] - y) >> 1;
+		final long distanceZ = ((long) center[VectorMath.VECTOR_Z] - z) >> 1;
+		// the values are halved so the squares fit into a long
+		final long range = ((long) radius + sphereRadius) >> 1;
+		return (distanceX * distanceX) + (distanceY * distanceY) + (distanceZ * distanceZ) <= (range + 1) * (range + 1);
+	}
+	
+	/**
+	 * Adds the objects whose bounding sphere is inside of the frustum of the camera to the result list. 
+	 * The camera needs a render target, its ported frustum is used for the test.
+	 * 
+	 * @param camera camera whose frustum is tested.
+	 * @param result list the objects are added to.
+	 * @return the result list.
+	 */
+	public List<SceneObject> queryFrustum(Camera camera, List<SceneObject> result) {
+		update();
+		queryFrustum(root, camera, result);
+		return result;
+	}
+	
+	private void queryFrustum(Node node, Camera camera, List<SceneObject> result) {
+		if((node != root) && isOutside(node.x, node.y, node.z, node.getRadius(), camera))
+			return;
+		for (int i = 0; i < node.entries.size(); i++) {
+			final Entry entry = node.entries.get(i);
+			if(!isOutside(entry.center[0], entry.center[1], entry.center[2], entry.radius, camera)) {
+				result.add(entry.sceneObject);
+			}
+		}
+		if(node.children != null) {
+			for (int i = 0; i < node.children.length; i++) {
+				final Node child = node.children[i];
+				if((child != null) && (child.count > 0)) {
+					queryFrustum(child, camera, result);
+				}
+			}
+		}
+	}
+	
+	private boolean isOutside(int x, int y, int z, int radius, Camera camera) {
+		vectorCache[VectorMath.VECTOR_X] = x;
+		vectorCache[VectorMath.VECTOR_Y] = y;
+		vectorCache[VectorMath.VECTOR_Z] = z;
+		vectorCache[VectorMath.VECTOR_W] = FixedPointMath.FP_ONE;
+		VectorMath.multiply(vectorCache, camera.getTransform().getSpaceEnterMatrix());
+		return TransformationMath.isOutsideFrustum(vectorCache, radius, camera.getRenderTargetPortedFrustum(), 
+				camera.getFocalLength(), camera.getType());
+	}
+	
+	/**
+	 * Adds the objects whose bounding sphere is hit by the ray to the result list.
+	 * 
+	 * @param origin origin of the ray.
+	 * @param direction normalized direction of the ray.
+	 * @param length length of the ray.
+	 * @param result list the objects are added to.
+	 * @return the result list.
+	 */
+	public List<SceneObject> queryRay(int[] origin, int[] direction, int length, List<SceneObject> result) {
+		update();
+		queryRay(root, origin, direction, length, result);
+		return result;
+	}
+	
+	private void queryRay(Node node, int[] origin, int[] direction, int length, List<SceneObject> result) {
+		if((node != root) && !intersects(node.x, node.y, node.z, node.getRadius(), origin, direction, length))
+			return;
+		for (int i = 0; i < node.entries.size(); i++) {
+			final Entry entry = node.entries.get(i);
+			if(intersects(entry.center[0], entry.center[1], entry.center[2], entry.radius, origin, direction, length)) {
+				result.add(entry.sceneObject);
+			}
+		}
+		if(node.children != null) {
+			for (int i = 0; i < node.children.length; i++) {
+				final Node child = node.children[i];
+				if((child != null) && (child.count > 0)) {
+					queryRay(child, origin, direction, length, result);
+				}
+			}
+		}
+	}
+	
+	private boolean intersects(int x, int y, int z, int radius, int[] origin, int[] direction, int length) {
+		final long toCenterX = (long) x - origin[VectorMath.VECTOR_X];
+		final long toCenterY = (long) y - origin[VectorMath.VECTOR_Y];
+		final long toCenterZ = (long) z - origin[VectorMath.VECTOR_Z];
+		// distance along the ray to the point closest to the center of the sphere
+		long distance = (toCenterX * direction[VectorMath.VECTOR_X]) >> FixedPointMath.FP_BIT;
+		distance += (toCenterY * direction[VectorMath.VECTOR_Y]) >> FixedPointMath.FP_BIT;
+		distance += (toCenterZ * direction[VectorMath.VECTOR_Z]) >> FixedPointMath.FP_BIT;
+		distance = Math.max(0, Math.min(length, distance));
+		final long closestX = toCenterX - ((distance * direction[VectorMath.VECTOR_X]) >> FixedPointMath.FP_BIT);
+		final long closestY = toCenterY - ((distance * direction[VectorMath.VECTOR_Y]) >> FixedPointMath.FP_BIT);
+		final long closestZ = toCenterZ - ((distance * direction[VectorMath.VECTOR_Z]) >> FixedPointMath.FP_BIT);
+		final long squaredDistance = ((closestX >> 1) * (closestX >> 1)) + ((closestY >> 1) * (closestY >> 1)) + ((closestZ >> 1) * (closestZ >> 1));
+		final long range = (radius >> 1) + 1;
+		return squaredDistance <= range * range;
+	}
+	
+	private void calculateBounds(Entry entry) {
+		final SceneObject sceneObject = entry.sceneObject;
+		final Transform transform = sceneObject.getTransform();
+		if(sceneObject instanceof Model) {
+			final Mesh mesh = ((Model) sceneObject).getMesh();
+			VectorMath.copy(entry.center, mesh.getBoundsCenter());
+			entry.radius = TransformationMath.spaceExitSphere(entry.center, mesh.getBoundsRadius(), transform);
+		} else {
+			VectorMath.copy(entry.center, transform.getLocation());
+			entry.radius = 0;
+		}
+	}
+	
+	private Node findNode(Entry entry) {
+		final int x = entry.center[VectorMath.VECTOR_X];
+		final int y = entry.center[VectorMath.VECTOR_Y];
+		final int z = entry.center[VectorMath.VECTOR_Z];
+		final long halfSize = root.halfSize;
+		if((Math.abs((long) x) > halfSize) || (Math.abs((long) y) > halfSize) || (Math.abs((long) z) > halfSize))
+			return root;
+		Node node = root;
+		for (int depth = 0; depth < maxDepth; depth++) {
+			final int childHalfSize = node.halfSize >> 1;
+			if((childHalfSize == 0) || (entry.radius > childHalfSize))
+				break;
+			int index = 0;
+			int childX = node.x - childHalfSize;
+			int childY = node.y - childHalfSize;
+			int childZ = node.z - childHalfSize;
+			if(x >= node.x) {
+				index |= 1;
+				childX = node.x + childHalfSize;
+			}
+			if(y >= node.y) {
+				index |= 2;
+				childY = node.y + childHalfSize;
+			}
+			if(z >= node.z) {
+				index |= 4;
+				childZ = node.z + childHalfSize;
+			}
+			if(node.children == null) {
+				node.children = new Node[8];
+			}
+			if(node.children[index] == null) {
+				node.children[index] = new Node(node, childX, childY, childZ, childHalfSize);
+			}
+			node = node.children[index];
+		}
+		return node;
+	}
+	
+	private static class Node {
+		
+		private final Node parent;
+		private final int x;
+		private final int y;
+		private final int z;
+		private final int halfSize;
+		private final List<Entry> entries;
+		private Node[] children;
+		// number of objects in this node and its children
+		private int count;
+		
+		public Node(Node parent, int x, int y, int z, int halfSize) {
+			this.parent = parent;
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.halfSize = halfSize;
+			this.entries = new ArrayList<Entry>(0);
+		}
+		
+		/**
+		 * Returns the radius of the sphere around the loose bounds of this node, they are twice the size of the cell.
+		 */
+		public int getRadius() {
+			return FixedPointMath.multiply((long) halfSize << 1, SQRT_3) + 1;
+		}
+		
+		public void add(Entry entry) {
+			entry.node = this;
+			entry.index = entries.size();
+			entries.add(entry);
+			for (Node node = this; node != null; node = node.parent) {
+				node.count++;
+			}
+		}
+		
+		public void remove(Entry entry) {
+			// the last entry takes the place of the removed one, so the removal doesn't need to shift the list
+			final Entry last = entries.remove(entries.size() - 1);
+			if(last != entry) {
+				entries.set(entry.index, last);
+				last.index = entry.index;
+			}
+			entry.node = null;
+			for (Node node = this; node != null; node = node.parent) {
+				node.count--;
+			}
+		}
+	}
+	
+	private class Entry implements TransformListener {
+		
+		private final SceneObject sceneObject;
+		private final int[] center;
+		private int radius;
+		private boolean moved;
+		private Node node;
+		private int index;
+		
+		public Entry(SceneObject sceneObject) {
+			this.sceneObject = sceneObject;
+			this.center = VectorMath.emptyVector();
+		}
+		
+		public void transformChanged(Transform transform) {
+			if(!moved) {
+				moved = true;
+				movedEntries.add(this);
+			}
+		}
+	}
+}
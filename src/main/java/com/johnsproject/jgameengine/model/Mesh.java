@@ -23,7 +23,10 @@
  */
 package com.johnsproject.jgameengine.model;
 
+import java.util.IdentityHashMap;
+
 import com.johnsproject.jgameengine.math.ColorMath;
+import com.johnsproject.jgameengine.math.TransformationMath;
 import com.johnsproject.jgameengine.math.VectorMath;
 import com.johnsproject.jgameengine.shader.FlatSpecularShader;
 import com.johnsproject.jgameengine.shader.SpecularProperties;
@@ -33,11 +36,30 @@ public class Mesh {
 	private final Vertex[] vertices;
 	private final Face[] faces;
 	private final Material[] materials;
+	private final int[] locations;
+	private final int[] normals;
+	private final int[] faceVertices;
+	private final int[] faceNormals;
+	private final int[] faceUVs;
+	private final int[] boundsMin;
+	private final int[] boundsMax;
+	private final int[] boundsCenter;
+	private int boundsRadius;
 	
 	public Mesh(Vertex[] vertices, Face[] faces, Material[] materials) {
 		this.vertices = vertices;
 		this.faces = faces;
 		this.materials = materials;
+		this.locations = new int[vertices.length * VectorMath.VECTOR_SIZE];
+		this.normals = new int[vertices.length * VectorMath.VECTOR_SIZE];
+		this.faceVertices = new int[faces.length * 3];
+		this.faceNormals = new int[faces.length * VectorMath.VECTOR_SIZE];
+		this.faceUVs = new int[faces.length * 3 * VectorMath.VECTOR_SIZE];
+		this.boundsMin = VectorMath.emptyVector();
+		this.boundsMax = VectorMath.emptyVector();
+		this.boundsCenter = VectorMath.emptyVector();
+		pack();
+		calculateBounds();
 	}
 	
 	public Mesh(int[][] vertices, int[][] faces, int[][] materials) {
@@ -71,6 +93,99 @@ public class Mesh {
 			int[] normal = new int[4];
 			this.faces[i] = new Face(i, normal, vertex1, vertex2, vertex3, material);
 		}
+		this.locations = new int[vertices.length * VectorMath.VECTOR_SIZE];
+		this.normals = new int[vertices.length * VectorMath.VECTOR_SIZE];
+		this.faceVertices = new int[faces.length * 3];
+		this.faceNormals = new int[faces.length * VectorMath.VECTOR_SIZE];
+		this.faceUVs = new int[faces.length * 3 * VectorMath.VECTOR_SIZE];
+		this.boundsMin = VectorMath.emptyVector();
+		this.boundsMax = VectorMath.emptyVector();
+		this.boundsCenter = VectorMath.emptyVector();
+		pack();
+		calculateBounds();
+	}
+	
+	/**
+	 * Creates a mesh from arrays that are already packed the way {@link #getLocations()}, 
+	 * {@link #getNormals()}, {@link #getFaceVertices()}, {@link #getFaceNormals()} and 
+	 * {@link #getFaceUVs()} describe them. The arrays are used directly, not copied.
+	 * 
+	 * @param locations packed vertex locations.
+	 * @param normals packed vertex normals.
+	 * @param vertexMaterials index of the material of each vertex.
+	 * @param faceVertices packed face vertex indices.
+	 * @param faceNormals packed face normals.
+	 * @param faceUVs packed face uvs.
+	 * @param faceMaterials index of the material of each face.
+	 * @param materials materials of the mesh.
+	 */
+	public Mesh(int[] locations, int[] normals, int[] vertexMaterials, int[] faceVertices, 
+			int[] faceNormals, int[] faceUVs, int[] faceMaterials, Material[] materials) {
+		this.materials = materials;
+		this.locations = locations;
+		this.normals = normals;
+		this.faceVertices = faceVertices;
+		this.faceNormals = faceNormals;
+		this.faceUVs = faceUVs;
+		this.vertices = new Vertex[vertexMaterials.length];
+		for (int i = 0; i < vertices.length; i++) {
+			vertices[i] = new Vertex(i, materials[vertexMaterials[i]], this);
+		}
+		this.faces = new Face[faceMaterials.length];
+		for (int i = 0; i < faces.length; i++) {
+			faces[i] = new Face(i, materials[faceMaterials[i]], this);
+		}
+		this.boundsMin = VectorMath.emptyVector();
+		this.boundsMax = VectorMath.emptyVector();
+		this.boundsCenter = VectorMath.emptyVector();
+		calculateBounds();
+	}
+	
+	/**
+	 * Copies the vectors of the vertices and faces into the packed arrays of this mesh. 
+	 * After that the vertices and faces only read their data from the mesh, 
+	 * so their own vectors can be garbage collected.
+	 */
+	private void pack() {
+		final IdentityHashMap<Vertex, Integer> vertexIndices = new IdentityHashMap<Vertex, Integer>();
+		for (int i = 0; i < vertices.length; i++) {
+			final Vertex vertex = vertices[i];
+			final int offset = i * VectorMath.VECTOR_SIZE;
+			System.arraycopy(vertex.getLocation(), 0, locations, offset, VectorMath.VECTOR_SIZE);
+			System.arraycopy(vertex.getNormal(), 0, normals, offset, VectorMath.VECTOR_SIZE);
+			vertexIndices.put(vertex, i);
+		}
+		for (int i = 0; i < faces.length; i++) {
+			final Face face = faces[i];
+			for (int j = 0; j < 3; j++) {
+				faceVertices[(i * 3) + j] = vertexIndices.get(face.getVertex(j));
+				System.arraycopy(face.getUV(j), 0, faceUVs, ((i * 3) + j) * VectorMath.VECTOR_SIZE, VectorMath.VECTOR_SIZE);
+			}
+			System.arraycopy(face.getNormal(), 0, faceNormals, i * VectorMath.VECTOR_SIZE, VectorMath.VECTOR_SIZE);
+		}
+		for (int i = 0; i < vertices.length; i++) {
+			vertices[i].pack(this, i);
+		}
+		for (int i = 0; i < faces.length; i++) {
+			faces[i].pack(this, i);
+		}
+	}
+
+	/**
+	 * Calculates the axis aligned bounding box and the bounding sphere of the vertex locations.
+	 */
+	private void calculateBounds() {
+		for (int i = 0; i < 3; i++) {
+			int min = locations.length == 0 ? 0 : Integer.MAX_VALUE;
+			int max = locations.length == 0 ? 0 : Integer.MIN_VALUE;
+			for (int v = i; v < locations.length; v += VectorMath.VECTOR_SIZE) {
+				min = Math.min(min, locations[v]);
+				max = Math.max(max, locations[v]);
+			}
+			boundsMin[i] = min;
+			boundsMax[i] = max;
+		}
+		boundsRadius = TransformationMath.boundingSphere(boundsMin, boundsMax, boundsCenter);
 	}
 
 	public Vertex[] getVertices(){
@@ -89,6 +204,113 @@ public class Mesh {
 		return faces[index];
 	}
 	
+	/**
+	 * Returns the locations of the vertices of this mesh. 
+	 * The location of the vertex at index i starts at i * {@link VectorMath#VECTOR_SIZE}.
+	 * 
+	 * @return the packed vertex locations.
+	 */
+	public int[] getLocations() {
+		return locations;
+	}
+	
+	public int[] getLocation(int index, int[] result) {
+		System.arraycopy(locations, index * VectorMath.VECTOR_SIZE, result, 0, VectorMath.VECTOR_SIZE);
+		return result;
+	}
+	
+	/**
+	 * Returns the normals of the vertices of this mesh. 
+	 * The normal of the vertex at index i starts at i * {@link VectorMath#VECTOR_SIZE}.
+	 * 
+	 * @return the packed vertex normals.
+	 */
+	public int[] getNormals() {
+		return normals;
+	}
+	
+	public int[] getNormal(int index, int[] result) {
+		System.arraycopy(normals, index * VectorMath.VECTOR_SIZE, result, 0, VectorMath.VECTOR_SIZE);
+		return result;
+	}
+	
+	/**
+	 * Returns the indices of the vertices of the faces of this mesh. 
+	 * The vertices of the face at index i are at i * 3, i * 3 + 1 and i * 3 + 2.
+	 * 
+	 * @return the packed face vertex indices.
+	 */
+	public int[] getFaceVertices() {
+		return faceVertices;
+	}
+	
+	/**
+	 * Returns the normals of the faces of this mesh. 
+	 * The normal of the face at index i starts at i * {@link VectorMath#VECTOR_SIZE}.
+	 * 
+	 * @return the packed face normals.
+	 */
+	public int[] getFaceNormals() {
+		return faceNormals;
+	}
+	
+	public int[] getFaceNormal(int index, int[] result) {
+		System.arraycopy(faceNormals, index * VectorMath.VECTOR_SIZE, result, 0, VectorMath.VECTOR_SIZE);
+		return result;
+	}
+	
+	/**
+	 * Returns the uvs of the faces of this mesh. The uv of vertex j of the face at 
+	 * index i starts at (i * 3 + j) * {@link VectorMath#VECTOR_SIZE}.
+	 * 
+	 * @return the packed face uvs.
+	 */
+	public int[] getFaceUVs() {
+		return faceUVs;
+	}
+	
+	public int[] getFaceUV(int index, int vertex, int[] result) {
+		System.arraycopy(faceUVs, ((index * 3) + vertex) * VectorMath.VECTOR_SIZE, result, 0, VectorMath.VECTOR_SIZE);
+		return result;
+	}
+	
+	/**
+	 * Returns the minimum corner of the axis aligned bounding box of this mesh in object space.
+	 * 
+	 * @return the minimum location.
+	 */
+	public int[] getBoundsMin() {
+		return boundsMin;
+	}
+	
+	/**
+	 * Returns the maximum corner of the axis aligned bounding box of this mesh in object space.
+	 * 
+	 * @return the maximum location.
+	 */
+	public int[] getBoundsMax() {
+		return boundsMax;
+	}
+	
+	/**
+	 * Returns the center of the bounding sphere of this mesh in object space.
+	 * 
+	 * @return the sphere center.
+	 */
+	public int[] getBoundsCenter() {
+		return boundsCenter;
+	}
+	
+	/**
+	 * Returns the radius of the bounding sphere of this mesh. The sphere contains 
+	 * the bounding box and with it every vertex of the mesh.
+	 * 
+	 * @return the sphere radius.
+	 */
+	public int getBoundsRadius() {
+		return boundsRadius;
+	}
+	
 	public Material[] getMaterials() {
 		return materials;
 	}
@@ -29,6 +29,7 @@ public class Model extends SceneObject {
 	
 	private final Mesh mesh;
 	private final Armature armature;
+	private boolean staticModel;
 	
 	public Model (String name, Transform transform, Mesh mesh) {
 		super(name, transform);
@@ -51,4 +52,18 @@ public class Model extends SceneObject {
 	public Armature getArmature() {
 		return armature;
 	}
+	
+	public boolean isStatic() {
+		return staticModel;
+	}
+
+	/**
+	 * Sets if this model is static. The shadows of static models are cached and only drawn 
+	 * again when a light or a static model changes, so static models shouldn't move often.
+	 * 
+	 * @param staticModel
+	 */
+	public void setStatic(boolean staticModel) {
+		this.staticModel = staticModel;
+	}
 }
@@ -1,161 +1,229 @@
-/**
- * MIT License
- *
- * Copyright (c) 2018 John Salomon - John´s Project
- *  
- * Permission is hereby granted, free of charge, to any person obtaining a copy
- * of this software and associated documentation files (the "Software"), to deal
- * in the Software without restriction, including without limitation the rights
- * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
- * copies of the Software, and to permit persons to whom the Software is
- * furnished to do so, subject to the following conditions:
- * 
- * The above copyright notice and this permission notice shall be included in all
- * copies or substantial portions of the Software.
- * 
- * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
- * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
- * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
- * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
- * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
- * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
- * SOFTWARE.
- */
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 John Salomon - John´s Project
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
 package com.johnsproject.jgameengine.model;
-
+
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
-public class Scene {
-	
-	private Camera mainCamera;
-	private Light mainLight;
+public class Scene {
+	
+	private Camera mainCamera;
+	private Light mainLight;
 	private final ArrayList<SceneObject> sceneObjects;
 	private final ArrayList<Model> models;
 	private final ArrayList<Camera> cameras;
-	private final ArrayList<Light> lights;
-	
-	public Scene() {
-		this.sceneObjects = new ArrayList<SceneObject>();
-		this.models = new ArrayList<Model>();
-		this.cameras = new ArrayList<Camera>();
-		this.lights = new ArrayList<Light>();
-	}
-	
-	public ArrayList<SceneObject> getSceneObjects() {
-		return sceneObjects;
-	}
-	
-	public SceneObject getSceneObject(String name) {
-		for (int i = 0; i < sceneObjects.size(); i++) {
-			SceneObject sceneObject = sceneObjects.get(i);
-			if(sceneObject.getName().equals(name)) {
-				return sceneObject;
-			}
-		}
-		return null;
-	}
-	
-	private void removeSceneObject(String name) {
-		for (int i = 0; i < sceneObjects.size(); i++) {
-			if(sceneObjects.get(i).getName().equals(name)) {
-				sceneObjects.remove(i);
-			}
-		}
-	}
-
-	public void addModel(Model model){
-		sceneObjects.add(model);
-		models.add(model);
-	}
-	
-	public void removeModel(String name){
-		removeSceneObject(name);
-		for (int i = 0; i < models.size(); i++) {
-			if(models.get(i).getName().equals(name)) {
-				models.remove(i);
-			}
+	private final ArrayList<Light> lights;
+	// the objects with the same name are kept in the order they were added
+	private final Map<String, List<SceneObject>> names;
+	private final Map<String, List<Model>> modelNames;
+	private final Map<String, List<Camera>> cameraNames;
+	private final Map<String, List<Light>> lightNames;
+	// the index of each object in the scene object list and in the list of its type
+	private final Map<SceneObject, int[]> positions;
+	private final LooseOctree octree;
+	
+	public Scene() {
+		this.sceneObjects = new ArrayList<SceneObject>();
+		this.models = new ArrayList<Model>();
+		this.cameras = new ArrayList<Camera>();
+		this.lights = new ArrayList<Light>();
+		this.names = new HashMap<String, List<SceneObject>>();
+		this.modelNames = new HashMap<String, List<Model>>();
+		this.cameraNames = new HashMap<String, List<Camera>>();
+		this.lightNames = new HashMap<String, List<Light>>();
+		this.positions = new IdentityHashMap<SceneObject, int[]>();
+		this.octree = new LooseOctree();
+	}
+	
+	public ArrayList<SceneObject> getSceneObjects() {
+		return sceneObjects;
+	}
+	
+	public SceneObject getSceneObject(String name) {
+		return getFirst(name, names);
+	}
+	
+	/**
+	 * Returns the spatial index of the objects of this scene. It contains the objects 
+	 * that were added through the add methods of the scene.
+	 * 
+	 * @return the octree of this scene.
+	 */
+	public LooseOctree getOctree() {
+		return octree;
+	}
+	
+	/**
+	 * Adds the objects whose bounding sphere intersects the given sphere to the result list.
+	 * 
+	 * @see LooseOctree#querySphere(int[], int, List)
+	 */
+	public List<SceneObject> getSceneObjects(int[] center, int radius, List<SceneObject> result) {
+		return octree.querySphere(center, radius, result);
+	}
+	
+	private <T extends SceneObject> void addSceneObject(T sceneObject, List<T> typedObjects, Map<String, List<T>> typedNames) {
+		// if two objects have the same name the first one is found by name
+		addName(sceneObject, names);
+		addName(sceneObject, typedNames);
+		positions.put(sceneObject, new int[] {sceneObjects.size(), typedObjects.size()});
+		sceneObjects.add(sceneObject);
+		typedObjects.add(sceneObject);
+		octree.insert(sceneObject);
+	}
+	
+	/**
+	 * Removes all objects of the typed list with the given name. The last objects of the 
+	 * lists are moved to the places of the removed ones, so removing doesn't search the lists.
+	 */
+	private <T extends SceneObject> void removeSceneObject(String name, List<T> typedObjects, Map<String, List<T>> typedNames) {
+		final List<T> removedObjects = typedNames.remove(name);
+		if(removedObjects == null)
+			return;
+		final List<SceneObject> namedObjects = names.get(name);
+		for (int i = 0; i < removedObjects.size(); i++) {
+			final T sceneObject = removedObjects.get(i);
+			final int[] position = positions.remove(sceneObject);
+			removePosition(sceneObjects, position[0], 0);
+			removePosition(typedObjects, position[1], 1);
+			octree.remove(sceneObject);
+			namedObjects.remove(sceneObject);
 		}
-	}
+		if(namedObjects.isEmpty()) {
+			names.remove(name);
+		}
+	}
+	
+	private <T extends SceneObject> void removePosition(List<T> objects, int index, int list) {
+		final T last = objects.remove(objects.size() - 1);
+		if(index < objects.size()) {
+			objects.set(index, last);
+			positions.get(last)[list] = index;
+		}
+	}
+	
+	private static <T extends SceneObject> void addName(T sceneObject, Map<String, List<T>> names) {
+		List<T> namedObjects = names.get(sceneObject.getName());
+		if(namedObjects == null) {
+			namedObjects = new ArrayList<T>(1);
+			names.put(sceneObject.getName(), namedObjects);
+		}
+		namedObjects.add(sceneObject);
+	}
+	
+	private static <T extends SceneObject> T getFirst(String name, Map<String, List<T>> names) {
+		final List<T> namedObjects = names.get(name);
+		return namedObjects == null ? null : namedObjects.get(0);
+	}
+
+	public void addModel(Model model){
+		addSceneObject(model, models, modelNames);
+	}
+	
+	/**
+	 * Removes all models with the given name, this changes the order of the model list.
+	 */
+	public void removeModel(String name){
+		removeSceneObject(name, models, modelNames);
+	}
 	
 	public ArrayList<Model> getModels() {
 		return models;
 	}
-	
-	public Model getModel(String name) {
-		return (Model)getSceneObject(name);
-	}
-	
-	public void addLight(Light light){
-		if(mainLight == null) {
-			setMainDirectionalLight(light);
-		}
-		sceneObjects.add(light);
-		lights.add(light);
-	}
-	
-	public void removeLight(String name){
-		removeSceneObject(name);
-		for (int i = 0; i < lights.size(); i++) {
-			if(lights.get(i).getName().equals(name)) {
-				lights.remove(i);
-			}
+	
+	public Model getModel(String name) {
+		return getFirst(name, modelNames);
+	}
+	
+	public void addLight(Light light){
+		if(mainLight == null) {
+			setMainDirectionalLight(light);
 		}
+		addSceneObject(light, lights, lightNames);
+	}
+	
+	/**
+	 * Removes all lights with the given name, this changes the order of the light list.
+	 */
+	public void removeLight(String name){
+		removeSceneObject(name, lights, lightNames);
 	}
 	
 	public ArrayList<Light> getLights() {
 		return lights;
 	}
-	
-	public Light getLight(String name) {
-		return (Light)getSceneObject(name);
-	}
-	
-	public Light getMainDirectionalLight() {
-		return mainLight;
-	}
-
-	public void setMainDirectionalLight(Light mainLight) {
-		if(this.mainLight != null) {
-			this.mainLight.setTag(Light.LIGHT_TAG);
-		}
-		mainLight.setTag(Light.MAIN_DIRECTIONAL_LIGHT_TAG);
-		this.mainLight = mainLight;
-	}
-	
-	public void addCamera(Camera camera){
-		if(mainCamera == null) {
-			setMainCamera(camera);
-		}
-		sceneObjects.add(camera);
-		cameras.add(camera);
-	}
-	
-	public void removeCamera(String name){
-		removeSceneObject(name);
-		for (int i = 0; i < cameras.size(); i++) {
-			if(cameras.get(i).getName().equals(name)) {
-				cameras.remove(i);
-			}
+	
+	public Light getLight(String name) {
+		return getFirst(name, lightNames);
+	}
+	
+	public Light getMainDirectionalLight() {
+		return mainLight;
+	}
+
+	public void setMainDirectionalLight(Light mainLight) {
+		if(this.mainLight != null) {
+			this.mainLight.setTag(Light.LIGHT_TAG);
 		}
+		mainLight.setTag(Light.MAIN_DIRECTIONAL_LIGHT_TAG);
+		this.mainLight = mainLight;
+	}
+	
+	public void addCamera(Camera camera){
+		if(mainCamera == null) {
+			setMainCamera(camera);
+		}
+		addSceneObject(camera, cameras, cameraNames);
+	}
+	
+	/**
+	 * Removes all cameras with the given name, this changes the order of the camera list.
+	 */
+	public void removeCamera(String name){
+		removeSceneObject(name, cameras, cameraNames);
 	}
 
 	public ArrayList<Camera> getCameras() {
 		return cameras;
-	}
-	
-	public Camera getCamera(String name) {
-		return (Camera)getSceneObject(name);
-	}
-
-	public Camera getMainCamera() {
-		return mainCamera;
-	}
-
-	public void setMainCamera(Camera mainCamera) {
-		if(this.mainCamera != null) {
-			this.mainCamera.setTag(Camera.CAMERA_TAG);
-		}
-		mainCamera.setTag(Camera.MAIN_CAMERA_TAG);
-		this.mainCamera = mainCamera;
+	}
+	
+	public Camera getCamera(String name) {
+		return getFirst(name, cameraNames);
+	}
+
+	public Camera getMainCamera() {
+		return mainCamera;
+	}
+
+	public void setMainCamera(Camera mainCamera) {
+		if(this.mainCamera != null) {
+			this.mainCamera.setTag(Camera.CAMERA_TAG);
+		}
+		mainCamera.setTag(Camera.MAIN_CAMERA_TAG);
+		this.mainCamera = mainCamera;
 	}
 }
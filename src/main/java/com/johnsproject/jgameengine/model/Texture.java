@@ -25,11 +25,20 @@ package com.johnsproject.jgameengine.model;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
+import java.util.Arrays;
 
 public class Texture {
 	
+	private static final int TILE_BIT = 2;
+	private static final int TILE_MASK = (1 << TILE_BIT) - 1;
+	
 	private final int[] pixels;
 	private final int[] size;
+	private TextureWrap wrap = TextureWrap.CLAMP;
+	private int[] mipmaps;
+	private int[] mipmapOffsets;
+	private int[] tiles;
+	private int tileColumns;
 	
 	public Texture (BufferedImage bufferedImage){
 		int width = bufferedImage.getWidth();
@@ -48,6 +57,12 @@ public class Texture {
 		this.pixels = new int[size[2]];
 	}
 	
+	/**
+	 * Returns the pixels of this texture. They are stored row by row, the pixel at x, y 
+	 * is at the index x + y * {@link #getStride()}. If the {@link #getLayout() layout} of this 
+	 * texture is {@link TextureLayout#TILED TILED}, changes to them are only seen by 
+	 * {@link #sample} after setting the layout again.
+	 */
 	public int[] getPixels() {
 		return pixels;
 	}
@@ -60,6 +75,177 @@ public class Texture {
 		return size[1];
 	}
 	
+	/**
+	 * Returns the distance between two rows in the pixel array.
+	 */
+	public int getStride() {
+		return size[0];
+	}
+	
+	public TextureWrap getWrap() {
+		return wrap;
+	}
+
+	/**
+	 * Sets how {@link #sample} handles the coordinates outside of this texture. 
+	 * {@link TextureWrap#CLAMP CLAMP}, the default, returns the nearest pixel at the border and 
+	 * {@link TextureWrap#REPEAT REPEAT} tiles the texture.
+	 * 
+	 * @param wrap
+	 */
+	public void setWrap(TextureWrap wrap) {
+		this.wrap = wrap;
+	}
+	
+	public TextureLayout getLayout() {
+		return tiles == null ? TextureLayout.LINEAR : TextureLayout.TILED;
+	}
+	
+	/**
+	 * Sets how the pixels of this texture are stored for {@link #sample}. 
+	 * {@link TextureLayout#TILED TILED} keeps a second copy of the pixels in 4x4 blocks, so pixels 
+	 * next to each other in any direction are mostly in the same cache line. It doubles the memory 
+	 * of the texture and {@link #setPixelUnchecked} doesn't update the copy, so it's meant for 
+	 * textures that are only read, like the textures of materials.
+	 * 
+	 * @param layout
+	 */
+	public void setLayout(TextureLayout layout) {
+		if(layout == TextureLayout.LINEAR) {
+			tiles = null;
+			return;
+		}
+		tileColumns = (size[0] + TILE_MASK) >> TILE_BIT;
+		final int tileRows = (size[1] + TILE_MASK) >> TILE_BIT;
+		tiles = new int[(tileColumns * tileRows) << (TILE_BIT << 1)];
+		for (int y = 0; y < size[1]; y++) {
+			for (int x = 0; x < size[0]; x++) {
+				tiles[getTileIndex(x, y)] = pixels[x + (y * size[0])];
+			}
+		}
+	}
+	
+	private int getTileIndex(int x, int y) {
+		final int tile = ((y >> TILE_BIT) * tileColumns) + (x >> TILE_BIT);
+		return (tile << (TILE_BIT << 1)) + ((y & TILE_MASK) << TILE_BIT) + (x & TILE_MASK);
+	}
+	
+	/**
+	 * Returns the pixel at the given texture coordinates, using the {@link TextureWrap wrap mode} 
+	 * of this texture for the coordinates outside of it.
+	 */
+	public int sample(int x, int y) {
+		if(wrap == TextureWrap.REPEAT) {
+			x %= size[0];
+			y %= size[1];
+			x = x >= 0 ? x : x + size[0];
+			y = y >= 0 ? y : y + size[1];
+		} else {
+			x = x >= 0 ? x : 0;
+			x = x < size[0] ? x : size[0] - 1;
+			y = y >= 0 ? y : 0;
+			y = y < size[1] ? y : size[1] - 1;
+		}
+		if(tiles == null)
+			return pixels[x + (y * size[0])];
+		return tiles[getTileIndex(x, y)];
+	}
+	
+	/**
+	 * Returns the pixel at the given coordinates of the given mipmap level. The coordinates are in 
+	 * pixels of that level, see {@link #getMipmapWidth} and {@link #getMipmapHeight}. Levels higher 
+	 * than the last one of this texture are clamped to it.
+	 */
+	public int sample(int x, int y, int level) {
+		if((level <= 0) || (mipmapOffsets == null))
+			return sample(x, y);
+		if(level >= mipmapOffsets.length)
+			level = mipmapOffsets.length - 1;
+		final int width = getMipmapWidth(level);
+		final int height = getMipmapHeight(level);
+		if(wrap == TextureWrap.REPEAT) {
+			x %= width;
+			y %= height;
+			x = x >= 0 ? x : x + width;
+			y = y >= 0 ? y : y + height;
+		} else {
+			x = x >= 0 ? x : 0;
+			x = x < width ? x : width - 1;
+			y = y >= 0 ? y : 0;
+			y = y < height ? y : height - 1;
+		}
+		return mipmaps[mipmapOffsets[level] + x + (y * width)];
+	}
+	
+	/**
+	 * Builds the mipmaps of this texture. Each level is half the size of the previous one, 
+	 * its pixels are the average of 2x2 pixels of the previous level. The levels below the 
+	 * first one are stored one after the other in a single array. 
+	 * The pixels of this texture shouldn't change after this.
+	 */
+	public void buildMipmaps() {
+		int levels = 1;
+		int length = 0;
+		while((getMipmapWidth(levels - 1) > 1) || (getMipmapHeight(levels - 1) > 1)) {
+			length += getMipmapWidth(levels) * getMipmapHeight(levels);
+			levels++;
+		}
+		mipmaps = new int[length];
+		mipmapOffsets = new int[levels];
+		int offset = 0;
+		for (int level = 1; level < levels; level++) {
+			mipmapOffsets[level] = offset;
+			final int[] source = level == 1 ? pixels : mipmaps;
+			final int sourceOffset = level == 1 ? 0 : mipmapOffsets[level - 1];
+			final int sourceWidth = getMipmapWidth(level - 1);
+			final int sourceHeight = getMipmapHeight(level - 1);
+			final int width = getMipmapWidth(level);
+			final int height = getMipmapHeight(level);
+			for (int y = 0; y < height; y++) {
+				final int y0 = Math.min(y << 1, sourceHeight - 1);
+				final int y1 = Math.min((y << 1) + 1, sourceHeight - 1);
+				for (int x = 0; x < width; x++) {
+					final int x0 = Math.min(x << 1, sourceWidth - 1);
+					final int x1 = Math.min((x << 1) + 1, sourceWidth - 1);
+					mipmaps[offset + x + (y * width)] = average(source[sourceOffset + x0 + (y0 * sourceWidth)],
+							source[sourceOffset + x1 + (y0 * sourceWidth)],
+							source[sourceOffset + x0 + (y1 * sourceWidth)],
+							source[sourceOffset + x1 + (y1 * sourceWidth)]);
+				}
+			}
+			offset += width * height;
+		}
+	}
+	
+	private static int average(int color0, int color1, int color2, int color3) {
+		int color = 0;
+		for (int shift = 0; shift < 32; shift += 8) {
+			final int channel = ((color0 >>> shift) & 0xFF) + ((color1 >>> shift) & 0xFF)
+					+ ((color2 >>> shift) & 0xFF) + ((color3 >>> shift) & 0xFF);
+			color |= ((channel + 2) >> 2) << shift;
+		}
+		return color;
+	}
+	
+	/**
+	 * Returns the number of mipmap levels of this texture, including the texture itself. 
+	 * It's 1 if {@link #buildMipmaps} wasn't called.
+	 */
+	public int getMipmapCount() {
+		return mipmapOffsets == null ? 1 : mipmapOffsets.length;
+	}
+	
+	public int getMipmapWidth(int level) {
+		return Math.max(size[0] >> level, 1);
+	}
+	
+	public int getMipmapHeight(int level) {
+		return Math.max(size[1] >> level, 1);
+	}
+	
+	/**
+	 * Returns the pixel at x, y clamped to the border of this texture.
+	 */
 	public int getPixel(int x, int y) {
 		x = x >= 0 ? x : 0;
 		x = x < size[0] ? x : size[0] - 1;
@@ -68,18 +254,63 @@ public class Texture {
 		return pixels[x + (y * size[0])];
 	}
 	
+	/**
+	 * Sets the pixel at x, y clamped to the border of this texture.
+	 */
 	public void setPixel(int x, int y, int value) {
 		x = x >= 0 ? x : 0;
 		x = x < size[0] ? x : size[0] - 1;
 		y = y >= 0 ? y : 0;
 		y = y < size[1] ? y : size[1] - 1;
 		pixels[x + (y * size[0])] = value;
+		if(tiles != null)
+			tiles[getTileIndex(x, y)] = value;
+	}
+	
+	/**
+	 * Returns the pixel at x, y without checking if it's inside of this texture. 
+	 * The rasterizers clip the fragments to the render target, so shaders can use 
+	 * this for the fragments of the render target.
+	 */
+	public int getPixelUnchecked(int x, int y) {
+		return pixels[x + (y * size[0])];
+	}
+	
+	/**
+	 * Sets the pixel at x, y without checking if it's inside of this texture. 
+	 * Like the changes to {@link #getPixels()} it's only seen by {@link #sample} 
+	 * after setting the layout again.
+	 */
+	public void setPixelUnchecked(int x, int y, int value) {
+		pixels[x + (y * size[0])] = value;
 	}
 	
 	public void fill(int value) {
-		int[] pixelBuffer = getPixels();
-		for (int i = 0; i < pixelBuffer.length; i++) {
-			pixelBuffer[i] = value;
+		Arrays.fill(pixels, value);
+		if(tiles != null)
+			Arrays.fill(tiles, value);
+	}
+	
+	/**
+	 * Sets the pixels of the given rectangle to the value, the rectangle has to be inside of this texture.
+	 * 
+	 * @param value the value of the pixels.
+	 * @param left first column of the rectangle.
+	 * @param right last column of the rectangle.
+	 * @param top first row of the rectangle.
+	 * @param bottom last row of the rectangle.
+	 */
+	public void fill(int value, int left, int right, int top, int bottom) {
+		for (int y = top; y <= bottom; y++) {
+			final int index = y * size[0];
+			Arrays.fill(pixels, index + left, index + right + 1, value);
+		}
+		if(tiles == null)
+			return;
+		for (int y = top; y <= bottom; y++) {
+			for (int x = left; x <= right; x++) {
+				tiles[getTileIndex(x, y)] = value;
+			}
 		}
 	}
 }
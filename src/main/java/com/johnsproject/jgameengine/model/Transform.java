@@ -25,12 +25,21 @@ package com.johnsproject.jgameengine.model;
 
 import static com.johnsproject.jgameengine.math.VectorMath.*;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.johnsproject.jgameengine.math.MatrixMath;
 import com.johnsproject.jgameengine.math.TransformationMath;
 import com.johnsproject.jgameengine.math.VectorMath;
 
 public class Transform {
 	
+	private static final byte SPACE_EXIT_MATRIX = 1;
+	private static final byte SPACE_EXIT_NORMAL_MATRIX = 2;
+	private static final byte SPACE_ENTER_MATRIX = 4;
+	private static final byte SPACE_ENTER_NORMAL_MATRIX = 8;
+	private static final byte ALL_MATRICES = 15;
+	
 	private final int[] location;
 	private final int[] rotation;
 	private final int[] scale;
@@ -41,6 +50,10 @@ public class Transform {
 	private final int[][] spaceEnterNormalMatrix;
 	private final int[][] spaceExitMatrix;
 	private final int[][] spaceExitNormalMatrix;
+	// the matrices that need to be recalculated before they are returned
+	private volatile int dirtyMatrices;
+	private int version;
+	private final List<TransformListener> listeners;
 	
 	public Transform() {
 		this(VectorMath.emptyVector(), VectorMath.emptyVector(), VectorMath.VECTOR_ONE.clone());
@@ -56,35 +69,70 @@ public class Transform {
 		this.spaceEnterNormalMatrix = MatrixMath.indentityMatrix();
 		this.spaceExitMatrix = MatrixMath.indentityMatrix();
 		this.spaceExitNormalMatrix = MatrixMath.indentityMatrix();
-		recalculateMatrices();
+		this.listeners = new ArrayList<TransformListener>(1);
+		invalidateMatrices();
+	}
+	
+	private void invalidateMatrices() {
+		dirtyMatrices = ALL_MATRICES;
+		version++;
+		for (int i = 0; i < listeners.size(); i++) {
+			listeners.get(i).transformChanged(this);
+		}
+	}
+	
+	public void addTransformListener(TransformListener listener) {
+		listeners.add(listener);
 	}
 	
-	private void recalculateMatrices() {
-		TransformationMath.spaceExitMatrix(spaceExitMatrix, this, matrixCache1, matrixCache2);
-		TransformationMath.spaceExitNormalMatrix(spaceExitNormalMatrix, this, matrixCache1, matrixCache2);
-		TransformationMath.spaceEnterMatrix(spaceEnterMatrix, this, matrixCache1, matrixCache2);
-		TransformationMath.spaceEnterNormalMatrix(spaceEnterNormalMatrix, this, matrixCache1, matrixCache2);
+	public void removeTransformListener(TransformListener listener) {
+		listeners.remove(listener);
+	}
+	
+	/**
+	 * Recalculates the given matrix if it's out of date. The matrices are only recalculated 
+	 * when they are requested after the transform changed, and the render threads can 
+	 * request them at the same time, so the calculation is synchronized.
+	 */
+	private synchronized void recalculateMatrix(int matrix) {
+		if((dirtyMatrices & matrix) == 0)
+			return;
+		switch (matrix) {
+		case SPACE_EXIT_MATRIX:
+			TransformationMath.spaceExitMatrix(spaceExitMatrix, this, matrixCache1, matrixCache2);
+			break;
+		case SPACE_EXIT_NORMAL_MATRIX:
+			TransformationMath.spaceExitNormalMatrix(spaceExitNormalMatrix, this, matrixCache1, matrixCache2);
+			break;
+		case SPACE_ENTER_MATRIX:
+			TransformationMath.spaceEnterMatrix(spaceEnterMatrix, this, matrixCache1, matrixCache2);
+			break;
+		case SPACE_ENTER_NORMAL_MATRIX:
+			TransformationMath.spaceEnterNormalMatrix(spaceEnterNormalMatrix, this, matrixCache1, matrixCache2);
+			break;
+		}
+		dirtyMatrices &= ~matrix;
 	}
 	
 	public void setLocation(int x, int y, int z) {
 		location[VECTOR_X] = x;
 		location[VECTOR_Y] = y;
 		location[VECTOR_Z] = z;
-		recalculateMatrices();
+		invalidateMatrices();
 	}
 
 	public void setRotation(int x, int y, int z) {
 		rotation[VECTOR_X] = x;
 		rotation[VECTOR_Y] = y;
 		rotation[VECTOR_Z] = z;
-		recalculateMatrices();
+		invalidateMatrices();
 	}
 	
 	public void setScale(int x, int y, int z) {
 		scale[VECTOR_X] = x;
 		scale[VECTOR_Y] = y;
 		scale[VECTOR_Z] = z;
-		recalculateMatrices();
+		invalidateMatrices();
 	}
 	
 	public void translate(int x, int y, int z) {
@@ -111,31 +159,77 @@ public class Transform {
 		scale(vector[VECTOR_X], vector[VECTOR_Y], vector[VECTOR_Z]);
 	}
 
+	/**
+	 * Returns the location of this transform. The array is the one used by the transform, 
+	 * it should be treated as read only. If it's changed directly, {@link #markChanged} 
+	 * has to be called, else the matrices and the world space data of the models are not updated.
+	 * 
+	 * @return the location of this transform.
+	 */
 	public int[] getLocation() {
 		return location;
 	}
 
+	/**
+	 * Returns the rotation of this transform. Like {@link #getLocation} it should be 
+	 * treated as read only, or {@link #markChanged} has to be called after changing it.
+	 * 
+	 * @return the rotation of this transform.
+	 */
 	public int[] getRotation() {
 		return rotation;
 	}
 
+	/**
+	 * Returns the scale of this transform. Like {@link #getLocation} it should be 
+	 * treated as read only, or {@link #markChanged} has to be called after changing it.
+	 * 
+	 * @return the scale of this transform.
+	 */
 	public int[] getScale() {
 		return scale;
 	}
+	
+	/**
+	 * Tells this transform that the arrays returned by {@link #getLocation}, {@link #getRotation} 
+	 * or {@link #getScale} were changed directly. It's not needed after using the setters.
+	 */
+	public void markChanged() {
+		invalidateMatrices();
+	}
 
 	public int[][] getSpaceEnterMatrix() {
+		if((dirtyMatrices & SPACE_ENTER_MATRIX) != 0)
+			recalculateMatrix(SPACE_ENTER_MATRIX);
 		return spaceEnterMatrix;
 	}
 
 	public int[][] getSpaceEnterNormalMatrix() {
+		if((dirtyMatrices & SPACE_ENTER_NORMAL_MATRIX) != 0)
+			recalculateMatrix(SPACE_ENTER_NORMAL_MATRIX);
 		return spaceEnterNormalMatrix;
 	}
 
 	public int[][] getSpaceExitMatrix() {
+		if((dirtyMatrices & SPACE_EXIT_MATRIX) != 0)
+			recalculateMatrix(SPACE_EXIT_MATRIX);
 		return spaceExitMatrix;
 	}
 
 	public int[][] getSpaceExitNormalMatrix() {
+		if((dirtyMatrices & SPACE_EXIT_NORMAL_MATRIX) != 0)
+			recalculateMatrix(SPACE_EXIT_NORMAL_MATRIX);
 		return spaceExitNormalMatrix;
 	}
+	
+	/**
+	 * Returns a number that changes every time the location, rotation or scale 
+	 * of this transform is set. It can be used to find out if the transform changed 
+	 * since it was last used.
+	 * 
+	 * @return the version of this transform.
+	 */
+	public int getVersion() {
+		return version;
+	}
 }
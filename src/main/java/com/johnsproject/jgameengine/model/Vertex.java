@@ -23,15 +23,19 @@
  */
 package com.johnsproject.jgameengine.model;
 
+import com.johnsproject.jgameengine.math.VectorMath;
 import com.johnsproject.jgameengine.shader.VertexBuffer;
 
 public class Vertex {
 	
 	private final int index;
-	private final int[] location;
-	private final int[] normal;
 	private final Material material;
 	private VertexBuffer buffer;
+	// only used until the vertex is packed into a mesh
+	private int[] location;
+	private int[] normal;
+	private Mesh mesh;
+	private int meshIndex;
 	
 	public Vertex(int index, int[] location, int[] normal, Material material) {
 		this.index = index;
@@ -40,17 +44,54 @@ public class Vertex {
 		this.material = material;
 		this.buffer = new VertexBuffer();
 	}
+	
+	Vertex(int index, Material material, Mesh mesh) {
+		this.index = index;
+		this.material = material;
+		this.buffer = new VertexBuffer();
+		this.mesh = mesh;
+		this.meshIndex = index;
+	}
+	
+	void pack(Mesh mesh, int meshIndex) {
+		this.mesh = mesh;
+		this.meshIndex = meshIndex;
+		this.location = null;
+		this.normal = null;
+	}
 
 	public int getIndex() {
 		return index;
 	}
 
+	/**
+	 * Returns the location of this vertex. After the vertex has been added to a {@link Mesh} 
+	 * the location is stored in {@link Mesh#getLocations()} and this method returns a copy of it.
+	 * <p>
+	 * Breaking change: earlier versions returned the array held by the vertex, so writes to it 
+	 * changed the mesh. Writes to the returned copy are lost, write to {@link Mesh#getLocations()} instead.
+	 * 
+	 * @return the location of this vertex.
+	 */
 	public int[] getLocation() {
-		return location;
+		if(mesh == null)
+			return location;
+		return mesh.getLocation(meshIndex, VectorMath.emptyVector());
 	}
 	
+	/**
+	 * Returns the normal of this vertex. After the vertex has been added to a {@link Mesh} 
+	 * the normal is stored in {@link Mesh#getNormals()} and this method returns a copy of it.
+	 * <p>
+	 * Breaking change: earlier versions returned the array held by the vertex, so writes to it 
+	 * changed the mesh. Writes to the returned copy are lost, write to {@link Mesh#getNormals()} instead.
+	 * 
+	 * @return the normal of this vertex.
+	 */
 	public int[] getNormal() {
-		return normal;
+		if(mesh == null)
+			return normal;
+		return mesh.getNormal(meshIndex, VectorMath.emptyVector());
 	}
 	
 	public Material getMaterial() {
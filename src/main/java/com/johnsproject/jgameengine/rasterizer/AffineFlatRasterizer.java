@@ -28,6 +28,7 @@ import static com.johnsproject.jgameengine.math.VectorMath.*;
 
 import com.johnsproject.jgameengine.math.FixedPointMath;
 import com.johnsproject.jgameengine.math.VectorMath;
+import com.johnsproject.jgameengine.model.Camera;
 import com.johnsproject.jgameengine.model.Texture;
 import com.johnsproject.jgameengine.shader.GeometryBuffer;
 import com.johnsproject.jgameengine.shader.Shader;
@@ -48,18 +49,18 @@ public class AffineFlatRasterizer extends FlatRasterizer {
 	}
 	
 	protected final void setUV0(int[] uv, Texture texture) {
-		u[0] = FixedPointMath.multiply(uv[VECTOR_X], texture.getWidth() << INTERPOLATE_BIT);
-		v[0] = FixedPointMath.multiply(uv[VECTOR_Y], texture.getHeight() << INTERPOLATE_BIT);
+		u[0] = FixedPointMath.multiply(uv[VECTOR_X], texture.getMipmapWidth(fragmentBuffer.getMipmapLevel()) << INTERPOLATE_BIT);
+		v[0] = FixedPointMath.multiply(uv[VECTOR_Y], texture.getMipmapHeight(fragmentBuffer.getMipmapLevel()) << INTERPOLATE_BIT);
 	}
 	
 	protected final void setUV1(int[] uv, Texture texture) {
-		u[1] = FixedPointMath.multiply(uv[VECTOR_X], texture.getWidth() << INTERPOLATE_BIT);
-		v[1] = FixedPointMath.multiply(uv[VECTOR_Y], texture.getHeight() << INTERPOLATE_BIT);
+		u[1] = FixedPointMath.multiply(uv[VECTOR_X], texture.getMipmapWidth(fragmentBuffer.getMipmapLevel()) << INTERPOLATE_BIT);
+		v[1] = FixedPointMath.multiply(uv[VECTOR_Y], texture.getMipmapHeight(fragmentBuffer.getMipmapLevel()) << INTERPOLATE_BIT);
 	}
 	
 	protected final void setUV2(int[] uv, Texture texture) {
-		u[2] = FixedPointMath.multiply(uv[VECTOR_X], texture.getWidth() << INTERPOLATE_BIT);
-		v[2] = FixedPointMath.multiply(uv[VECTOR_Y], texture.getHeight() << INTERPOLATE_BIT);
+		u[2] = FixedPointMath.multiply(uv[VECTOR_X], texture.getMipmapWidth(fragmentBuffer.getMipmapLevel()) << INTERPOLATE_BIT);
+		v[2] = FixedPointMath.multiply(uv[VECTOR_Y], texture.getMipmapHeight(fragmentBuffer.getMipmapLevel()) << INTERPOLATE_BIT);
 	}
 	
 	/**
@@ -79,6 +80,8 @@ public class AffineFlatRasterizer extends FlatRasterizer {
 		if(cull()) {
 			return;
 		}
+		clipFrustum();
+		fragmentBuffer.setMipmapLevel(getMipmapLevel(geometryBuffer, texture));
 		setUV0(geometryBuffer.getUV(0), texture);
 		setUV1(geometryBuffer.getUV(1), texture);
 		setUV2(geometryBuffer.getUV(2), texture);
@@ -156,7 +159,8 @@ public class AffineFlatRasterizer extends FlatRasterizer {
             int z = location0[VECTOR_Z] << FP_BIT;
             int u = this.u[0] << FP_BIT;
             int v = this.v[0] << FP_BIT;
-	        for (int y = location0[VECTOR_Y]; y <= location1[VECTOR_Y]; y++) {
+	        final int end = bottomTriangleEnd(location1[VECTOR_Y]);
+	        for (int y = location0[VECTOR_Y]; y <= end; y++) {
 	        	drawScanline(x1, x2, y, z, u, v, dz, du, dv, cameraFrustum);
 	            x1 += dx1;
 	            x2 += dx2;
@@ -175,7 +179,8 @@ public class AffineFlatRasterizer extends FlatRasterizer {
             int z = location0[VECTOR_Z] << FP_BIT;
             int u = this.u[0] << FP_BIT;
             int v = this.v[0] << FP_BIT;
-        	for (int y = location0[VECTOR_Y]; y <= location1[VECTOR_Y]; y++) {
+        	final int end = bottomTriangleEnd(location1[VECTOR_Y]);
+        	for (int y = location0[VECTOR_Y]; y <= end; y++) {
         		drawScanline(x1, x2, y, z, u, v, dz, du, dv, cameraFrustum);
 	            x1 += dx2;
 	            x2 += dx1;
@@ -211,7 +216,8 @@ public class AffineFlatRasterizer extends FlatRasterizer {
 			int z = location2[VECTOR_Z] << FP_BIT;
 			int u = this.u[2] << FP_BIT;
 			int v = this.v[2] << FP_BIT;
-	        for (int y = location2[VECTOR_Y]; y > location0[VECTOR_Y]; y--) {
+	        final int end = topTriangleEnd(location0[VECTOR_Y]);
+	        for (int y = location2[VECTOR_Y]; y > end; y--) {
 	        	drawScanline(x1, x2, y, z, u, v, dz, du, dv, cameraFrustum);
 	            x1 -= dx1;
 	            x2 -= dx2;
@@ -230,7 +236,8 @@ public class AffineFlatRasterizer extends FlatRasterizer {
 			int z = location2[VECTOR_Z] << FP_BIT;
 			int u = this.u[2] << FP_BIT;
 			int v = this.v[2] << FP_BIT;
-	        for (int y = location2[VECTOR_Y]; y > location0[VECTOR_Y]; y--) {
+	        final int end = topTriangleEnd(location0[VECTOR_Y]);
+	        for (int y = location2[VECTOR_Y]; y > end; y--) {
 	        	drawScanline(x1, x2, y, z, u, v, dz, du, dv, cameraFrustum);
 	            x1 -= dx2;
 	            x2 -= dx1;
@@ -242,8 +249,19 @@ public class AffineFlatRasterizer extends FlatRasterizer {
     }
 	
 	private void drawScanline(int x1, int x2, int y, int z, int u, int v, int dz, int du, int dv, int[] cameraFrustum) {
+		if ((y < cameraFrustum[Camera.FRUSTUM_TOP]) || (y > cameraFrustum[Camera.FRUSTUM_BOTTOM]))
+			return;
 		x1 >>= FP_BIT;
 		x2 >>= FP_BIT;
+		if (x1 < cameraFrustum[Camera.FRUSTUM_LEFT]) {
+			int step = cameraFrustum[Camera.FRUSTUM_LEFT] - x1;
+			x1 += step;
+			z += dz * step;
+			u += du * step;
+			v += dv * step;
+		}
+		if (cameraFrustum[Camera.FRUSTUM_RIGHT] < x2)
+			x2 = cameraFrustum[Camera.FRUSTUM_RIGHT];
 		for (; x1 <= x2; x1++) {
 			fragmentBuffer.getLocation()[VECTOR_X] = x1;
 			fragmentBuffer.getLocation()[VECTOR_Y] = y;
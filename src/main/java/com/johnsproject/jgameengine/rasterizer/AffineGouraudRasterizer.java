@@ -29,6 +29,7 @@ import static com.johnsproject.jgameengine.math.VectorMath.*;
 import com.johnsproject.jgameengine.math.ColorMath;
 import com.johnsproject.jgameengine.math.FixedPointMath;
 import com.johnsproject.jgameengine.math.VectorMath;
+import com.johnsproject.jgameengine.model.Camera;
 import com.johnsproject.jgameengine.model.Texture;
 import com.johnsproject.jgameengine.shader.GeometryBuffer;
 import com.johnsproject.jgameengine.shader.Shader;
@@ -49,18 +50,18 @@ public class AffineGouraudRasterizer extends GouraudRasterizer {
 	}
 	
 	protected final void setUV0(int[] uv, Texture texture) {
-		u[0] = FixedPointMath.multiply(uv[VECTOR_X], texture.getWidth() << INTERPOLATE_BIT);
-		v[0] = FixedPointMath.multiply(uv[VECTOR_Y], texture.getHeight() << INTERPOLATE_BIT);
+		u[0] = FixedPointMath.multiply(uv[VECTOR_X], texture.getMipmapWidth(fragmentBuffer.getMipmapLevel()) << INTERPOLATE_BIT);
+		v[0] = FixedPointMath.multiply(uv[VECTOR_Y], texture.getMipmapHeight(fragmentBuffer.getMipmapLevel()) << INTERPOLATE_BIT);
 	}
 	
 	protected final void setUV1(int[] uv, Texture texture) {
-		u[1] = FixedPointMath.multiply(uv[VECTOR_X], texture.getWidth() << INTERPOLATE_BIT);
-		v[1] = FixedPointMath.multiply(uv[VECTOR_Y], texture.getHeight() << INTERPOLATE_BIT);
+		u[1] = FixedPointMath.multiply(uv[VECTOR_X], texture.getMipmapWidth(fragmentBuffer.getMipmapLevel()) << INTERPOLATE_BIT);
+		v[1] = FixedPointMath.multiply(uv[VECTOR_Y], texture.getMipmapHeight(fragmentBuffer.getMipmapLevel()) << INTERPOLATE_BIT);
 	}
 	
 	protected final void setUV2(int[] uv, Texture texture) {
-		u[2] = FixedPointMath.multiply(uv[VECTOR_X], texture.getWidth() << INTERPOLATE_BIT);
-		v[2] = FixedPointMath.multiply(uv[VECTOR_Y], texture.getHeight() << INTERPOLATE_BIT);
+		u[2] = FixedPointMath.multiply(uv[VECTOR_X], texture.getMipmapWidth(fragmentBuffer.getMipmapLevel()) << INTERPOLATE_BIT);
+		v[2] = FixedPointMath.multiply(uv[VECTOR_Y], texture.getMipmapHeight(fragmentBuffer.getMipmapLevel()) << INTERPOLATE_BIT);
 	}
 	
 	/**
@@ -80,9 +81,11 @@ public class AffineGouraudRasterizer extends GouraudRasterizer {
 		if(cull()) {
 			return;
 		}
+		clipFrustum();
 		setColor0(geometryBuffer.getVertexBuffer(0).getColor());
 		setColor1(geometryBuffer.getVertexBuffer(1).getColor());
 		setColor2(geometryBuffer.getVertexBuffer(2).getColor());
+		fragmentBuffer.setMipmapLevel(getMipmapLevel(geometryBuffer, texture));
 		setUV0(geometryBuffer.getUV(0), texture);
 		setUV1(geometryBuffer.getUV(1), texture);
 		setUV2(geometryBuffer.getUV(2), texture);
@@ -191,7 +194,8 @@ public class AffineGouraudRasterizer extends GouraudRasterizer {
             int r = red[0] << FP_BIT;
             int g = green[0] << FP_BIT;
             int b = blue[0] << FP_BIT;
-	        for (int y = location0[VECTOR_Y]; y <= location1[VECTOR_Y]; y++) {
+	        final int end = bottomTriangleEnd(location1[VECTOR_Y]);
+	        for (int y = location0[VECTOR_Y]; y <= end; y++) {
 	        	drawScanline(x1, x2, y, z, u, v, r, g, b, dz, du, dv, dr, dg, db, cameraFrustum);
 	            x1 += dx1;
 	            x2 += dx2;
@@ -219,7 +223,8 @@ public class AffineGouraudRasterizer extends GouraudRasterizer {
             int r = red[0] << FP_BIT;
             int g = green[0] << FP_BIT;
             int b = blue[0] << FP_BIT;
-        	for (int y = location0[VECTOR_Y]; y <= location1[VECTOR_Y]; y++) {
+        	final int end = bottomTriangleEnd(location1[VECTOR_Y]);
+        	for (int y = location0[VECTOR_Y]; y <= end; y++) {
         		drawScanline(x1, x2, y, z, u, v, r, g, b, dz, du, dv, dr, dg, db, cameraFrustum);
 	            x1 += dx2;
 	            x2 += dx1;
@@ -270,7 +275,8 @@ public class AffineGouraudRasterizer extends GouraudRasterizer {
 			int r = red[2] << FP_BIT;
 			int g = green[2] << FP_BIT;
 			int b = blue[2] << FP_BIT;
-	        for (int y = location2[VECTOR_Y]; y > location0[VECTOR_Y]; y--) {
+	        final int end = topTriangleEnd(location0[VECTOR_Y]);
+	        for (int y = location2[VECTOR_Y]; y > end; y--) {
 	        	drawScanline(x1, x2, y, z, u, v, r, g, b, dz, du, dv, dr, dg, db, cameraFrustum);
 	            x1 -= dx1;
 	            x2 -= dx2;
@@ -298,7 +304,8 @@ public class AffineGouraudRasterizer extends GouraudRasterizer {
 			int r = red[2] << FP_BIT;
 			int g = green[2] << FP_BIT;
 			int b = blue[2] << FP_BIT;
-	        for (int y = location2[VECTOR_Y]; y > location0[VECTOR_Y]; y--) {
+	        final int end = topTriangleEnd(location0[VECTOR_Y]);
+	        for (int y = location2[VECTOR_Y]; y > end; y--) {
 	        	drawScanline(x1, x2, y, z, u, v, r, g, b, dz, du, dv, dr, dg, db, cameraFrustum);
 	            x1 -= dx2;
 	            x2 -= dx1;
@@ -313,8 +320,22 @@ public class AffineGouraudRasterizer extends GouraudRasterizer {
     }
 	
 	private void drawScanline(int x1, int x2, int y, int z, int u, int v, int r, int g, int b, int dz, int du, int dv, int dr, int dg, int db, int[] cameraFrustum) {
+		if ((y < cameraFrustum[Camera.FRUSTUM_TOP]) || (y > cameraFrustum[Camera.FRUSTUM_BOTTOM]))
+			return;
 		x1 >>= FP_BIT;
 		x2 >>= FP_BIT;
+		if (x1 < cameraFrustum[Camera.FRUSTUM_LEFT]) {
+			int step = cameraFrustum[Camera.FRUSTUM_LEFT] - x1;
+			x1 += step;
+			z += dz * step;
+			u += du * step;
+			v += dv * step;
+			r += dr * step;
+			g += dg * step;
+			b += db * step;
+		}
+		if (cameraFrustum[Camera.FRUSTUM_RIGHT] < x2)
+			x2 = cameraFrustum[Camera.FRUSTUM_RIGHT];
 		int cr, cg, cb;
 		for (; x1 <= x2; x1++) {
 			fragmentBuffer.getLocation()[VECTOR_X] = x1;
@@ -28,6 +28,7 @@ import static com.johnsproject.jgameengine.math.VectorMath.*;
 
 import com.johnsproject.jgameengine.math.FixedPointMath;
 import com.johnsproject.jgameengine.math.VectorMath;
+import com.johnsproject.jgameengine.model.Camera;
 import com.johnsproject.jgameengine.model.Texture;
 import com.johnsproject.jgameengine.shader.GeometryBuffer;
 import com.johnsproject.jgameengine.shader.Shader;
@@ -48,18 +49,18 @@ public class AffinePhongRasterizer extends PhongRasterizer {
 	}
 
 	protected final void setUV0(int[] uv, Texture texture) {
-		u[0] = FixedPointMath.multiply(uv[VECTOR_X], texture.getWidth() << INTERPOLATE_BIT);
-		v[0] = FixedPointMath.multiply(uv[VECTOR_Y], texture.getHeight() << INTERPOLATE_BIT);
+		u[0] = FixedPointMath.multiply(uv[VECTOR_X], texture.getMipmapWidth(fragmentBuffer.getMipmapLevel()) << INTERPOLATE_BIT);
+		v[0] = FixedPointMath.multiply(uv[VECTOR_Y], texture.getMipmapHeight(fragmentBuffer.getMipmapLevel()) << INTERPOLATE_BIT);
 	}
 	
 	protected final void setUV1(int[] uv, Texture texture) {
-		u[1] = FixedPointMath.multiply(uv[VECTOR_X], texture.getWidth() << INTERPOLATE_BIT);
-		v[1] = FixedPointMath.multiply(uv[VECTOR_Y], texture.getHeight() << INTERPOLATE_BIT);
+		u[1] = FixedPointMath.multiply(uv[VECTOR_X], texture.getMipmapWidth(fragmentBuffer.getMipmapLevel()) << INTERPOLATE_BIT);
+		v[1] = FixedPointMath.multiply(uv[VECTOR_Y], texture.getMipmapHeight(fragmentBuffer.getMipmapLevel()) << INTERPOLATE_BIT);
 	}
 	
 	protected final void setUV2(int[] uv, Texture texture) {
-		u[2] = FixedPointMath.multiply(uv[VECTOR_X], texture.getWidth() << INTERPOLATE_BIT);
-		v[2] = FixedPointMath.multiply(uv[VECTOR_Y], texture.getHeight() << INTERPOLATE_BIT);
+		u[2] = FixedPointMath.multiply(uv[VECTOR_X], texture.getMipmapWidth(fragmentBuffer.getMipmapLevel()) << INTERPOLATE_BIT);
+		v[2] = FixedPointMath.multiply(uv[VECTOR_Y], texture.getMipmapHeight(fragmentBuffer.getMipmapLevel()) << INTERPOLATE_BIT);
 	}
 	
 	/**
@@ -79,12 +80,14 @@ public class AffinePhongRasterizer extends PhongRasterizer {
 		if(cull()) {
 			return;
 		}
+		clipFrustum();
 		setWorldLocation0(geometryBuffer.getVertexBuffer(0).getWorldLocation());
 		setWorldLocation1(geometryBuffer.getVertexBuffer(1).getWorldLocation());
 		setWorldLocation2(geometryBuffer.getVertexBuffer(2).getWorldLocation());
 		setNormal0(geometryBuffer.getVertexBuffer(0).getWorldNormal());
 		setNormal1(geometryBuffer.getVertexBuffer(1).getWorldNormal());
 		setNormal2(geometryBuffer.getVertexBuffer(2).getWorldNormal());
+		fragmentBuffer.setMipmapLevel(getMipmapLevel(geometryBuffer, texture));
 		setUV0(geometryBuffer.getUV(0), texture);
 		setUV1(geometryBuffer.getUV(1), texture);
 		setUV2(geometryBuffer.getUV(2), texture);
@@ -224,7 +227,8 @@ public class AffinePhongRasterizer extends PhongRasterizer {
             int nx = normalX[0] << FP_BIT;
             int ny = normalY[0] << FP_BIT;
             int nz = normalZ[0] << FP_BIT;
-	        for (int y = location0[VECTOR_Y]; y <= location1[VECTOR_Y]; y++) {
+	        final int end = bottomTriangleEnd(location1[VECTOR_Y]);
+	        for (int y = location0[VECTOR_Y]; y <= end; y++) {
 	        	drawScanline(x1, x2, y, z, u, v, wx, wy, wz, nx, ny, nz, dz, du, dv, dwx, dwy, dwz, dnx, dny, dnz, cameraFrustum);
 	            x1 += dx1;
 	            x2 += dx2;
@@ -261,7 +265,8 @@ public class AffinePhongRasterizer extends PhongRasterizer {
             int nx = normalX[0] << FP_BIT;
             int ny = normalY[0] << FP_BIT;
             int nz = normalZ[0] << FP_BIT;
-        	for (int y = location0[VECTOR_Y]; y <= location1[VECTOR_Y]; y++) {
+        	final int end = bottomTriangleEnd(location1[VECTOR_Y]);
+        	for (int y = location0[VECTOR_Y]; y <= end; y++) {
         		drawScanline(x1, x2, y, z, u, v, wx, wy, wz, nx, ny, nz, dz, du, dv, dwx, dwy, dwz, dnx, dny, dnz, cameraFrustum);
 	            x1 += dx2;
 	            x2 += dx1;
@@ -327,7 +332,8 @@ public class AffinePhongRasterizer extends PhongRasterizer {
             int nx = normalX[2] << FP_BIT;
             int ny = normalY[2] << FP_BIT;
             int nz = normalZ[2] << FP_BIT;
-	        for (int y = location2[VECTOR_Y]; y > location0[VECTOR_Y]; y--) {
+	        final int end = topTriangleEnd(location0[VECTOR_Y]);
+	        for (int y = location2[VECTOR_Y]; y > end; y--) {
 	        	drawScanline(x1, x2, y, z, u, v, wx, wy, wz, nx, ny, nz, dz, du, dv, dwx, dwy, dwz, dnx, dny, dnz, cameraFrustum);
 	            x1 -= dx1;
 	            x2 -= dx2;
@@ -364,7 +370,8 @@ public class AffinePhongRasterizer extends PhongRasterizer {
             int nx = normalX[2] << FP_BIT;
             int ny = normalY[2] << FP_BIT;
             int nz = normalZ[2] << FP_BIT;
-	        for (int y = location2[VECTOR_Y]; y > location0[VECTOR_Y]; y--) {
+	        final int end = topTriangleEnd(location0[VECTOR_Y]);
+	        for (int y = location2[VECTOR_Y]; y > end; y--) {
 	        	drawScanline(x1, x2, y, z, u, v, wx, wy, wz, nx, ny, nz, dz, du, dv, dwx, dwy, dwz, dnx, dny, dnz, cameraFrustum);
 	            x1 -= dx2;
 	            x2 -= dx1;
@@ -383,8 +390,25 @@ public class AffinePhongRasterizer extends PhongRasterizer {
 	
 	private void drawScanline(int x1, int x2, int y, int z, int u, int v, int wx, int wy, int wz, int nx, int ny, int nz,
 							int dz, int du, int dv, int dwx, int dwy, int dwz, int dnx, int dny, int dnz, int[] cameraFrustum) {
+		if ((y < cameraFrustum[Camera.FRUSTUM_TOP]) || (y > cameraFrustum[Camera.FRUSTUM_BOTTOM]))
+			return;
 		x1 >>= FP_BIT;
 		x2 >>= FP_BIT;
+		if (x1 < cameraFrustum[Camera.FRUSTUM_LEFT]) {
+			int step = cameraFrustum[Camera.FRUSTUM_LEFT] - x1;
+			x1 += step;
+			z += dz * step;
+			u += du * step;
+			v += dv * step;
+			wx += dwx * step;
+			wy += dwy * step;
+			wz += dwz * step;
+			nx += dnx * step;
+			ny += dny * step;
+			nz += dnz * step;
+		}
+		if (cameraFrustum[Camera.FRUSTUM_RIGHT] < x2)
+			x2 = cameraFrustum[Camera.FRUSTUM_RIGHT];
 		for (; x1 <= x2; x1++) {
 			fragmentBuffer.getLocation()[VECTOR_X] = x1;
 			fragmentBuffer.getLocation()[VECTOR_Y] = y;
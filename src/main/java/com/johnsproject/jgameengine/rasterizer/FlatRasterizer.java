@@ -29,9 +29,13 @@ import static com.johnsproject.jgameengine.math.VectorMath.*;
 import com.johnsproject.jgameengine.math.FixedPointMath;
 import com.johnsproject.jgameengine.math.VectorMath;
 import com.johnsproject.jgameengine.model.Camera;
+import com.johnsproject.jgameengine.model.DepthPyramid;
+import com.johnsproject.jgameengine.model.FrameBuffer;
+import com.johnsproject.jgameengine.model.Texture;
 import com.johnsproject.jgameengine.shader.FragmentBuffer;
 import com.johnsproject.jgameengine.shader.GeometryBuffer;
 import com.johnsproject.jgameengine.shader.Shader;
+import com.johnsproject.jgameengine.shader.SpanShader;
 
 
 public class FlatRasterizer {
@@ -39,25 +43,35 @@ public class FlatRasterizer {
 	public static final byte INTERPOLATE_BIT = 5;
 	public static final byte INTERPOLATE_ONE = 1 << INTERPOLATE_BIT;
 	public static final byte FP_PLUS_INTERPOLATE_BIT = FP_BIT + INTERPOLATE_BIT;
+	public static final int OCCLUSION_DEPTH_MARGIN = 4;
 
 	protected final Shader shader;
+	protected final SpanShader spanShader;
 	protected final FragmentBuffer fragmentBuffer;
 	protected final int[] location0;
 	protected final int[] location1;
 	protected final int[] location2;
 	protected final int[] cameraFrustum;
+	protected final int[] renderRegion;
+	protected int[] targetFrustum;
 	protected final int[] vectorCache;
+	protected final int[] triangleBounds;
 	protected boolean frustumCull;
 	protected int faceCull;
+	protected DepthPyramid depthPyramid;
 	
 	public FlatRasterizer(Shader shader) {
 		this.shader = shader;
+		this.spanShader = shader instanceof SpanShader ? (SpanShader) shader : null;
 		this.fragmentBuffer = new FragmentBuffer();
 		this.vectorCache = VectorMath.emptyVector();
+		this.triangleBounds = new int[4];
 		this.location0 = VectorMath.emptyVector();
 		this.location1 = VectorMath.emptyVector();
 		this.location2 = VectorMath.emptyVector();
 		this.cameraFrustum = new int[Camera.FRUSTUM_SIZE];
+		this.renderRegion = new int[Camera.FRUSTUM_SIZE];
+		resetRenderRegion();
 		this.frustumCull = true;
 		this.faceCull = -1;
 	}
@@ -83,6 +97,53 @@ public class FlatRasterizer {
 		this.faceCull = faceCull;
 	}
 
+	/**
+	 * Sets the depth pyramid used to cull the triangles that are behind the already drawn geometry. 
+	 * If it's null, which is the default, no occlusion culling will happen.
+	 * 
+	 * @param depthPyramid
+	 */
+	public void setDepthPyramid(DepthPyramid depthPyramid) {
+		this.depthPyramid = depthPyramid;
+	}
+	
+	/**
+	 * Restricts the pixels drawn by this rasterizer to the given region of the render target. 
+	 * Pixels outside of the region are clipped the same way as pixels outside of the camera frustum, 
+	 * so rasterizers with disjoint regions can draw into the same render target at the same time.
+	 * 
+	 * @param left first column of the region.
+	 * @param right last column of the region.
+	 * @param top first row of the region.
+	 * @param bottom last row of the region.
+	 */
+	public void setRenderRegion(int left, int right, int top, int bottom) {
+		renderRegion[Camera.FRUSTUM_LEFT] = left;
+		renderRegion[Camera.FRUSTUM_RIGHT] = right;
+		renderRegion[Camera.FRUSTUM_TOP] = top;
+		renderRegion[Camera.FRUSTUM_BOTTOM] = bottom;
+	}
+	
+	/**
+	 * Sets the ported frustum of the texture region this rasterizer draws into if it isn't the render 
+	 * target of the camera, like a shadow map in a tile of the shadow atlas. Triangles are then culled 
+	 * and clipped against this frustum, its right and bottom are one pixel past the region. If it's null, 
+	 * which is the default, the camera frustum and its render target are used.
+	 * 
+	 * @param targetFrustum
+	 */
+	public void setTargetFrustum(int[] targetFrustum) {
+		this.targetFrustum = targetFrustum;
+	}
+	
+	/**
+	 * Removes the region set by {@link #setRenderRegion}, this rasterizer will 
+	 * then only clip the pixels outside of the camera frustum.
+	 */
+	public void resetRenderRegion() {
+		setRenderRegion(Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE);
+	}
+
 	protected final void setLocation0(int[] location) {
 		VectorMath.copy(location0, location);
 	}
@@ -100,18 +161,24 @@ public class FlatRasterizer {
 	 * This rasterizer draws a triangle using the x, y coordinates of each vertex of the geometryBuffer. 
 	 * It uses linear interpolation to find out the z coordinate for each pixel.
 	 * While rasterizing the geometryBuffer, for each pixel/fragment the {@link Shader#fragment} 
-	 * method of this rasterizer's {@link Shader} will be called.
+	 * method of this rasterizer's {@link Shader} will be called, or for each scanline the 
+	 * {@link SpanShader#fragmentSpan} method if the shader is a {@link SpanShader}.
 	 * 
 	 * @param geometryBuffer
 	 */
 	public void draw(GeometryBuffer geometryBuffer) {
-		copyFrustum(this.cameraFrustum, shader.getShaderBuffer().getCamera().getRenderTargetPortedFrustum());
+		if(targetFrustum == null) {
+			copyFrustum(this.cameraFrustum, shader.getShaderBuffer().getCamera().getRenderTargetPortedFrustum());
+		} else {
+			copyFrustum(this.cameraFrustum, targetFrustum);
+		}
 		VectorMath.copy(location0, geometryBuffer.getVertexBuffer(0).getLocation());
 		VectorMath.copy(location1, geometryBuffer.getVertexBuffer(1).getLocation());
 		VectorMath.copy(location2, geometryBuffer.getVertexBuffer(2).getLocation());
 		if(cull()) {
 			return;
 		}
+		clipFrustum();
 		if (location0[VECTOR_Y] > location1[VECTOR_Y]) {
 			VectorMath.swap(location0, location1);
 		}
@@ -146,6 +213,23 @@ public class FlatRasterizer {
         }
 	}
 	
+	/**
+	 * Returns the last row drawn by a bottom triangle that ends at the given row, 
+	 * the rows below the camera frustum are skipped.
+	 */
+	protected final int bottomTriangleEnd(int y) {
+		return Math.min(y, cameraFrustum[Camera.FRUSTUM_BOTTOM]);
+	}
+	
+	/**
+	 * Returns the row at which a top triangle that ends at the given row stops. A top triangle is 
+	 * drawn upwards and doesn't draw that row, it belongs to the bottom triangle. If the triangle 
+	 * crosses the top of the camera frustum it stops above it, so the top row is still drawn.
+	 */
+	protected final int topTriangleEnd(int y) {
+		return Math.max(y, cameraFrustum[Camera.FRUSTUM_TOP] - 1);
+	}
+	
 	private void drawBottomTriangle() {
 		int xShifted = location0[VECTOR_X] << FP_BIT;
 		int y2y1 = location1[VECTOR_Y] - location0[VECTOR_Y];
@@ -161,9 +245,7 @@ public class FlatRasterizer {
         int x2 = xShifted;
         int z = location0[VECTOR_Z] << FP_BIT;
         int y1 = location0[VECTOR_Y];
-        int y2 = location1[VECTOR_Y];
-        if(cameraFrustum[Camera.FRUSTUM_BOTTOM] < y2)
-	    	y2 = cameraFrustum[Camera.FRUSTUM_BOTTOM];
+        int y2 = bottomTriangleEnd(location1[VECTOR_Y]);
         if(dx1 < dx2) {
         	int dxdx = dx2 - dx1;
         	dxdx = dxdx == 0 ? 1 : dxdx;
@@ -219,9 +301,7 @@ public class FlatRasterizer {
 		int x2 = xShifted;
 		int z = location2[VECTOR_Z] << FP_BIT;
 		int y1 = location2[VECTOR_Y];
-        int y2 = location0[VECTOR_Y];
-        if(cameraFrustum[Camera.FRUSTUM_TOP] > y2)
-	    	y2 = cameraFrustum[Camera.FRUSTUM_TOP];
+        int y2 = topTriangleEnd(location0[VECTOR_Y]);
 		if (dx1 > dx2) {
 			int dxdx = dx1 - dx2;
 			dxdx = dxdx == 0 ? 1 : dxdx;
@@ -269,6 +349,11 @@ public class FlatRasterizer {
 	    }
 	    if(cameraFrustum[Camera.FRUSTUM_RIGHT] < x2)
 	    	x2 = cameraFrustum[Camera.FRUSTUM_RIGHT];
+	    if(spanShader != null) {
+	    	if(x1 <= x2)
+	    		spanShader.fragmentSpan(y, x1, x2, z, dz);
+	    	return;
+	    }
 		for (; x1 <= x2; x1++) {
 			fragmentBuffer.getLocation()[VECTOR_X] = x1;
 			fragmentBuffer.getLocation()[VECTOR_Y] = y;
@@ -303,7 +388,118 @@ public class FlatRasterizer {
 		}
 		int size = (location1[VECTOR_X] - location0[VECTOR_X]) * (location2[VECTOR_Y] - location0[VECTOR_Y])
 				- (location2[VECTOR_X] - location0[VECTOR_X]) * (location1[VECTOR_Y] - location0[VECTOR_Y]);
-		return size * faceCull < 0;
+		if(size * faceCull < 0)
+			return true;
+		return occlusionCull();
+	}
+	
+	/**
+	 * Returns true if the triangle is behind the depth stored in the {@link DepthPyramid}. 
+	 * The bounds of the triangle are grown by a pixel and its depth is reduced by 
+	 * {@link #OCCLUSION_DEPTH_MARGIN}, as the interpolated fragments can be a bit outside of the 
+	 * vertices. Triangles that cross the near plane are never culled.
+	 */
+	protected boolean occlusionCull() {
+		if(depthPyramid == null)
+			return false;
+		int minZ = Math.min(location0[VECTOR_Z], Math.min(location1[VECTOR_Z], location2[VECTOR_Z]));
+		if(minZ <= 1)
+			return false;
+		getTriangleBounds(location0, location1, location2, triangleBounds);
+		final int left = Math.max(triangleBounds[Camera.FRUSTUM_LEFT], renderRegion[Camera.FRUSTUM_LEFT]);
+		final int right = Math.min(triangleBounds[Camera.FRUSTUM_RIGHT], renderRegion[Camera.FRUSTUM_RIGHT]);
+		final int top = Math.max(triangleBounds[Camera.FRUSTUM_TOP], renderRegion[Camera.FRUSTUM_TOP]);
+		final int bottom = Math.min(triangleBounds[Camera.FRUSTUM_BOTTOM], renderRegion[Camera.FRUSTUM_BOTTOM]);
+		if(depthPyramid.isOccluded(left, right, top, bottom, minZ - OCCLUSION_DEPTH_MARGIN)) {
+			depthPyramid.addOccludedFace();
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Intersects the copied camera frustum with the render region and the render target, or with the target frustum. This is done after 
+	 * {@link #cull()} so the culling of whole triangles doesn't depend on the render region. 
+	 * Every fragment is then inside of the render target, so shaders can access its buffers unchecked. 
+	 * The pixels the triangle can cover are marked as drawn in the render target, so its next clear resets them.
+	 */
+	protected void clipFrustum() {
+		int width = 0;
+		int height = 0;
+		FrameBuffer renderTarget = null;
+		if(targetFrustum == null) {
+			renderTarget = shader.getShaderBuffer().getCamera().getRenderTarget();
+			width = renderTarget.getWidth();
+			height = renderTarget.getHeight();
+		} else {
+			width = targetFrustum[Camera.FRUSTUM_RIGHT];
+			height = targetFrustum[Camera.FRUSTUM_BOTTOM];
+		}
+		if (cameraFrustum[Camera.FRUSTUM_LEFT] < 0)
+			cameraFrustum[Camera.FRUSTUM_LEFT] = 0;
+		if (cameraFrustum[Camera.FRUSTUM_RIGHT] > width - 1)
+			cameraFrustum[Camera.FRUSTUM_RIGHT] = width - 1;
+		if (cameraFrustum[Camera.FRUSTUM_TOP] < 0)
+			cameraFrustum[Camera.FRUSTUM_TOP] = 0;
+		if (cameraFrustum[Camera.FRUSTUM_BOTTOM] > height - 1)
+			cameraFrustum[Camera.FRUSTUM_BOTTOM] = height - 1;
+		if (cameraFrustum[Camera.FRUSTUM_LEFT] < renderRegion[Camera.FRUSTUM_LEFT])
+			cameraFrustum[Camera.FRUSTUM_LEFT] = renderRegion[Camera.FRUSTUM_LEFT];
+		if (cameraFrustum[Camera.FRUSTUM_RIGHT] > renderRegion[Camera.FRUSTUM_RIGHT])
+			cameraFrustum[Camera.FRUSTUM_RIGHT] = renderRegion[Camera.FRUSTUM_RIGHT];
+		if (cameraFrustum[Camera.FRUSTUM_TOP] < renderRegion[Camera.FRUSTUM_TOP])
+			cameraFrustum[Camera.FRUSTUM_TOP] = renderRegion[Camera.FRUSTUM_TOP];
+		if (cameraFrustum[Camera.FRUSTUM_BOTTOM] > renderRegion[Camera.FRUSTUM_BOTTOM])
+			cameraFrustum[Camera.FRUSTUM_BOTTOM] = renderRegion[Camera.FRUSTUM_BOTTOM];
+		if(renderTarget != null) {
+			getTriangleBounds(location0, location1, location2, triangleBounds);
+			renderTarget.markDirty(Math.max(triangleBounds[Camera.FRUSTUM_LEFT], cameraFrustum[Camera.FRUSTUM_LEFT]),
+					Math.min(triangleBounds[Camera.FRUSTUM_RIGHT], cameraFrustum[Camera.FRUSTUM_RIGHT]),
+					Math.max(triangleBounds[Camera.FRUSTUM_TOP], cameraFrustum[Camera.FRUSTUM_TOP]),
+					Math.min(triangleBounds[Camera.FRUSTUM_BOTTOM], cameraFrustum[Camera.FRUSTUM_BOTTOM]));
+		}
+	}
+	
+	/**
+	 * Stores the pixels the triangle with the given screen space vertices can cover at the 
+	 * {@link Camera#FRUSTUM_LEFT}, right, top and bottom indices of the bounds. The interpolated 
+	 * edges can be off by a pixel, so the bounding box of the vertices is extended by one pixel.
+	 * 
+	 * @return the bounds.
+	 */
+	public static int[] getTriangleBounds(int[] location0, int[] location1, int[] location2, int[] bounds) {
+		final long left = Math.min(location0[VECTOR_X], Math.min(location1[VECTOR_X], location2[VECTOR_X])) - 1L;
+		final long right = Math.max(location0[VECTOR_X], Math.max(location1[VECTOR_X], location2[VECTOR_X])) + 1L;
+		final long top = Math.min(location0[VECTOR_Y], Math.min(location1[VECTOR_Y], location2[VECTOR_Y])) - 1L;
+		final long bottom = Math.max(location0[VECTOR_Y], Math.max(location1[VECTOR_Y], location2[VECTOR_Y])) + 1L;
+		bounds[Camera.FRUSTUM_LEFT] = (int) Math.max(left, Integer.MIN_VALUE);
+		bounds[Camera.FRUSTUM_RIGHT] = (int) Math.min(right, Integer.MAX_VALUE);
+		bounds[Camera.FRUSTUM_TOP] = (int) Math.max(top, Integer.MIN_VALUE);
+		bounds[Camera.FRUSTUM_BOTTOM] = (int) Math.min(bottom, Integer.MAX_VALUE);
+		return bounds;
+	}
+	
+	/**
+	 * Returns the mipmap level of the texture whose pixels are closest in size to the pixels of the 
+	 * triangle. The level is chosen once for the whole triangle from the ratio between its area 
+	 * in the texture and its area on the screen, each level has a quarter of the pixels of the previous one.
+	 */
+	protected int getMipmapLevel(GeometryBuffer geometryBuffer, Texture texture) {
+		if(texture.getMipmapCount() == 1)
+			return 0;
+		final long screenArea = Math.abs((long) (location1[VECTOR_X] - location0[VECTOR_X]) * (location2[VECTOR_Y] - location0[VECTOR_Y])
+				- (long) (location2[VECTOR_X] - location0[VECTOR_X]) * (location1[VECTOR_Y] - location0[VECTOR_Y]));
+		final int[] uv0 = geometryBuffer.getUV(0);
+		final int[] uv1 = geometryBuffer.getUV(1);
+		final int[] uv2 = geometryBuffer.getUV(2);
+		long textureArea = Math.abs((long) (uv1[VECTOR_X] - uv0[VECTOR_X]) * (uv2[VECTOR_Y] - uv0[VECTOR_Y])
+				- (long) (uv2[VECTOR_X] - uv0[VECTOR_X]) * (uv1[VECTOR_Y] - uv0[VECTOR_Y]));
+		textureArea = ((textureArea >> FP_BIT) * texture.getWidth()) >> FP_BIT;
+		textureArea *= texture.getHeight();
+		if((screenArea == 0) || (textureArea <= screenArea))
+			return 0;
+		final int level = (63 - Long.numberOfLeadingZeros(textureArea / screenArea)) >> 1;
+		return Math.min(level, texture.getMipmapCount() - 1);
 	}
 	
 	protected void divideOneByZ() {
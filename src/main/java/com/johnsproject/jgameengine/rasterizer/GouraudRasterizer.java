@@ -29,6 +29,7 @@ import static com.johnsproject.jgameengine.math.VectorMath.*;
 import com.johnsproject.jgameengine.math.ColorMath;
 import com.johnsproject.jgameengine.math.FixedPointMath;
 import com.johnsproject.jgameengine.math.VectorMath;
+import com.johnsproject.jgameengine.model.Camera;
 import com.johnsproject.jgameengine.shader.GeometryBuffer;
 import com.johnsproject.jgameengine.shader.Shader;
 
@@ -82,6 +83,7 @@ public class GouraudRasterizer extends FlatRasterizer {
 		if(cull()) {
 			return;
 		}
+		clipFrustum();
 		setColor0(geometryBuffer.getVertexBuffer(0).getColor());
 		setColor1(geometryBuffer.getVertexBuffer(1).getColor());
 		setColor2(geometryBuffer.getVertexBuffer(2).getColor());
@@ -167,7 +169,8 @@ public class GouraudRasterizer extends FlatRasterizer {
             int r = red[0] << FP_BIT;
             int g = green[0] << FP_BIT;
             int b = blue[0] << FP_BIT;
-	        for (int y = location0[VECTOR_Y]; y <= location1[VECTOR_Y]; y++) {
+	        final int end = bottomTriangleEnd(location1[VECTOR_Y]);
+	        for (int y = location0[VECTOR_Y]; y <= end; y++) {
 	        	drawScanline(x1, x2, y, z, r, g, b, dz, dr, dg, db, cameraFrustum);
 	            x1 += dx1;
 	            x2 += dx2;
@@ -189,7 +192,8 @@ public class GouraudRasterizer extends FlatRasterizer {
             int r = red[0] << FP_BIT;
             int g = green[0] << FP_BIT;
             int b = blue[0] << FP_BIT;
-        	for (int y = location0[VECTOR_Y]; y <= location1[VECTOR_Y]; y++) {
+        	final int end = bottomTriangleEnd(location1[VECTOR_Y]);
+        	for (int y = location0[VECTOR_Y]; y <= end; y++) {
         		drawScanline(x1, x2, y, z, r, g, b, dz, dr, dg, db, cameraFrustum);
 	            x1 += dx2;
 	            x2 += dx1;
@@ -230,7 +234,8 @@ public class GouraudRasterizer extends FlatRasterizer {
 			int r = red[2] << FP_BIT;
 			int g = green[2] << FP_BIT;
 			int b = blue[2] << FP_BIT;
-	        for (int y = location2[VECTOR_Y]; y > location0[VECTOR_Y]; y--) {
+	        final int end = topTriangleEnd(location0[VECTOR_Y]);
+	        for (int y = location2[VECTOR_Y]; y > end; y--) {
 	        	drawScanline(x1, x2, y, z, r, g, b, dz, dr, dg, db, cameraFrustum);
 	            x1 -= dx1;
 	            x2 -= dx2;
@@ -252,7 +257,8 @@ public class GouraudRasterizer extends FlatRasterizer {
 			int r = red[2] << FP_BIT;
 			int g = green[2] << FP_BIT;
 			int b = blue[2] << FP_BIT;
-	        for (int y = location2[VECTOR_Y]; y > location0[VECTOR_Y]; y--) {
+	        final int end = topTriangleEnd(location0[VECTOR_Y]);
+	        for (int y = location2[VECTOR_Y]; y > end; y--) {
 	        	drawScanline(x1, x2, y, z, r, g, b, dz, dr, dg, db, cameraFrustum);
 	            x1 -= dx2;
 	            x2 -= dx1;
@@ -265,8 +271,20 @@ public class GouraudRasterizer extends FlatRasterizer {
     }
 	
 	private void drawScanline(int x1, int x2, int y, int z, int r, int g, int b, int dz, int dr, int dg, int db, int[] cameraFrustum) {
+		if ((y < cameraFrustum[Camera.FRUSTUM_TOP]) || (y > cameraFrustum[Camera.FRUSTUM_BOTTOM]))
+			return;
 		x1 >>= FP_BIT;
 		x2 >>= FP_BIT;
+		if (x1 < cameraFrustum[Camera.FRUSTUM_LEFT]) {
+			int step = cameraFrustum[Camera.FRUSTUM_LEFT] - x1;
+			x1 += step;
+			z += dz * step;
+			r += dr * step;
+			g += dg * step;
+			b += db * step;
+		}
+		if (cameraFrustum[Camera.FRUSTUM_RIGHT] < x2)
+			x2 = cameraFrustum[Camera.FRUSTUM_RIGHT];
 		int cr, cg, cb;
 		for (; x1 <= x2; x1++) {
 			fragmentBuffer.getLocation()[VECTOR_X] = x1;
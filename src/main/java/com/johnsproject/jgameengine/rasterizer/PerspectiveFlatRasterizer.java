@@ -28,6 +28,7 @@ import static com.johnsproject.jgameengine.math.VectorMath.*;
 
 import com.johnsproject.jgameengine.math.FixedPointMath;
 import com.johnsproject.jgameengine.math.VectorMath;
+import com.johnsproject.jgameengine.model.Camera;
 import com.johnsproject.jgameengine.model.Texture;
 import com.johnsproject.jgameengine.shader.GeometryBuffer;
 import com.johnsproject.jgameengine.shader.Shader;
@@ -55,6 +56,8 @@ public class PerspectiveFlatRasterizer extends AffineFlatRasterizer {
 		if(cull()) {
 			return;
 		}
+		clipFrustum();
+		fragmentBuffer.setMipmapLevel(getMipmapLevel(geometryBuffer, texture));
 		setUV0(geometryBuffer.getUV(0), texture);
 		setUV1(geometryBuffer.getUV(1), texture);
 		setUV2(geometryBuffer.getUV(2), texture);
@@ -135,7 +138,8 @@ public class PerspectiveFlatRasterizer extends AffineFlatRasterizer {
             int z = location0[VECTOR_Z] << FP_BIT;
             int u = this.u[0] << FP_BIT;
             int v = this.v[0] << FP_BIT;
-	        for (int y = location0[VECTOR_Y]; y <= location1[VECTOR_Y]; y++) {
+	        final int end = bottomTriangleEnd(location1[VECTOR_Y]);
+	        for (int y = location0[VECTOR_Y]; y <= end; y++) {
 	        	drawScanline(x1, x2, y, z, u, v, dz, du, dv, cameraFrustum);
 	            x1 += dx1;
 	            x2 += dx2;
@@ -154,7 +158,8 @@ public class PerspectiveFlatRasterizer extends AffineFlatRasterizer {
             int z = location0[VECTOR_Z] << FP_BIT;
             int u = this.u[0] << FP_BIT;
             int v = this.v[0] << FP_BIT;
-        	for (int y = location0[VECTOR_Y]; y <= location1[VECTOR_Y]; y++) {
+        	final int end = bottomTriangleEnd(location1[VECTOR_Y]);
+        	for (int y = location0[VECTOR_Y]; y <= end; y++) {
         		drawScanline(x1, x2, y, z, u, v, dz, du, dv, cameraFrustum);
 	            x1 += dx2;
 	            x2 += dx1;
@@ -190,7 +195,8 @@ public class PerspectiveFlatRasterizer extends AffineFlatRasterizer {
 			int z = location2[VECTOR_Z] << FP_BIT;
 			int u = this.u[2] << FP_BIT;
 			int v = this.v[2] << FP_BIT;
-	        for (int y = location2[VECTOR_Y]; y > location0[VECTOR_Y]; y--) {
+	        final int end = topTriangleEnd(location0[VECTOR_Y]);
+	        for (int y = location2[VECTOR_Y]; y > end; y--) {
 	        	drawScanline(x1, x2, y, z, u, v, dz, du, dv, cameraFrustum);
 	            x1 -= dx1;
 	            x2 -= dx2;
@@ -209,7 +215,8 @@ public class PerspectiveFlatRasterizer extends AffineFlatRasterizer {
 			int z = location2[VECTOR_Z] << FP_BIT;
 			int u = this.u[2] << FP_BIT;
 			int v = this.v[2] << FP_BIT;
-	        for (int y = location2[VECTOR_Y]; y > location0[VECTOR_Y]; y--) {
+	        final int end = topTriangleEnd(location0[VECTOR_Y]);
+	        for (int y = location2[VECTOR_Y]; y > end; y--) {
 	        	drawScanline(x1, x2, y, z, u, v, dz, du, dv, cameraFrustum);
 	            x1 -= dx2;
 	            x2 -= dx1;
@@ -223,8 +230,19 @@ public class PerspectiveFlatRasterizer extends AffineFlatRasterizer {
 	private static final int DIVISION_ONE = FP_ONE << FP_BIT;
 	private static final int INTERPOLATE_BIT_2 = INTERPOLATE_BIT * 2;
 	private void drawScanline(int x1, int x2, int y, int z, int u, int v, int dz, int du, int dv, int[] cameraFrustum) {
+		if ((y < cameraFrustum[Camera.FRUSTUM_TOP]) || (y > cameraFrustum[Camera.FRUSTUM_BOTTOM]))
+			return;
 		x1 >>= FP_BIT;
 		x2 >>= FP_BIT;
+		if (x1 < cameraFrustum[Camera.FRUSTUM_LEFT]) {
+			int step = cameraFrustum[Camera.FRUSTUM_LEFT] - x1;
+			x1 += step;
+			z += dz * step;
+			u += du * step;
+			v += dv * step;
+		}
+		if (cameraFrustum[Camera.FRUSTUM_RIGHT] < x2)
+			x2 = cameraFrustum[Camera.FRUSTUM_RIGHT];
 		int oneByZ;
 		for (; x1 <= x2; x1++) {
 			fragmentBuffer.getLocation()[VECTOR_X] = x1;
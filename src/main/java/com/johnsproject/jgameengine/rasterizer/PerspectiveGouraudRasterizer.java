@@ -29,6 +29,7 @@ import static com.johnsproject.jgameengine.math.VectorMath.*;
 import com.johnsproject.jgameengine.math.ColorMath;
 import com.johnsproject.jgameengine.math.FixedPointMath;
 import com.johnsproject.jgameengine.math.VectorMath;
+import com.johnsproject.jgameengine.model.Camera;
 import com.johnsproject.jgameengine.model.Texture;
 import com.johnsproject.jgameengine.shader.GeometryBuffer;
 import com.johnsproject.jgameengine.shader.Shader;
@@ -56,9 +57,11 @@ public class PerspectiveGouraudRasterizer extends AffineGouraudRasterizer {
 		if(cull()) {
 			return;
 		}
+		clipFrustum();
 		setColor0(geometryBuffer.getVertexBuffer(0).getColor());
 		setColor1(geometryBuffer.getVertexBuffer(1).getColor());
 		setColor2(geometryBuffer.getVertexBuffer(2).getColor());
+		fragmentBuffer.setMipmapLevel(getMipmapLevel(geometryBuffer, texture));
 		setUV0(geometryBuffer.getUV(0), texture);
 		setUV1(geometryBuffer.getUV(1), texture);
 		setUV2(geometryBuffer.getUV(2), texture);
@@ -173,7 +176,8 @@ public class PerspectiveGouraudRasterizer extends AffineGouraudRasterizer {
             int r = red[0] << FP_BIT;
             int g = green[0] << FP_BIT;
             int b = blue[0] << FP_BIT;
-	        for (int y = location0[VECTOR_Y]; y <= location1[VECTOR_Y]; y++) {
+	        final int end = bottomTriangleEnd(location1[VECTOR_Y]);
+	        for (int y = location0[VECTOR_Y]; y <= end; y++) {
 	        	drawScanline(x1, x2, y, z, u, v, r, g, b, dz, du, dv, dr, dg, db, cameraFrustum);
 	            x1 += dx1;
 	            x2 += dx2;
@@ -201,7 +205,8 @@ public class PerspectiveGouraudRasterizer extends AffineGouraudRasterizer {
             int r = red[0] << FP_BIT;
             int g = green[0] << FP_BIT;
             int b = blue[0] << FP_BIT;
-        	for (int y = location0[VECTOR_Y]; y <= location1[VECTOR_Y]; y++) {
+        	final int end = bottomTriangleEnd(location1[VECTOR_Y]);
+        	for (int y = location0[VECTOR_Y]; y <= end; y++) {
         		drawScanline(x1, x2, y, z, u, v, r, g, b, dz, du, dv, dr, dg, db, cameraFrustum);
 	            x1 += dx2;
 	            x2 += dx1;
@@ -252,7 +257,8 @@ public class PerspectiveGouraudRasterizer extends AffineGouraudRasterizer {
 			int r = red[2] << FP_BIT;
 			int g = green[2] << FP_BIT;
 			int b = blue[2] << FP_BIT;
-	        for (int y = location2[VECTOR_Y]; y > location0[VECTOR_Y]; y--) {
+	        final int end = topTriangleEnd(location0[VECTOR_Y]);
+	        for (int y = location2[VECTOR_Y]; y > end; y--) {
 	        	drawScanline(x1, x2, y, z, u, v, r, g, b, dz, du, dv, dr, dg, db, cameraFrustum);
 	            x1 -= dx1;
 	            x2 -= dx2;
@@ -280,7 +286,8 @@ public class PerspectiveGouraudRasterizer extends AffineGouraudRasterizer {
 			int r = red[2] << FP_BIT;
 			int g = green[2] << FP_BIT;
 			int b = blue[2] << FP_BIT;
-	        for (int y = location2[VECTOR_Y]; y > location0[VECTOR_Y]; y--) {
+	        final int end = topTriangleEnd(location0[VECTOR_Y]);
+	        for (int y = location2[VECTOR_Y]; y > end; y--) {
 	        	drawScanline(x1, x2, y, z, u, v, r, g, b, dz, du, dv, dr, dg, db, cameraFrustum);
 	            x1 -= dx2;
 	            x2 -= dx1;
@@ -297,8 +304,22 @@ public class PerspectiveGouraudRasterizer extends AffineGouraudRasterizer {
 	private static final int DIVISION_ONE = FP_ONE << FP_BIT;
 	private static final int INTERPOLATE_BIT_2 = INTERPOLATE_BIT * 2;
 	private void drawScanline(int x1, int x2, int y, int z, int u, int v, int r, int g, int b, int dz, int du, int dv, int dr, int dg, int db, int[] cameraFrustum) {
+		if ((y < cameraFrustum[Camera.FRUSTUM_TOP]) || (y > cameraFrustum[Camera.FRUSTUM_BOTTOM]))
+			return;
 		x1 >>= FP_BIT;
 		x2 >>= FP_BIT;
+		if (x1 < cameraFrustum[Camera.FRUSTUM_LEFT]) {
+			int step = cameraFrustum[Camera.FRUSTUM_LEFT] - x1;
+			x1 += step;
+			z += dz * step;
+			u += du * step;
+			v += dv * step;
+			r += dr * step;
+			g += dg * step;
+			b += db * step;
+		}
+		if (cameraFrustum[Camera.FRUSTUM_RIGHT] < x2)
+			x2 = cameraFrustum[Camera.FRUSTUM_RIGHT];
 		int oneByZ, cr, cg, cb;
 		for (; x1 <= x2; x1++) {
 			fragmentBuffer.getLocation()[VECTOR_X] = x1;
@@ -28,6 +28,7 @@ import static com.johnsproject.jgameengine.math.VectorMath.*;
 
 import com.johnsproject.jgameengine.math.FixedPointMath;
 import com.johnsproject.jgameengine.math.VectorMath;
+import com.johnsproject.jgameengine.model.Camera;
 import com.johnsproject.jgameengine.shader.GeometryBuffer;
 import com.johnsproject.jgameengine.shader.Shader;
 
@@ -114,6 +115,7 @@ public class PhongRasterizer extends FlatRasterizer {
 		if(cull()) {
 			return;
 		}
+		clipFrustum();
 		setWorldLocation0(geometryBuffer.getVertexBuffer(0).getWorldLocation());
 		setWorldLocation1(geometryBuffer.getVertexBuffer(1).getWorldLocation());
 		setWorldLocation2(geometryBuffer.getVertexBuffer(2).getWorldLocation());
@@ -233,7 +235,8 @@ public class PhongRasterizer extends FlatRasterizer {
             int nx = normalX[0] << FP_BIT;
             int ny = normalY[0] << FP_BIT;
             int nz = normalZ[0] << FP_BIT;
-	        for (int y = location0[VECTOR_Y]; y <= location1[VECTOR_Y]; y++) {
+	        final int end = bottomTriangleEnd(location1[VECTOR_Y]);
+	        for (int y = location0[VECTOR_Y]; y <= end; y++) {
 	        	drawScanline(x1, x2, y, z, wx, wy, wz, nx, ny, nz, dz, dwx, dwy, dwz, dnx, dny, dnz, cameraFrustum);
 	            x1 += dx1;
 	            x2 += dx2;
@@ -264,7 +267,8 @@ public class PhongRasterizer extends FlatRasterizer {
             int nx = normalX[0] << FP_BIT;
             int ny = normalY[0] << FP_BIT;
             int nz = normalZ[0] << FP_BIT;
-        	for (int y = location0[VECTOR_Y]; y <= location1[VECTOR_Y]; y++) {
+        	final int end = bottomTriangleEnd(location1[VECTOR_Y]);
+        	for (int y = location0[VECTOR_Y]; y <= end; y++) {
         		drawScanline(x1, x2, y, z, wx, wy, wz, nx, ny, nz, dz, dwx, dwy, dwz, dnx, dny, dnz, cameraFrustum);
 	            x1 += dx2;
 	            x2 += dx1;
@@ -320,7 +324,8 @@ public class PhongRasterizer extends FlatRasterizer {
             int nx = normalX[2] << FP_BIT;
             int ny = normalY[2] << FP_BIT;
             int nz = normalZ[2] << FP_BIT;
-	        for (int y = location2[VECTOR_Y]; y > location0[VECTOR_Y]; y--) {
+	        final int end = topTriangleEnd(location0[VECTOR_Y]);
+	        for (int y = location2[VECTOR_Y]; y > end; y--) {
 	        	drawScanline(x1, x2, y, z, wx, wy, wz, nx, ny, nz, dz, dwx, dwy, dwz, dnx, dny, dnz, cameraFrustum);
 	            x1 -= dx1;
 	            x2 -= dx2;
@@ -351,7 +356,8 @@ public class PhongRasterizer extends FlatRasterizer {
             int nx = normalX[2] << FP_BIT;
             int ny = normalY[2] << FP_BIT;
             int nz = normalZ[2] << FP_BIT;
-	        for (int y = location2[VECTOR_Y]; y > location0[VECTOR_Y]; y--) {
+	        final int end = topTriangleEnd(location0[VECTOR_Y]);
+	        for (int y = location2[VECTOR_Y]; y > end; y--) {
 	        	drawScanline(x1, x2, y, z, wx, wy, wz, nx, ny, nz, dz, dwx, dwy, dwz, dnx, dny, dnz, cameraFrustum);
 	            x1 -= dx2;
 	            x2 -= dx1;
@@ -368,8 +374,23 @@ public class PhongRasterizer extends FlatRasterizer {
 	
 	private void drawScanline(int x1, int x2, int y, int z, int wx, int wy, int wz, int nx, int ny, int nz,
 							int dz, int dwx, int dwy, int dwz, int dnx, int dny, int dnz, int[] cameraFrustum) {
+		if ((y < cameraFrustum[Camera.FRUSTUM_TOP]) || (y > cameraFrustum[Camera.FRUSTUM_BOTTOM]))
+			return;
 		x1 >>= FP_BIT;
 		x2 >>= FP_BIT;
+		if (x1 < cameraFrustum[Camera.FRUSTUM_LEFT]) {
+			int step = cameraFrustum[Camera.FRUSTUM_LEFT] - x1;
+			x1 += step;
+			z += dz * step;
+			wx += dwx * step;
+			wy += dwy * step;
+			wz += dwz * step;
+			nx += dnx * step;
+			ny += dny * step;
+			nz += dnz * step;
+		}
+		if (cameraFrustum[Camera.FRUSTUM_RIGHT] < x2)
+			x2 = cameraFrustum[Camera.FRUSTUM_RIGHT];
 		for (; x1 <= x2; x1++) {
 			fragmentBuffer.getLocation()[VECTOR_X] = x1;
 			fragmentBuffer.getLocation()[VECTOR_Y] = y;
@@ -0,0 +1,125 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 John Salomon - John´s Project
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.johnsproject.jgameengine.shader;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.johnsproject.jgameengine.math.ColorMath;
+import com.johnsproject.jgameengine.math.VectorMath;
+import com.johnsproject.jgameengine.model.Camera;
+import com.johnsproject.jgameengine.model.FrameBuffer;
+import com.johnsproject.jgameengine.model.Light;
+import com.johnsproject.jgameengine.model.Texture;
+
+/**
+ * Shader buffer for deferred shading. While rendering, the {@link PhongSpecularShader} only writes 
+ * the depth, albedo, world location and world normal of its fragments into the deferred buffers of the 
+ * render target. After the models are rendered {@link #shade()} lights each visible pixel once, 
+ * so the cost of the lighting depends on the size of the render target and not on the overdraw. 
+ * Flat and gouraud shaded models are lit per vertex, they are still drawn directly.
+ */
+public class DeferredShaderBuffer extends ForwardShaderBuffer {
+
+	private final List<SpecularProperties> materials;
+	private final Map<SpecularProperties, Integer> materialIndices;
+	private final PhongSpecularShader lightingShader;
+	private final int[] worldLocation;
+	private final int[] worldNormal;
+	
+	public DeferredShaderBuffer() {
+		this.materials = new ArrayList<SpecularProperties>();
+		this.materialIndices = new IdentityHashMap<SpecularProperties, Integer>();
+		this.lightingShader = new PhongSpecularShader();
+		this.worldLocation = VectorMath.emptyVector();
+		this.worldNormal = VectorMath.emptyVector();
+	}
+	
+	/**
+	 * Also forgets the materials of the last camera, the material buffer is written again 
+	 * for each camera, so its indices are only valid until the next setup.
+	 */
+	@Override
+	public void setup(Camera camera, List<Light> lights) {
+		super.setup(camera, lights);
+		camera.getRenderTarget().createDeferredBuffers();
+		materials.clear();
+		materialIndices.clear();
+	}
+	
+	/**
+	 * Returns the value written into the material buffer for the given properties. 
+	 * The first index is 1, as 0 marks pixels that are already shaded. 
+	 * The index is valid until the next {@link #setup}.
+	 * 
+	 * @param properties the properties of the shader that draws the pixels.
+	 * @return the material index.
+	 */
+	public synchronized int getMaterialIndex(SpecularProperties properties) {
+		Integer index = materialIndices.get(properties);
+		if(index == null) {
+			materials.add(properties);
+			index = materials.size();
+			materialIndices.put(properties, index);
+		}
+		return index;
+	}
+	
+	/**
+	 * Lights the pixels of the render target of the camera that were drawn with a deferred material.
+	 */
+	public void shade() {
+		final Camera camera = getCamera();
+		final FrameBuffer renderTarget = camera.getRenderTarget();
+		final int[] frustum = camera.getRenderTargetPortedFrustum();
+		final int left = Math.max(frustum[Camera.FRUSTUM_LEFT], 0);
+		final int right = Math.min(frustum[Camera.FRUSTUM_RIGHT], renderTarget.getWidth() - 1);
+		final int top = Math.max(frustum[Camera.FRUSTUM_TOP], 0);
+		final int bottom = Math.min(frustum[Camera.FRUSTUM_BOTTOM], renderTarget.getHeight() - 1);
+		final Texture depthBuffer = renderTarget.getDepthBuffer();
+		final Texture colorBuffer = renderTarget.getColorBuffer();
+		final Texture albedoBuffer = renderTarget.getAlbedoBuffer();
+		final Texture materialBuffer = renderTarget.getMaterialBuffer();
+		final Texture[] locations = renderTarget.getWorldLocationBuffers();
+		final Texture[] normals = renderTarget.getWorldNormalBuffers();
+		lightingShader.setShaderBuffer(this);
+		// the planes are read through the same accessors the shaders write them with
+		for (int y = top; y <= bottom; y++) {
+			for (int x = left; x <= right; x++) {
+				final int material = materialBuffer.getPixelUnchecked(x, y);
+				if((material == 0) || (depthBuffer.getPixelUnchecked(x, y) == Integer.MAX_VALUE))
+					continue;
+				for (int i = 0; i < 3; i++) {
+					worldLocation[i] = locations[i].getPixelUnchecked(x, y);
+					worldNormal[i] = normals[i].getPixelUnchecked(x, y);
+				}
+				lightingShader.setProperties(materials.get(material - 1));
+				final int lightColor = lightingShader.getLightColor(x, y, worldLocation, worldNormal);
+				colorBuffer.setPixelUnchecked(x, y, ColorMath.multiplyColor(albedoBuffer.getPixelUnchecked(x, y), lightColor));
+			}
+		}
+	}
+}
@@ -30,11 +30,13 @@ import com.johnsproject.jgameengine.math.ColorMath;
 import com.johnsproject.jgameengine.math.FixedPointMath;
 import com.johnsproject.jgameengine.math.TransformationMath;
 import com.johnsproject.jgameengine.math.VectorMath;
+import com.johnsproject.jgameengine.model.FrameBuffer;
 import com.johnsproject.jgameengine.model.Light;
 import com.johnsproject.jgameengine.model.Texture;
+import com.johnsproject.jgameengine.rasterizer.FlatRasterizer;
 import com.johnsproject.jgameengine.rasterizer.PerspectiveFlatRasterizer;
 
-public class FlatSpecularShader  implements Shader {
+public class FlatSpecularShader  implements SpanShader, TiledShader {
 	
 	private static final int INITIAL_ATTENUATION = FP_ONE;
 	private static final int LINEAR_ATTENUATION = FixedPointMath.toFixedPoint(0.045);
@@ -48,9 +50,13 @@ public class FlatSpecularShader  implements Shader {
 	private final int[] lightDirection;
 	private final int[] viewDirection;
 	private final int[] faceLocation;
+	private final int[] faceNormal;
 	private final int[] lightSpaceLocation;
 	
 	private int lightColor;
+	private int fragments;
+	private int shadedFragments;
+	private int[] visiblePixels;
 	
 	public FlatSpecularShader() {
 		this.rasterizer = new PerspectiveFlatRasterizer(this);
@@ -59,6 +65,7 @@ public class FlatSpecularShader  implements Shader {
 		this.lightDirection = VectorMath.emptyVector();
 		this.viewDirection = VectorMath.emptyVector();
 		this.faceLocation = VectorMath.emptyVector();
+		this.faceNormal = VectorMath.emptyVector();
 		this.lightSpaceLocation = VectorMath.emptyVector();
 	}
 
@@ -71,7 +78,19 @@ public class FlatSpecularShader  implements Shader {
 	}
 
 	public void geometry(GeometryBuffer geometryBuffer) {
-		int[] normal = geometryBuffer.getWorldNormal();
+		setupGeometry(geometryBuffer);
+		drawGeometry(geometryBuffer);
+		flushFragmentCounts();
+	}
+
+	/**
+	 * Lights the center of the face, the light color is used for all of its pixels.
+	 */
+	public void setupGeometry(GeometryBuffer geometryBuffer) {
+		if (shaderBuffer.isDepthPrepass())
+			return;
+		// the geometry buffer is shared between threads and reflect modifies the normal temporarily, so a copy is used
+		int[] normal = VectorMath.copy(faceNormal, geometryBuffer.getWorldNormal());
 		int[] location1 = geometryBuffer.getVertexBuffer(0).getWorldLocation();
 		int[] location2 = geometryBuffer.getVertexBuffer(1).getWorldLocation();
 		int[] location3 = geometryBuffer.getVertexBuffer(2).getWorldLocation();
@@ -81,29 +100,26 @@ public class FlatSpecularShader  implements Shader {
 		VectorMath.divide(faceLocation, 3 << FP_BIT);	
 		lightColor = ColorMath.BLACK;		
 		int[] cameraLocation = shaderBuffer.getCamera().getTransform().getLocation();		
-		VectorMath.normalize(normal);
 		VectorMath.copy(viewDirection, cameraLocation);
 		VectorMath.subtract(viewDirection, faceLocation);
 		VectorMath.normalize(viewDirection);
 		boolean inShadow = false;
-		int lightIndex = 0;
-		for(int i = 0; i < shaderBuffer.getLights().size(); i++) {
-			Light light = shaderBuffer.getLights().get(i);
-			if(light.isCulled())
+		for(int lightIndex = 0; lightIndex < shaderBuffer.getVisibleLights().size(); lightIndex++) {
+			Light light = shaderBuffer.getVisibleLights().get(lightIndex);
+			if(!light.isInRange(faceLocation))
 				continue;
 			int currentFactor = 0;
 			int attenuation = 0;
 			int[] lightPosition = light.getTransform().getLocation();
+			ShadowMap[] shadowMaps = shaderBuffer.getShadowMaps(lightIndex);
 			switch (light.getType()) {
 			case DIRECTIONAL:
 				VectorMath.copy(lightDirection, light.getDirection());
 				VectorMath.invert(lightDirection);
 				currentFactor = getLightFactor(normal, lightDirection, viewDirection);
-				if (lightIndex == shaderBuffer.getDirectionalLightIndex()) {
-					int[][] lightMatrix = shaderBuffer.getDirectionalLightMatrix();
-					int[] lightFrustum = shaderBuffer.getDirectionalLightFrustum();
-					Texture shadowMap = shaderBuffer.getDirectionalShadowMap();
-					if(inShadow(faceLocation, lightMatrix, lightFrustum, shadowMap)) {
+				if (shadowMaps != null) {
+					int cascade = shaderBuffer.getDirectionalCascade(faceLocation);
+					if((cascade != -1) && inShadow(faceLocation, shadowMaps[cascade])) {
 						currentFactor = ColorMath.multiplyColor(currentFactor, light.getShadowColor());
 					}
 				}
@@ -117,12 +133,9 @@ public class FlatSpecularShader  implements Shader {
 				VectorMath.normalize(lightLocation);
 				currentFactor = getLightFactor(normal, lightLocation, viewDirection);
 				currentFactor = FixedPointMath.divide(currentFactor, attenuation);
-				if ((lightIndex == shaderBuffer.getPointLightIndex()) && (currentFactor > 150)) {
-					for (int j = 0; j < shaderBuffer.getPointLightMatrices().length; j++) {
-						int[][] lightMatrix = shaderBuffer.getPointLightMatrices()[j];
-						int[] lightFrustum = shaderBuffer.getPointLightFrustum();
-						Texture shadowMap = shaderBuffer.getPointShadowMaps()[j];
-						if(inShadow(faceLocation, lightMatrix, lightFrustum, shadowMap)) {
+				if ((shadowMaps != null) && (currentFactor > 150)) {
+					for (int j = 0; j < shadowMaps.length; j++) {
+						if(inShadow(faceLocation, shadowMaps[j])) {
 							currentFactor = ColorMath.multiplyColor(currentFactor, light.getShadowColor());
 						}
 					}
@@ -144,11 +157,8 @@ public class FlatSpecularShader  implements Shader {
 					currentFactor = getLightFactor(normal, lightDirection, viewDirection);
 					currentFactor = FixedPointMath.multiply(currentFactor, intensity * 2);
 					currentFactor = FixedPointMath.divide(currentFactor, attenuation);
-					if ((lightIndex == shaderBuffer.getSpotLightIndex()) && (currentFactor > 10)) {
-						int[][] lightMatrix = shaderBuffer.getSpotLightMatrix();
-						int[] lightFrustum = shaderBuffer.getSpotLightFrustum();
-						Texture shadowMap = shaderBuffer.getSpotShadowMap();
-						if(inShadow(faceLocation, lightMatrix, lightFrustum, shadowMap)) {
+					if ((shadowMaps != null) && (currentFactor > 10)) {
+						if(inShadow(faceLocation, shadowMaps[0])) {
 							currentFactor = ColorMath.multiplyColor(currentFactor, light.getShadowColor());
 						}
 					}
@@ -162,9 +172,14 @@ public class FlatSpecularShader  implements Shader {
 			} else {
 				lightColor = ColorMath.lerp(lightColor, light.getColor(), currentFactor);
 			}
-			lightIndex++;
 		}
+		geometryBuffer.setColor(lightColor);
+	}
+	
+	public void drawGeometry(GeometryBuffer geometryBuffer) {
+		lightColor = geometryBuffer.getColor();
 		Texture texture = shaderProperties.getTexture();
+		rasterizer.setDepthPyramid(shaderBuffer.getDepthPyramid());
 		if (texture == null) {
 			rasterizer.draw(geometryBuffer);
 		} else {
@@ -172,25 +187,64 @@ public class FlatSpecularShader  implements Shader {
 		}
 	}
 
+	public void flushFragmentCounts() {
+		shaderBuffer.addFragmentCounts(fragments, shadedFragments);
+		fragments = 0;
+		shadedFragments = 0;
+	}
+
+	/**
+	 * Shades a scanline of an untextured face directly in the buffers of the render target.
+	 */
+	public void fragmentSpan(int y, int x1, int x2, int z, int dz) {
+		if ((visiblePixels == null) || (visiblePixels.length < x2 - x1 + 1))
+			visiblePixels = new int[x2 - x1 + 1];
+		final int visible = shaderBuffer.depthTestSpan(y, x1, x2, z, dz, visiblePixels);
+		if (shaderBuffer.isDepthPrepass())
+			return;
+		fragments += x2 - x1 + 1;
+		shadedFragments += visible;
+		final FrameBuffer renderTarget = shaderBuffer.getCamera().getRenderTarget();
+		final int[] colorPixels = renderTarget.getColorBuffer().getPixels();
+		final Texture materialBuffer = renderTarget.getMaterialBuffer();
+		final int color = ColorMath.multiplyColor(shaderProperties.getDiffuseColor(), lightColor);
+		for (int i = 0; i < visible; i++) {
+			colorPixels[visiblePixels[i]] = color;
+		}
+		if (materialBuffer != null) {
+			final int[] materialPixels = materialBuffer.getPixels();
+			for (int i = 0; i < visible; i++) {
+				materialPixels[visiblePixels[i]] = 0;
+			}
+		}
+	}
+
 	public void fragment(FragmentBuffer fragmentBuffer) {
-		Texture depthBuffer = shaderBuffer.getCamera().getRenderTarget().getDepthBuffer();
 		Texture colorBuffer = shaderBuffer.getCamera().getRenderTarget().getColorBuffer();
 		int x = fragmentBuffer.getLocation()[VECTOR_X];
 		int y = fragmentBuffer.getLocation()[VECTOR_Y];
 		int z = fragmentBuffer.getLocation()[VECTOR_Z];
-		if (depthBuffer.getPixel(x, y) > z) {
+		if (!shaderBuffer.isDepthPrepass())
+			fragments++;
+		if (shaderBuffer.depthTest(x, y, z)) {
 			Texture texture = shaderProperties.getTexture();
 			int color = shaderProperties.getDiffuseColor();
 			if (texture != null) {
 				int[] uv = fragmentBuffer.getUV();
-				int texel = texture.getPixel(uv[VECTOR_X], uv[VECTOR_Y]);
+				int texel = texture.sample(uv[VECTOR_X], uv[VECTOR_Y], fragmentBuffer.getMipmapLevel());
 				if (ColorMath.getAlpha(texel) == 0) // discard pixel if alpha = 0
 					return;
 				color = texel;
 			}
+			shaderBuffer.depthWrite(x, y, z);
+			if (shaderBuffer.isDepthPrepass())
+				return;
+			shadedFragments++;
 			color = ColorMath.multiplyColor(color, lightColor);
-			depthBuffer.setPixel(x, y, z);
-			colorBuffer.setPixel(x, y, color);
+			colorBuffer.setPixelUnchecked(x, y, color);
+			Texture materialBuffer = shaderBuffer.getCamera().getRenderTarget().getMaterialBuffer();
+			if (materialBuffer != null)
+				materialBuffer.setPixelUnchecked(x, y, 0);
 		}
 	}
 
@@ -220,13 +274,15 @@ public class FlatSpecularShader  implements Shader {
 		return attenuation + 1;
 	}
 	
-	private boolean inShadow(int[] location, int[][] lightMatrix, int[] lightFrustum, Texture shadowMap) {
+	private boolean inShadow(int[] location, ShadowMap shadowMap) {
+		if (shadowMap == null)
+			return false;
 		VectorMath.copy(lightSpaceLocation, location);
-		VectorMath.multiply(lightSpaceLocation, lightMatrix);
-		TransformationMath.screenportVector(lightSpaceLocation, lightFrustum);
+		VectorMath.multiply(lightSpaceLocation, shadowMap.getLightMatrix());
+		TransformationMath.screenportVector(lightSpaceLocation, shadowMap.getLightFrustum());
 		int x = lightSpaceLocation[VECTOR_X];
 		int y = lightSpaceLocation[VECTOR_Y];
-		int depth = shadowMap.getPixel(x, y);
+		int depth = shadowMap.getDepth(x, y);
 		return depth < lightSpaceLocation[VECTOR_Z];
 	}
 
@@ -245,4 +301,14 @@ public class FlatSpecularShader  implements Shader {
 	public ShaderProperties getProperties() {
 		return shaderProperties;
 	}
+	
+	public FlatRasterizer getRasterizer() {
+		return rasterizer;
+	}
+	
+	public Shader copy() {
+		final FlatSpecularShader shader = new FlatSpecularShader();
+		shader.setProperties(shaderProperties);
+		return shader;
+	}
 }
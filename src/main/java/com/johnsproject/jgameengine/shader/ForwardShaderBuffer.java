@@ -25,53 +25,103 @@ package com.johnsproject.jgameengine.shader;
 
 import static com.johnsproject.jgameengine.math.FixedPointMath.*;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.johnsproject.jgameengine.math.FixedPointMath;
 import com.johnsproject.jgameengine.math.MatrixMath;
 import com.johnsproject.jgameengine.math.TransformationMath;
 import com.johnsproject.jgameengine.math.VectorMath;
 import com.johnsproject.jgameengine.model.Camera;
+import com.johnsproject.jgameengine.model.CameraType;
+import com.johnsproject.jgameengine.model.DepthPyramid;
 import com.johnsproject.jgameengine.model.Light;
+import com.johnsproject.jgameengine.model.LightType;
 import com.johnsproject.jgameengine.model.Texture;
 import com.johnsproject.jgameengine.model.Transform;
 
 public class ForwardShaderBuffer implements ShaderBuffer {
 	
 	private static final int LIGHT_RANGE = FixedPointMath.toFixedPoint(50000f);
+	private static final int DIRECTIONAL_SHADOW_SIZE = 512;
+	private static final int SHADOW_SIZE = 256;
+	
+	/**
+	 * Light lists are built for tiles of 2^LIGHT_TILE_SHIFT x 2^LIGHT_TILE_SHIFT pixels.
+	 */
+	public static final int LIGHT_TILE_SHIFT = 5;
 	
 	private Camera camera;
 	private List<Light> lights;
+	private final List<Light> visibleLights;
+	
+	private int lightTileColumns;
+	private int lightTileRows;
+	private int[][] tileLights;
+	private int[] tileLightCounts;
+	private final int[] tileBounds;
 	
 	private final int[][] projectionMatrix;
 	
-	private int directionalLightIndex;
-	private int directionalFocalLength;
+	private ShadowAtlas shadowAtlas;
+	private final List<ShadowMap> shadowMaps;
+	private int shadowMapCount;
+	private final List<Light> shadowLights;
+	private final List<ShadowMap[]> shadowLightMaps;
+	private long[] shadowLightPriorities;
+	private ShadowMap[][] visibleShadowMaps;
+	private final int[] shadowTile;
+	private final int[] shadowBounds;
+	
 	private final int[] directionalLightFrustum;
-	private final int[] portedDirectionalLightFrustum;
-	private final int[][] directionalLightMatrix;
-	private final Texture directionalShadowMap;
+	private int[] cascadeSplits;
+	private int[] cascadeSizes;
+	private int[][] cascadeViewMatrix;
+	private final int[] cascadeVector;
+	private final int[] cascadeOffset;
 	
-	private int spotLightIndex;
-	private int spotFocalLength;
+	private final int spotFocalLength;
 	private final int[] spotLightFrustum;
-	private final int[] portedSpotLightFrustum;
-	private final int[][] spotLightMatrix;
-	private final Texture spotShadowMap;
 	
-	private int pointLightIndex;
-	private int pointFocalLength;
-	private final int[] portedPointLightFrustum;
+	private final int pointFocalLength;
 	private final int[] pointLightFrustum;
-	private final int[][][] pointLightMatrices;
-	private final Texture[] pointShadowMaps;
+	// the rotations of the six faces of the cube the point light shadow is drawn to
+	private final int[][][] pointRotationMatrices;
+	private final int[][] pointViewMatrix;
+	private final int[][] matrixCache1;
+	private final int[][] matrixCache2;
+	
+	private final int[] cullVector;
+	
+	private boolean depthPrepass;
+	private boolean depthEqual;
+	private Texture depthBuffer;
+	private Texture stencilBuffer;
+	private DepthPyramid depthPyramid;
+	private final AtomicInteger fragmentCount;
+	private final AtomicInteger shadedFragmentCount;
 	
 	public ForwardShaderBuffer() {
 		this.projectionMatrix = MatrixMath.indentityMatrix();
+		this.cullVector = VectorMath.emptyVector();
+		this.cascadeVector = VectorMath.emptyVector();
+		this.visibleLights = new ArrayList<Light>();
+		this.tileLights = new int[0][0];
+		this.tileLightCounts = new int[0];
+		this.tileBounds = new int[4];
+		this.fragmentCount = new AtomicInteger();
+		this.shadedFragmentCount = new AtomicInteger();
+		
+		this.shadowAtlas = new ShadowAtlas(1024);
+		this.shadowMaps = new ArrayList<ShadowMap>();
+		this.shadowLights = new ArrayList<Light>();
+		this.shadowLightMaps = new ArrayList<ShadowMap[]>();
+		this.shadowLightPriorities = new long[0];
+		this.visibleShadowMaps = new ShadowMap[0][];
+		this.shadowTile = new int[2];
+		this.shadowBounds = new int[4];
 		
-		this.directionalLightIndex = -1;
-		this.directionalFocalLength = FP_ONE >> 3;
-		this.portedDirectionalLightFrustum = new int[Camera.FRUSTUM_SIZE];
 		this.directionalLightFrustum = new int[Camera.FRUSTUM_SIZE];
 		this.directionalLightFrustum[Camera.FRUSTUM_LEFT] = 0;
 		this.directionalLightFrustum[Camera.FRUSTUM_RIGHT] = FP_ONE;
@@ -79,12 +129,9 @@ public class ForwardShaderBuffer implements ShaderBuffer {
 		this.directionalLightFrustum[Camera.FRUSTUM_BOTTOM] = FP_ONE;
 		this.directionalLightFrustum[Camera.FRUSTUM_NEAR] = FP_ONE;
 		this.directionalLightFrustum[Camera.FRUSTUM_FAR] = FP_ONE * 10000;
-		this.directionalLightMatrix = MatrixMath.indentityMatrix();
-		this.directionalShadowMap = new Texture(512, 512);
+		this.cascadeOffset = new int[2];
 		
-		this.spotLightIndex = -1;
 		this.spotFocalLength = FP_HALF;
-		this.portedSpotLightFrustum = new int[Camera.FRUSTUM_SIZE];
 		this.spotLightFrustum = new int[Camera.FRUSTUM_SIZE];
 		this.spotLightFrustum[Camera.FRUSTUM_LEFT] = 0;
 		this.spotLightFrustum[Camera.FRUSTUM_RIGHT] = FP_ONE;
@@ -92,12 +139,8 @@ public class ForwardShaderBuffer implements ShaderBuffer {
 		this.spotLightFrustum[Camera.FRUSTUM_BOTTOM] = FP_ONE;
 		this.spotLightFrustum[Camera.FRUSTUM_NEAR] = FP_HALF;
 		this.spotLightFrustum[Camera.FRUSTUM_FAR] = FP_ONE * 1000;
-		this.spotLightMatrix = MatrixMath.indentityMatrix();
-		this.spotShadowMap = new Texture(256, 256);
 		
-		this.pointLightIndex = -1;
 		this.pointFocalLength = FP_ONE >> 5;
-		this.portedPointLightFrustum = new int[Camera.FRUSTUM_SIZE];
 		this.pointLightFrustum = new int[Camera.FRUSTUM_SIZE];
 		this.pointLightFrustum[Camera.FRUSTUM_LEFT] = 0;
 		this.pointLightFrustum[Camera.FRUSTUM_RIGHT] = FP_ONE;
@@ -105,17 +148,43 @@ public class ForwardShaderBuffer implements ShaderBuffer {
 		this.pointLightFrustum[Camera.FRUSTUM_BOTTOM] = FP_ONE;
 		this.pointLightFrustum[Camera.FRUSTUM_NEAR] = 0;
 		this.pointLightFrustum[Camera.FRUSTUM_FAR] = FP_ONE * 1000;
-		this.pointLightMatrices = new int[6][MatrixMath.MATRIX_SIZE][MatrixMath.MATRIX_SIZE];
-		this.pointShadowMaps = new Texture[6];
-		for (int i = 0; i < 6; i++) {
-			pointLightMatrices[i] = MatrixMath.indentityMatrix();
-			pointShadowMaps[i] = new Texture(256, 256);
-		}
+		final int fixedPoint90 = FixedPointMath.toFixedPoint(90f);
+		this.pointRotationMatrices = new int[][][] {
+			rotationMatrix(0, 0),
+			rotationMatrix(fixedPoint90, 0),
+			rotationMatrix(fixedPoint90 * 2, 0),
+			rotationMatrix(fixedPoint90 * 3, 0),
+			rotationMatrix(0, fixedPoint90),
+			rotationMatrix(0, -fixedPoint90)
+		};
+		this.pointViewMatrix = MatrixMath.indentityMatrix();
+		this.matrixCache1 = MatrixMath.indentityMatrix();
+		this.matrixCache2 = MatrixMath.indentityMatrix();
+	}
+	
+	/**
+	 * Returns the rotation part of the space enter matrix of a transform with the given rotation.
+	 */
+	private static int[][] rotationMatrix(int x, int y) {
+		final int[][] matrix = MatrixMath.indentityMatrix();
+		final int[][] matrixCache1 = MatrixMath.indentityMatrix();
+		final int[][] matrixCache2 = MatrixMath.indentityMatrix();
+		TransformationMath.rotateY(matrix, -y, matrixCache1, matrixCache2);
+		TransformationMath.rotateX(matrix, -x, matrixCache1, matrixCache2);
+		return matrix;
 	}
 
 	public void setup(Camera camera, List<Light> lights) {
 		this.camera = camera;
 		this.lights = lights;
+		this.depthBuffer = camera.getRenderTarget().getDepthBuffer();
+		this.stencilBuffer = camera.getRenderTarget().getStencilBuffer();
+		this.depthPyramid = null;
+		if(camera.hasOcclusionCulling()) {
+			this.depthPyramid = camera.getRenderTarget().getDepthPyramid();
+			depthPyramid.invalidate();
+		}
+		setDepthPrepass(false);
 		shadowLightsSetup(camera, lights);
 		renderSetup(camera, lights);
 	}
@@ -128,124 +197,484 @@ public class ForwardShaderBuffer implements ShaderBuffer {
 			long dist = VectorMath.squaredDistance(camera.getTransform().getLocation(), lightPosition);
 			light.setCulled(dist > LIGHT_RANGE);
 		}
+		visibleLights.clear();
+		for(int i = 0; i < lights.size(); i++) {
+			Light light = lights.get(i);
+			if(!light.isCulled())
+				visibleLights.add(light);
+		}
+		if(visibleShadowMaps.length < visibleLights.size()) {
+			visibleShadowMaps = new ShadowMap[visibleLights.size()][];
+		}
+		for (int i = 0; i < visibleLights.size(); i++) {
+			final int shadowLight = shadowLights.indexOf(visibleLights.get(i));
+			visibleShadowMaps[i] = shadowLight == -1 ? null : shadowLightMaps.get(shadowLight);
+		}
+		lightTilesSetup(camera);
 	}
 	
+	/**
+	 * Splits the render target into tiles and stores for each tile the indices of the visible lights 
+	 * whose range reaches it. The indices point into {@link #getVisibleLights()} and are sorted, 
+	 * so shaders iterating a tile see the lights in the same order as without tiles.
+	 */
+	private void lightTilesSetup(Camera camera) {
+		final int[] frustum = camera.getRenderTargetPortedFrustum();
+		final int left = frustum[Camera.FRUSTUM_LEFT];
+		final int top = frustum[Camera.FRUSTUM_TOP];
+		lightTileColumns = ((frustum[Camera.FRUSTUM_RIGHT] - left) >> LIGHT_TILE_SHIFT) + 1;
+		lightTileRows = ((frustum[Camera.FRUSTUM_BOTTOM] - top) >> LIGHT_TILE_SHIFT) + 1;
+		final int tileCount = lightTileColumns * lightTileRows;
+		if((tileLights.length < tileCount) || ((tileCount > 0) && (tileLights[0].length < visibleLights.size()))) {
+			final int capacity = Math.max(visibleLights.size(), tileLights.length > 0 ? tileLights[0].length : 0);
+			tileLights = new int[Math.max(tileCount, tileLights.length)][capacity];
+			tileLightCounts = new int[tileLights.length];
+		}
+		for (int i = 0; i < tileCount; i++) {
+			tileLightCounts[i] = 0;
+		}
+		final int[][] viewMatrix = camera.getTransform().getSpaceEnterMatrix();
+		for (int i = 0; i < visibleLights.size(); i++) {
+			final Light light = visibleLights.get(i);
+			final int range = light.getRange();
+			boolean bounded = false;
+			if((light.getType() != LightType.DIRECTIONAL) && (range != Light.INFINITE_RANGE)) {
+				VectorMath.copy(cullVector, light.getTransform().getLocation());
+				cullVector[VectorMath.VECTOR_W] = FP_ONE;
+				VectorMath.multiply(cullVector, viewMatrix);
+				if(TransformationMath.isOutsideFrustum(cullVector, range, frustum, camera.getFocalLength(), camera.getType()))
+					continue;
+				bounded = TransformationMath.screenportSphere(cullVector, range, frustum, camera.getFocalLength(), camera.getType(), tileBounds);
+			}
+			if(!bounded) {
+				tileBounds[0] = left;
+				tileBounds[1] = frustum[Camera.FRUSTUM_RIGHT];
+				tileBounds[2] = top;
+				tileBounds[3] = frustum[Camera.FRUSTUM_BOTTOM];
+			}
+			final int tileLeft = (tileBounds[0] - left) >> LIGHT_TILE_SHIFT;
+			final int tileRight = (tileBounds[1] - left) >> LIGHT_TILE_SHIFT;
+			final int tileTop = (tileBounds[2] - top) >> LIGHT_TILE_SHIFT;
+			final int tileBottom = (tileBounds[3] - top) >> LIGHT_TILE_SHIFT;
+			for (int y = tileTop; y <= tileBottom; y++) {
+				for (int x = tileLeft; x <= tileRight; x++) {
+					final int tile = x + (y * lightTileColumns);
+					tileLights[tile][tileLightCounts[tile]++] = i;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Takes the shadow maps of the shadow casting lights from the shadow atlas, this is only done 
+	 * for the main camera. A single directional light casts shadows, the main directional light if 
+	 * there is one. All spot and point lights cast shadows, the main spot and point lights get their 
+	 * shadow maps first, followed by the other lights ordered by their distance to the camera. 
+	 * If the atlas is full the following lights get smaller shadow maps or none at all.
+	 */
 	private void shadowLightsSetup(Camera camera, List<Light> lights) {
-		directionalLightIndex = -1;
-		spotLightIndex = -1;
-		pointLightIndex = -1;
-		boolean foundMainDirectionalLight = false;
-		long spotDistance = Integer.MAX_VALUE;
-		long pointDistance = Integer.MAX_VALUE;
-		Transform directionalLightTransform = null;
-		Transform spotLightTransform = null;
-		Transform pointLightTransform = null;
-		int[] cameraLocation = camera.getTransform().getLocation();
-		int lightIndex = 0;
+		if(!camera.getTag().equals(Camera.MAIN_CAMERA_TAG))
+			return;
+		shadowAtlas.clear();
+		shadowMapCount = 0;
+		shadowLights.clear();
+		Light directionalLight = null;
+		final int[] cameraLocation = camera.getTransform().getLocation();
 		for(int i = 0; i < lights.size(); i++) {
-			Light light = lights.get(i);
-			if(light.isActive()) {
-				Transform lightTransform = light.getTransform();
-				int[] lightLocation = lightTransform.getLocation();
-				long dist = VectorMath.squaredDistance(cameraLocation, lightLocation);
-				if(dist < LIGHT_RANGE) {
-					switch (light.getType()) {
-					case DIRECTIONAL:
-						if(!foundMainDirectionalLight) {
-							directionalLightIndex = lightIndex;
-							directionalLightTransform = lightTransform;
-							if(light.getTag().equals(Light.MAIN_DIRECTIONAL_LIGHT_TAG)) {
-								foundMainDirectionalLight = true;
-							}
-						}
-						break;
-					case SPOT:
-						if((spotDistance != Integer.MIN_VALUE) && (dist < spotDistance)) {
-							spotDistance = dist;
-							spotLightIndex = lightIndex;
-							spotLightTransform = lightTransform;
-							if(light.getTag().equals(Light.MAIN_SPOT_LIGHT_TAG)) {
-								spotDistance = Integer.MIN_VALUE;
-							}
-						}
-						break;
-					case POINT:
-						if((pointDistance != Integer.MIN_VALUE) && (dist < pointDistance)) {
-							pointDistance = dist;
-							pointLightIndex = lightIndex;
-							pointLightTransform = lightTransform;
-							if(light.getTag().equals(Light.MAIN_POINT_LIGHT_TAG)) {
-								pointDistance = Integer.MIN_VALUE;
-							}
-						}
-						break;					
-					}
-				}
-				lightIndex++;
+			final Light light = lights.get(i);
+			if(!light.isActive())
+				continue;
+			final long distance = VectorMath.squaredDistance(cameraLocation, light.getTransform().getLocation());
+			if(distance >= LIGHT_RANGE)
+				continue;
+			switch (light.getType()) {
+			case DIRECTIONAL:
+				if((directionalLight == null) || !directionalLight.getTag().equals(Light.MAIN_DIRECTIONAL_LIGHT_TAG))
+					directionalLight = light;
+				break;
+			case SPOT:
+				addShadowLight(light, light.getTag().equals(Light.MAIN_SPOT_LIGHT_TAG) ? -1 : distance);
+				break;
+			case POINT:
+				addShadowLight(light, light.getTag().equals(Light.MAIN_POINT_LIGHT_TAG) ? -1 : distance);
+				break;
 			}
 		}
-		if(camera.getTag().equals(Camera.MAIN_CAMERA_TAG)) {
-			directionalSetup(camera, directionalLightTransform);
-			spotSetup(camera, spotLightTransform);
-			pointSetup(camera, pointLightTransform);
+		if(directionalLight != null)
+			addShadowLight(directionalLight, -2);
+		for (int i = 0; i < shadowLights.size(); i++) {
+			final Light light = shadowLights.get(i);
+			int mapCount = 1;
+			if(light.getType() == LightType.POINT) {
+				mapCount = 6;
+			} else if(light.getType() == LightType.DIRECTIONAL) {
+				mapCount = getDirectionalCascadeCount();
+			}
+			if(shadowLightMaps.size() == i) {
+				shadowLightMaps.add(null);
+			}
+			ShadowMap[] lightShadowMaps = shadowLightMaps.get(i);
+			if((lightShadowMaps == null) || (lightShadowMaps.length != mapCount)) {
+				lightShadowMaps = new ShadowMap[mapCount];
+				shadowLightMaps.set(i, lightShadowMaps);
+			}
+			for (int j = 0; j < mapCount; j++) {
+				lightShadowMaps[j] = null;
+			}
+			switch (light.getType()) {
+			case DIRECTIONAL:
+				directionalSetup(camera, light, lightShadowMaps);
+				break;
+			case SPOT:
+				spotSetup(camera, light, lightShadowMaps);
+				break;
+			case POINT:
+				pointSetup(camera, light, lightShadowMaps);
+				break;
+			}
+		}
+		for (int i = 0; i < shadowMapCount; i++) {
+			final ShadowMap shadowMap = shadowMaps.get(i);
+			shadowMap.getShadowCache().clear(shadowMap.getLightMatrix(), camera.getRenderTargetPortedFrustum());
 		}
 	}
 	
-	private void directionalSetup(Camera camera, Transform lightTransform) {
-		if (directionalLightIndex != -1) {
-			int portWidth = directionalShadowMap.getWidth();
-			int portHeight = directionalShadowMap.getHeight();
-			for (int i = 0; i < Camera.FRUSTUM_SIZE; i++) {
-				portedDirectionalLightFrustum[i] = directionalLightFrustum[i];
-			}
-			TransformationMath.screenportFrustum(portedDirectionalLightFrustum, portWidth, portHeight);
-			directionalShadowMap.fill(Integer.MAX_VALUE);
-			TransformationMath.orthographicMatrix(projectionMatrix, portedDirectionalLightFrustum, directionalFocalLength);
-			MatrixMath.multiply(projectionMatrix, lightTransform.getSpaceEnterMatrix(), directionalLightMatrix);
+	/**
+	 * Inserts the light into the shadow casting lights, the lights with a lower priority get their shadow maps first.
+	 */
+	private void addShadowLight(Light light, long priority) {
+		final int count = shadowLights.size();
+		if(shadowLightPriorities.length == count) {
+			final long[] priorities = new long[(count << 1) + 4];
+			System.arraycopy(shadowLightPriorities, 0, priorities, 0, count);
+			shadowLightPriorities = priorities;
+		}
+		int index = count;
+		while((index > 0) && (shadowLightPriorities[index - 1] > priority)) {
+			shadowLightPriorities[index] = shadowLightPriorities[index - 1];
+			index--;
 		}
+		shadowLightPriorities[index] = priority;
+		shadowLights.add(index, light);
 	}
 	
-	private void spotSetup(Camera camera, Transform lightTransform) {
-		if (spotLightIndex != -1) {
-			int portWidth = spotShadowMap.getWidth();
-			int portHeight = spotShadowMap.getHeight();
-			for (int i = 0; i < Camera.FRUSTUM_SIZE; i++) {
-				portedSpotLightFrustum[i] = spotLightFrustum[i];
-			}
-			TransformationMath.screenportFrustum(portedSpotLightFrustum, portWidth, portHeight);
-			spotShadowMap.fill(Integer.MAX_VALUE);
-			TransformationMath.perspectiveMatrix(projectionMatrix, portedSpotLightFrustum, spotFocalLength);
-			MatrixMath.multiply(projectionMatrix, lightTransform.getSpaceEnterMatrix(), spotLightMatrix);
+	/**
+	 * Returns the size of the shadow maps of a spot or point light. The size set in the light, or the 
+	 * default size, is halved while the range of the light covers less than half of it on the screen.
+	 * 
+	 * @return the size, 0 if the range of the light is outside of the view of the camera.
+	 */
+	private int getShadowSize(Camera camera, Light light) {
+		int size = getShadowSize(light.getShadowSize() > 0 ? light.getShadowSize() : SHADOW_SIZE);
+		final int range = light.getRange();
+		if(range == Light.INFINITE_RANGE)
+			return size;
+		final int[] frustum = camera.getRenderTargetPortedFrustum();
+		VectorMath.copy(cullVector, light.getTransform().getLocation());
+		cullVector[VectorMath.VECTOR_W] = FP_ONE;
+		VectorMath.multiply(cullVector, camera.getTransform().getSpaceEnterMatrix());
+		if(TransformationMath.isOutsideFrustum(cullVector, range, frustum, camera.getFocalLength(), camera.getType()))
+			return 0;
+		if(TransformationMath.screenportSphere(cullVector, range, frustum, camera.getFocalLength(), camera.getType(), shadowBounds)) {
+			final int extent = Math.max(shadowBounds[1] - shadowBounds[0], shadowBounds[3] - shadowBounds[2]) + 1;
+			while((size > ShadowAtlas.MINIMUM_TILE_SIZE) && ((size >> 1) >= extent))
+				size >>= 1;
 		}
+		return size;
+	}
+	
+	/**
+	 * Rounds the size down to a power of two that fits into the shadow atlas.
+	 */
+	private int getShadowSize(int size) {
+		size = Math.min(shadowAtlas.getSize(), Math.max(ShadowAtlas.MINIMUM_TILE_SIZE, size));
+		return Integer.highestOneBit(size);
 	}
 	
-	private void pointSetup(Camera camera, Transform lightTransform) {
-		if (pointLightIndex != -1) {
-			int portWidth = pointShadowMaps[0].getWidth();
-			int portHeight = pointShadowMaps[0].getHeight();
-			for (int i = 0; i < Camera.FRUSTUM_SIZE; i++) {
-				portedPointLightFrustum[i] = pointLightFrustum[i];
+	/**
+	 * Takes count tiles of the given size from the shadow atlas for the shadow maps of the light. 
+	 * If the atlas doesn't have enough free tiles of this size smaller tiles are tried.
+	 * 
+	 * @return false if the atlas is full, the shadow maps are then null.
+	 */
+	private boolean allocateShadowMaps(Light light, int[] lightFrustum, int focalLength, int size, ShadowMap[] lightShadowMaps, int first, int count) {
+		for (; size >= ShadowAtlas.MINIMUM_TILE_SIZE; size >>= 1) {
+			int allocated = 0;
+			while((allocated < count) && shadowAtlas.allocate(size, shadowTile)) {
+				if(shadowMapCount == shadowMaps.size()) {
+					shadowMaps.add(new ShadowMap(shadowAtlas.getTexture()));
+				}
+				final ShadowMap shadowMap = shadowMaps.get(shadowMapCount++);
+				shadowMap.setup(light, lightFrustum, focalLength, shadowTile, size);
+				lightShadowMaps[first + allocated++] = shadowMap;
+			}
+			if(allocated == count)
+				return true;
+			for (int i = 0; i < allocated; i++) {
+				shadowTile[0] = lightShadowMaps[first + i].getLeft();
+				shadowTile[1] = lightShadowMaps[first + i].getTop();
+				shadowAtlas.free(size, shadowTile);
+				lightShadowMaps[first + i] = null;
 			}
-			TransformationMath.screenportFrustum(portedPointLightFrustum, portWidth, portHeight);
-			for (int i = 0; i < pointShadowMaps.length; i++) {
-				pointShadowMaps[i].fill(Integer.MAX_VALUE);
+			shadowMapCount -= allocated;
+		}
+		return false;
+	}
+	
+	/**
+	 * Splits the directional shadow map into cascades that follow the main camera. Each cascade covers 
+	 * the part of the view frustum between the split of the previous cascade, or the near plane of the 
+	 * camera for the first cascade, and its own split. Near cascades cover a small part of the view 
+	 * with the same resolution as the far ones, so close shadows get more detail.
+	 * 
+	 * @param splits distance from the camera at which each cascade ends, in increasing order.
+	 * @param sizes width and height of the shadow map of each cascade, the tiles are taken from the shadow atlas.
+	 */
+	public void setDirectionalShadowCascades(int[] splits, int[] sizes) {
+		if(splits.length != sizes.length)
+			throw new IllegalArgumentException("Each cascade needs a split and a size");
+		this.cascadeSplits = splits.clone();
+		this.cascadeSizes = sizes.clone();
+	}
+	
+	/**
+	 * Removes the cascades of the directional shadow map. The directional light then has a 
+	 * single shadow map of its {@link Light#getShadowSize() shadow size} centered at its location.
+	 */
+	public void resetDirectionalShadowCascades() {
+		this.cascadeSplits = null;
+		this.cascadeSizes = null;
+	}
+	
+	private void directionalSetup(Camera camera, Light light, ShadowMap[] lightShadowMaps) {
+		final Transform lightTransform = light.getTransform();
+		cascadeViewMatrix = camera.getTransform().getSpaceEnterMatrix();
+		for (int c = 0; c < lightShadowMaps.length; c++) {
+			int size = light.getShadowSize() > 0 ? light.getShadowSize() : DIRECTIONAL_SHADOW_SIZE;
+			if(cascadeSplits != null)
+				size = cascadeSizes[c];
+			if(!allocateShadowMaps(light, directionalLightFrustum, FP_ONE >> 3, getShadowSize(size), lightShadowMaps, c, 1))
+				continue;
+			final ShadowMap shadowMap = lightShadowMaps[c];
+			cascadeOffset[0] = 0;
+			cascadeOffset[1] = 0;
+			if(cascadeSplits != null)
+				cascadeSetup(camera, lightTransform, c, shadowMap);
+			TransformationMath.orthographicMatrix(projectionMatrix, shadowMap.getLightFrustum(), shadowMap.getFocalLength());
+			// moves the center of the cascade to the center of the shadow map
+			projectionMatrix[3][0] = -FixedPointMath.multiply(projectionMatrix[0][0], cascadeOffset[0]);
+			projectionMatrix[3][1] = -FixedPointMath.multiply(projectionMatrix[1][1], cascadeOffset[1]);
+			MatrixMath.multiply(projectionMatrix, lightTransform.getSpaceEnterMatrix(), shadowMap.getLightMatrix());
+		}
+	}
+	
+	/**
+	 * Fits the cascade to the bounding sphere of its part of the view frustum. The size of the sphere 
+	 * doesn't change when the camera rotates, and its center is moved in steps of whole shadow map 
+	 * pixels, so the edges of the shadows don't flicker while the camera moves.
+	 */
+	private void cascadeSetup(Camera camera, Transform lightTransform, int cascade, ShadowMap shadowMap) {
+		final long near = cascade == 0 ? camera.getFrustum()[Camera.FRUSTUM_NEAR] : cascadeSplits[cascade - 1];
+		final long far = cascadeSplits[cascade];
+		final int[] frustum = camera.getRenderTargetPortedFrustum();
+		final long width = frustum[Camera.FRUSTUM_RIGHT] - frustum[Camera.FRUSTUM_LEFT] + 1;
+		final long height = frustum[Camera.FRUSTUM_BOTTOM] - frustum[Camera.FRUSTUM_TOP] + 1;
+		final long scaleFactor = Math.max(1, FixedPointMath.multiply(camera.getFocalLength(), (int) height));
+		long center = 0;
+		long squaredRadius = 0;
+		if(camera.getType() == CameraType.ORTHOGRAPHIC) {
+			// half size of the view volume, the orthographic projection divides by 16
+			final long halfWidth = ((width << 3) << FP_BIT) / scaleFactor;
+			final long halfHeight = ((height << 3) << FP_BIT) / scaleFactor;
+			center = (near + far) >> 1;
+			squaredRadius = square(far - center) + square(halfWidth) + square(halfHeight);
+		} else {
+			// squared tangent of the half field of view to the corners of the view
+			final long tangentX = (width << FP_BIT) / (scaleFactor << 1);
+			final long tangentY = (height << FP_BIT) / (scaleFactor << 1);
+			final long tangent = square(tangentX) + square(tangentY);
+			// the center at which the corners of the near and far plane have the same distance
+			center = Math.min(far, (((near + far) >> 1) * (FP_ONE + tangent)) >> FP_BIT);
+			final long nearRadius = square(center - near) + ((square(near) * tangent) >> FP_BIT);
+			final long farRadius = square(far - center) + ((square(far) * tangent) >> FP_BIT);
+			squaredRadius = Math.max(nearRadius, farRadius);
+		}
+		final int radius = Math.max(FP_ONE, FixedPointMath.sqrt(squaredRadius));
+		VectorMath.copy(cascadeVector, VectorMath.VECTOR_ZERO);
+		cascadeVector[VectorMath.VECTOR_Z] = (int) -center;
+		VectorMath.multiply(cascadeVector, camera.getTransform().getSpaceExitMatrix());
+		VectorMath.multiply(cascadeVector, lightTransform.getSpaceEnterMatrix());
+		final int pixelSize = Math.max(1, (int) (((long) radius << 1) / shadowMap.getSize()));
+		cascadeOffset[0] = (cascadeVector[VectorMath.VECTOR_X] / pixelSize) * pixelSize;
+		cascadeOffset[1] = (cascadeVector[VectorMath.VECTOR_Y] / pixelSize) * pixelSize;
+		shadowMap.setOffset(cascadeOffset[0], cascadeOffset[1]);
+		// the orthographic projection maps 16 / focal length units to half of the shadow map
+		shadowMap.setFocalLength(FixedPointMath.divide(8L << FP_BIT, radius));
+	}
+	
+	private static long square(long value) {
+		return (value * value) >> FP_BIT;
+	}
+	
+	private void spotSetup(Camera camera, Light light, ShadowMap[] lightShadowMaps) {
+		final int size = getShadowSize(camera, light);
+		if((size == 0) || !allocateShadowMaps(light, spotLightFrustum, spotFocalLength, size, lightShadowMaps, 0, 1))
+			return;
+		final ShadowMap shadowMap = lightShadowMaps[0];
+		TransformationMath.perspectiveMatrix(projectionMatrix, shadowMap.getLightFrustum(), spotFocalLength);
+		MatrixMath.multiply(projectionMatrix, light.getTransform().getSpaceEnterMatrix(), shadowMap.getLightMatrix());
+	}
+	
+	private void pointSetup(Camera camera, Light light, ShadowMap[] lightShadowMaps) {
+		final int size = getShadowSize(camera, light);
+		if((size == 0) || !allocateShadowMaps(light, pointLightFrustum, pointFocalLength, size, lightShadowMaps, 0, 6))
+			return;
+		// all faces have the same size, so they share the projection
+		TransformationMath.perspectiveMatrix(projectionMatrix, lightShadowMaps[0].getLightFrustum(), pointFocalLength);
+		// the views are built here, the transform of the light isn't changed while rendering
+		final Transform lightTransform = light.getTransform();
+		final int[] location = lightTransform.getLocation();
+		final int[] scale = lightTransform.getScale();
+		final int scaleX = FixedPointMath.divide(FP_ONE, scale[VectorMath.VECTOR_X] == 0 ? 1 : scale[VectorMath.VECTOR_X]);
+		final int scaleY = FixedPointMath.divide(FP_ONE, scale[VectorMath.VECTOR_Y] == 0 ? 1 : scale[VectorMath.VECTOR_Y]);
+		final int scaleZ = FixedPointMath.divide(FP_ONE, scale[VectorMath.VECTOR_Z] == 0 ? 1 : scale[VectorMath.VECTOR_Z]);
+		for (int i = 0; i < pointRotationMatrices.length; i++) {
+			TransformationMath.translationMatrix(matrixCache1, -location[VectorMath.VECTOR_X], -location[VectorMath.VECTOR_Y], -location[VectorMath.VECTOR_Z]);
+			MatrixMath.multiply(pointRotationMatrices[i], matrixCache1, pointViewMatrix);
+			TransformationMath.scale(pointViewMatrix, scaleX, scaleY, scaleZ, matrixCache1, matrixCache2);
+			MatrixMath.multiply(projectionMatrix, pointViewMatrix, lightShadowMaps[i].getLightMatrix());
+		}
+	}
+	
+	/**
+	 * Invalidates the cached shadows of the static models of all shadow maps, 
+	 * this should be called when a static model changed.
+	 */
+	public void invalidateShadowCaches() {
+		for (int i = 0; i < shadowMaps.size(); i++) {
+			shadowMaps.get(i).getShadowCache().invalidate();
+		}
+	}
+	
+	/**
+	 * Returns true while the depth pre-pass is drawn, shaders then only write the depth.
+	 */
+	public boolean isDepthPrepass() {
+		return depthPrepass;
+	}
+
+	/**
+	 * Returns true while the pass after a depth pre-pass is drawn, {@link #depthTest} then 
+	 * only passes the fragments with the same depth as the depth buffer.
+	 */
+	public boolean isDepthEqual() {
+		return depthEqual;
+	}
+
+	/**
+	 * Starts or ends the depth pre-pass of the camera. Starting it clears the stencil buffer of the 
+	 * render target, it's used in the following pass to mark the pixels that were already shaded.
+	 * 
+	 * @param depthPrepass
+	 */
+	public void setDepthPrepass(boolean depthPrepass) {
+		this.depthPrepass = depthPrepass;
+		this.depthEqual = !depthPrepass && camera.hasDepthPrepass();
+		if(depthPrepass) {
+			stencilBuffer.fill(0);
+		}
+	}
+	
+	/**
+	 * Returns true if the fragment at the given pixel is visible. After a depth pre-pass only 
+	 * the first fragment with the same depth as the depth buffer is visible.
+	 */
+	public boolean depthTest(int x, int y, int z) {
+		return depthTest(x + (y * depthBuffer.getStride()), z);
+	}
+	
+	/**
+	 * Writes the depth of a visible fragment into the depth buffer of the render target.
+	 */
+	public void depthWrite(int x, int y, int z) {
+		depthWrite(x, y, x + (y * depthBuffer.getStride()), z);
+	}
+	
+	/**
+	 * Runs {@link #depthTest} and {@link #depthWrite} for the fragments of a scanline from x1 to x2, 
+	 * so span shaders don't need to call them per fragment. The depth starts at z and is stepped 
+	 * by dz, both are shifted by {@link FixedPointMath#FP_BIT}. The pixel indices of the visible 
+	 * fragments are stored in the given array, it has to fit the whole scanline.
+	 * 
+	 * @return the number of visible fragments.
+	 */
+	public int depthTestSpan(int y, int x1, int x2, int z, int dz, int[] visiblePixels) {
+		int visible = 0;
+		for (int index = x1 + (y * depthBuffer.getStride()); x1 <= x2; x1++, index++, z += dz) {
+			final int depth = z >> FP_BIT;
+			if(depthTest(index, depth)) {
+				depthWrite(x1, y, index, depth);
+				visiblePixels[visible++] = index;
 			}
-			TransformationMath.perspectiveMatrix(projectionMatrix, portedPointLightFrustum, pointFocalLength);
-			final int fixedPoint90 = FixedPointMath.toFixedPoint(90f);
-			lightTransform.setRotation(0, 0, 0);
-			MatrixMath.multiply(projectionMatrix, lightTransform.getSpaceEnterMatrix(), pointLightMatrices[0]);
-			lightTransform.rotate(fixedPoint90, 0, 0);
-			MatrixMath.multiply(projectionMatrix, lightTransform.getSpaceEnterMatrix(), pointLightMatrices[1]);
-			lightTransform.rotate(fixedPoint90, 0, 0);
-			MatrixMath.multiply(projectionMatrix, lightTransform.getSpaceEnterMatrix(), pointLightMatrices[2]);
-			lightTransform.rotate(fixedPoint90, 0, 0);
-			MatrixMath.multiply(projectionMatrix, lightTransform.getSpaceEnterMatrix(), pointLightMatrices[3]);
-			lightTransform.setRotation(0, fixedPoint90, 0);
-			MatrixMath.multiply(projectionMatrix, lightTransform.getSpaceEnterMatrix(), pointLightMatrices[4]);
-			lightTransform.setRotation(0, -fixedPoint90, 0);
-			MatrixMath.multiply(projectionMatrix, lightTransform.getSpaceEnterMatrix(), pointLightMatrices[5]);
-			lightTransform.setRotation(0, 0, 0);
 		}
+		return visible;
+	}
+	
+	private boolean depthTest(int index, int z) {
+		if(depthEqual)
+			return (depthBuffer.getPixels()[index] == z) && (stencilBuffer.getPixels()[index] == 0);
+		return depthBuffer.getPixels()[index] > z;
+	}
+	
+	private void depthWrite(int x, int y, int index, int z) {
+		depthBuffer.getPixels()[index] = z;
+		if(depthEqual) {
+			stencilBuffer.getPixels()[index] = 1;
+		} else if(depthPyramid != null) {
+			depthPyramid.markDirty(x, y);
+		}
+	}
+	
+	/**
+	 * Returns the depth pyramid of the render target if the camera uses occlusion culling, 
+	 * null otherwise.
+	 */
+	public DepthPyramid getDepthPyramid() {
+		return depthPyramid;
+	}
+	
+	/**
+	 * Adds the fragments a shader processed to the fragment counts. Shaders count their 
+	 * fragments themselves and add them once per face, as the faces can be drawn in parallel.
+	 * 
+	 * @param fragments fragment shader invocations.
+	 * @param shadedFragments fragments that passed the depth test and were shaded.
+	 */
+	public void addFragmentCounts(int fragments, int shadedFragments) {
+		if(fragments > 0) {
+			fragmentCount.addAndGet(fragments);
+			shadedFragmentCount.addAndGet(shadedFragments);
+		}
+	}
+	
+	public void resetFragmentCounts() {
+		fragmentCount.set(0);
+		shadedFragmentCount.set(0);
+	}
+	
+	/**
+	 * Returns how many fragments the shaders processed since the last {@link #resetFragmentCounts()}, 
+	 * fragments of the depth pre-pass aren't counted.
+	 */
+	public int getFragmentCount() {
+		return fragmentCount.get();
+	}
+	
+	/**
+	 * Returns how many fragments were shaded since the last {@link #resetFragmentCounts()}.
+	 */
+	public int getShadedFragmentCount() {
+		return shadedFragmentCount.get();
 	}
 	
 	public Camera getCamera() {
@@ -255,52 +684,109 @@ public class ForwardShaderBuffer implements ShaderBuffer {
 	public List<Light> getLights() {
 		return lights;
 	}
-
-	public int getDirectionalLightIndex() {
-		return directionalLightIndex;
+	
+	/**
+	 * Returns the lights that aren't culled, in the order of {@link #getLights()}.
+	 */
+	public List<Light> getVisibleLights() {
+		return visibleLights;
 	}
-
-	public int[][] getDirectionalLightMatrix() {
-		return directionalLightMatrix;
+	
+	/**
+	 * Returns the light tile that contains the given pixel of the render target.
+	 */
+	public int getLightTile(int x, int y) {
+		final int[] frustum = camera.getRenderTargetPortedFrustum();
+		int column = (x - frustum[Camera.FRUSTUM_LEFT]) >> LIGHT_TILE_SHIFT;
+		int row = (y - frustum[Camera.FRUSTUM_TOP]) >> LIGHT_TILE_SHIFT;
+		column = Math.max(0, Math.min(lightTileColumns - 1, column));
+		row = Math.max(0, Math.min(lightTileRows - 1, row));
+		return column + (row * lightTileColumns);
 	}
-
-	public Texture getDirectionalShadowMap() {
-		return directionalShadowMap;
+	
+	/**
+	 * Returns the indices into {@link #getVisibleLights()} of the lights that reach the tile, 
+	 * only the first {@link #getTileLightCount(int)} elements are valid.
+	 */
+	public int[] getTileLights(int tile) {
+		return tileLights[tile];
 	}
 	
-	public int[] getDirectionalLightFrustum() {
-		return portedDirectionalLightFrustum;
+	public int getTileLightCount(int tile) {
+		return tileLightCounts[tile];
 	}
 	
-	public int getSpotLightIndex() {
-		return spotLightIndex;
+	public int getLightTileColumns() {
+		return lightTileColumns;
 	}
-
-	public int[][] getSpotLightMatrix() {
-		return spotLightMatrix;
+	
+	public int getLightTileRows() {
+		return lightTileRows;
 	}
 
-	public Texture getSpotShadowMap() {
-		return spotShadowMap;
+	/**
+	 * Returns the number of directional cascades, 1 if the directional shadow map isn't split.
+	 */
+	public int getDirectionalCascadeCount() {
+		return cascadeSplits == null ? 1 : cascadeSplits.length;
 	}
-
-	public int[] getSpotLightFrustum() {
-		return portedSpotLightFrustum;
+	
+	/**
+	 * Returns the directional cascade whose shadow map covers the given location, 
+	 * or -1 if it's farther from the main camera than the last split.
+	 * 
+	 * @param location world space location.
+	 */
+	public int getDirectionalCascade(int[] location) {
+		if(cascadeSplits == null)
+			return 0;
+		final int[][] matrix = cascadeViewMatrix;
+		final long depth = -((((long) matrix[0][2] * location[VectorMath.VECTOR_X])
+				+ ((long) matrix[1][2] * location[VectorMath.VECTOR_Y])
+				+ ((long) matrix[2][2] * location[VectorMath.VECTOR_Z])) >> FP_BIT) - matrix[3][2];
+		for (int i = 0; i < cascadeSplits.length; i++) {
+			if(depth <= cascadeSplits[i])
+				return i;
+		}
+		return -1;
 	}
 
-	public int getPointLightIndex() {
-		return pointLightIndex;
+	/**
+	 * Returns the shadow maps of a visible light, null if it doesn't cast shadows. Directional lights have 
+	 * a shadow map for each cascade, point lights one for each face of their shadow cube. 
+	 * A shadow map is null if the range of the light isn't visible or the shadow atlas had no free tile for it.
+	 * 
+	 * @param lightIndex index into {@link #getVisibleLights()}.
+	 */
+	public ShadowMap[] getShadowMaps(int lightIndex) {
+		return visibleShadowMaps[lightIndex];
 	}
-
-	public int[][][] getPointLightMatrices() {
-		return pointLightMatrices;
+	
+	/**
+	 * Returns the number of shadow maps taken from the shadow atlas for the current frame.
+	 */
+	public int getShadowMapCount() {
+		return shadowMapCount;
 	}
-
-	public Texture[] getPointShadowMaps() {
-		return pointShadowMaps;
+	
+	public ShadowMap getShadowMap(int index) {
+		return shadowMaps.get(index);
+	}
+	
+	public ShadowAtlas getShadowAtlas() {
+		return shadowAtlas;
 	}
 	
-	public int[] getPointLightFrustum() {
-		return portedPointLightFrustum;
+	/**
+	 * Sets the atlas the shadow maps are taken from, its size is the memory budget of the shadows. 
+	 * The default atlas is 1024x1024.
+	 * 
+	 * @param shadowAtlas
+	 */
+	public void setShadowAtlas(ShadowAtlas shadowAtlas) {
+		this.shadowAtlas = shadowAtlas;
+		shadowMaps.clear();
+		shadowMapCount = 0;
+		shadowLights.clear();
 	}
 }
\ No newline at end of file
@@ -9,6 +9,7 @@ public class FragmentBuffer {
 	private final int[] worldNormal;
 	private final int[] uv;
 	private int color;
+	private int mipmapLevel;
 	
 	public FragmentBuffer() {
 		this.location = VectorMath.emptyVector();
@@ -16,6 +17,7 @@ public class FragmentBuffer {
 		this.worldNormal = VectorMath.emptyVector();
 		this.uv = VectorMath.emptyVector();
 		this.color = 0;
+		this.mipmapLevel = 0;
 	}
 
 	public int getColor() {
@@ -41,4 +43,15 @@ public class FragmentBuffer {
 	public int[] getUV() {
 		return uv;
 	}
+
+	/**
+	 * Returns the mipmap level of the texture the uv coordinates are in.
+	 */
+	public int getMipmapLevel() {
+		return mipmapLevel;
+	}
+
+	public void setMipmapLevel(int mipmapLevel) {
+		this.mipmapLevel = mipmapLevel;
+	}
 }
@@ -30,13 +30,11 @@ public class GeometryBuffer {
 	private final int[] worldNormal;
 	private final int[][] uvs;
 	private final VertexBuffer[] vertexBuffers;
+	private int color;
 	
 	public GeometryBuffer() {
 		this.worldNormal = VectorMath.emptyVector();
 		this.uvs = new int[3][VectorMath.VECTOR_SIZE];
-		this.uvs[0] = VectorMath.emptyVector();
-		this.uvs[1] = VectorMath.emptyVector();
-		this.uvs[2] = VectorMath.emptyVector();
 		this.vertexBuffers = new VertexBuffer[3];
 	}
 
@@ -59,4 +57,15 @@ public class GeometryBuffer {
 	public VertexBuffer[] getVertexBuffers() {
 		return vertexBuffers;
 	}
+
+	/**
+	 * Returns the color a {@link TiledShader} calculated for the whole face in {@link TiledShader#setupGeometry}.
+	 */
+	public int getColor() {
+		return color;
+	}
+
+	public void setColor(int color) {
+		this.color = color;
+	}
 }
@@ -32,9 +32,10 @@ import com.johnsproject.jgameengine.math.TransformationMath;
 import com.johnsproject.jgameengine.math.VectorMath;
 import com.johnsproject.jgameengine.model.Light;
 import com.johnsproject.jgameengine.model.Texture;
+import com.johnsproject.jgameengine.rasterizer.FlatRasterizer;
 import com.johnsproject.jgameengine.rasterizer.PerspectiveGouraudRasterizer;
 
-public class GouraudSpecularShader  implements Shader {
+public class GouraudSpecularShader  implements TiledShader {
 
 	private static final int INITIAL_ATTENUATION = FP_ONE;
 	private static final int LINEAR_ATTENUATION = FixedPointMath.toFixedPoint(0.045);
@@ -48,6 +49,9 @@ public class GouraudSpecularShader  implements Shader {
 	private final int[] lightLocation;
 	private final int[] viewDirection;
 	private final int[] lightSpaceLocation;
+	
+	private int fragments;
+	private int shadedFragments;
 
 	public GouraudSpecularShader() {
 		this.rasterizer = new PerspectiveGouraudRasterizer(this);
@@ -64,28 +68,25 @@ public class GouraudSpecularShader  implements Shader {
 		int lightColor = ColorMath.BLACK;
 		int[] cameraLocation = shaderBuffer.getCamera().getTransform().getLocation();
 		VectorMath.copy(location, vertexBuffer.getWorldLocation());
-		VectorMath.normalize(normal);
 		VectorMath.copy(viewDirection, cameraLocation);
 		VectorMath.subtract(viewDirection, location);
 		VectorMath.normalize(viewDirection);
-		int lightIndex = 0;
-		for(int i = 0; i < shaderBuffer.getLights().size(); i++) {
-			Light light = shaderBuffer.getLights().get(i);
-			if(light.isCulled())
+		for(int lightIndex = 0; lightIndex < shaderBuffer.getVisibleLights().size(); lightIndex++) {
+			Light light = shaderBuffer.getVisibleLights().get(lightIndex);
+			if(!light.isInRange(location))
 				continue;
 			int currentFactor = 0;
 			int attenuation = 0;
 			int[] lightPosition = light.getTransform().getLocation();
+			ShadowMap[] shadowMaps = shaderBuffer.getShadowMaps(lightIndex);
 			switch (light.getType()) {
 			case DIRECTIONAL:
 				VectorMath.copy(lightDirection, light.getDirection());
 				VectorMath.invert(lightDirection);
 				currentFactor = getLightFactor(normal, lightDirection, viewDirection);
-				if (lightIndex == shaderBuffer.getDirectionalLightIndex()) {
-					int[][] lightMatrix = shaderBuffer.getDirectionalLightMatrix();
-					int[] lightFrustum = shaderBuffer.getDirectionalLightFrustum();
-					Texture shadowMap = shaderBuffer.getDirectionalShadowMap();
-					if(inShadow(location, lightMatrix, lightFrustum, shadowMap)) {
+				if (shadowMaps != null) {
+					int cascade = shaderBuffer.getDirectionalCascade(location);
+					if((cascade != -1) && inShadow(location, shadowMaps[cascade])) {
 						currentFactor = ColorMath.multiplyColor(currentFactor, light.getShadowColor());
 					}
 				}
@@ -97,12 +98,9 @@ public class GouraudSpecularShader  implements Shader {
 				VectorMath.normalize(lightLocation);
 				currentFactor = getLightFactor(normal, lightLocation, viewDirection);
 				currentFactor = FixedPointMath.divide(currentFactor, attenuation);
-				if ((lightIndex == shaderBuffer.getPointLightIndex()) && (currentFactor > 150)) {
-					for (int j = 0; j < shaderBuffer.getPointLightMatrices().length; j++) {
-						int[][] lightMatrix = shaderBuffer.getPointLightMatrices()[j];
-						int[] lightFrustum = shaderBuffer.getPointLightFrustum();
-						Texture shadowMap = shaderBuffer.getPointShadowMaps()[j];
-						if(inShadow(location, lightMatrix, lightFrustum, shadowMap)) {
+				if ((shadowMaps != null) && (currentFactor > 150)) {
+					for (int j = 0; j < shadowMaps.length; j++) {
+						if(inShadow(location, shadowMaps[j])) {
 							currentFactor = ColorMath.multiplyColor(currentFactor, light.getShadowColor());
 						}
 					}
@@ -123,11 +121,8 @@ public class GouraudSpecularShader  implements Shader {
 					currentFactor = getLightFactor(normal, lightDirection, viewDirection);
 					currentFactor = FixedPointMath.multiply(currentFactor, intensity * 2);
 					currentFactor = FixedPointMath.divide(currentFactor, attenuation);
-					if ((lightIndex == shaderBuffer.getSpotLightIndex()) && (currentFactor > 10)) {
-						int[][] lightMatrix = shaderBuffer.getSpotLightMatrix();
-						int[] lightFrustum = shaderBuffer.getSpotLightFrustum();
-						Texture shadowMap = shaderBuffer.getSpotShadowMap();
-						if(inShadow(location, lightMatrix, lightFrustum, shadowMap)) {
+					if ((shadowMaps != null) && (currentFactor > 10)) {
+						if(inShadow(location, shadowMaps[0])) {
 							currentFactor = ColorMath.multiplyColor(currentFactor, light.getShadowColor());
 						}
 					}
@@ -137,7 +132,6 @@ public class GouraudSpecularShader  implements Shader {
 			currentFactor = FixedPointMath.multiply(currentFactor, light.getStrength());
 			currentFactor = FixedPointMath.multiply(currentFactor, 255);
 			lightColor = ColorMath.lerp(lightColor, light.getColor(), currentFactor);
-			lightIndex++;
 		}
 		vertexBuffer.setColor(lightColor);
 		VectorMath.multiply(location, shaderBuffer.getCamera().getTransform().getSpaceEnterMatrix());
@@ -146,7 +140,15 @@ public class GouraudSpecularShader  implements Shader {
 	}
 
 	public void geometry(GeometryBuffer geometryBuffer) {
+		drawGeometry(geometryBuffer);
+		flushFragmentCounts();
+	}
+
+	public void setupGeometry(GeometryBuffer geometryBuffer) { }
+
+	public void drawGeometry(GeometryBuffer geometryBuffer) {
 		Texture texture = shaderProperties.getTexture();
+		rasterizer.setDepthPyramid(shaderBuffer.getDepthPyramid());
 		if (texture == null) {
 			rasterizer.draw(geometryBuffer);
 		} else {
@@ -154,26 +156,39 @@ public class GouraudSpecularShader  implements Shader {
 		}
 	}
 
+	public void flushFragmentCounts() {
+		shaderBuffer.addFragmentCounts(fragments, shadedFragments);
+		fragments = 0;
+		shadedFragments = 0;
+	}
+
 	public void fragment(FragmentBuffer fragmentBuffer) {
-		Texture depthBuffer = shaderBuffer.getCamera().getRenderTarget().getDepthBuffer();
 		Texture colorBuffer = shaderBuffer.getCamera().getRenderTarget().getColorBuffer();
 		int x = fragmentBuffer.getLocation()[VECTOR_X];
 		int y = fragmentBuffer.getLocation()[VECTOR_Y];
 		int z = fragmentBuffer.getLocation()[VECTOR_Z];
-		if (depthBuffer.getPixel(x, y) > z) {
+		if (!shaderBuffer.isDepthPrepass())
+			fragments++;
+		if (shaderBuffer.depthTest(x, y, z)) {
 			int color = shaderProperties.getDiffuseColor();
 			Texture texture = shaderProperties.getTexture();
 			int lightColor = fragmentBuffer.getColor();
 			if (texture != null) {
 				int[] uv = fragmentBuffer.getUV();
-				int texel = texture.getPixel(uv[VECTOR_X], uv[VECTOR_Y]);
+				int texel = texture.sample(uv[VECTOR_X], uv[VECTOR_Y], fragmentBuffer.getMipmapLevel());
 				if (ColorMath.getAlpha(texel) == 0) // discard pixel if alpha = 0
 					return;
 				color = texel;
 			}
+			shaderBuffer.depthWrite(x, y, z);
+			if (shaderBuffer.isDepthPrepass())
+				return;
+			shadedFragments++;
 			color = ColorMath.multiplyColor(color, lightColor);
-			depthBuffer.setPixel(x, y, z);
-			colorBuffer.setPixel(x, y, color);
+			colorBuffer.setPixelUnchecked(x, y, color);
+			Texture materialBuffer = shaderBuffer.getCamera().getRenderTarget().getMaterialBuffer();
+			if (materialBuffer != null)
+				materialBuffer.setPixelUnchecked(x, y, 0);
 		}
 	}
 
@@ -202,13 +217,15 @@ public class GouraudSpecularShader  implements Shader {
 		return attenuation + 1;
 	}
 	
-	private boolean inShadow(int[] location, int[][] lightMatrix, int[] lightFrustum, Texture shadowMap) {
+	private boolean inShadow(int[] location, ShadowMap shadowMap) {
+		if (shadowMap == null)
+			return false;
 		VectorMath.copy(lightSpaceLocation, location);
-		VectorMath.multiply(lightSpaceLocation, lightMatrix);
-		TransformationMath.screenportVector(lightSpaceLocation, lightFrustum);
+		VectorMath.multiply(lightSpaceLocation, shadowMap.getLightMatrix());
+		TransformationMath.screenportVector(lightSpaceLocation, shadowMap.getLightFrustum());
 		int x = lightSpaceLocation[VECTOR_X];
 		int y = lightSpaceLocation[VECTOR_Y];
-		int depth = shadowMap.getPixel(x, y);
+		int depth = shadowMap.getDepth(x, y);
 		return depth < lightSpaceLocation[VECTOR_Z];
 	}
 
@@ -227,4 +244,14 @@ public class GouraudSpecularShader  implements Shader {
 	public ShaderProperties getProperties() {
 		return shaderProperties;
 	}
+	
+	public FlatRasterizer getRasterizer() {
+		return rasterizer;
+	}
+	
+	public Shader copy() {
+		final GouraudSpecularShader shader = new GouraudSpecularShader();
+		shader.setProperties(shaderProperties);
+		return shader;
+	}
 }
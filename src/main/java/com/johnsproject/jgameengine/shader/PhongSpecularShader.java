@@ -30,11 +30,13 @@ import com.johnsproject.jgameengine.math.ColorMath;
 import com.johnsproject.jgameengine.math.FixedPointMath;
 import com.johnsproject.jgameengine.math.TransformationMath;
 import com.johnsproject.jgameengine.math.VectorMath;
+import com.johnsproject.jgameengine.model.FrameBuffer;
 import com.johnsproject.jgameengine.model.Light;
 import com.johnsproject.jgameengine.model.Texture;
+import com.johnsproject.jgameengine.rasterizer.FlatRasterizer;
 import com.johnsproject.jgameengine.rasterizer.PerspectivePhongRasterizer;
 
-public class PhongSpecularShader  implements Shader {
+public class PhongSpecularShader  implements TiledShader {
 
 	private static final int INITIAL_ATTENUATION = FP_ONE;
 	private static final int LINEAR_ATTENUATION = FixedPointMath.toFixedPoint(0.045);
@@ -42,6 +44,8 @@ public class PhongSpecularShader  implements Shader {
 
 	private SpecularProperties shaderProperties;
 	private ForwardShaderBuffer shaderBuffer;
+	private DeferredShaderBuffer deferredBuffer;
+	private int materialIndex;
 	private final PerspectivePhongRasterizer rasterizer;
 	
 	private final int[] lightDirection;
@@ -52,6 +56,8 @@ public class PhongSpecularShader  implements Shader {
 	private int color;
 	private int modelColor;
 	private Texture texture;
+	private int fragments;
+	private int shadedFragments;
 
 	public PhongSpecularShader() {
 		this.rasterizer = new PerspectivePhongRasterizer(this);
@@ -64,8 +70,6 @@ public class PhongSpecularShader  implements Shader {
 
 	public void vertex(VertexBuffer vertexBuffer) {
 		int[] location = vertexBuffer.getLocation();
-		int[] normal = vertexBuffer.getWorldNormal();
-		VectorMath.normalize(normal);
 		VectorMath.copy(location, vertexBuffer.getWorldLocation());
 		VectorMath.multiply(location, shaderBuffer.getCamera().getTransform().getSpaceEnterMatrix());
 		VectorMath.multiply(location, shaderBuffer.getCamera().getProjectionMatrix());
@@ -73,8 +77,19 @@ public class PhongSpecularShader  implements Shader {
 	}
 
 	public void geometry(GeometryBuffer geometryBuffer) {
+		drawGeometry(geometryBuffer);
+		flushFragmentCounts();
+	}
+
+	public void setupGeometry(GeometryBuffer geometryBuffer) { }
+
+	public void drawGeometry(GeometryBuffer geometryBuffer) {
 		color = shaderProperties.getDiffuseColor();
 		texture = shaderProperties.getTexture();
+		if (deferredBuffer != null) {
+			materialIndex = deferredBuffer.getMaterialIndex(shaderProperties);
+		}
+		rasterizer.setDepthPyramid(shaderBuffer.getDepthPyramid());
 		if (texture == null) {
 			rasterizer.draw(geometryBuffer);
 		} else {
@@ -82,102 +97,129 @@ public class PhongSpecularShader  implements Shader {
 		}
 	}
 
+	public void flushFragmentCounts() {
+		shaderBuffer.addFragmentCounts(fragments, shadedFragments);
+		fragments = 0;
+		shadedFragments = 0;
+	}
+
 	public void fragment(FragmentBuffer fragmentBuffer) {
 		int x = fragmentBuffer.getLocation()[VECTOR_X];
 		int y = fragmentBuffer.getLocation()[VECTOR_Y];
 		int z = fragmentBuffer.getLocation()[VECTOR_Z];
-		Texture colorBuffer = shaderBuffer.getCamera().getRenderTarget().getColorBuffer();
-		Texture depthBuffer = shaderBuffer.getCamera().getRenderTarget().getDepthBuffer();
-		if (depthBuffer.getPixel(x, y) > z) {
+		FrameBuffer renderTarget = shaderBuffer.getCamera().getRenderTarget();
+		if (!shaderBuffer.isDepthPrepass())
+			fragments++;
+		if (shaderBuffer.depthTest(x, y, z)) {
 			int[] worldLocation = fragmentBuffer.getWorldLocation();
 			int[] normal = fragmentBuffer.getWorldNormal();
-			int lightColor = ColorMath.BLACK;
-			int[] cameraLocation = shaderBuffer.getCamera().getTransform().getLocation();
-			VectorMath.copy(viewDirection, cameraLocation);
-			VectorMath.subtract(viewDirection, worldLocation);
-			VectorMath.normalize(viewDirection);
-			int lightIndex = 0;
-			for(int i = 0; i < shaderBuffer.getLights().size(); i++) {
-				Light light = shaderBuffer.getLights().get(i);
-				if(light.isCulled())
-					continue;
-				int currentFactor = 0;
-				int attenuation = 0;
-				int[] lightPosition = light.getTransform().getLocation();
-				switch (light.getType()) {
-				case DIRECTIONAL:
-					VectorMath.copy(lightDirection, light.getDirection());
-					VectorMath.invert(lightDirection);
-					currentFactor = getLightFactor(normal, lightDirection, viewDirection);
-					if (lightIndex == shaderBuffer.getDirectionalLightIndex()) {
-						int[][] lightMatrix = shaderBuffer.getDirectionalLightMatrix();
-						int[] lightFrustum = shaderBuffer.getDirectionalLightFrustum();
-						Texture shadowMap = shaderBuffer.getDirectionalShadowMap();
-						if(inShadow(worldLocation, lightMatrix, lightFrustum, shadowMap)) {
+			if (texture != null) {
+				int[] uv = fragmentBuffer.getUV();
+				int texel = texture.sample(uv[VECTOR_X], uv[VECTOR_Y], fragmentBuffer.getMipmapLevel());
+				if (ColorMath.getAlpha(texel) == 0) // discard pixel if alpha = 0
+					return;
+				color = texel;
+			}
+			shaderBuffer.depthWrite(x, y, z);
+			if (shaderBuffer.isDepthPrepass())
+				return;
+			shadedFragments++;
+			if (deferredBuffer != null) {
+				// the lighting is done once per pixel by DeferredShaderBuffer.shade
+				renderTarget.getAlbedoBuffer().setPixelUnchecked(x, y, color);
+				renderTarget.getMaterialBuffer().setPixelUnchecked(x, y, materialIndex);
+				for (int i = 0; i < 3; i++) {
+					renderTarget.getWorldLocationBuffers()[i].setPixelUnchecked(x, y, worldLocation[i]);
+					renderTarget.getWorldNormalBuffers()[i].setPixelUnchecked(x, y, normal[i]);
+				}
+			} else {
+				modelColor = ColorMath.multiplyColor(color, getLightColor(x, y, worldLocation, normal));
+				renderTarget.getColorBuffer().setPixelUnchecked(x, y, modelColor);
+			}
+		}
+	}
+	
+	/**
+	 * Calculates the light that reaches the given pixel from the lights of its light tile.
+	 * 
+	 * @param x x of the pixel in the render target.
+	 * @param y y of the pixel in the render target.
+	 * @param worldLocation world location of the pixel.
+	 * @param normal world normal of the pixel.
+	 * @return the light color.
+	 */
+	public int getLightColor(int x, int y, int[] worldLocation, int[] normal) {
+		int lightColor = ColorMath.BLACK;
+		int[] cameraLocation = shaderBuffer.getCamera().getTransform().getLocation();
+		VectorMath.copy(viewDirection, cameraLocation);
+		VectorMath.subtract(viewDirection, worldLocation);
+		VectorMath.normalize(viewDirection);
+		int tile = shaderBuffer.getLightTile(x, y);
+		int[] tileLights = shaderBuffer.getTileLights(tile);
+		for(int i = 0; i < shaderBuffer.getTileLightCount(tile); i++) {
+			int lightIndex = tileLights[i];
+			Light light = shaderBuffer.getVisibleLights().get(lightIndex);
+			if(!light.isInRange(worldLocation))
+				continue;
+			int currentFactor = 0;
+			int attenuation = 0;
+			int[] lightPosition = light.getTransform().getLocation();
+			ShadowMap[] shadowMaps = shaderBuffer.getShadowMaps(lightIndex);
+			switch (light.getType()) {
+			case DIRECTIONAL:
+				VectorMath.copy(lightDirection, light.getDirection());
+				VectorMath.invert(lightDirection);
+				currentFactor = getLightFactor(normal, lightDirection, viewDirection);
+				if (shadowMaps != null) {
+					int cascade = shaderBuffer.getDirectionalCascade(worldLocation);
+					if((cascade != -1) && inShadow(worldLocation, shadowMaps[cascade])) {
+						currentFactor = ColorMath.multiplyColor(currentFactor, light.getShadowColor());
+					}
+				}
+				break;
+			case POINT:
+				VectorMath.copy(lightLocation, lightPosition);
+				VectorMath.subtract(lightLocation, worldLocation);
+				attenuation = getAttenuation(lightLocation);
+				VectorMath.normalize(lightLocation);
+				currentFactor = getLightFactor(normal, lightLocation, viewDirection);
+				currentFactor = FixedPointMath.divide(currentFactor, attenuation);
+				if ((shadowMaps != null) && (currentFactor > 150)) {
+					for (int j = 0; j < shadowMaps.length; j++) {
+						if(inShadow(worldLocation, shadowMaps[j])) {
 							currentFactor = ColorMath.multiplyColor(currentFactor, light.getShadowColor());
 						}
 					}
-					break;
-				case POINT:
-					VectorMath.copy(lightLocation, lightPosition);
-					VectorMath.subtract(lightLocation, worldLocation);
-					attenuation = getAttenuation(lightLocation);
-					VectorMath.normalize(lightLocation);
-					currentFactor = getLightFactor(normal, lightLocation, viewDirection);
+				}
+				break;
+			case SPOT:			
+				VectorMath.copy(lightDirection, light.getDirection());
+				VectorMath.invert(lightDirection);
+				VectorMath.copy(lightLocation, lightPosition);
+				VectorMath.subtract(lightLocation, worldLocation);
+				attenuation = getAttenuation(lightLocation);
+				VectorMath.normalize(lightLocation);
+				long theta = VectorMath.dotProduct(lightLocation, lightDirection);
+				int phi = FixedPointMath.cos(light.getSpotSize() >> 1);
+				if(theta > phi) {
+					int intensity = -FixedPointMath.divide(phi - theta, light.getSpotSoftness() + 1);
+					intensity = FixedPointMath.clamp(intensity, 1, FP_ONE);
+					currentFactor = getLightFactor(normal, lightDirection, viewDirection);
+					currentFactor = FixedPointMath.multiply(currentFactor, intensity * 2);
 					currentFactor = FixedPointMath.divide(currentFactor, attenuation);
-					if ((lightIndex == shaderBuffer.getPointLightIndex()) && (currentFactor > 150)) {
-						int[] lightFrustum = shaderBuffer.getPointLightFrustum();
-						for (int j = 0; j < shaderBuffer.getPointLightMatrices().length; j++) {
-							int[][] lightMatrix = shaderBuffer.getPointLightMatrices()[j];
-							Texture shadowMap = shaderBuffer.getPointShadowMaps()[j];
-							if(inShadow(worldLocation, lightMatrix, lightFrustum, shadowMap)) {
-								currentFactor = ColorMath.multiplyColor(currentFactor, light.getShadowColor());
-							}
-						}
-					}
-					break;
-				case SPOT:			
-					VectorMath.copy(lightDirection, light.getDirection());
-					VectorMath.invert(lightDirection);
-					VectorMath.copy(lightLocation, lightPosition);
-					VectorMath.subtract(lightLocation, worldLocation);
-					attenuation = getAttenuation(lightLocation);
-					VectorMath.normalize(lightLocation);
-					long theta = VectorMath.dotProduct(lightLocation, lightDirection);
-					int phi = FixedPointMath.cos(light.getSpotSize() >> 1);
-					if(theta > phi) {
-						int intensity = -FixedPointMath.divide(phi - theta, light.getSpotSoftness() + 1);
-						intensity = FixedPointMath.clamp(intensity, 1, FP_ONE);
-						currentFactor = getLightFactor(normal, lightDirection, viewDirection);
-						currentFactor = FixedPointMath.multiply(currentFactor, intensity * 2);
-						currentFactor = FixedPointMath.divide(currentFactor, attenuation);
-						if ((lightIndex == shaderBuffer.getSpotLightIndex()) && (currentFactor > 10)) {
-							int[][] lightMatrix = shaderBuffer.getSpotLightMatrix();
-							int[] lightFrustum = shaderBuffer.getSpotLightFrustum();
-							Texture shadowMap = shaderBuffer.getSpotShadowMap();
-							if(inShadow(worldLocation, lightMatrix, lightFrustum, shadowMap)) {
-								currentFactor = ColorMath.multiplyColor(currentFactor, light.getShadowColor());
-							}
+					if ((shadowMaps != null) && (currentFactor > 10)) {
+						if(inShadow(worldLocation, shadowMaps[0])) {
+							currentFactor = ColorMath.multiplyColor(currentFactor, light.getShadowColor());
 						}
 					}
-					break;
 				}
-				currentFactor = FixedPointMath.multiply(currentFactor, light.getStrength());
-				currentFactor = FixedPointMath.multiply(currentFactor, 255);
-				lightColor = ColorMath.lerp(lightColor, light.getColor(), currentFactor);
-				lightIndex++;
+				break;
 			}
-			if (texture != null) {
-				int[] uv = fragmentBuffer.getUV();
-				int texel = texture.getPixel(uv[VECTOR_X], uv[VECTOR_Y]);
-				if (ColorMath.getAlpha(texel) == 0) // discard pixel if alpha = 0
-					return;
-				color = texel;
-			}
-			modelColor = ColorMath.multiplyColor(color, lightColor);
-			depthBuffer.setPixel(x, y, z);
-			colorBuffer.setPixel(x, y, modelColor);
+			currentFactor = FixedPointMath.multiply(currentFactor, light.getStrength());
+			currentFactor = FixedPointMath.multiply(currentFactor, 255);
+			lightColor = ColorMath.lerp(lightColor, light.getColor(), currentFactor);
 		}
+		return lightColor;
 	}
 
 	private int getLightFactor(int[] normal, int[] lightDirection, int[] viewDirection) {
@@ -205,13 +247,15 @@ public class PhongSpecularShader  implements Shader {
 		return attenuation + 1;
 	}
 	
-	private boolean inShadow(int[] location, int[][] lightMatrix, int[] lightFrustum, Texture shadowMap) {
+	private boolean inShadow(int[] location, ShadowMap shadowMap) {
+		if (shadowMap == null)
+			return false;
 		VectorMath.copy(lightSpaceLocation, location);
-		VectorMath.multiply(lightSpaceLocation, lightMatrix);
-		TransformationMath.screenportVector(lightSpaceLocation, lightFrustum);
+		VectorMath.multiply(lightSpaceLocation, shadowMap.getLightMatrix());
+		TransformationMath.screenportVector(lightSpaceLocation, shadowMap.getLightFrustum());
 		int x = lightSpaceLocation[VECTOR_X];
 		int y = lightSpaceLocation[VECTOR_Y];
-		int depth = shadowMap.getPixel(x, y);
+		int depth = shadowMap.getDepth(x, y);
 		return depth < lightSpaceLocation[VECTOR_Z];
 	}
 
@@ -221,6 +265,11 @@ public class PhongSpecularShader  implements Shader {
 
 	public void setShaderBuffer(ShaderBuffer shaderBuffer) {
 		this.shaderBuffer = (ForwardShaderBuffer) shaderBuffer;
+		if(shaderBuffer instanceof DeferredShaderBuffer) {
+			this.deferredBuffer = (DeferredShaderBuffer) shaderBuffer;
+		} else {
+			this.deferredBuffer = null;
+		}
 	}
 
 	public void setProperties(ShaderProperties shaderProperties) {
@@ -230,5 +279,14 @@ public class PhongSpecularShader  implements Shader {
 	public ShaderProperties getProperties() {
 		return shaderProperties;
 	}
+	
+	public FlatRasterizer getRasterizer() {
+		return rasterizer;
+	}
+	
+	public Shader copy() {
+		final PhongSpecularShader shader = new PhongSpecularShader();
+		shader.setProperties(shaderProperties);
+		return shader;
+	}
 }
-
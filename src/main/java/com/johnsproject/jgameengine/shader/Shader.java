@@ -23,6 +23,8 @@
  */
 package com.johnsproject.jgameengine.shader;
 
+import com.johnsproject.jgameengine.rasterizer.FlatRasterizer;
+
 public interface Shader {
 	
 	public void vertex(VertexBuffer vertexBuffer);
@@ -38,4 +40,15 @@ public interface Shader {
 	public void setProperties(ShaderProperties shaderProperties);
 	
 	public ShaderProperties getProperties();
+	
+	public FlatRasterizer getRasterizer();
+	
+	/**
+	 * Creates a new instance of this shader that shares this shader's {@link ShaderProperties}. 
+	 * Shaders keep state between the vertex, geometry and fragment calls, 
+	 * so each thread that renders in parallel needs its own copy.
+	 * 
+	 * @return a copy of this shader.
+	 */
+	public Shader copy();
 }
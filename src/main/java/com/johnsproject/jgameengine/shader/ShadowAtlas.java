@@ -0,0 +1,173 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 John Salomon - John´s Project
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.johnsproject.jgameengine.shader;
+
+import com.johnsproject.jgameengine.math.FixedPointMath;
+import com.johnsproject.jgameengine.model.Texture;
+
+/**
+ * One large texture the shadow maps of all lights are taken from, so the memory used by shadows 
+ * doesn't depend on the number of shadow casting lights. The atlas is split into square tiles 
+ * whose sizes are powers of two, a tile that is larger than the requested size is split 
+ * into four smaller ones. All tiles are freed at the start of each frame.
+ */
+public class ShadowAtlas {
+	
+	/**
+	 * Width and height of the smallest tile, smaller shadow maps are rounded up to it.
+	 */
+	public static final int MINIMUM_TILE_SIZE = 32;
+	
+	private static final int TILE_SHIFT = 16;
+	private static final int TILE_MASK = (1 << TILE_SHIFT) - 1;
+	
+	private final Texture texture;
+	private final int[][] freeTiles;
+	private final int[] freeTileCounts;
+	private int allocatedArea;
+	private int allocatedTileCount;
+	private int failedAllocationCount;
+	
+	/**
+	 * Creates an atlas of size x size pixels, it uses size * size * 4 bytes.
+	 * 
+	 * @param size a power of two between {@link #MINIMUM_TILE_SIZE} and 2^16.
+	 */
+	public ShadowAtlas(int size) {
+		if((size < MINIMUM_TILE_SIZE) || (size > TILE_MASK + 1) || (Integer.bitCount(size) != 1))
+			throw new IllegalArgumentException("The size of the shadow atlas has to be a power of two between "
+					+ MINIMUM_TILE_SIZE + " and " + (TILE_MASK + 1));
+		this.texture = new Texture(size, size);
+		final int levelCount = Integer.numberOfTrailingZeros(size / MINIMUM_TILE_SIZE) + 1;
+		this.freeTiles = new int[levelCount][];
+		this.freeTileCounts = new int[levelCount];
+		for (int i = 0; i < levelCount; i++) {
+			freeTiles[i] = new int[1 << (i << 1)];
+		}
+		clear();
+	}
+	
+	/**
+	 * Frees all tiles. The pixels aren't changed, each shadow map clears its own tile.
+	 */
+	public void clear() {
+		for (int i = 0; i < freeTileCounts.length; i++) {
+			freeTileCounts[i] = 0;
+		}
+		freeTiles[0][freeTileCounts[0]++] = 0;
+		allocatedArea = 0;
+		allocatedTileCount = 0;
+		failedAllocationCount = 0;
+	}
+	
+	/**
+	 * Takes a free tile of the given size from the atlas.
+	 * 
+	 * @param size width and height of the tile, it's rounded down to a power of two.
+	 * @param tile receives the left column and the top row of the tile.
+	 * @return false if there is no free tile of this size.
+	 */
+	public boolean allocate(int size, int[] tile) {
+		final int level = getLevel(size);
+		int freeLevel = level;
+		while((freeLevel >= 0) && (freeTileCounts[freeLevel] == 0))
+			freeLevel--;
+		if(freeLevel < 0) {
+			failedAllocationCount++;
+			return false;
+		}
+		final int packedTile = freeTiles[freeLevel][--freeTileCounts[freeLevel]];
+		final int x = packedTile & TILE_MASK;
+		final int y = packedTile >>> TILE_SHIFT;
+		// the top left quarter is split until it has the requested size, the other quarters are free
+		for (; freeLevel < level; freeLevel++) {
+			final int half = texture.getWidth() >> (freeLevel + 1);
+			push(freeLevel + 1, x + half, y + half);
+			push(freeLevel + 1, x, y + half);
+			push(freeLevel + 1, x + half, y);
+		}
+		tile[0] = x;
+		tile[1] = y;
+		final int tileSize = texture.getWidth() >> level;
+		allocatedArea += tileSize * tileSize;
+		allocatedTileCount++;
+		return true;
+	}
+	
+	/**
+	 * Returns a tile taken by {@link #allocate} to the atlas.
+	 * 
+	 * @param size the size the tile was allocated with.
+	 * @param tile left column and top row of the tile.
+	 */
+	public void free(int size, int[] tile) {
+		final int level = getLevel(size);
+		push(level, tile[0], tile[1]);
+		final int tileSize = texture.getWidth() >> level;
+		allocatedArea -= tileSize * tileSize;
+		allocatedTileCount--;
+	}
+	
+	private void push(int level, int x, int y) {
+		freeTiles[level][freeTileCounts[level]++] = x | (y << TILE_SHIFT);
+	}
+	
+	private int getLevel(int size) {
+		size = Math.max(MINIMUM_TILE_SIZE, Math.min(texture.getWidth(), size));
+		return Integer.numberOfTrailingZeros(texture.getWidth()) - (31 - Integer.numberOfLeadingZeros(size));
+	}
+	
+	public Texture getTexture() {
+		return texture;
+	}
+	
+	public int getSize() {
+		return texture.getWidth();
+	}
+	
+	/**
+	 * Returns the number of pixels in the tiles allocated since the last {@link #clear()}.
+	 */
+	public int getAllocatedArea() {
+		return allocatedArea;
+	}
+	
+	/**
+	 * Returns the fixed point fraction of the atlas that is allocated.
+	 */
+	public int getOccupancy() {
+		return FixedPointMath.divide((long) allocatedArea, (long) getSize() * getSize());
+	}
+	
+	public int getAllocatedTileCount() {
+		return allocatedTileCount;
+	}
+	
+	/**
+	 * Returns how many allocations failed since the last {@link #clear()} because the atlas was full.
+	 */
+	public int getFailedAllocationCount() {
+		return failedAllocationCount;
+	}
+}
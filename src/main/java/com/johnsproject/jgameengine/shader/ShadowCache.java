@@ -0,0 +1,169 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 John Salomon - John´s Project
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.johnsproject.jgameengine.shader;
+
+import java.util.Arrays;
+
+import com.johnsproject.jgameengine.math.MatrixMath;
+import com.johnsproject.jgameengine.model.Camera;
+import com.johnsproject.jgameengine.model.Texture;
+
+/**
+ * Keeps the shadows of the static models in a shadow map, so they don't need to be drawn every frame. 
+ * The cache stays valid while the light space and the camera frustum used to draw the 
+ * shadow map stay the same, the shadow map stays in the same tile of the atlas and it isn't 
+ * invalidated, the dynamic models are then drawn on top of the cached shadows.
+ */
+public class ShadowCache {
+	
+	private final ShadowMap shadowMap;
+	private int[] staticPixels;
+	private final int[][] lightMatrix;
+	private final int[] cameraFrustum;
+	private int left;
+	private int top;
+	private int size;
+	private boolean valid;
+	private boolean kept;
+	private boolean cleared;
+	
+	public ShadowCache(ShadowMap shadowMap) {
+		this.shadowMap = shadowMap;
+		this.lightMatrix = MatrixMath.indentityMatrix();
+		this.cameraFrustum = new int[Camera.FRUSTUM_SIZE];
+	}
+	
+	/**
+	 * Clears the shadow map for a new frame. If the cache is valid for the given light matrix and 
+	 * camera frustum the cached shadows are copied into the shadow map, else it's filled with the 
+	 * farthest depth and the cache is invalidated.
+	 * 
+	 * @param lightMatrix matrix that transforms world space into the shadow map.
+	 * @param cameraFrustum ported frustum of the camera, the rasterizers clip to it.
+	 * @return true if the cached shadows were copied into the shadow map.
+	 */
+	public boolean clear(int[][] lightMatrix, int[] cameraFrustum) {
+		boolean equal = valid && kept;
+		for (int i = 0; equal && (i < MatrixMath.MATRIX_SIZE); i++) {
+			for (int j = 0; equal && (j < MatrixMath.MATRIX_SIZE); j++) {
+				equal = this.lightMatrix[i][j] == lightMatrix[i][j];
+			}
+		}
+		for (int i = 0; equal && (i < Camera.FRUSTUM_SIZE); i++) {
+			equal = this.cameraFrustum[i] == cameraFrustum[i];
+		}
+		equal = equal && (left == shadowMap.getLeft()) && (top == shadowMap.getTop()) && (size == shadowMap.getSize());
+		kept = false;
+		if(equal) {
+			copy(staticPixels, true);
+			return true;
+		}
+		valid = false;
+		MatrixMath.copy(this.lightMatrix, lightMatrix);
+		System.arraycopy(cameraFrustum, 0, this.cameraFrustum, 0, Camera.FRUSTUM_SIZE);
+		left = shadowMap.getLeft();
+		top = shadowMap.getTop();
+		size = shadowMap.getSize();
+		fill();
+		cleared = true;
+		return false;
+	}
+	
+	/**
+	 * Stores the current content of the shadow map as the cached shadows. 
+	 * It should only contain the shadows of the static models. Nothing is stored if the 
+	 * shadow map wasn't cleared by {@link #clear} since the last time, as the shadows 
+	 * would then belong to another frame or camera.
+	 */
+	public void store() {
+		if(!cleared)
+			return;
+		cleared = false;
+		if((staticPixels == null) || (staticPixels.length < size * size)) {
+			staticPixels = new int[size * size];
+		}
+		copy(staticPixels, false);
+		valid = true;
+	}
+	
+	/**
+	 * Keeps the cache for the next frame. The shadow shader calls this every frame, 
+	 * so the cached shadows are dropped once the shadow map isn't drawn anymore.
+	 */
+	public void keep() {
+		kept = true;
+	}
+	
+	/**
+	 * Invalidates the cache, the shadows of the static models are drawn again in the next frame.
+	 */
+	public void invalidate() {
+		valid = false;
+	}
+	
+	/**
+	 * Invalidates the cache and removes the cached shadows that were copied into the shadow map.
+	 */
+	public void reset() {
+		if(valid) {
+			valid = false;
+			fill();
+		}
+	}
+	
+	/**
+	 * Copies the rows of the tile of the shadow map from or into the cached shadows.
+	 */
+	private void copy(int[] pixels, boolean restore) {
+		final Texture texture = shadowMap.getTexture();
+		final int[] atlasPixels = texture.getPixels();
+		for (int y = 0; y < size; y++) {
+			final int index = left + ((top + y) * texture.getStride());
+			if(restore) {
+				System.arraycopy(pixels, y * size, atlasPixels, index, size);
+			} else {
+				System.arraycopy(atlasPixels, index, pixels, y * size, size);
+			}
+		}
+	}
+	
+	/**
+	 * Fills the tile of the shadow map with the farthest depth.
+	 */
+	private void fill() {
+		final Texture texture = shadowMap.getTexture();
+		for (int y = 0; y < size; y++) {
+			final int index = left + ((top + y) * texture.getStride());
+			Arrays.fill(texture.getPixels(), index, index + size, Integer.MAX_VALUE);
+		}
+	}
+	
+	public boolean isValid() {
+		return valid;
+	}
+	
+	public ShadowMap getShadowMap() {
+		return shadowMap;
+	}
+}
@@ -0,0 +1,182 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 John Salomon - John´s Project
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.johnsproject.jgameengine.shader;
+
+import com.johnsproject.jgameengine.math.MatrixMath;
+import com.johnsproject.jgameengine.math.TransformationMath;
+import com.johnsproject.jgameengine.math.VectorMath;
+import com.johnsproject.jgameengine.model.Camera;
+import com.johnsproject.jgameengine.model.CameraType;
+import com.johnsproject.jgameengine.model.Light;
+import com.johnsproject.jgameengine.model.LightType;
+import com.johnsproject.jgameengine.model.Texture;
+
+/**
+ * A shadow map in a tile of the {@link ShadowAtlas}. The ported frustum of the light 
+ * is moved to the tile, so the light matrix maps world space into the atlas.
+ */
+public class ShadowMap {
+	
+	private final Texture texture;
+	private final int[] lightFrustum;
+	private final int[][] lightMatrix;
+	private final int[] offset;
+	private final int[] cullVector;
+	private final ShadowCache shadowCache;
+	private Light light;
+	private int focalLength;
+	private int left;
+	private int top;
+	private int size;
+	
+	public ShadowMap(Texture texture) {
+		this.texture = texture;
+		this.lightFrustum = new int[Camera.FRUSTUM_SIZE];
+		this.lightMatrix = MatrixMath.indentityMatrix();
+		this.offset = new int[2];
+		this.cullVector = VectorMath.emptyVector();
+		this.shadowCache = new ShadowCache(this);
+	}
+	
+	/**
+	 * Moves the shadow map to a tile of the atlas.
+	 * 
+	 * @param light the light that casts the shadows.
+	 * @param lightFrustum frustum of the light, it's ported to the tile.
+	 * @param focalLength focal length of the projection of the light.
+	 * @param tile left column and top row of the tile.
+	 * @param size width and height of the tile.
+	 */
+	void setup(Light light, int[] lightFrustum, int focalLength, int[] tile, int size) {
+		this.light = light;
+		this.focalLength = focalLength;
+		this.left = tile[0];
+		this.top = tile[1];
+		this.size = size;
+		offset[0] = 0;
+		offset[1] = 0;
+		System.arraycopy(lightFrustum, 0, this.lightFrustum, 0, Camera.FRUSTUM_SIZE);
+		TransformationMath.screenportFrustum(this.lightFrustum, size, size);
+		this.lightFrustum[Camera.FRUSTUM_LEFT] += left;
+		this.lightFrustum[Camera.FRUSTUM_RIGHT] += left;
+		this.lightFrustum[Camera.FRUSTUM_TOP] += top;
+		this.lightFrustum[Camera.FRUSTUM_BOTTOM] += top;
+	}
+	
+	/**
+	 * Sets the light space location that the center of an orthographic shadow map looks at.
+	 */
+	void setOffset(int x, int y) {
+		offset[0] = x;
+		offset[1] = y;
+	}
+	
+	void setFocalLength(int focalLength) {
+		this.focalLength = focalLength;
+	}
+	
+	/**
+	 * Returns the depth at the given pixel of the atlas. 
+	 * Pixels outside of the tile are clamped to its border.
+	 */
+	public int getDepth(int x, int y) {
+		x = Math.max(left, Math.min(left + size - 1, x));
+		y = Math.max(top, Math.min(top + size - 1, y));
+		return texture.getPixelUnchecked(x, y);
+	}
+	
+	/**
+	 * Returns true if the sphere can't cast a shadow into this shadow map. Shadow casters behind 
+	 * a directional light are still drawn, so only the sides of its frustum are tested. 
+	 * The six shadow maps of a point light together cover every direction, so only the 
+	 * distance to the light is tested for them.
+	 * 
+	 * @param center world space center of the sphere.
+	 * @param radius radius of the sphere.
+	 */
+	public boolean isOutside(int[] center, int radius) {
+		if(light.getType() == LightType.POINT) {
+			final int[] lightLocation = light.getTransform().getLocation();
+			final long x = (long) center[VectorMath.VECTOR_X] - lightLocation[VectorMath.VECTOR_X];
+			final long y = (long) center[VectorMath.VECTOR_Y] - lightLocation[VectorMath.VECTOR_Y];
+			final long z = (long) center[VectorMath.VECTOR_Z] - lightLocation[VectorMath.VECTOR_Z];
+			final long range = (long) lightFrustum[Camera.FRUSTUM_FAR] + radius;
+			return (x * x) + (y * y) + (z * z) > range * range;
+		}
+		VectorMath.copy(cullVector, center);
+		VectorMath.multiply(cullVector, light.getTransform().getSpaceEnterMatrix());
+		if(light.getType() == LightType.SPOT)
+			return TransformationMath.isOutsideFrustum(cullVector, radius, lightFrustum, focalLength, CameraType.PERSPECTIVE);
+		cullVector[VectorMath.VECTOR_X] -= offset[0];
+		cullVector[VectorMath.VECTOR_Y] -= offset[1];
+		return TransformationMath.isOutsideViewport(cullVector, radius, lightFrustum, focalLength, CameraType.ORTHOGRAPHIC);
+	}
+	
+	public Light getLight() {
+		return light;
+	}
+	
+	/**
+	 * Returns the matrix that transforms world space into the space of the light, 
+	 * {@link TransformationMath#screenportVector} with {@link #getLightFrustum()} then 
+	 * gives the pixel in the atlas.
+	 */
+	public int[][] getLightMatrix() {
+		return lightMatrix;
+	}
+	
+	/**
+	 * Returns the frustum of the light ported to the tile of the atlas.
+	 */
+	public int[] getLightFrustum() {
+		return lightFrustum;
+	}
+	
+	public int getFocalLength() {
+		return focalLength;
+	}
+	
+	public ShadowCache getShadowCache() {
+		return shadowCache;
+	}
+	
+	/**
+	 * Returns the texture of the atlas this shadow map is a tile of.
+	 */
+	public Texture getTexture() {
+		return texture;
+	}
+	
+	public int getLeft() {
+		return left;
+	}
+	
+	public int getTop() {
+		return top;
+	}
+	
+	public int getSize() {
+		return size;
+	}
+}
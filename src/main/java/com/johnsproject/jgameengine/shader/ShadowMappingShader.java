@@ -23,12 +23,14 @@
  */
 package com.johnsproject.jgameengine.shader;
 
-import static com.johnsproject.jgameengine.math.VectorMath.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 import com.johnsproject.jgameengine.math.FixedPointMath;
-import com.johnsproject.jgameengine.math.TransformationMath;
-import com.johnsproject.jgameengine.math.VectorMath;
-import com.johnsproject.jgameengine.model.Texture;
+import com.johnsproject.jgameengine.model.LightType;
+import com.johnsproject.jgameengine.model.Mesh;
+import com.johnsproject.jgameengine.model.Model;
 import com.johnsproject.jgameengine.rasterizer.FlatRasterizer;
 
 public class ShadowMappingShader implements Shader {
@@ -37,98 +39,143 @@ public class ShadowMappingShader implements Shader {
 	private static final int SPOT_BIAS = FixedPointMath.toFixedPoint(0.00025f);
 	private static final int POINT_BIAS = FixedPointMath.toFixedPoint(0.00035f);
 	
-	private int shadowBias = 0;
-	
 	private ShadowMappingProperties shaderProperties;
 	private ForwardShaderBuffer shaderBuffer;
-	private final FlatRasterizer rasterizer;
-	
-	private Texture currentShadowMap;
+	private final List<ShadowPass> passes;
+	private final List<Callable<Object>> shadowTasks;
+	private int passCount;
+	private boolean[] culled;
 
 	public ShadowMappingShader() {
-		this.rasterizer = new FlatRasterizer(this);
 		this.shaderProperties = new ShadowMappingProperties();
+		this.passes = new ArrayList<ShadowPass>();
+		this.shadowTasks = new ArrayList<Callable<Object>>();
+		this.culled = new boolean[0];
+	}
+	
+	/**
+	 * Tests the bounding sphere of the next model against the frustums of the shadow casting lights. 
+	 * The following geometry and {@link #addMesh} calls skip the shadow maps the model can't cast a shadow into.
+	 * 
+	 * @param center world space center of the bounding sphere.
+	 * @param radius radius of the bounding sphere.
+	 * @return true if the model doesn't cast a shadow into any shadow map.
+	 */
+	public boolean cull(int[] center, int radius) {
+		boolean allCulled = true;
+		for (int i = 0; i < passCount; i++) {
+			final ShadowMap shadowMap = shaderBuffer.getShadowMap(i);
+			culled[i] = !drawsShadows(shadowMap.getLight().getType()) || shadowMap.isOutside(center, radius);
+			allCulled &= culled[i];
+		}
+		return allCulled;
 	}
 	
 	public void vertex(VertexBuffer vertexBuffer) { }
 
 	public void geometry(GeometryBuffer geometryBuffer) {
-		if(shaderProperties.directionalShadows() && (shaderBuffer.getDirectionalLightIndex() != -1)) {
-			shadowBias = DIRECTIONAL_BIAS;
-			currentShadowMap = shaderBuffer.getDirectionalShadowMap();
-			transformVertices(geometryBuffer, shaderBuffer.getDirectionalLightMatrix(), shaderBuffer.getDirectionalLightFrustum());
-			rasterizer.setFrustumCull(false);
-			rasterizer.draw(geometryBuffer);
+		for (int i = 0; i < passCount; i++) {
+			if(!culled[i])
+				passes.get(i).draw(geometryBuffer);
 		}
-		if(shaderProperties.spotShadows() && (shaderBuffer.getSpotLightIndex() != -1)) {
-			shadowBias = SPOT_BIAS;
-			currentShadowMap = shaderBuffer.getSpotShadowMap();
-			transformVertices(geometryBuffer, shaderBuffer.getSpotLightMatrix(), shaderBuffer.getSpotLightFrustum());
-			rasterizer.setFrustumCull(true);
-			rasterizer.draw(geometryBuffer);
+	}
+	
+	/**
+	 * Adds the mesh to the shadow maps it wasn't culled from by the last {@link #cull} call. 
+	 * The meshes are drawn by {@link #drawShadowMaps} or by the tasks of {@link #getShadowTasks}, 
+	 * which transform each vertex only once into the space of each light. The shadows of static 
+	 * meshes are kept in the {@link ShadowCache} of each shadow map and only drawn when it's invalid.
+	 * 
+	 * @param mesh
+	 * @param staticMesh true if the mesh belongs to a {@link Model#isStatic() static} model.
+	 */
+	public void addMesh(Mesh mesh, boolean staticMesh) {
+		for (int i = 0; i < passCount; i++) {
+			if(!culled[i])
+				passes.get(i).addMesh(mesh, staticMesh);
 		}
-		if(shaderProperties.pointShadows() && (shaderBuffer.getPointLightIndex() != -1)) {
-			shadowBias = POINT_BIAS;
-			for (int i = 0; i < shaderBuffer.getPointLightMatrices().length; i++) {
-				currentShadowMap = shaderBuffer.getPointShadowMaps()[i];
-				transformVertices(geometryBuffer, shaderBuffer.getPointLightMatrices()[i], shaderBuffer.getPointLightFrustum());
-				rasterizer.setFrustumCull(true);
-				rasterizer.draw(geometryBuffer);
-			}
+	}
+	
+	/**
+	 * Draws the meshes added by {@link #addMesh} into the shadow maps, one shadow map after the other.
+	 */
+	public void drawShadowMaps() {
+		for (int i = 0; i < passCount; i++) {
+			if(passes.get(i).hasMeshes())
+				passes.get(i).call();
 		}
 	}
 	
-	private void transformVertices(GeometryBuffer geometryBuffer, int[][] lightMatrix, int[] lightFrustum) {
-		for (int i = 0; i < geometryBuffer.getVertexBuffers().length; i++) {
-			int[] location = geometryBuffer.getVertexBuffer(i).getLocation();
-			VectorMath.copy(location, geometryBuffer.getVertexBuffer(i).getWorldLocation());
-			VectorMath.multiply(location, lightMatrix);
-			TransformationMath.screenportVector(location, lightFrustum);
+	/**
+	 * Returns a task for each shadow map that has meshes added by {@link #addMesh}. 
+	 * Each task draws into its own tile of the shadow atlas with its own rasterizer, so they can run in parallel. 
+	 * 
+	 * @return the tasks that draw the shadow maps.
+	 */
+	public List<Callable<Object>> getShadowTasks() {
+		shadowTasks.clear();
+		for (int i = 0; i < passCount; i++) {
+			if(passes.get(i).hasMeshes())
+				shadowTasks.add(passes.get(i));
 		}
+		return shadowTasks;
 	}
-
-	public void fragment(FragmentBuffer fragmentBuffer) {
-		int x = fragmentBuffer.getLocation()[VECTOR_X];
-		int y = fragmentBuffer.getLocation()[VECTOR_Y];
-		int z = fragmentBuffer.getLocation()[VECTOR_Z] + shadowBias;
-		if (currentShadowMap.getPixel(x, y) > z) {
-			currentShadowMap.setPixel(x, y, z);
-			// debug shadow maps
-			/*if(shadowBias == DIRECTIONAL_BIAS) {
-				int depth = z >> 1;
-				int color = ColorLibrary.generate(depth, depth, depth);
-				shaderBuffer.getFrameBuffer().getColorBuffer().setPixel(x, y, color);				
-			}*/
-			/*if(shadowBias == SPOT_BIAS) {
-				int depth = z >> 1;
-				int color = ColorLibrary.generate(depth, depth, depth);
-				shaderBuffer.getFrameBuffer().getColorBuffer().setPixel(x, y, color);				
-			}*/
-			// fix rasterizer culling to fix point shadows
-			/*if(shadowBias == POINT_BIAS) {
-				for (int i = 0; i < shaderBuffer.getPointShadowMaps().length; i++) {
-					if(shaderBuffer.getPointShadowMaps()[i] == currentShadowMap) {
-						int frameBufferX = x + (currentShadowMap.getWidth() * (i + 1));
-						int frameBufferY = y;
-						if(i >= 3) {
-							frameBufferX = x + (currentShadowMap.getWidth() * ((i - 5) + 1));
-							frameBufferY += currentShadowMap.getHeight();
-						}
-						int depth = z >> 1;
-						int color = ColorLibrary.generate(depth, depth, depth);
-						shaderBuffer.getFrameBuffer().getColorBuffer().setPixel(frameBufferX, frameBufferY, color);	
-					}
-				}	
-			}*/
+	
+	private boolean drawsShadows(LightType type) {
+		switch (type) {
+		case DIRECTIONAL:
+			return shaderProperties.directionalShadows();
+		case SPOT:
+			return shaderProperties.spotShadows();
+		default:
+			return shaderProperties.pointShadows();
 		}
 	}
+	
+	private static int getBias(LightType type) {
+		switch (type) {
+		case DIRECTIONAL:
+			return DIRECTIONAL_BIAS;
+		case SPOT:
+			return SPOT_BIAS;
+		default:
+			return POINT_BIAS;
+		}
+	}
+
+	public void fragment(FragmentBuffer fragmentBuffer) { }
 
 	public ShaderBuffer getShaderBuffer() {
 		return shaderBuffer;
 	}
 
+	/**
+	 * Sets up a pass for each shadow map the shader buffer took from the shadow atlas.
+	 */
 	public void setShaderBuffer(ShaderBuffer shaderBuffer) {
 		this.shaderBuffer = (ForwardShaderBuffer) shaderBuffer;
+		passCount = this.shaderBuffer.getShadowMapCount();
+		while(passes.size() < passCount) {
+			passes.add(new ShadowPass(this));
+		}
+		if(culled.length < passCount) {
+			culled = new boolean[passCount];
+		}
+		for (int i = 0; i < passCount; i++) {
+			final ShadowMap shadowMap = this.shaderBuffer.getShadowMap(i);
+			final LightType type = shadowMap.getLight().getType();
+			passes.get(i).setup(shadowMap, getBias(type), type != LightType.DIRECTIONAL);
+			keepShadowCache(shadowMap.getShadowCache(), drawsShadows(type));
+		}
+	}
+	
+	private void keepShadowCache(ShadowCache shadowCache, boolean shadows) {
+		if(shadows) {
+			shadowCache.keep();
+		} else {
+			// the cached shadows may already be copied into the shadow map
+			shadowCache.reset();
+		}
 	}
 	
 	public void setProperties(ShaderProperties shaderProperties) {
@@ -138,4 +185,17 @@ public class ShadowMappingShader implements Shader {
 	public ShaderProperties getProperties() {
 		return shaderProperties;
 	}
+	
+	/**
+	 * Returns null, each shadow map is drawn by its own rasterizer.
+	 */
+	public FlatRasterizer getRasterizer() {
+		return null;
+	}
+	
+	public Shader copy() {
+		final ShadowMappingShader shader = new ShadowMappingShader();
+		shader.setProperties(shaderProperties);
+		return shader;
+	}
 }
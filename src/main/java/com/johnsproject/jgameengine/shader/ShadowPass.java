@@ -0,0 +1,224 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 John Salomon - John´s Project
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.johnsproject.jgameengine.shader;
+
+import static com.johnsproject.jgameengine.math.FixedPointMath.*;
+import static com.johnsproject.jgameengine.math.VectorMath.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.johnsproject.jgameengine.math.TransformationMath;
+import com.johnsproject.jgameengine.math.VectorMath;
+import com.johnsproject.jgameengine.model.Face;
+import com.johnsproject.jgameengine.model.Mesh;
+import com.johnsproject.jgameengine.model.Texture;
+import com.johnsproject.jgameengine.model.Vertex;
+import com.johnsproject.jgameengine.rasterizer.FlatRasterizer;
+
+/**
+ * Draws the shadow casters into one {@link ShadowMap} of the {@link ShadowMappingShader}. 
+ * Each pass has its own rasterizer and vertex locations, so the passes of 
+ * different shadow maps can be drawn at the same time.
+ */
+class ShadowPass implements SpanShader, Callable<Object> {
+	
+	private final ShadowMappingShader shadowShader;
+	private final FlatRasterizer rasterizer;
+	private final GeometryBuffer geometryBuffer;
+	private final List<Mesh> staticMeshes;
+	private final List<Mesh> meshes;
+	private int[][] locations;
+	private ShadowCache shadowCache;
+	private Texture shadowMap;
+	private int[][] lightMatrix;
+	private int[] lightFrustum;
+	private int shadowBias;
+	private boolean perspective;
+	
+	public ShadowPass(ShadowMappingShader shadowShader) {
+		this.shadowShader = shadowShader;
+		this.rasterizer = new FlatRasterizer(this);
+		this.geometryBuffer = new GeometryBuffer();
+		for (int i = 0; i < geometryBuffer.getVertexBuffers().length; i++) {
+			geometryBuffer.getVertexBuffers()[i] = new VertexBuffer();
+		}
+		this.staticMeshes = new ArrayList<Mesh>();
+		this.meshes = new ArrayList<Mesh>();
+		this.locations = new int[0][];
+	}
+	
+	/**
+	 * Sets the shadow map drawn by this pass, the triangles are clipped to its tile of the atlas. 
+	 * The triangles of perspective shadow maps that are partly behind the light are skipped, 
+	 * as the projection would mirror them.
+	 */
+	public void setup(ShadowMap shadowMap, int shadowBias, boolean perspective) {
+		this.shadowCache = shadowMap.getShadowCache();
+		this.shadowMap = shadowMap.getTexture();
+		this.lightMatrix = shadowMap.getLightMatrix();
+		this.lightFrustum = shadowMap.getLightFrustum();
+		this.shadowBias = shadowBias;
+		this.perspective = perspective;
+		rasterizer.setFrustumCull(perspective);
+		rasterizer.setTargetFrustum(lightFrustum);
+	}
+	
+	/**
+	 * Adds the mesh to the meshes drawn by the next call. Static meshes are 
+	 * skipped while their shadows are in the {@link ShadowCache}.
+	 */
+	public void addMesh(Mesh mesh, boolean staticMesh) {
+		if(!staticMesh) {
+			meshes.add(mesh);
+		} else if(!shadowCache.isValid()) {
+			staticMeshes.add(mesh);
+		}
+	}
+	
+	public boolean hasMeshes() {
+		return !meshes.isEmpty() || !staticMeshes.isEmpty();
+	}
+	
+	/**
+	 * Draws the meshes added since the last call. If the shadow cache isn't valid the static meshes 
+	 * are drawn first and stored in the cache, the dynamic meshes are then drawn on top.
+	 */
+	public Object call() {
+		if(!shadowCache.isValid()) {
+			draw(staticMeshes);
+			shadowCache.store();
+		}
+		draw(meshes);
+		return null;
+	}
+	
+	/**
+	 * Draws and removes the meshes. The vertices of each mesh are 
+	 * transformed into the space of the light once and shared by its faces.
+	 */
+	private void draw(List<Mesh> meshes) {
+		for (int m = 0; m < meshes.size(); m++) {
+			final Mesh mesh = meshes.get(m);
+			final Vertex[] vertices = mesh.getVertices();
+			if(locations.length < vertices.length) {
+				locations = new int[vertices.length][VECTOR_SIZE];
+			}
+			for (int v = 0; v < vertices.length; v++) {
+				transform(locations[v], vertices[v].getBuffer().getWorldLocation());
+			}
+			for (int f = 0; f < mesh.getFaces().length; f++) {
+				final Face face = mesh.getFace(f);
+				for (int i = 0; i < geometryBuffer.getVertexBuffers().length; i++) {
+					VectorMath.copy(geometryBuffer.getVertexBuffer(i).getLocation(), locations[face.getVertex(i).getIndex()]);
+				}
+				if(!isBehindLight())
+					rasterizer.draw(geometryBuffer);
+			}
+		}
+		meshes.clear();
+	}
+	
+	/**
+	 * Draws a single face, its vertices are transformed into the space of the light for this face only.
+	 */
+	public void draw(GeometryBuffer face) {
+		for (int i = 0; i < geometryBuffer.getVertexBuffers().length; i++) {
+			transform(geometryBuffer.getVertexBuffer(i).getLocation(), face.getVertexBuffer(i).getWorldLocation());
+		}
+		if(!isBehindLight())
+			rasterizer.draw(geometryBuffer);
+	}
+	
+	/**
+	 * Returns true if a vertex of the triangle isn't in front of a perspective light, 
+	 * w is the negative distance to the light along its view direction.
+	 */
+	private boolean isBehindLight() {
+		if(!perspective)
+			return false;
+		for (int i = 0; i < geometryBuffer.getVertexBuffers().length; i++) {
+			if(geometryBuffer.getVertexBuffer(i).getLocation()[VECTOR_W] >= 0)
+				return true;
+		}
+		return false;
+	}
+	
+	private void transform(int[] location, int[] worldLocation) {
+		VectorMath.copy(location, worldLocation);
+		VectorMath.multiply(location, lightMatrix);
+		TransformationMath.screenportVector(location, lightFrustum);
+	}
+	
+	public void vertex(VertexBuffer vertexBuffer) { }
+	
+	public void geometry(GeometryBuffer geometryBuffer) { }
+
+	/**
+	 * Writes a scanline into the atlas, the rasterizer clipped it to the tile of the shadow map.
+	 */
+	public void fragmentSpan(int y, int x1, int x2, int z, int dz) {
+		final int[] pixels = shadowMap.getPixels();
+		final int bias = shadowBias;
+		for (int index = x1 + (y * shadowMap.getStride()); x1 <= x2; x1++, index++, z += dz) {
+			final int depth = (z >> FP_BIT) + bias;
+			if (pixels[index] > depth)
+				pixels[index] = depth;
+		}
+	}
+
+	public void fragment(FragmentBuffer fragmentBuffer) {
+		int x = fragmentBuffer.getLocation()[VECTOR_X];
+		int y = fragmentBuffer.getLocation()[VECTOR_Y];
+		fragment(x, y, fragmentBuffer.getLocation()[VECTOR_Z]);
+	}
+	
+	private void fragment(int x, int y, int z) {
+		z += shadowBias;
+		if (shadowMap.getPixel(x, y) > z) {
+			shadowMap.setPixel(x, y, z);
+		}
+	}
+
+	public ShaderBuffer getShaderBuffer() {
+		return shadowShader.getShaderBuffer();
+	}
+
+	public void setShaderBuffer(ShaderBuffer shaderBuffer) { }
+	
+	public void setProperties(ShaderProperties shaderProperties) { }
+
+	public ShaderProperties getProperties() {
+		return shadowShader.getProperties();
+	}
+	
+	public FlatRasterizer getRasterizer() {
+		return rasterizer;
+	}
+	
+	public Shader copy() {
+		return new ShadowPass(shadowShader);
+	}
+}
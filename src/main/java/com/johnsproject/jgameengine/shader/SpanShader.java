@@ -0,0 +1,48 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 John Salomon - John´s Project
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.johnsproject.jgameengine.shader;
+
+import com.johnsproject.jgameengine.rasterizer.FlatRasterizer;
+
+/**
+ * Shader that can shade a whole scanline of a triangle in one call. If the shader of a 
+ * {@link FlatRasterizer} implements this interface, its draw method calls {@link #fragmentSpan} 
+ * once for each scanline instead of calling {@link Shader#fragment} for each pixel. 
+ * The rasterizers that interpolate more than the depth still call {@link Shader#fragment}.
+ */
+public interface SpanShader extends Shader {
+	
+	/**
+	 * Shades the pixels from x1 to x2 of the row y. The span is already clipped to the 
+	 * camera frustum and the render region of the rasterizer. The depth of the pixel at x1 + i 
+	 * is (z + dz * i) >> FP_BIT, the same as the one given to {@link Shader#fragment}.
+	 * 
+	 * @param y row of the span.
+	 * @param x1 first column of the span.
+	 * @param x2 last column of the span.
+	 * @param z depth of the first pixel in fixed point.
+	 * @param dz depth step between the pixels in fixed point.
+	 */
+	public void fragmentSpan(int y, int x1, int x2, int z, int dz);
+}
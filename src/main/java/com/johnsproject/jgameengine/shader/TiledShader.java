@@ -0,0 +1,56 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 John Salomon - John´s Project
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.johnsproject.jgameengine.shader;
+
+/**
+ * Shader whose {@link Shader#geometry} can be split into the work done once per face and the 
+ * rasterization. When the render target is split into tiles, a face is drawn once for each 
+ * tile it touches, so the graphics engine calls {@link #setupGeometry} once per face and 
+ * then {@link #drawGeometry} for each tile. Shaders that only implement {@link Shader} 
+ * have {@link Shader#geometry} called for each tile.
+ */
+public interface TiledShader extends Shader {
+	
+	/**
+	 * Does the work of {@link Shader#geometry} that doesn't depend on the drawn pixels, like the 
+	 * lighting of the whole face. The results are stored in the geometry buffer, as the face 
+	 * can be drawn by another copy of this shader.
+	 * 
+	 * @param geometryBuffer
+	 */
+	public void setupGeometry(GeometryBuffer geometryBuffer);
+	
+	/**
+	 * Rasterizes a face prepared by {@link #setupGeometry} into the render region of the rasterizer. 
+	 * The fragment counts are kept until {@link #flushFragmentCounts}.
+	 * 
+	 * @param geometryBuffer
+	 */
+	public void drawGeometry(GeometryBuffer geometryBuffer);
+	
+	/**
+	 * Adds the fragments counted since the last call to the shader buffer.
+	 */
+	public void flushFragmentCounts();
+}
@@ -0,0 +1,657 @@
+package com.johnsproject.jgameengine;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import com.johnsproject.jgameengine.event.EngineEvent;
+import com.johnsproject.jgameengine.math.ColorMath;
+import com.johnsproject.jgameengine.math.FixedPointMath;
+import com.johnsproject.jgameengine.math.MatrixMath;
+import com.johnsproject.jgameengine.math.VectorMath;
+import com.johnsproject.jgameengine.model.Animation;
+import com.johnsproject.jgameengine.model.AnimationFrame;
+import com.johnsproject.jgameengine.model.Armature;
+import com.johnsproject.jgameengine.model.Camera;
+import com.johnsproject.jgameengine.model.Face;
+import com.johnsproject.jgameengine.model.FrameBuffer;
+import com.johnsproject.jgameengine.model.Light;
+import com.johnsproject.jgameengine.model.LightType;
+import com.johnsproject.jgameengine.model.Material;
+import com.johnsproject.jgameengine.model.Mesh;
+import com.johnsproject.jgameengine.model.Model;
+import com.johnsproject.jgameengine.model.Scene;
+import com.johnsproject.jgameengine.model.Transform;
+import com.johnsproject.jgameengine.model.Vertex;
+import com.johnsproject.jgameengine.model.VertexGroup;
+import com.johnsproject.jgameengine.shader.DeferredShaderBuffer;
+import com.johnsproject.jgameengine.shader.FlatSpecularShader;
+import com.johnsproject.jgameengine.shader.ForwardShaderBuffer;
+import com.johnsproject.jgameengine.shader.GouraudSpecularShader;
+import com.johnsproject.jgameengine.shader.PhongSpecularShader;
+import com.johnsproject.jgameengine.shader.Shader;
+import com.johnsproject.jgameengine.shader.ShadowAtlas;
+import com.johnsproject.jgameengine.shader.ShadowMap;
+import com.johnsproject.jgameengine.shader.SpecularProperties;
+
+public class GraphicsEngineTest {
+
+	private static final int WIDTH = 320;
+	private static final int HEIGHT = 240;
+
+	@Test
+	public void tiledRenderingTest() throws Exception {
+		final GraphicsEngine expectedEngine = render(1, GraphicsEngine.DEFAULT_TILE_SIZE);
+		assertTrue(countDrawnPixels(expectedEngine.getFrameBuffer()) > (WIDTH * HEIGHT) / 8);
+		for (int threads = 2; threads < 5; threads++) {
+			for (int tileSize = 16; tileSize <= 64; tileSize *= 2) {
+				final GraphicsEngine graphicsEngine = render(threads, tileSize);
+				assertSameImage(expectedEngine.getFrameBuffer(), graphicsEngine.getFrameBuffer());
+				// a triangle that covers several tiles is clipped to each of them, so none of its fragments is drawn twice
+				assertEquals(expectedEngine.getFragmentCount(), graphicsEngine.getFragmentCount());
+			}
+		}
+	}
+
+	@Test
+	public void interruptTest() throws Exception {
+		final FrameBuffer expected = render(1, GraphicsEngine.DEFAULT_TILE_SIZE).getFrameBuffer();
+		final Scene scene = createScene();
+		final GraphicsEngine graphicsEngine = new GraphicsEngine(new FrameBuffer(WIDTH, HEIGHT));
+		graphicsEngine.setThreadCount(2);
+		Thread.currentThread().interrupt();
+		graphicsEngine.update(new EngineEvent(scene, 0, 0, 0));
+		// the frame is aborted and the interrupt is kept for the caller
+		assertTrue(Thread.interrupted());
+		graphicsEngine.update(new EngineEvent(scene, 0, 0, 0));
+		graphicsEngine.setThreadCount(1);
+		assertSameImage(expected, graphicsEngine.getFrameBuffer());
+	}
+
+	@Test
+	public void parallelShadowMapTest() throws Exception {
+		final ForwardShaderBuffer[] shaderBuffers = new ForwardShaderBuffer[2];
+		for (int i = 0; i < shaderBuffers.length; i++) {
+			final GraphicsEngine graphicsEngine = new GraphicsEngine(new FrameBuffer(WIDTH, HEIGHT));
+			update(graphicsEngine, createScene(), i == 0 ? 1 : 4);
+			shaderBuffers[i] = (ForwardShaderBuffer) graphicsEngine.getShaderDataBuffer();
+		}
+		// the directional shadow map and the six faces of the point shadow cube
+		assertEquals(7, shaderBuffers[0].getShadowMapCount());
+		final int[] expected = shaderBuffers[0].getShadowAtlas().getTexture().getPixels();
+		assertArrayEquals(expected, shaderBuffers[1].getShadowAtlas().getTexture().getPixels());
+		int drawnPixels = 0;
+		for (int p = 0; p < expected.length; p++) {
+			if(expected[p] != Integer.MAX_VALUE)
+				drawnPixels++;
+		}
+		assertTrue(drawnPixels > 0);
+	}
+
+	@Test
+	public void shadowCacheTest() throws Exception {
+		final Scene expectedScene = createScene();
+		final Scene scene = createScene();
+		for (int i = 0; i < scene.getModels().size(); i++) {
+			scene.getModels().get(i).setStatic(i != 7);
+		}
+		final GraphicsEngine expectedEngine = new GraphicsEngine(new FrameBuffer(WIDTH, HEIGHT));
+		final GraphicsEngine graphicsEngine = new GraphicsEngine(new FrameBuffer(WIDTH, HEIGHT));
+		graphicsEngine.setThreadCount(2);
+		final ForwardShaderBuffer shaderBuffer = (ForwardShaderBuffer) graphicsEngine.getShaderDataBuffer();
+		for (int frame = 0; frame < 5; frame++) {
+			final Scene[] scenes = new Scene[] {expectedScene, scene};
+			for (int i = 0; i < scenes.length; i++) {
+				// the dynamic model moves every frame, a static model and the light move once
+				scenes[i].getModel("Sphere7").getTransform().setLocation(FixedPointMath.toFixedPoint(-frame), FixedPointMath.toFixedPoint(-2), FixedPointMath.toFixedPoint(2));
+				if(frame == 2)
+					scenes[i].getModel("Sphere8").getTransform().translate(FixedPointMath.toFixedPoint(-2), FixedPointMath.toFixedPoint(2), FixedPointMath.toFixedPoint(1));
+				if(frame == 4)
+					scenes[i].getLight("PointLight").getTransform().translate(FixedPointMath.toFixedPoint(-1), 0, 0);
+			}
+			expectedEngine.update(new EngineEvent(expectedScene, 0, 0, 0));
+			graphicsEngine.update(new EngineEvent(scene, 0, 0, 0));
+			assertTrue(shaderBuffer.getShadowMap(0).getShadowCache().isValid());
+			assertSameImage(expectedEngine.getFrameBuffer(), graphicsEngine.getFrameBuffer());
+		}
+		graphicsEngine.setThreadCount(1);
+	}
+
+	@Test
+	public void cascadedShadowMapTest() throws Exception {
+		final int far = FixedPointMath.toFixedPoint(30);
+		final FrameBuffer expected = renderDirectionalShadows(new int[] {far}, new int[] {2048});
+		final int defaultErrors = countDifferentPixels(expected, renderDirectionalShadows(null, null));
+		final int cascadeErrors = countDifferentPixels(expected, renderDirectionalShadows(new int[] {far}, new int[] {512}));
+		final int[] splits = new int[] {FixedPointMath.toFixedPoint(4), FixedPointMath.toFixedPoint(12), far};
+		final int cascadesErrors = countDifferentPixels(expected, renderDirectionalShadows(splits, new int[] {256, 256, 256}));
+		// three small cascades use less memory than the default shadow map and are closer to the large one
+		assertTrue(cascadeErrors < defaultErrors);
+		assertTrue(cascadesErrors < cascadeErrors);
+		final Scene scene = createScene();
+		scene.getMainCamera().setRenderTarget(new FrameBuffer(WIDTH, HEIGHT));
+		final ForwardShaderBuffer shaderBuffer = new ForwardShaderBuffer();
+		shaderBuffer.setDirectionalShadowCascades(splits, new int[] {256, 256, 256});
+		shaderBuffer.setup(scene.getMainCamera(), scene.getLights());
+		// the camera is at z = 10 and looks along -z
+		assertEquals(0, shaderBuffer.getDirectionalCascade(new int[] {0, 0, FixedPointMath.toFixedPoint(8), FixedPointMath.FP_ONE}));
+		assertEquals(1, shaderBuffer.getDirectionalCascade(new int[] {0, 0, 0, FixedPointMath.FP_ONE}));
+		assertEquals(2, shaderBuffer.getDirectionalCascade(new int[] {0, 0, FixedPointMath.toFixedPoint(-10), FixedPointMath.FP_ONE}));
+		assertEquals(-1, shaderBuffer.getDirectionalCascade(new int[] {0, 0, FixedPointMath.toFixedPoint(-30), FixedPointMath.FP_ONE}));
+	}
+
+	@Test
+	public void shadowAtlasTest() throws Exception {
+		final Scene scene = createScene();
+		scene.getMainCamera().setRenderTarget(new FrameBuffer(WIDTH, HEIGHT));
+		for (int i = 0; i < 3; i++) {
+			final Light spotLight = new Light("SpotLight" + i, new Transform());
+			spotLight.getTransform().setLocation(FixedPointMath.toFixedPoint((i * 4) - 4), FixedPointMath.toFixedPoint(6), FixedPointMath.toFixedPoint(4));
+			spotLight.setType(LightType.SPOT);
+			scene.addLight(spotLight);
+		}
+		scene.getLight("SpotLight2").setShadowSize(128);
+		final Light behindLight = new Light("BehindLight", new Transform());
+		behindLight.getTransform().setLocation(0, 0, FixedPointMath.toFixedPoint(20));
+		behindLight.setType(LightType.SPOT);
+		behindLight.setRange(FixedPointMath.FP_ONE);
+		scene.addLight(behindLight);
+		final Light smallLight = new Light("SmallLight", new Transform());
+		smallLight.getTransform().setLocation(0, 0, FixedPointMath.toFixedPoint(-10));
+		smallLight.setType(LightType.POINT);
+		smallLight.setRange(FixedPointMath.FP_ONE);
+		scene.addLight(smallLight);
+		final ForwardShaderBuffer shaderBuffer = new ForwardShaderBuffer();
+		shaderBuffer.setup(scene.getMainCamera(), scene.getLights());
+		// the lights are visible in the order they were added
+		assertEquals(1, shaderBuffer.getShadowMaps(0).length);
+		assertEquals(512, shaderBuffer.getShadowMaps(0)[0].getSize());
+		assertEquals(6, shaderBuffer.getShadowMaps(1).length);
+		assertEquals(256, shaderBuffer.getShadowMaps(1)[5].getSize());
+		assertEquals(256, shaderBuffer.getShadowMaps(2)[0].getSize());
+		assertEquals(128, shaderBuffer.getShadowMaps(4)[0].getSize());
+		// the range of a light behind the camera isn't visible, a small range covers few pixels
+		assertNull(shaderBuffer.getShadowMaps(5)[0]);
+		assertEquals(ShadowAtlas.MINIMUM_TILE_SIZE, shaderBuffer.getShadowMaps(6)[0].getSize());
+		assertEquals(1 + 6 + 3 + 6, shaderBuffer.getShadowMapCount());
+		final ShadowAtlas atlas = shaderBuffer.getShadowAtlas();
+		assertEquals(16, atlas.getAllocatedTileCount());
+		assertEquals(0, atlas.getFailedAllocationCount());
+		// a smaller atlas gives the farther lights smaller shadow maps, or none once it's full
+		scene.getLight("DirectionalLight").setShadowSize(256);
+		shaderBuffer.setShadowAtlas(new ShadowAtlas(512));
+		shaderBuffer.setup(scene.getMainCamera(), scene.getLights());
+		assertEquals(256, shaderBuffer.getShadowMaps(0)[0].getSize());
+		final ShadowMap[] pointShadowMaps = shaderBuffer.getShadowMaps(1);
+		for (int i = 0; i < pointShadowMaps.length; i++) {
+			assertEquals(128, pointShadowMaps[i].getSize());
+		}
+		assertEquals(256, shaderBuffer.getShadowMaps(3)[0].getSize());
+		assertEquals(128, shaderBuffer.getShadowMaps(2)[0].getSize());
+		assertEquals(128, shaderBuffer.getShadowMaps(4)[0].getSize());
+		assertNull(shaderBuffer.getShadowMaps(6)[0]);
+		assertEquals(FixedPointMath.FP_ONE, shaderBuffer.getShadowAtlas().getOccupancy());
+		assertTrue(shaderBuffer.getShadowAtlas().getFailedAllocationCount() > 0);
+	}
+
+	@Test
+	public void incrementalClearTest() throws Exception {
+		for (int threads = 1; threads <= 2; threads++) {
+			final FrameBuffer frameBuffer = new FrameBuffer(WIDTH, HEIGHT);
+			final GraphicsEngine graphicsEngine = new GraphicsEngine(frameBuffer);
+			graphicsEngine.setThreadCount(threads);
+			final FrameBuffer expected = new FrameBuffer(WIDTH, HEIGHT);
+			final GraphicsEngine expectedEngine = new GraphicsEngine(expected);
+			final Scene scene = createScene();
+			final Scene expectedScene = createScene();
+			assertEquals(WIDTH * HEIGHT, frameBuffer.getDirtyArea());
+			for (int frame = 0; frame < 4; frame++) {
+				graphicsEngine.update(new EngineEvent(scene, 0, 0, 0));
+				// the whole frame buffer of the expected engine is cleared each frame
+				expected.markDirty();
+				expectedEngine.update(new EngineEvent(expectedScene, 0, 0, 0));
+				assertSameImage(expected, frameBuffer);
+				// the spheres move away from the bottom left corner, so the next frame has to clear the pixels they left
+				for (int i = 0; i < scene.getModels().size(); i++) {
+					scene.getModels().get(i).getTransform().translate(FixedPointMath.toFixedPoint(3), FixedPointMath.toFixedPoint(2), 0);
+					expectedScene.getModels().get(i).getTransform().translate(FixedPointMath.toFixedPoint(3), FixedPointMath.toFixedPoint(2), 0);
+				}
+			}
+			assertTrue(frameBuffer.getDirtyArea() < (WIDTH * HEIGHT) / 2);
+			graphicsEngine.setThreadCount(1);
+		}
+	}
+
+	@Test
+	public void worldTransformCacheTest() throws Exception {
+		final FrameBuffer frameBuffer = new FrameBuffer(WIDTH, HEIGHT);
+		final GraphicsEngine graphicsEngine = new GraphicsEngine(frameBuffer);
+		final Scene scene = createScene();
+		final Model model = scene.getModels().get(0);
+		final int[] worldLocation = model.getMesh().getVertex(0).getBuffer().getWorldLocation();
+		graphicsEngine.update(new EngineEvent(scene, 0, 0, 0));
+		assertEquals(scene.getModels().size(), graphicsEngine.getTransformedModelCount());
+		final int[] expected = worldLocation.clone();
+		final int[] depth = frameBuffer.getDepthBuffer().getPixels().clone();
+		graphicsEngine.update(new EngineEvent(scene, 0, 0, 0));
+		// no model moved, so none of them was transformed again
+		assertEquals(0, graphicsEngine.getTransformedModelCount());
+		assertArrayEquals(expected, worldLocation);
+		assertArrayEquals(depth, frameBuffer.getDepthBuffer().getPixels());
+		model.getTransform().translate(FixedPointMath.toFixedPoint(1), 0, 0);
+		graphicsEngine.update(new EngineEvent(scene, 0, 0, 0));
+		assertEquals(1, graphicsEngine.getTransformedModelCount());
+		expected[VectorMath.VECTOR_X] += FixedPointMath.toFixedPoint(1);
+		assertArrayEquals(expected, worldLocation);
+		// changing the location array directly is only seen after markChanged
+		model.getTransform().getLocation()[VectorMath.VECTOR_X] += FixedPointMath.toFixedPoint(1);
+		graphicsEngine.update(new EngineEvent(scene, 0, 0, 0));
+		assertEquals(0, graphicsEngine.getTransformedModelCount());
+		assertArrayEquals(expected, worldLocation);
+		model.getTransform().markChanged();
+		graphicsEngine.update(new EngineEvent(scene, 0, 0, 0));
+		assertEquals(1, graphicsEngine.getTransformedModelCount());
+		expected[VectorMath.VECTOR_X] += FixedPointMath.toFixedPoint(1);
+		assertArrayEquals(expected, worldLocation);
+	}
+
+	@Test
+	public void idleArmatureTest() throws Exception {
+		final GraphicsEngine graphicsEngine = new GraphicsEngine(new FrameBuffer(WIDTH, HEIGHT));
+		final Scene scene = createScene();
+		final AnimationFrame frame = new AnimationFrame(new int[][][] {MatrixMath.indentityMatrix()});
+		final Armature armature = new Armature(new VertexGroup[0], new Animation[] {new Animation("Animation", new AnimationFrame[] {frame, frame})});
+		final Mesh mesh = createSphere(scene.getModels().get(0).getMesh().getMaterial(0), 6, 8, 1);
+		scene.addModel(new Model("Armatured", new Transform(), mesh, armature));
+		final EngineEvent event = new EngineEvent(scene, 0, 0, 0);
+		graphicsEngine.update(event);
+		final int version = armature.getVersion();
+		for (int i = 0; i < 3; i++) {
+			graphicsEngine.fixedUpdate(event);
+			graphicsEngine.update(event);
+			// nothing is playing, so the pose didn't change and the model isn't transformed again
+			assertEquals(version, armature.getVersion());
+			assertEquals(0, graphicsEngine.getTransformedModelCount());
+		}
+		armature.playAnimation(0, false);
+		for (int i = 0; i < 2; i++) {
+			graphicsEngine.fixedUpdate(event);
+			graphicsEngine.update(event);
+			assertEquals(1, graphicsEngine.getTransformedModelCount());
+		}
+		assertFalse(armature.isPlaying());
+		final int stoppedVersion = armature.getVersion();
+		graphicsEngine.fixedUpdate(event);
+		graphicsEngine.update(event);
+		assertEquals(stoppedVersion, armature.getVersion());
+		assertEquals(0, graphicsEngine.getTransformedModelCount());
+	}
+
+	@Test
+	public void pointShadowTransformTest() throws Exception {
+		final GraphicsEngine graphicsEngine = new GraphicsEngine(new FrameBuffer(WIDTH, HEIGHT));
+		final Scene scene = createScene();
+		final Transform lightTransform = scene.getLight("PointLight").getTransform();
+		lightTransform.setRotation(0, 0, FixedPointMath.toFixedPoint(30));
+		final int version = lightTransform.getVersion();
+		graphicsEngine.update(new EngineEvent(scene, 0, 0, 0));
+		final ForwardShaderBuffer shaderBuffer = (ForwardShaderBuffer) graphicsEngine.getShaderDataBuffer();
+		assertTrue(shaderBuffer.getShadowMapCount() >= 6);
+		// the views of the point light shadow are built without turning the light
+		assertEquals(version, lightTransform.getVersion());
+		assertEquals(FixedPointMath.toFixedPoint(30), lightTransform.getRotation()[VectorMath.VECTOR_Z]);
+	}
+
+	@Test
+	public void frustumCullingTest() throws Exception {
+		final FrameBuffer expected = render(1, GraphicsEngine.DEFAULT_TILE_SIZE).getFrameBuffer();
+		final FrameBuffer frameBuffer = new FrameBuffer(WIDTH, HEIGHT);
+		final GraphicsEngine graphicsEngine = new GraphicsEngine(frameBuffer);
+		final Scene scene = createScene();
+		final Material material = scene.getModels().get(0).getMesh().getMaterial(0);
+		final Transform behind = new Transform();
+		// beside the spheres, so it doesn't cast a directional shadow onto them
+		behind.setLocation(FixedPointMath.toFixedPoint(20), 0, FixedPointMath.toFixedPoint(20));
+		final Model behindModel = new Model("Behind", behind, createSphere(material, 12, 16, 2));
+		scene.addModel(behindModel);
+		final Transform side = new Transform();
+		side.setLocation(FixedPointMath.toFixedPoint(40), 0, 0);
+		final Model sideModel = new Model("Side", side, createSphere(material, 12, 16, 2));
+		scene.addModel(sideModel);
+		final int[] sideLocation = sideModel.getMesh().getVertex(0).getBuffer().getLocation();
+		final int[] initialLocation = sideLocation.clone();
+		graphicsEngine.update(new EngineEvent(scene, 0, 0, 0));
+		assertEquals(2, graphicsEngine.getCulledModelCount());
+		assertTrue(behindModel.isCulled());
+		assertTrue(sideModel.isCulled());
+		assertFalse(scene.getModels().get(0).isCulled());
+		assertSameImage(expected, frameBuffer);
+		// the vertex shaders didn't project the culled model
+		assertArrayEquals(initialLocation, sideLocation);
+		side.setLocation(FixedPointMath.toFixedPoint(12), 0, 0);
+		graphicsEngine.update(new EngineEvent(scene, 0, 0, 0));
+		assertEquals(1, graphicsEngine.getCulledModelCount());
+		assertFalse(sideModel.isCulled());
+		assertFalse(Arrays.equals(initialLocation, sideLocation));
+	}
+
+	@Test
+	public void meshBoundsTest() throws Exception {
+		final Mesh mesh = createSphere(new Material(0, "Material", new FlatSpecularShader()), 12, 16, 2);
+		assertEquals(FixedPointMath.toFixedPoint(-2), mesh.getBoundsMin()[VectorMath.VECTOR_Y]);
+		assertEquals(FixedPointMath.toFixedPoint(2), mesh.getBoundsMax()[VectorMath.VECTOR_Y]);
+		final int[] location = VectorMath.emptyVector();
+		for (int i = 0; i < mesh.getVertices().length; i++) {
+			assertTrue(VectorMath.distance(mesh.getBoundsCenter(), mesh.getLocation(i, location)) <= mesh.getBoundsRadius());
+		}
+	}
+
+	@Test
+	public void lightTilesTest() throws Exception {
+		final FrameBuffer expected = render(1, GraphicsEngine.DEFAULT_TILE_SIZE).getFrameBuffer();
+		final FrameBuffer frameBuffer = new FrameBuffer(WIDTH, HEIGHT);
+		final GraphicsEngine graphicsEngine = new GraphicsEngine(frameBuffer);
+		final Scene scene = createScene();
+		final Light pointLight = scene.getLight("PointLight");
+		// covers every sphere, so the image can't change
+		pointLight.setRange(FixedPointMath.toFixedPoint(100));
+		final Light smallLight = new Light("SmallLight", new Transform());
+		smallLight.getTransform().setLocation(FixedPointMath.toFixedPoint(-6), 0, FixedPointMath.toFixedPoint(2));
+		smallLight.setType(LightType.POINT);
+		smallLight.setRange(FixedPointMath.toFixedPoint(1));
+		smallLight.setStrength(0);
+		scene.addLight(smallLight);
+		graphicsEngine.update(new EngineEvent(scene, 0, 0, 0));
+		assertSameImage(expected, frameBuffer);
+		final ForwardShaderBuffer shaderBuffer = (ForwardShaderBuffer) graphicsEngine.getShaderDataBuffer();
+		final int smallLightIndex = shaderBuffer.getVisibleLights().indexOf(smallLight);
+		final int pointLightIndex = shaderBuffer.getVisibleLights().indexOf(pointLight);
+		int smallLightTiles = 0;
+		final int tileCount = shaderBuffer.getLightTileColumns() * shaderBuffer.getLightTileRows();
+		for (int tile = 0; tile < tileCount; tile++) {
+			boolean hasPointLight = false;
+			for (int i = 0; i < shaderBuffer.getTileLightCount(tile); i++) {
+				if(shaderBuffer.getTileLights(tile)[i] == smallLightIndex)
+					smallLightTiles++;
+				if(shaderBuffer.getTileLights(tile)[i] == pointLightIndex)
+					hasPointLight = true;
+			}
+			assertTrue(hasPointLight);
+		}
+		assertTrue(smallLightTiles > 0);
+		assertTrue(smallLightTiles < tileCount / 4);
+		final int rightTile = shaderBuffer.getLightTile(WIDTH - 1, HEIGHT / 2);
+		for (int i = 0; i < shaderBuffer.getTileLightCount(rightTile); i++) {
+			assertFalse(shaderBuffer.getTileLights(rightTile)[i] == smallLightIndex);
+		}
+		smallLight.getTransform().setLocation(0, 0, FixedPointMath.toFixedPoint(20));
+		graphicsEngine.update(new EngineEvent(scene, 0, 0, 0));
+		for (int tile = 0; tile < tileCount; tile++) {
+			for (int i = 0; i < shaderBuffer.getTileLightCount(tile); i++) {
+				assertFalse(shaderBuffer.getTileLights(tile)[i] == smallLightIndex);
+			}
+		}
+	}
+
+	@Test
+	public void deferredShadingTest() throws Exception {
+		final FrameBuffer expected = render(1, GraphicsEngine.DEFAULT_TILE_SIZE).getFrameBuffer();
+		for (int threads = 1; threads < 4; threads += 2) {
+			final FrameBuffer frameBuffer = new FrameBuffer(WIDTH, HEIGHT);
+			final GraphicsEngine graphicsEngine = new GraphicsEngine(frameBuffer);
+			final DeferredShaderBuffer shaderBuffer = new DeferredShaderBuffer();
+			graphicsEngine.setShaderDataBuffer(shaderBuffer);
+			final Scene scene = createScene();
+			update(graphicsEngine, scene, threads);
+			assertTrue(frameBuffer.hasDeferredBuffers());
+			assertSameImage(expected, frameBuffer);
+			// every third sphere uses the phong shader
+			final Shader phongShader = scene.getModel("Sphere2").getMesh().getMaterial(0).getShader();
+			final int material = shaderBuffer.getMaterialIndex((SpecularProperties) phongShader.getProperties());
+			int phongPixels = 0;
+			for (int i = 0; i < frameBuffer.getMaterialBuffer().getPixels().length; i++) {
+				if(frameBuffer.getMaterialBuffer().getPixels()[i] == material)
+					phongPixels++;
+			}
+			assertTrue(phongPixels > 0);
+			// the materials are indexed again each frame, so the five phong materials of a new scene reuse the indices
+			final Scene nextScene = createScene();
+			update(graphicsEngine, nextScene, threads);
+			final Shader nextShader = nextScene.getModel("Sphere2").getMesh().getMaterial(0).getShader();
+			assertTrue(shaderBuffer.getMaterialIndex((SpecularProperties) nextShader.getProperties()) <= 5);
+		}
+	}
+
+	@Test
+	public void depthPrepassTest() throws Exception {
+		final FrameBuffer expected = new FrameBuffer(WIDTH, HEIGHT);
+		final GraphicsEngine expectedEngine = new GraphicsEngine(expected);
+		final Scene expectedScene = createScene();
+		// spheres behind the first row, so some pixels are drawn more than once
+		addBackgroundSpheres(expectedScene);
+		expectedEngine.update(new EngineEvent(expectedScene, 0, 0, 0));
+		final int drawnPixels = countDrawnPixels(expected);
+		assertTrue(expectedEngine.getShadedFragmentCount() > drawnPixels);
+		for (int threads = 1; threads < 4; threads += 2) {
+			final FrameBuffer frameBuffer = new FrameBuffer(WIDTH, HEIGHT);
+			final GraphicsEngine graphicsEngine = new GraphicsEngine(frameBuffer);
+			final Scene scene = createScene();
+			addBackgroundSpheres(scene);
+			scene.getMainCamera().setDepthPrepass(true);
+			update(graphicsEngine, scene, threads);
+			assertSameImage(expected, frameBuffer);
+			assertEquals(expectedEngine.getFragmentCount(), graphicsEngine.getFragmentCount());
+			// only the nearest fragment of each pixel is shaded, the hidden ones fail the depth test
+			assertEquals(drawnPixels, graphicsEngine.getShadedFragmentCount());
+			assertTrue(graphicsEngine.getShadedFragmentCount() < graphicsEngine.getFragmentCount());
+		}
+	}
+
+	@Test
+	public void occlusionCullingTest() throws Exception {
+		final FrameBuffer expected = new FrameBuffer(WIDTH, HEIGHT);
+		final GraphicsEngine expectedEngine = new GraphicsEngine(expected);
+		final Scene expectedScene = createScene();
+		addHiddenSphere(expectedScene);
+		addBackgroundSpheres(expectedScene);
+		expectedEngine.update(new EngineEvent(expectedScene, 0, 0, 0));
+		assertEquals(0, expectedEngine.getOccludedModelCount());
+		assertEquals(0, expectedEngine.getOccludedFaceCount());
+		for (int threads = 1; threads < 4; threads += 2) {
+			final FrameBuffer frameBuffer = new FrameBuffer(WIDTH, HEIGHT);
+			final GraphicsEngine graphicsEngine = new GraphicsEngine(frameBuffer);
+			final Scene scene = createScene();
+			addHiddenSphere(scene);
+			addBackgroundSpheres(scene);
+			scene.getMainCamera().setOcclusionCulling(true);
+			// all models are in the same batch, so only the pass after the pre-pass can skip the hidden sphere
+			scene.getMainCamera().setDepthPrepass(true);
+			update(graphicsEngine, scene, threads);
+			assertSameImage(expected, frameBuffer);
+			assertTrue(graphicsEngine.getOccludedModelCount() > 0);
+			assertTrue(scene.getModel("Hidden").isCulled());
+			assertTrue(graphicsEngine.getOccludedFaceCount() > 0);
+			// the skipped models and faces aren't rasterized
+			assertTrue(graphicsEngine.getFragmentCount() < expectedEngine.getFragmentCount());
+		}
+	}
+
+	private void addHiddenSphere(Scene scene) {
+		final Transform transform = new Transform();
+		transform.setLocation(0, 0, FixedPointMath.toFixedPoint(-4));
+		scene.addModel(new Model("Hidden", transform, createSphere(new Material(0, "Material", new GouraudSpecularShader()), 6, 8, 0.5)));
+	}
+
+	private void addBackgroundSpheres(Scene scene) {
+		for (int x = -2; x <= 2; x++) {
+			final Shader shader = new PhongSpecularShader();
+			final Transform transform = new Transform();
+			transform.setLocation(FixedPointMath.toFixedPoint(x * 4), FixedPointMath.toFixedPoint(1), FixedPointMath.toFixedPoint(-3));
+			scene.addModel(new Model("Background" + x, transform, createSphere(new Material(0, "Material", shader), 12, 16, 2)));
+		}
+	}
+
+	@Test
+	public void headlessStepTest() throws Exception {
+		final Engine engine = Engine.getInstance();
+		engine.setScene(createScene());
+		final FrameBuffer frameBuffer = new FrameBuffer(WIDTH, HEIGHT);
+		final GraphicsEngine graphicsEngine = new GraphicsEngine(frameBuffer);
+		final FrameCapture frameCapture = new FrameCapture(frameBuffer);
+		final File imageFile = File.createTempFile("frame", ".png");
+		final FrameCapture fileCapture = new FrameCapture(frameBuffer, imageFile.getPath());
+		engine.addEngineListener(graphicsEngine);
+		engine.addEngineListener(frameCapture);
+		engine.addEngineListener(fileCapture);
+		try {
+			final long[] frameTimes = engine.step(3);
+			assertEquals(3, frameTimes.length);
+			assertEquals(3, frameCapture.getFrameCount());
+			assertArrayEquals(frameCapture.getFrame(0), frameCapture.getFrame(2));
+			assertEquals(WIDTH, ImageIO.read(imageFile).getWidth());
+		} finally {
+			engine.removeEngineListener(graphicsEngine);
+			engine.removeEngineListener(frameCapture);
+			engine.removeEngineListener(fileCapture);
+			imageFile.delete();
+		}
+	}
+
+	private GraphicsEngine render(int threadCount, int tileSize) {
+		final GraphicsEngine graphicsEngine = new GraphicsEngine(new FrameBuffer(WIDTH, HEIGHT));
+		graphicsEngine.setTileSize(tileSize);
+		update(graphicsEngine, createScene(), threadCount);
+		return graphicsEngine;
+	}
+	
+	/**
+	 * Renders a frame with the given number of threads, the threads are stopped afterwards.
+	 */
+	private static void update(GraphicsEngine graphicsEngine, Scene scene, int threadCount) {
+		graphicsEngine.setThreadCount(threadCount);
+		graphicsEngine.update(new EngineEvent(scene, 0, 0, 0));
+		graphicsEngine.setThreadCount(1);
+	}
+	
+	private static void assertSameImage(FrameBuffer expected, FrameBuffer result) {
+		assertArrayEquals(expected.getDepthBuffer().getPixels(), result.getDepthBuffer().getPixels());
+		assertArrayEquals(expected.getColorBuffer().getPixels(), result.getColorBuffer().getPixels());
+	}
+	
+	private static int countDrawnPixels(FrameBuffer frameBuffer) {
+		int count = 0;
+		for (int i = 0; i < frameBuffer.getDepthBuffer().getPixels().length; i++) {
+			if(frameBuffer.getDepthBuffer().getPixels()[i] != Integer.MAX_VALUE)
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Renders the scene with only the directional light, turned so the spheres shadow each other.
+	 */
+	private FrameBuffer renderDirectionalShadows(int[] splits, int[] sizes) {
+		final FrameBuffer frameBuffer = new FrameBuffer(WIDTH, HEIGHT);
+		final GraphicsEngine graphicsEngine = new GraphicsEngine(frameBuffer);
+		final ForwardShaderBuffer shaderBuffer = (ForwardShaderBuffer) graphicsEngine.getShaderDataBuffer();
+		shaderBuffer.setShadowAtlas(new ShadowAtlas(2048));
+		if(splits != null)
+			shaderBuffer.setDirectionalShadowCascades(splits, sizes);
+		final Scene scene = createScene();
+		scene.getLight("PointLight").setActive(false);
+		scene.getLight("DirectionalLight").getTransform().setRotation(0, FixedPointMath.toFixedPoint(70), 0);
+		graphicsEngine.update(new EngineEvent(scene, 0, 0, 0));
+		return frameBuffer;
+	}
+	
+	private static int countDifferentPixels(FrameBuffer expected, FrameBuffer result) {
+		int count = 0;
+		for (int i = 0; i < expected.getColorBuffer().getPixels().length; i++) {
+			if(expected.getColorBuffer().getPixels()[i] != result.getColorBuffer().getPixels()[i])
+				count++;
+		}
+		return count;
+	}
+
+	static Scene createScene() {
+		final Scene scene = new Scene();
+		final Camera camera = new Camera("Camera", new Transform());
+		camera.getTransform().setLocation(0, 0, FixedPointMath.toFixedPoint(10));
+		scene.addCamera(camera);
+		final Light directionalLight = new Light("DirectionalLight", new Transform());
+		directionalLight.getTransform().setLocation(0, FixedPointMath.toFixedPoint(20), 0);
+		directionalLight.setColor(ColorMath.WHITE);
+		scene.addLight(directionalLight);
+		final Light pointLight = new Light("PointLight", new Transform());
+		pointLight.getTransform().setLocation(FixedPointMath.toFixedPoint(2), FixedPointMath.toFixedPoint(2), FixedPointMath.toFixedPoint(4));
+		pointLight.setType(LightType.POINT);
+		pointLight.setColor(ColorMath.toColor(255, 255, 200, 150));
+		scene.addLight(pointLight);
+		int index = 0;
+		for (int y = -1; y <= 1; y++) {
+			for (int x = -2; x <= 2; x++) {
+				final Shader shader;
+				if(index % 3 == 0) {
+					shader = new FlatSpecularShader();
+				} else if(index % 3 == 1) {
+					shader = new GouraudSpecularShader();
+				} else {
+					shader = new PhongSpecularShader();
+				}
+				((SpecularProperties) shader.getProperties()).setDiffuseColor(ColorMath.toColor(255, 200, 100 + (index * 10), 100));
+				final Material material = new Material(0, "Material", shader);
+				// the spheres on the sides cross the border of the frame buffer
+				final Transform transform = new Transform();
+				transform.setLocation(FixedPointMath.toFixedPoint(x * 4), FixedPointMath.toFixedPoint(y * 4), 0);
+				scene.addModel(new Model("Sphere" + index, transform, createSphere(material, 12, 16, 2)));
+				index++;
+			}
+		}
+		return scene;
+	}
+
+	static Mesh createSphere(Material material, int rings, int segments, double radius) {
+		final Vertex[] vertices = new Vertex[(rings + 1) * (segments + 1)];
+		for (int r = 0; r <= rings; r++) {
+			final double theta = (Math.PI * r) / rings;
+			for (int s = 0; s <= segments; s++) {
+				final double phi = (2 * Math.PI * s) / segments;
+				final double x = Math.sin(theta) * Math.cos(phi);
+				final double y = Math.cos(theta);
+				final double z = Math.sin(theta) * Math.sin(phi);
+				final int[] location = VectorMath.toVector(x * radius, y * radius, z * radius);
+				final int[] normal = VectorMath.toVector(x, y, z);
+				final int index = s + (r * (segments + 1));
+				vertices[index] = new Vertex(index, location, normal, material);
+			}
+		}
+		final Face[] faces = new Face[rings * segments * 2];
+		int index = 0;
+		for (int r = 0; r < rings; r++) {
+			for (int s = 0; s < segments; s++) {
+				final Vertex vertex0 = vertices[s + (r * (segments + 1))];
+				final Vertex vertex1 = vertices[s + 1 + (r * (segments + 1))];
+				final Vertex vertex2 = vertices[s + ((r + 1) * (segments + 1))];
+				final Vertex vertex3 = vertices[s + 1 + ((r + 1) * (segments + 1))];
+				faces[index] = new Face(index, getFaceNormal(vertex0, vertex1, vertex2), vertex0, vertex1, vertex2, material);
+				index++;
+				faces[index] = new Face(index, getFaceNormal(vertex1, vertex3, vertex2), vertex1, vertex3, vertex2, material);
+				index++;
+			}
+		}
+		return new Mesh(vertices, faces, new Material[] {material});
+	}
+
+	private static int[] getFaceNormal(Vertex vertex0, Vertex vertex1, Vertex vertex2) {
+		final int[] normal = VectorMath.copy(VectorMath.emptyVector(), vertex0.getNormal());
+		VectorMath.add(normal, vertex1.getNormal());
+		VectorMath.add(normal, vertex2.getNormal());
+		VectorMath.normalize(normal);
+		return normal;
+	}
+}
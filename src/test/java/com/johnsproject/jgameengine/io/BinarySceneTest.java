@@ -0,0 +1,208 @@
+package com.johnsproject.jgameengine.io;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import org.junit.Test;
+
+import com.johnsproject.jgameengine.math.FixedPointMath;
+import com.johnsproject.jgameengine.math.MatrixMath;
+import com.johnsproject.jgameengine.math.VectorMath;
+import com.johnsproject.jgameengine.model.Animation;
+import com.johnsproject.jgameengine.model.AnimationFrame;
+import com.johnsproject.jgameengine.model.Armature;
+import com.johnsproject.jgameengine.model.Camera;
+import com.johnsproject.jgameengine.model.Face;
+import com.johnsproject.jgameengine.model.Light;
+import com.johnsproject.jgameengine.model.Material;
+import com.johnsproject.jgameengine.model.Mesh;
+import com.johnsproject.jgameengine.model.Model;
+import com.johnsproject.jgameengine.model.Scene;
+import com.johnsproject.jgameengine.model.Texture;
+import com.johnsproject.jgameengine.model.TextureWrap;
+import com.johnsproject.jgameengine.model.Transform;
+import com.johnsproject.jgameengine.model.Vertex;
+import com.johnsproject.jgameengine.model.VertexGroup;
+import com.johnsproject.jgameengine.shader.GouraudSpecularShader;
+import com.johnsproject.jgameengine.shader.PhongSpecularShader;
+import com.johnsproject.jgameengine.shader.Shader;
+import com.johnsproject.jgameengine.shader.ShadowMappingShader;
+import com.johnsproject.jgameengine.shader.SpecularProperties;
+
+public class BinarySceneTest {
+
+	private static final String SCENE =
+			"model<\n"
+			+ "	name<Triangle>name\n"
+			+ "	transform<1.000,2.000,3.000,0.000,45.000,0.000,1.000,1.000,2.000>transform\n"
+			+ "	vertex<0.000,0.000,0.000,0.000,0.000,1.000,0><1.000,0.000,0.000,0.000,0.000,1.000,0><0.000,1.000,0.000,0.000,0.000,1.000,0>vertex\n"
+			+ "	face<0,1,2,0.000,0.000,1.000,0.000,0.000,1.000,0.000,0.000,1.000,0>face\n"
+			+ "	material<Material,1.000,0.500,0.250,1.000,1.000,0.500,10.000>material\n"
+			+ "	vertexGroup<0,2,0,1,1.000,0.500>vertexGroup\n"
+			+ "	animation<Idle,1,1,0.000,1.000,0.000,0.000,0.000,90.000,1.000,1.000,1.000>animation\n"
+			+ ">model\n"
+			+ "camera<\n"
+			+ "	name<Camera>name\n"
+			+ "	type<PERSP>type\n"
+			+ "	transform<0.000,-10.000,0.000,90.000,0.000,0.000,1.000,1.000,1.000>transform\n"
+			+ ">camera\n"
+			+ "light<\n"
+			+ "	name<Sun>name\n"
+			+ "	type<SUN>type\n"
+			+ "	strength<1.000>strength\n"
+			+ "	spot<45.000>spot\n"
+			+ "	blend<0.150>blend\n"
+			+ "	color<1.000,0.900,0.800>color\n"
+			+ "	shadowColor<0.100,0.100,0.100>shadowColor\n"
+			+ "	transform<0.000,0.000,10.000,30.000,0.000,0.000,1.000,1.000,1.000>transform\n"
+			+ ">light\n";
+
+	@Test
+	public void convertSceneTest() throws Exception {
+		final File sceneFile = File.createTempFile("scene", ".scene");
+		final File binaryFile = File.createTempFile("scene", ".bin");
+		try {
+			final FileWriter writer = new FileWriter(sceneFile);
+			writer.write(SCENE);
+			writer.close();
+			BinarySceneExporter.convertScene(sceneFile.getPath(), binaryFile.getPath());
+			final Scene expected = SceneImporter.loadFromRaw(SCENE);
+			final Scene result = BinarySceneImporter.load(binaryFile.getPath());
+			assertModel(expected.getModel("Triangle"), result.getModel("Triangle"));
+			final Camera expectedCamera = expected.getMainCamera();
+			final Camera camera = result.getMainCamera();
+			assertEquals(expectedCamera.getName(), camera.getName());
+			assertEquals(expectedCamera.getType(), camera.getType());
+			assertArrayEquals(expectedCamera.getTransform().getRotation(), camera.getTransform().getRotation());
+			final Light expectedLight = expected.getMainDirectionalLight();
+			final Light light = result.getMainDirectionalLight();
+			assertEquals(expectedLight.getName(), light.getName());
+			assertEquals(expectedLight.getType(), light.getType());
+			assertEquals(expectedLight.getColor(), light.getColor());
+			assertEquals(expectedLight.getShadowColor(), light.getShadowColor());
+			assertEquals(expectedLight.getSpotSize(), light.getSpotSize());
+			assertArrayEquals(expectedLight.getDirection(), light.getDirection());
+			assertArrayEquals(expectedLight.getTransform().getLocation(), light.getTransform().getLocation());
+		} finally {
+			sceneFile.delete();
+			binaryFile.delete();
+		}
+	}
+
+	@Test
+	public void writeTest() throws Exception {
+		final PhongSpecularShader shader = new PhongSpecularShader();
+		final Texture texture = new Texture(3, 2, new int[] {1, 2, 3, 4, 5, 6});
+		texture.setWrap(TextureWrap.REPEAT);
+		((SpecularProperties) shader.getProperties()).setTexture(texture);
+		final Scene scene = new Scene();
+		final Model model = createModel(shader);
+		model.setStatic(true);
+		scene.addModel(model);
+		final Light light = new Light("Light", new Transform());
+		light.setRange(FixedPointMath.toFixedPoint(12));
+		light.setShadowSize(128);
+		scene.addLight(light);
+		final File binaryFile = File.createTempFile("scene", ".bin");
+		try {
+			BinarySceneExporter.write(binaryFile.getPath(), scene);
+			final Scene result = BinarySceneImporter.load(binaryFile.getPath());
+			assertTrue(result.getModel("Model").isStatic());
+			assertEquals(FixedPointMath.toFixedPoint(12), result.getLight("Light").getRange());
+			assertEquals(128, result.getLight("Light").getShadowSize());
+			final Model resultModel = result.getModel("Model");
+			// the vertex indices don't match the positions of the vertices in the mesh
+			assertSame(resultModel.getMesh().getVertex(2), resultModel.getArmature().getVertexGroup(0).getVertex(0));
+			assertSame(resultModel.getMesh().getVertex(0), resultModel.getArmature().getVertexGroup(0).getVertex(1));
+			final Texture resultTexture = ((SpecularProperties) resultModel.getMesh().getMaterial(0).getShader().getProperties()).getTexture();
+			assertEquals(3, resultTexture.getWidth());
+			assertEquals(2, resultTexture.getHeight());
+			assertEquals(TextureWrap.REPEAT, resultTexture.getWrap());
+			assertArrayEquals(texture.getPixels(), resultTexture.getPixels());
+		} finally {
+			binaryFile.delete();
+		}
+	}
+
+	@Test
+	public void unknownShaderTest() throws Exception {
+		final Scene scene = new Scene();
+		scene.addModel(createModel(new ShadowMappingShader()));
+		final File binaryFile = File.createTempFile("scene", ".bin");
+		try {
+			BinarySceneExporter.write(binaryFile.getPath(), scene);
+			fail("The shader can't be written");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("ShadowMappingShader"));
+		} finally {
+			binaryFile.delete();
+		}
+		final IntBuffer data = IntBuffer.allocate(64);
+		data.put(BinarySceneImporter.MAGIC).put(BinarySceneImporter.VERSION).put(1);
+		// the name "M", the transform, the static flag and a material named "M" with an unknown shader type
+		data.put(1).put('M' << 16);
+		data.put(new int[VectorMath.VECTOR_SIZE * 3]).put(0);
+		data.put(1).put(1).put('M' << 16).put(7);
+		final ByteBuffer buffer = ByteBuffer.allocate(data.capacity() * 4);
+		buffer.asIntBuffer().put(data.array());
+		try {
+			BinarySceneImporter.load(buffer);
+			fail("The shader type is unknown");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("7"));
+		}
+	}
+
+	private Model createModel(Shader shader) {
+		final Material material = new Material(0, "Material", shader);
+		final Vertex[] vertices = new Vertex[3];
+		for (int i = 0; i < vertices.length; i++) {
+			vertices[i] = new Vertex(10 - i, VectorMath.toVector(i, i * 2, 0), VectorMath.toVector(0, 0, 1), material);
+		}
+		final Face face = new Face(0, VectorMath.toVector(0, 0, 1), vertices[0], vertices[1], vertices[2], material);
+		final Mesh mesh = new Mesh(vertices, new Face[] {face}, new Material[] {material});
+		final VertexGroup vertexGroup = new VertexGroup(0, new Vertex[] {vertices[2], vertices[0]}, new int[] {1, 2});
+		final AnimationFrame frame = new AnimationFrame(new int[][][] {MatrixMath.indentityMatrix()});
+		final Animation animation = new Animation("Idle", new AnimationFrame[] {frame});
+		final Armature armature = new Armature(new VertexGroup[] {vertexGroup}, new Animation[] {animation});
+		return new Model("Model", new Transform(), mesh, armature);
+	}
+
+	private void assertModel(Model expected, Model result) {
+		assertArrayEquals(expected.getTransform().getLocation(), result.getTransform().getLocation());
+		assertArrayEquals(expected.getTransform().getRotation(), result.getTransform().getRotation());
+		assertArrayEquals(expected.getTransform().getScale(), result.getTransform().getScale());
+		final Mesh expectedMesh = expected.getMesh();
+		final Mesh mesh = result.getMesh();
+		assertArrayEquals(expectedMesh.getLocations(), mesh.getLocations());
+		assertArrayEquals(expectedMesh.getNormals(), mesh.getNormals());
+		assertArrayEquals(expectedMesh.getFaceVertices(), mesh.getFaceVertices());
+		assertArrayEquals(expectedMesh.getFaceNormals(), mesh.getFaceNormals());
+		assertArrayEquals(expectedMesh.getFaceUVs(), mesh.getFaceUVs());
+		assertSame(mesh.getVertex(2), mesh.getFace(0).getVertex(2));
+		assertSame(mesh.getMaterial(0), mesh.getFace(0).getMaterial());
+		assertArrayEquals(expectedMesh.getVertex(1).getLocation(), mesh.getVertex(1).getLocation());
+		assertTrue(mesh.getMaterial(0).getShader() instanceof GouraudSpecularShader);
+		final SpecularProperties expectedProperties = (SpecularProperties) expectedMesh.getMaterial(0).getShader().getProperties();
+		final SpecularProperties properties = (SpecularProperties) mesh.getMaterial(0).getShader().getProperties();
+		assertEquals(expectedMesh.getMaterial(0).getName(), mesh.getMaterial(0).getName());
+		assertEquals(expectedProperties.getDiffuseColor(), properties.getDiffuseColor());
+		assertEquals(expectedProperties.getSpecularIntensity(), properties.getSpecularIntensity());
+		assertEquals(expectedProperties.getShininess(), properties.getShininess());
+		final Armature expectedArmature = expected.getArmature();
+		final Armature armature = result.getArmature();
+		assertArrayEquals(expectedArmature.getVertexGroup(0).getWeights(), armature.getVertexGroup(0).getWeights());
+		assertSame(mesh.getVertex(1), armature.getVertexGroup(0).getVertex(1));
+		assertEquals("Idle", armature.getAnimation(0).getName());
+		final int[][] expectedMatrix = expectedArmature.getAnimation(0).getFrame(0).getBoneMatrix(0);
+		final int[][] matrix = armature.getAnimation(0).getFrame(0).getBoneMatrix(0);
+		for (int i = 0; i < matrix.length; i++) {
+			assertArrayEquals(expectedMatrix[i], matrix[i]);
+		}
+	}
+}
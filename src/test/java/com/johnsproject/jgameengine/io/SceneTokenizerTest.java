@@ -0,0 +1,84 @@
+package com.johnsproject.jgameengine.io;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import com.johnsproject.jgameengine.math.FixedPointMath;
+
+public class SceneTokenizerTest {
+
+	@Test
+	public void numberTest() throws Exception {
+		final String[] numbers = {"0", "-0.000", "1.5", "-2.25", "0.333333", "123.456", "+7.", ".5",
+				"1.0E-4", "-3.2e2", "0.00000000000000000000123456789", "12345678901234567890.5"};
+		final StringBuilder data = new StringBuilder();
+		for (int i = 0; i < numbers.length; i++) {
+			data.append(numbers[i]).append(" ,\n");
+		}
+		final SceneTokenizer tokenizer = new SceneTokenizer(new StringReader(data.toString()));
+		for (int i = 0; i < numbers.length; i++) {
+			final float expected = Float.parseFloat(numbers[i]);
+			if (i % 2 == 0) {
+				assertEquals(expected, tokenizer.nextFloat(), 0);
+			} else {
+				assertEquals(FixedPointMath.toFixedPoint(expected), tokenizer.nextFixedPoint());
+			}
+		}
+		assertEquals(-1, tokenizer.peek());
+	}
+
+	@Test
+	public void tagTest() throws Exception {
+		final String data = "header: https://example.com\n"
+				+ "first < -1,2 , 3 > first\n"
+				+ "skipped<<1,2><3>>skipped\n"
+				+ "	second<Some Name.001,4>second";
+		final SceneTokenizer tokenizer = new SceneTokenizer(new StringReader(data));
+		assertEquals("first", tokenizer.nextTag());
+		assertEquals(-1, tokenizer.nextInt());
+		assertEquals(2, tokenizer.nextInt());
+		assertEquals(3, tokenizer.nextInt());
+		tokenizer.endTag("first");
+		assertEquals("skipped", tokenizer.nextTag());
+		tokenizer.skipTag("skipped");
+		assertEquals("second", tokenizer.nextTag());
+		assertEquals("SomeName.001", tokenizer.nextName());
+		assertEquals(4, tokenizer.nextInt());
+		assertTrue(tokenizer.isEnd("second"));
+		assertNull(tokenizer.nextTag());
+	}
+
+	@Test(expected = IOException.class)
+	public void unexpectedEndTest() throws Exception {
+		final SceneTokenizer tokenizer = new SceneTokenizer(new StringReader("first<1,2"));
+		assertEquals("first", tokenizer.nextTag());
+		tokenizer.nextInt();
+		tokenizer.nextInt();
+		tokenizer.endTag("first");
+	}
+
+	@Test
+	public void expectEndTest() throws Exception {
+		SceneTokenizer tokenizer = new SceneTokenizer(new StringReader("first<1>first\n \t"));
+		assertEquals("first", tokenizer.nextTag());
+		tokenizer.nextInt();
+		tokenizer.endTag("first");
+		tokenizer.expectEnd();
+		tokenizer = new SceneTokenizer(new StringReader("first<1>first\nsecond<2>second\n  >first"));
+		assertEquals("first", tokenizer.nextTag());
+		tokenizer.skipTag("first");
+		assertEquals("second", tokenizer.nextTag());
+		tokenizer.skipTag("second");
+		assertNull(tokenizer.nextTag());
+		try {
+			tokenizer.expectEnd();
+			fail();
+		} catch (IOException e) {
+			assertEquals("Expected end of file but found '>first', the closing of a tag that isn't open, at line 3, column 3", e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package com.johnsproject.jgameengine.model;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.johnsproject.jgameengine.math.VectorMath;
+import com.johnsproject.jgameengine.shader.FlatSpecularShader;
+
+public class MeshTest {
+
+	@Test
+	public void packTest() throws Exception {
+		final Material material = new Material(0, "Material", new FlatSpecularShader());
+		final Vertex[] vertices = new Vertex[4];
+		for (int i = 0; i < vertices.length; i++) {
+			final int[] location = VectorMath.toVector(i * 10, i * 20, i * 30);
+			final int[] normal = VectorMath.toVector(i, -i, 2 * i);
+			vertices[i] = new Vertex(i, location, normal, material);
+		}
+		final Face[] faces = new Face[2];
+		faces[0] = new Face(0, VectorMath.toVector(1, 2, 3), vertices[0], vertices[1], vertices[2], material,
+				VectorMath.toVector(1, 1), VectorMath.toVector(2, 2), VectorMath.toVector(3, 3));
+		// the faces don't use the vertices in array order, so the indices have to be resolved
+		faces[1] = new Face(1, VectorMath.toVector(4, 5, 6), vertices[3], vertices[0], vertices[2], material);
+		final Mesh mesh = new Mesh(vertices, faces, new Material[] {material});
+
+		for (int i = 0; i < vertices.length; i++) {
+			assertArrayEquals(VectorMath.toVector(i * 10, i * 20, i * 30), mesh.getLocation(i, VectorMath.emptyVector()));
+			assertArrayEquals(VectorMath.toVector(i, -i, 2 * i), mesh.getNormal(i, VectorMath.emptyVector()));
+			assertArrayEquals(VectorMath.toVector(i * 10, i * 20, i * 30), vertices[i].getLocation());
+		}
+		assertArrayEquals(new int[] {0, 1, 2, 3, 0, 2}, mesh.getFaceVertices());
+		assertSame(vertices[3], faces[1].getVertex(0));
+		assertArrayEquals(VectorMath.toVector(4, 5, 6), faces[1].getNormal());
+		assertArrayEquals(VectorMath.toVector(2, 2), faces[0].getUV(1));
+		assertArrayEquals(VectorMath.emptyVector(), faces[1].getUV(1));
+
+		// the getters return copies, writes only reach the mesh through the packed arrays
+		vertices[1].getLocation()[0] = 99;
+		assertEquals(10, mesh.getLocations()[VectorMath.VECTOR_SIZE]);
+		mesh.getLocations()[VectorMath.VECTOR_SIZE] = 99;
+		assertEquals(99, vertices[1].getLocation()[0]);
+	}
+
+	@Test
+	public void packedConstructorTest() throws Exception {
+		final Material material0 = new Material(0, "Material0", new FlatSpecularShader());
+		final Material material1 = new Material(1, "Material1", new FlatSpecularShader());
+		final int[] locations = {
+				-5, 0, 0, 1,
+				5, 0, 0, 1,
+				0, 8, -4, 1
+		};
+		final int[] normals = {
+				0, 0, 1, 0,
+				0, 0, 1, 0,
+				0, 1, 0, 0
+		};
+		final int[] faceVertices = {2, 0, 1};
+		final int[] faceNormals = {0, 0, 1, 0};
+		final int[] faceUVs = {
+				0, 0, 0, 0,
+				1, 0, 0, 0,
+				0, 1, 0, 0
+		};
+		final Mesh mesh = new Mesh(locations, normals, new int[] {0, 1, 1}, faceVertices,
+				faceNormals, faceUVs, new int[] {1}, new Material[] {material0, material1});
+
+		assertSame(locations, mesh.getLocations());
+		assertEquals(3, mesh.getVertices().length);
+		assertEquals(1, mesh.getFaces().length);
+		assertSame(material0, mesh.getVertex(0).getMaterial());
+		assertSame(material1, mesh.getVertex(2).getMaterial());
+		assertSame(material1, mesh.getFace(0).getMaterial());
+		assertArrayEquals(new int[] {0, 8, -4, 1}, mesh.getVertex(2).getLocation());
+		assertArrayEquals(new int[] {0, 1, 0, 0}, mesh.getVertex(2).getNormal());
+		assertSame(mesh.getVertex(2), mesh.getFace(0).getVertex(0));
+		assertSame(mesh.getVertex(1), mesh.getFace(0).getVertex(2));
+		assertArrayEquals(new int[] {1, 0, 0, 0}, mesh.getFace(0).getUV(1));
+		assertArrayEquals(new int[] {-5, 0, -4, 0}, trim(mesh.getBoundsMin()));
+		assertArrayEquals(new int[] {5, 8, 0, 0}, trim(mesh.getBoundsMax()));
+	}
+
+	private static int[] trim(int[] vector) {
+		return new int[] {vector[0], vector[1], vector[2], 0};
+	}
+}
@@ -0,0 +1,202 @@
+package com.johnsproject.jgameengine.model;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.johnsproject.jgameengine.math.FixedPointMath;
+import com.johnsproject.jgameengine.math.TransformationMath;
+import com.johnsproject.jgameengine.math.VectorMath;
+
+public class SceneTest {
+
+	@Test
+	public void nameTest() throws Exception {
+		final Scene scene = new Scene();
+		final Model model = createModel("Model", 0, 0, 0);
+		final Light light = new Light("Light", new Transform());
+		final Camera camera = new Camera("Camera", new Transform());
+		scene.addModel(model);
+		scene.addLight(light);
+		scene.addCamera(camera);
+		assertSame(model, scene.getModel("Model"));
+		assertSame(light, scene.getLight("Light"));
+		assertSame(camera, scene.getCamera("Camera"));
+		scene.removeModel("Model");
+		scene.removeLight("Light");
+		assertNull(scene.getSceneObject("Model"));
+		assertNull(scene.getSceneObject("Light"));
+		assertTrue(scene.getModels().isEmpty());
+		assertTrue(scene.getLights().isEmpty());
+		assertEquals(1, scene.getSceneObjects().size());
+		assertEquals(1, scene.getOctree().size());
+	}
+
+	@Test
+	public void sameNameTest() throws Exception {
+		final Scene scene = new Scene();
+		final Light light = new Light("Object", new Transform());
+		final Model first = createModel("Object", 0, 0, 0);
+		final Model other = createModel("Other", 0, 0, 0);
+		final Model second = createModel("Object", 1, 0, 0);
+		scene.addLight(light);
+		scene.addModel(first);
+		scene.addModel(other);
+		scene.addModel(second);
+		assertSame(light, scene.getSceneObject("Object"));
+		assertSame(first, scene.getModel("Object"));
+		// all models with the name are removed, the light with the same name stays
+		scene.removeModel("Object");
+		assertNull(scene.getModel("Object"));
+		assertSame(light, scene.getLight("Object"));
+		assertSame(light, scene.getSceneObject("Object"));
+		assertEquals(1, scene.getModels().size());
+		assertSame(other, scene.getModels().get(0));
+		assertEquals(1, scene.getLights().size());
+		assertFalse(scene.getOctree().contains(first));
+		assertFalse(scene.getOctree().contains(second));
+		assertTrue(scene.getOctree().contains(light));
+		scene.removeLight("Object");
+		assertNull(scene.getSceneObject("Object"));
+		assertSame(other, scene.getSceneObject("Other"));
+		assertEquals(1, scene.getSceneObjects().size());
+		assertEquals(1, scene.getOctree().size());
+	}
+
+	@Test
+	public void removeTest() throws Exception {
+		final Random random = new Random(3);
+		final Scene scene = new Scene();
+		final List<Model> expected = new ArrayList<Model>();
+		for (int i = 0; i < 200; i++) {
+			final Model model = createModel("Model" + (i % 150), 0, 0, 0);
+			scene.addModel(model);
+			scene.addLight(new Light("Light" + i, new Transform()));
+			expected.add(model);
+		}
+		for (int i = 0; i < 100; i++) {
+			final String name = expected.get(random.nextInt(expected.size())).getName();
+			scene.removeModel(name);
+			for (int j = expected.size() - 1; j >= 0; j--) {
+				if(expected.get(j).getName().equals(name))
+					expected.remove(j);
+			}
+			assertEquals(expected.size(), scene.getModels().size());
+			assertTrue(scene.getModels().containsAll(expected));
+			assertEquals(expected.size() + 200, scene.getSceneObjects().size());
+			assertTrue(scene.getSceneObjects().containsAll(expected));
+			assertEquals(expected.size() + 200, scene.getOctree().size());
+		}
+	}
+
+	@Test
+	public void sphereQueryTest() throws Exception {
+		final Random random = new Random(1);
+		final Scene scene = createScene(random);
+		final List<SceneObject> result = new ArrayList<SceneObject>();
+		for (int i = 0; i < 50; i++) {
+			final int[] center = randomLocation(random, 1500);
+			final int radius = FixedPointMath.toFixedPoint(random.nextInt(300));
+			result.clear();
+			scene.getSceneObjects(center, radius, result);
+			for (int j = 0; j < scene.getModels().size(); j++) {
+				final Model model = scene.getModels().get(j);
+				final int[] modelCenter = VectorMath.copy(VectorMath.emptyVector(), model.getMesh().getBoundsCenter());
+				final int modelRadius = TransformationMath.spaceExitSphere(modelCenter, model.getMesh().getBoundsRadius(), model.getTransform());
+				final double distance = distance(center, modelCenter);
+				if(distance < FixedPointMath.toDouble(radius + modelRadius) - 0.01) {
+					assertTrue(result.contains(model));
+				} else if(distance > FixedPointMath.toDouble(radius + modelRadius) + 0.01) {
+					assertFalse(result.contains(model));
+				}
+			}
+			// move some models so the index has to follow them
+			for (int j = 0; j < 100; j++) {
+				final int[] location = randomLocation(random, 1500);
+				scene.getModels().get(random.nextInt(scene.getModels().size())).getTransform().setLocation(location[0], location[1], location[2]);
+			}
+		}
+	}
+
+	@Test
+	public void frustumQueryTest() throws Exception {
+		final Scene scene = createScene(new Random(2));
+		final Camera camera = new Camera("Camera", new Transform());
+		camera.setRenderTarget(new FrameBuffer(320, 240));
+		scene.addCamera(camera);
+		final List<SceneObject> result = scene.getOctree().queryFrustum(camera, new ArrayList<SceneObject>());
+		final int[] center = VectorMath.emptyVector();
+		int visible = 0;
+		for (int i = 0; i < scene.getModels().size(); i++) {
+			final Model model = scene.getModels().get(i);
+			VectorMath.copy(center, model.getMesh().getBoundsCenter());
+			final int radius = TransformationMath.spaceExitSphere(center, model.getMesh().getBoundsRadius(), model.getTransform());
+			VectorMath.multiply(center, camera.getTransform().getSpaceEnterMatrix());
+			final boolean outside = TransformationMath.isOutsideFrustum(center, radius, camera.getRenderTargetPortedFrustum(), camera.getFocalLength(), camera.getType());
+			assertEquals(!outside, result.contains(model));
+			if(!outside) {
+				visible++;
+			}
+		}
+		assertTrue(visible > 0);
+		assertTrue(visible < scene.getModels().size());
+	}
+
+	@Test
+	public void rayQueryTest() throws Exception {
+		final Scene scene = new Scene();
+		final Model hit = createModel("Hit", 0, 0, -50);
+		final Model behind = createModel("Behind", 0, 0, 50);
+		final Model side = createModel("Side", 10, 0, -50);
+		final Model far = createModel("Far", 0, 0, -500);
+		scene.addModel(hit);
+		scene.addModel(behind);
+		scene.addModel(side);
+		scene.addModel(far);
+		final int[] direction = VectorMath.toVector(0.0, 0.0, -1.0);
+		final List<SceneObject> result = scene.getOctree().queryRay(VectorMath.emptyVector(), direction, FixedPointMath.toFixedPoint(100), new ArrayList<SceneObject>());
+		assertEquals(1, result.size());
+		assertSame(hit, result.get(0));
+	}
+
+	private static Scene createScene(Random random) {
+		final Scene scene = new Scene();
+		for (int i = 0; i < 2000; i++) {
+			// some models are outside of the root cell of the octree
+			final int[] location = randomLocation(random, 1500);
+			final Model model = createModel("Model" + i, 0, 0, 0);
+			model.getTransform().setLocation(location[0], location[1], location[2]);
+			final int scale = FixedPointMath.toFixedPoint(0.1 + random.nextDouble() * 40);
+			model.getTransform().setScale(scale, scale, scale);
+			scene.addModel(model);
+		}
+		return scene;
+	}
+
+	private static int[] randomLocation(Random random, int range) {
+		return VectorMath.toVector((random.nextDouble() - 0.5) * range * 2, (random.nextDouble() - 0.5) * range * 2, (random.nextDouble() - 0.5) * range * 2);
+	}
+
+	private static Model createModel(String name, double x, double y, double z) {
+		final int[][] vertices = new int[][] {
+			{FixedPointMath.toFixedPoint(-1), FixedPointMath.toFixedPoint(-1), 0, FixedPointMath.FP_ONE, 0},
+			{FixedPointMath.toFixedPoint(1), FixedPointMath.toFixedPoint(-1), 0, FixedPointMath.FP_ONE, 0},
+			{0, FixedPointMath.toFixedPoint(1), 0, FixedPointMath.FP_ONE, 0}
+		};
+		final Mesh mesh = new Mesh(vertices, new int[][] {{0, 1, 2, 0}}, new int[][] {{255, 255, 255, 255}});
+		final Transform transform = new Transform();
+		transform.setLocation(FixedPointMath.toFixedPoint(x), FixedPointMath.toFixedPoint(y), FixedPointMath.toFixedPoint(z));
+		return new Model(name, transform, mesh);
+	}
+
+	private static double distance(int[] vector1, int[] vector2) {
+		final double x = FixedPointMath.toDouble(vector1[0] - (long) vector2[0]);
+		final double y = FixedPointMath.toDouble(vector1[1] - (long) vector2[1]);
+		final double z = FixedPointMath.toDouble(vector1[2] - (long) vector2[2]);
+		return Math.sqrt((x * x) + (y * y) + (z * z));
+	}
+}
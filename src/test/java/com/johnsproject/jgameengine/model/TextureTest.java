@@ -0,0 +1,91 @@
+package com.johnsproject.jgameengine.model;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.johnsproject.jgameengine.math.ColorMath;
+
+public class TextureTest {
+
+	@Test
+	public void sampleTest() throws Exception {
+		final Texture texture = new Texture(3, 2);
+		for (int i = 0; i < texture.getPixels().length; i++) {
+			texture.getPixels()[i] = i;
+		}
+		assertEquals(3, texture.getStride());
+		assertEquals(TextureWrap.CLAMP, texture.getWrap());
+		assertEquals(5, texture.getPixelUnchecked(2, 1));
+		assertEquals(5, texture.sample(7, 9));
+		assertEquals(3, texture.sample(-4, 1));
+		assertEquals(texture.getPixel(-1, 5), texture.sample(-1, 5));
+		texture.setWrap(TextureWrap.REPEAT);
+		assertEquals(4, texture.sample(4, 1));
+		assertEquals(2, texture.sample(-1, 0));
+		assertEquals(5, texture.sample(-4, -3));
+		assertEquals(1, texture.sample(7, 6));
+		texture.setPixelUnchecked(1, 1, 10);
+		assertEquals(10, texture.getPixels()[4]);
+	}
+
+	@Test
+	public void mipmapTest() throws Exception {
+		final Texture texture = new Texture(4, 2);
+		assertEquals(1, texture.getMipmapCount());
+		for (int i = 0; i < texture.getPixels().length; i++) {
+			texture.getPixels()[i] = ColorMath.toColor(255, i * 10, 0, 255 - (i * 10));
+		}
+		texture.buildMipmaps();
+		assertEquals(3, texture.getMipmapCount());
+		assertEquals(2, texture.getMipmapWidth(1));
+		assertEquals(1, texture.getMipmapHeight(1));
+		assertEquals(1, texture.getMipmapWidth(5));
+		assertEquals(texture.getPixel(3, 1), texture.sample(3, 1, 0));
+		// pixels 0, 1, 4 and 5
+		assertEquals(ColorMath.toColor(255, 25, 0, 230), texture.sample(0, 0, 1));
+		assertEquals(ColorMath.toColor(255, 45, 0, 210), texture.sample(1, 0, 1));
+		assertEquals(ColorMath.toColor(255, 45, 0, 210), texture.sample(7, 3, 1));
+		assertEquals(ColorMath.toColor(255, 35, 0, 220), texture.sample(0, 0, 2));
+		assertEquals(texture.sample(0, 0, 2), texture.sample(0, 0, 10));
+		texture.setWrap(TextureWrap.REPEAT);
+		assertEquals(ColorMath.toColor(255, 25, 0, 230), texture.sample(2, 1, 1));
+	}
+
+	@Test
+	public void layoutTest() throws Exception {
+		final Texture texture = new Texture(7, 5);
+		for (int i = 0; i < texture.getPixels().length; i++) {
+			texture.getPixels()[i] = i;
+		}
+		assertEquals(TextureLayout.LINEAR, texture.getLayout());
+		texture.setLayout(TextureLayout.TILED);
+		assertEquals(TextureLayout.TILED, texture.getLayout());
+		for (int y = -1; y <= 5; y++) {
+			for (int x = -1; x <= 7; x++) {
+				assertEquals(texture.getPixels()[Math.min(Math.max(x, 0), 6) + (Math.min(Math.max(y, 0), 4) * 7)], texture.getPixel(x, y));
+			}
+		}
+		assertEquals(26, texture.getPixelUnchecked(5, 3));
+		texture.setWrap(TextureWrap.REPEAT);
+		assertEquals(34, texture.sample(-1, -1));
+		texture.setPixel(5, 3, 100);
+		assertEquals(100, texture.getPixels()[26]);
+		assertEquals(100, texture.sample(5, 3));
+		texture.fill(3);
+		assertEquals(3, texture.sample(6, 4));
+		texture.fill(4, 1, 5, 2, 3);
+		assertEquals(4, texture.sample(5, 3));
+		assertEquals(3, texture.sample(6, 3));
+		texture.setPixelUnchecked(0, 0, 7);
+		assertEquals(7, texture.getPixel(0, 0));
+		assertEquals(3, texture.sample(0, 0));
+		texture.setLayout(TextureLayout.TILED);
+		assertEquals(7, texture.sample(0, 0));
+		texture.setLayout(TextureLayout.LINEAR);
+		assertEquals(3, texture.getPixel(2, 1));
+		assertEquals(4, texture.getPixel(1, 2));
+		assertEquals(3, texture.getPixel(0, 2));
+		assertEquals(3, texture.getPixel(3, 4));
+	}
+}
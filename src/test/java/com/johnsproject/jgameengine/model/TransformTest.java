@@ -0,0 +1,82 @@
+package com.johnsproject.jgameengine.model;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.johnsproject.jgameengine.math.FixedPointMath;
+import com.johnsproject.jgameengine.math.MatrixMath;
+import com.johnsproject.jgameengine.math.TransformationMath;
+
+public class TransformTest {
+
+	@Test
+	public void lazyMatricesTest() throws Exception {
+		final Transform transform = new Transform();
+		final int[][] matrixCache1 = MatrixMath.indentityMatrix();
+		final int[][] matrixCache2 = MatrixMath.indentityMatrix();
+		final int[][] matrix = MatrixMath.indentityMatrix();
+		for (int i = 0; i < 20; i++) {
+			transform.translate(FixedPointMath.toFixedPoint(0.5), FixedPointMath.toFixedPoint(-1.25), FixedPointMath.toFixedPoint(i));
+			// read only some of the matrices between the changes, the others stay dirty for several changes
+			if((i % 3) == 0)
+				transform.getSpaceExitMatrix();
+			transform.rotate(FixedPointMath.toFixedPoint(7), FixedPointMath.toFixedPoint(-13), FixedPointMath.toFixedPoint(i * 5));
+			if((i % 4) == 0)
+				transform.getSpaceEnterNormalMatrix();
+			transform.scale(FixedPointMath.toFixedPoint((i % 2) == 0 ? 0.25 : -0.125), FixedPointMath.toFixedPoint(0.125), 0);
+			if((i % 5) == 0)
+				transform.getSpaceEnterMatrix();
+
+			assertArrayEquals(TransformationMath.spaceExitMatrix(matrix, transform, matrixCache1, matrixCache2), transform.getSpaceExitMatrix());
+			assertArrayEquals(TransformationMath.spaceExitNormalMatrix(matrix, transform, matrixCache1, matrixCache2), transform.getSpaceExitNormalMatrix());
+			assertArrayEquals(TransformationMath.spaceEnterMatrix(matrix, transform, matrixCache1, matrixCache2), transform.getSpaceEnterMatrix());
+			assertArrayEquals(TransformationMath.spaceEnterNormalMatrix(matrix, transform, matrixCache1, matrixCache2), transform.getSpaceEnterNormalMatrix());
+		}
+	}
+
+	@Test
+	public void enterMatrixTest() throws Exception {
+		final Transform transform = new Transform();
+		transform.setLocation(FixedPointMath.toFixedPoint(3), FixedPointMath.toFixedPoint(-4), FixedPointMath.toFixedPoint(5));
+		transform.setRotation(FixedPointMath.toFixedPoint(30), FixedPointMath.toFixedPoint(-60), FixedPointMath.toFixedPoint(90));
+		transform.setScale(FixedPointMath.toFixedPoint(2), FixedPointMath.toFixedPoint(1), FixedPointMath.toFixedPoint(3));
+		final int[] location = transform.getLocation().clone();
+		final int[] rotation = transform.getRotation().clone();
+		final int[] scale = transform.getScale().clone();
+		final int version = transform.getVersion();
+		final int[] changes = new int[1];
+		transform.addTransformListener(new TransformListener() {
+			public void transformChanged(Transform transform) {
+				changes[0]++;
+			}
+		});
+		transform.getSpaceEnterMatrix();
+		transform.getSpaceEnterNormalMatrix();
+		assertArrayEquals(location, transform.getLocation());
+		assertArrayEquals(rotation, transform.getRotation());
+		assertArrayEquals(scale, transform.getScale());
+		assertEquals(version, transform.getVersion());
+		assertEquals(0, changes[0]);
+		
+		// the matrices used to be calculated by inverting the vectors of the transform in place 
+		// and restoring them afterwards, so another thread could see the inverted vectors
+		final Thread thread = new Thread() {
+			public void run() {
+				final int[][] matrixCache1 = MatrixMath.indentityMatrix();
+				final int[][] matrixCache2 = MatrixMath.indentityMatrix();
+				final int[][] matrix = MatrixMath.indentityMatrix();
+				for (int i = 0; i < 100000; i++) {
+					TransformationMath.spaceEnterMatrix(matrix, transform, matrixCache1, matrixCache2);
+					TransformationMath.spaceEnterNormalMatrix(matrix, transform, matrixCache1, matrixCache2);
+				}
+			}
+		};
+		thread.start();
+		while(thread.isAlive()) {
+			assertEquals(location[0], transform.getLocation()[0]);
+			assertEquals(rotation[0], transform.getRotation()[0]);
+		}
+		thread.join();
+	}
+}
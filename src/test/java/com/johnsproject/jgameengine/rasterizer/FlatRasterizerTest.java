@@ -0,0 +1,174 @@
+package com.johnsproject.jgameengine.rasterizer;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.johnsproject.jgameengine.math.FixedPointMath;
+import com.johnsproject.jgameengine.model.Camera;
+import com.johnsproject.jgameengine.model.FrameBuffer;
+import com.johnsproject.jgameengine.model.Light;
+import com.johnsproject.jgameengine.model.Transform;
+import com.johnsproject.jgameengine.shader.ForwardShaderBuffer;
+import com.johnsproject.jgameengine.shader.FragmentBuffer;
+import com.johnsproject.jgameengine.shader.GeometryBuffer;
+import com.johnsproject.jgameengine.shader.Shader;
+import com.johnsproject.jgameengine.shader.ShaderBuffer;
+import com.johnsproject.jgameengine.shader.ShaderProperties;
+import com.johnsproject.jgameengine.shader.SpanShader;
+import com.johnsproject.jgameengine.shader.VertexBuffer;
+
+public class FlatRasterizerTest {
+
+	private static final int SIZE = 64;
+	
+	@Test
+	public void spanTest() throws Exception {
+		final RecordingShader expected = new RecordingShader();
+		final FlatRasterizer expectedRasterizer = new FlatRasterizer(expected);
+		expectedRasterizer.setFaceCull(0);
+		final SpanRecordingShader shader = new SpanRecordingShader();
+		final FlatRasterizer rasterizer = new FlatRasterizer(shader);
+		rasterizer.setFaceCull(0);
+		rasterizer.setRenderRegion(0, SIZE - 1, 0, SIZE - 1);
+		expectedRasterizer.setRenderRegion(0, SIZE - 1, 0, SIZE - 1);
+		final Random random = new Random(0);
+		for (int i = 0; i < 100; i++) {
+			final GeometryBuffer triangle = createTriangle(random.nextInt(SIZE + 20) - 10, random.nextInt(SIZE + 20) - 10,
+					random.nextInt(SIZE + 20) - 10, random.nextInt(SIZE + 20) - 10, random.nextInt(SIZE + 20) - 10, random.nextInt(SIZE + 20) - 10);
+			for (int v = 0; v < 3; v++) {
+				triangle.getVertexBuffer(v).getLocation()[2] = 1000 + random.nextInt(10000);
+			}
+			expected.clear();
+			shader.clear();
+			expectedRasterizer.draw(triangle);
+			rasterizer.draw(triangle);
+			// spans give the same pixels and depths as the per pixel calls
+			for (int y = 0; y < SIZE; y++) {
+				for (int x = 0; x < SIZE; x++) {
+					assertEquals(expected.getCount(x, y), shader.getCount(x, y));
+					if(shader.getCount(x, y) > 0)
+						assertEquals(expected.getDepth(x, y), shader.getDepth(x, y));
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void topRowTest() throws Exception {
+		final RecordingShader shader = new RecordingShader();
+		final FlatRasterizer rasterizer = new FlatRasterizer(shader);
+		rasterizer.setFaceCull(0);
+		rasterizer.setFrustumCull(false);
+		rasterizer.setRenderRegion(0, SIZE - 1, 0, SIZE - 1);
+		// the first triangle ends below the frame buffer, the second one above it
+		final GeometryBuffer[] triangles = {createTriangle(-50, -50, 120, -50, 32, 100), createTriangle(-50, 100, 120, 100, 32, -50)};
+		for (int i = 0; i < triangles.length; i++) {
+			shader.clear();
+			rasterizer.draw(triangles[i]);
+			// the first row used to be skipped by the part of a triangle that is drawn upwards
+			for (int y = 0; y < 2; y++) {
+				for (int x = 16; x < SIZE - 16; x++) {
+					assertEquals(1, shader.getCount(x, y));
+				}
+			}
+		}
+	}
+	
+	private static class SpanRecordingShader extends RecordingShader implements SpanShader {
+
+		public void fragmentSpan(int y, int x1, int x2, int z, int dz) {
+			assertTrue(x1 <= x2);
+			for (; x1 <= x2; x1++, z += dz) {
+				record(x1, y, z >> FixedPointMath.FP_BIT);
+			}
+		}
+	}
+	
+	private static GeometryBuffer createTriangle(int x0, int y0, int x1, int y1, int x2, int y2) {
+		final GeometryBuffer geometryBuffer = new GeometryBuffer();
+		for (int i = 0; i < 3; i++) {
+			geometryBuffer.getVertexBuffers()[i] = new VertexBuffer();
+		}
+		setLocation(geometryBuffer.getVertexBuffer(0), x0, y0);
+		setLocation(geometryBuffer.getVertexBuffer(1), x1, y1);
+		setLocation(geometryBuffer.getVertexBuffer(2), x2, y2);
+		return geometryBuffer;
+	}
+	
+	private static void setLocation(VertexBuffer vertexBuffer, int x, int y) {
+		vertexBuffer.getLocation()[0] = x;
+		vertexBuffer.getLocation()[1] = y;
+		vertexBuffer.getLocation()[2] = 1000;
+	}
+	
+	private static class RecordingShader implements Shader {
+		
+		private final int[] counts;
+		private final int[] depths;
+		private ShaderBuffer shaderBuffer;
+		
+		public RecordingShader() {
+			this.counts = new int[SIZE * SIZE];
+			this.depths = new int[SIZE * SIZE];
+			final Camera camera = new Camera("Camera", new Transform());
+			camera.setRenderTarget(new FrameBuffer(SIZE, SIZE));
+			this.shaderBuffer = new ForwardShaderBuffer();
+			shaderBuffer.setup(camera, new ArrayList<Light>());
+		}
+		
+		public void clear() {
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] = 0;
+			}
+		}
+		
+		public int getCount(int x, int y) {
+			return counts[x + (y * SIZE)];
+		}
+		
+		public int getDepth(int x, int y) {
+			return depths[x + (y * SIZE)];
+		}
+
+		public void vertex(VertexBuffer vertexBuffer) { }
+
+		public void geometry(GeometryBuffer geometryBuffer) { }
+
+		public void fragment(FragmentBuffer fragmentBuffer) {
+			record(fragmentBuffer.getLocation()[0], fragmentBuffer.getLocation()[1], fragmentBuffer.getLocation()[2]);
+		}
+		
+		protected void record(int x, int y, int z) {
+			if((x < 0) || (x >= SIZE) || (y < 0) || (y >= SIZE))
+				return;
+			counts[x + (y * SIZE)]++;
+			depths[x + (y * SIZE)] = z;
+		}
+
+		public ShaderBuffer getShaderBuffer() {
+			return shaderBuffer;
+		}
+
+		public void setShaderBuffer(ShaderBuffer shaderBuffer) {
+			this.shaderBuffer = shaderBuffer;
+		}
+
+		public void setProperties(ShaderProperties shaderProperties) { }
+
+		public ShaderProperties getProperties() {
+			return null;
+		}
+
+		public FlatRasterizer getRasterizer() {
+			return null;
+		}
+
+		public Shader copy() {
+			return this;
+		}
+	}
+}
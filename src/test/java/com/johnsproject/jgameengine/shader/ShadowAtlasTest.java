@@ -0,0 +1,77 @@
+package com.johnsproject.jgameengine.shader;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.johnsproject.jgameengine.math.FixedPointMath;
+
+public class ShadowAtlasTest {
+
+	@Test
+	public void allocateTest() throws Exception {
+		final ShadowAtlas atlas = new ShadowAtlas(256);
+		final int[] tile = new int[2];
+		assertTrue(atlas.allocate(128, tile));
+		assertEquals(0, tile[0]);
+		assertEquals(0, tile[1]);
+		// the other quarters of the atlas are split for the smaller tiles
+		final boolean[] used = new boolean[256 * 256];
+		markTile(used, tile, 128);
+		for (int i = 0; i < 4; i++) {
+			assertTrue(atlas.allocate(64, tile));
+			markTile(used, tile, 64);
+		}
+		for (int i = 0; i < 16; i++) {
+			assertTrue(atlas.allocate(40, tile));
+			markTile(used, tile, 32);
+		}
+		assertEquals(21, atlas.getAllocatedTileCount());
+		assertEquals((128 * 128) + (4 * 64 * 64) + (16 * 32 * 32), atlas.getAllocatedArea());
+		assertEquals(FixedPointMath.FP_ONE * 3 / 4, atlas.getOccupancy());
+		assertEquals(0, atlas.getFailedAllocationCount());
+		assertTrue(atlas.allocate(128, tile));
+		markTile(used, tile, 128);
+		assertFalse(atlas.allocate(32, tile));
+		assertEquals(1, atlas.getFailedAllocationCount());
+		assertEquals(FixedPointMath.FP_ONE, atlas.getOccupancy());
+		atlas.clear();
+		assertEquals(0, atlas.getAllocatedArea());
+		assertEquals(0, atlas.getFailedAllocationCount());
+		assertTrue(atlas.allocate(256, tile));
+	}
+
+	@Test
+	public void freeTest() throws Exception {
+		final ShadowAtlas atlas = new ShadowAtlas(64);
+		final int[] tile = new int[2];
+		assertTrue(atlas.allocate(64, tile));
+		assertFalse(atlas.allocate(32, tile));
+		tile[0] = 0;
+		tile[1] = 0;
+		atlas.free(64, tile);
+		assertEquals(0, atlas.getAllocatedTileCount());
+		assertEquals(0, atlas.getAllocatedArea());
+		for (int i = 0; i < 4; i++) {
+			assertTrue(atlas.allocate(32, tile));
+		}
+		assertFalse(atlas.allocate(32, tile));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidSizeTest() throws Exception {
+		new ShadowAtlas(100);
+	}
+
+	/**
+	 * Marks the pixels of the tile and fails if a pixel was already used by another tile.
+	 */
+	private static void markTile(boolean[] used, int[] tile, int size) {
+		for (int y = tile[1]; y < tile[1] + size; y++) {
+			for (int x = tile[0]; x < tile[0] + size; x++) {
+				assertFalse(used[x + (y * 256)]);
+				used[x + (y * 256)] = true;
+			}
+		}
+	}
+}